@@ -1,9 +1,45 @@
 import os
+import struct
 import sys
+import numpy as np
 import pandas as pd
 import matplotlib.pyplot as plt
 from matplotlib.ticker import MultipleLocator
 
+def read_table(path, nrows=None):
+    """Legge un CSV o un file binario a colonne (.bin, simulation.outputFormat=BINARY)"""
+    if not path.endswith('.bin'):
+        return pd.read_csv(path, nrows=nrows)
+    with open(path, 'rb') as f:
+        raw = f.read()
+    if raw[:4] != b'PMCB':
+        raise ValueError(f"{path}: non è un file di risultati binario")
+    _, header_size, ncols = struct.unpack_from('<iii', raw, 4)
+    pos = 16
+    columns = []  # (nome, decimali, etichetta)
+    for _ in range(ncols):
+        decimals, length = struct.unpack_from('<bh', raw, pos)
+        pos += 3
+        name = raw[pos:pos + length].decode('utf-8')
+        pos += length
+        label = None
+        if decimals == -2:
+            (length,) = struct.unpack_from('<h', raw, pos)
+            label = raw[pos + 2:pos + 2 + length].decode('utf-8')
+            pos += 2 + length
+        columns.append((name, decimals, label))
+    stored = [c for c in columns if c[1] != -2]
+    data = np.frombuffer(raw, '<f8', offset=header_size).reshape(-1, len(stored))
+    if nrows is not None:
+        data = data[:nrows]
+    df = pd.DataFrame(data, columns=[c[0] for c in stored])
+    for i, (name, decimals, label) in enumerate(columns):
+        if decimals == -1:
+            df[name] = df[name].astype('int64')
+        elif decimals == -2:
+            df.insert(i, name, label)
+    return df
+
 def dynamic_locator(data_series, n_bins=10, min_step=1.0):
     """Ritorna un MultipleLocator con passo calcolato su data_series"""
     vmin, vmax = data_series.min(), data_series.max()
@@ -11,7 +47,7 @@ def dynamic_locator(data_series, n_bins=10, min_step=1.0):
     return MultipleLocator(step)
 
 def plot_response_times(csv_path, out_dir, time_col='Time', response_col='ETs'):
-    df = pd.read_csv(csv_path)
+    df = read_table(csv_path)
     seed_col = df.columns[0]
     df = df.sort_values(by=time_col)
 
@@ -36,7 +72,7 @@ def plot_response_times(csv_path, out_dir, time_col='Time', response_col='ETs'):
     print(f"– saved: {out_path}")
 
 def plot_queue_times(csv_path, out_dir, time_col='Time', queue_col='ETq'):
-    df = pd.read_csv(csv_path)
+    df = read_table(csv_path)
     seed_col = df.columns[0]
     df = df.sort_values(by=time_col)
 
@@ -62,7 +98,7 @@ def plot_queue_times(csv_path, out_dir, time_col='Time', queue_col='ETq'):
     print(f"– saved: {out_path}")
 
 def plot_job_counts(csv_path, out_dir, time_col='Time', jobs_col='ENs'):
-    df = pd.read_csv(csv_path)
+    df = read_table(csv_path)
     seed_col = df.columns[0]
     df = df.sort_values(by=time_col)
 
@@ -88,7 +124,7 @@ def plot_job_counts(csv_path, out_dir, time_col='Time', jobs_col='ENs'):
 
 
 def plot_infinite_response(csv_path, out_dir, batch_col='Batch', response_col='ETq', log_scale=False):
-    df = pd.read_csv(csv_path)
+    df = read_table(csv_path)
     df = df.sort_values(by=batch_col)
 
     fig, ax = plt.subplots(figsize=(10, 6))
@@ -118,7 +154,7 @@ def plot_infinite_response(csv_path, out_dir, batch_col='Batch', response_col='E
 
 if __name__ == '__main__':
     if len(sys.argv) < 2:
-        print("Usage: python plot_compare_with_q.py <csv_path> [<out_dir>] [<infinite_csv>]")
+        print("Usage: python plot_compare_with_q.py <csv_path|bin_path> [<out_dir>] [<infinite_csv|infinite_bin>]")
         sys.exit(1)
 
     csv_path = sys.argv[1]
@@ -126,7 +162,7 @@ if __name__ == '__main__':
     os.makedirs(out_dir, exist_ok=True)
 
     # Lettura header per controllare colonne
-    df_head = pd.read_csv(csv_path, nrows=0)
+    df_head = read_table(csv_path, nrows=0)
     cols = list(df_head.columns)
     print(f"– detected columns: {cols}")
 
@@ -0,0 +1,26 @@
+package org.uniroma2.PMCSN.benchmarks;
+
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+
+import java.util.Properties;
+
+/**
+ * Configurazioni per i benchmark: config.properties con override puntuali
+ * (simulation.csvOutput=false e simulation.benchmarkMode=true: a orizzonte infinito nessun CSV
+ * per batch, nessun file di confronto/verifica e nessun report finale, quindi niente I/O durante le misure).
+ */
+final class BenchmarkConfig {
+
+    private BenchmarkConfig() {}
+
+    /** config.properties con le coppie chiave/valore indicate sovrascritte (più csvOutput=false e benchmarkMode=true). */
+    static ConfigurationManager with(String... keyValues) {
+        Properties overrides = new Properties();
+        overrides.setProperty("simulation.csvOutput", "false");
+        overrides.setProperty("simulation.benchmarkMode", "true");
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            overrides.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return new ConfigurationManager(overrides);
+    }
+}
@@ -0,0 +1,66 @@
+package org.uniroma2.PMCSN.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.uniroma2.PMCSN.centers.RideSharingMultiServerNode;
+import org.uniroma2.PMCSN.centers.RideSharingMultiServerNodeSimple;
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.controller.RideSharingSystem;
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo di una chiamata a findOne del centro ride sharing al crescere delle richieste in coda.
+ * Ogni invocazione parte da un centro nuovo (veicoli tutti liberi) con la coda già riempita:
+ * la preparazione è esclusa dalla misura.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchingBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int queueLength;
+
+    private RideSharingSystem system;
+    private SimulationConfig config;
+    private Rngs rngs;
+    private int[] posti;
+    private RideSharingMultiServerNode node;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        ConfigurationManager cm = BenchmarkConfig.with();
+        system = new RideSharingSystem(cm);
+        config = new SimulationConfig(cm);
+        rngs = new Rngs();
+        rngs.plantSeeds(123456789);
+
+        // stessa distribuzione dei posti richiesti dei centri ride sharing
+        posti = new int[queueLength];
+        rngs.selectStream(8);
+        for (int k = 0; k < queueLength; k++) {
+            double r = rngs.random();
+            posti[k] = r < 0.4 ? 1 : r < 0.7 ? 2 : r < 0.9 ? 3 : 4;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        List<RideSharingMultiServerNodeSimple> centri = new ArrayList<>();
+        for (int i = 0; i < 3; i++) centri.add(new RideSharingMultiServerNodeSimple(system, i, rngs, config));
+        node = new RideSharingMultiServerNode(system, rngs, centri, config);
+        for (int p : posti) node.enqueueRequest(p);
+    }
+
+    @Benchmark
+    public int findOne() {
+        return node.findOne();
+    }
+}
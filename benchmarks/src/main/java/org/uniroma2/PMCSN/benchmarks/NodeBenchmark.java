@@ -0,0 +1,50 @@
+package org.uniroma2.PMCSN.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.uniroma2.PMCSN.centers.SimpleMultiServerNode;
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.controller.SimpleSystem;
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo di un evento di un centro multi-server al crescere del numero di server.
+ * λ del centro è scalato con i server per tenerne l'utilizzazione attorno a 0.8.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodeBenchmark {
+
+    private static final double UTILIZATION = 0.8;
+
+    @Param({"6", "33", "200", "1000"})
+    public int servers;
+
+    private SimpleMultiServerNode node;
+
+    @Setup
+    public void setup() {
+        ConfigurationManager base = BenchmarkConfig.with();
+        double esi = new SimulationConfig(base).serviceTime.getMean();
+        double pSmall = base.getDouble("simulation", "p_small");
+        double lambda = UTILIZATION * servers / (esi * pSmall);
+
+        ConfigurationManager config = BenchmarkConfig.with(
+                "simulation.servers", servers + "," + servers + "," + servers,
+                "simulation.lambdasimple", Double.toString(lambda));
+        Rngs rngs = new Rngs();
+        rngs.plantSeeds(123456789);
+        node = new SimpleMultiServerNode(new SimpleSystem(config), 0, rngs, new SimulationConfig(config));
+    }
+
+    @Benchmark
+    public int processNextEvent() {
+        return node.processNextEvent(node.peekNextEventTime());
+    }
+}
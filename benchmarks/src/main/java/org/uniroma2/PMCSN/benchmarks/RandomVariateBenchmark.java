@@ -0,0 +1,55 @@
+package org.uniroma2.PMCSN.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.libs.Distributions;
+import org.uniroma2.PMCSN.libs.Rngs;
+import org.uniroma2.PMCSN.utils.Distrs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo per campione del generatore di Lehmer e delle variate usate sul percorso per-evento.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RandomVariateBenchmark {
+
+    private Rngs rngs;
+    private Distrs distrs;
+    private SimulationConfig config;
+
+    @Setup
+    public void setup() {
+        rngs = new Rngs();
+        rngs.plantSeeds(123456789);
+        config = new SimulationConfig(BenchmarkConfig.with());
+        distrs = new Distrs(config);
+    }
+
+    @Benchmark
+    public double rngsRandom() {
+        return rngs.random();
+    }
+
+    @Benchmark
+    public double exponential() {
+        return Distributions.exponential(10.0, rngs);
+    }
+
+    /* inversione di Newton-Raphson su cdfStandard, come prima della normale troncata precalcolata */
+    @Benchmark
+    public double idfNormal() {
+        double u = Distributions.uniform(config.serviceTime.getAlpha(), 1 - config.serviceTime.getBeta(), rngs);
+        return Distributions.idfNormal(config.esi, SimulationConfig.SERVICE_SD, u);
+    }
+
+    @Benchmark
+    public double serviceTimeSimple() {
+        return distrs.getServiceTimeSimple(rngs);
+    }
+}
@@ -0,0 +1,44 @@
+package org.uniroma2.PMCSN.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.uniroma2.PMCSN.controller.SimpleSystem;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eventi al secondo della simulazione a orizzonte infinito del sistema semplice, senza CSV per
+ * batch, file di verifica né report finale (simulation.csvOutput=false, simulation.benchmarkMode=true),
+ * con 64 batch da 1024 job.
+ * Il contatore "events" è riportato in eventi/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EventCounter {
+        public long events;
+    }
+
+    private SimpleSystem system;
+
+    @Setup
+    public void setup() {
+        system = new SimpleSystem(BenchmarkConfig.with(
+                "simulation.batchSize", "1024",
+                "simulation.numBatches", "64"));
+    }
+
+    @Benchmark
+    public long runInfiniteSimulation(EventCounter counter) {
+        system.runInfiniteSimulation();
+        long events = system.getProcessedEvents();
+        counter.events += events;
+        return events;
+    }
+}
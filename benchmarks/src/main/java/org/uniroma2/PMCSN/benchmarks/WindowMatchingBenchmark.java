@@ -0,0 +1,76 @@
+package org.uniroma2.PMCSN.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.uniroma2.PMCSN.centers.RideSharingMultiServerNode;
+import org.uniroma2.PMCSN.centers.RideSharingMultiServerNodeSimple;
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.controller.RideSharingSystem;
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo della chiusura di una finestra di matching (tutta la coda abbinata o in feedback)
+ * per modalità di matching, lunghezza della coda e dimensione della flotta (un terzo per tipo).
+ * Ogni invocazione parte da un centro nuovo con la coda già riempita.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowMatchingBenchmark {
+
+    @Param({"SEQUENTIAL", "FIRST_FIT_DECREASING", "OPTIMAL"})
+    public String matching;
+
+    @Param({"8", "256", "4096"})
+    public int queueLength;
+
+    @Param({"3", "300", "3000"})
+    public int vehicles;
+
+    private RideSharingSystem system;
+    private SimulationConfig config;
+    private Rngs rngs;
+    private int[] posti;
+    private RideSharingMultiServerNode node;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        int perType = Math.max(1, vehicles / 3);
+        ConfigurationManager cm = BenchmarkConfig.with(
+                "simulation.rideMatching", matching,
+                "simulation.rideServers", String.valueOf(3 * perType),
+                "simulation.rideSharingServers", perType + "," + perType + "," + perType);
+        system = new RideSharingSystem(cm);
+        config = new SimulationConfig(cm);
+        rngs = new Rngs();
+        rngs.plantSeeds(123456789);
+
+        posti = new int[queueLength];
+        rngs.selectStream(8);
+        for (int k = 0; k < queueLength; k++) {
+            double r = rngs.random();
+            posti[k] = r < 0.4 ? 1 : r < 0.7 ? 2 : r < 0.9 ? 3 : 4;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        List<RideSharingMultiServerNodeSimple> centri = new ArrayList<>();
+        for (int i = 0; i < 3; i++) centri.add(new RideSharingMultiServerNodeSimple(system, i, rngs, config));
+        node = new RideSharingMultiServerNode(system, rngs, centri, config);
+        for (int p : posti) node.enqueueRequest(p);
+    }
+
+    @Benchmark
+    public RideSharingMultiServerNode matchPendingRequests() {
+        node.matchPendingRequests();
+        return node;
+    }
+}
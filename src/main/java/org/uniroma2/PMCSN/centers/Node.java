@@ -7,7 +7,12 @@ public interface Node {
 
     double peekNextEventTime();
     int peekNextEventType();
+    /** Processa il prossimo evento del centro, integrando prima le proprie aree fino a t. */
     int processNextEvent(double t);
+    /**
+     * Snapshot: porta le aree al tempo t con lo stato corrente. Il centro integra da solo
+     * a ogni proprio cambio di stato, quindi va chiamato solo prima di leggere le statistiche.
+     */
     void integrateTo(double t);
     Area getAreaObject();
     MsqSum[] getMsqSums();
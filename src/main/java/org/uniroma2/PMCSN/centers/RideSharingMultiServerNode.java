@@ -1,13 +1,12 @@
 package org.uniroma2.PMCSN.centers;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
 import org.uniroma2.PMCSN.utils.Distrs;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 public class RideSharingMultiServerNode implements Node {
@@ -18,11 +17,19 @@ public class RideSharingMultiServerNode implements Node {
 
     private final MsqTime clock = new MsqTime();
     private final Area areaCollector = new Area();
-    private final Distrs distrs = new Distrs();
+    private final Distrs distrs;
     private final MsqSum[] sum;
     private final List<MsqEvent> event;
+    private final EventCalendar calendar;
+    /* veicoli per stato e posti rimanenti, per il best-fit del matching */
+    private final VehicleIndex vehicles;
+    /* matching a finestra in un solo passaggio, null se si abbina una richiesta per volta */
+    private final BatchMatcher matcher;
 
-    private final List<MsqEvent> pendingArrivals = new ArrayList<>();
+    /* richieste in attesa di matching (posti richiesti), senza oggetti per richiesta */
+    private final RequestQueue pendingArrivals = new RequestQueue(64);
+    /* id della richiesta che condivide il tempo con l'arrivo schedulato (-1 se nessuna) */
+    private long aliasedRequest = -1;
 
     private int numberJobInSystem = 0;
     private final int RIDESERVERS;
@@ -32,23 +39,26 @@ public class RideSharingMultiServerNode implements Node {
     private final double TIME_WINDOW;
     private final List<RideSharingMultiServerNodeSimple> centriTradizionali;
 
-    public RideSharingMultiServerNode(Sistema system, Rngs rng, List<RideSharingMultiServerNodeSimple> centriTradizionali) {
+    public RideSharingMultiServerNode(Sistema system, Rngs rng, List<RideSharingMultiServerNodeSimple> centriTradizionali, SimulationConfig config) {
 
         this.rng = rng;
         this.centriTradizionali = centriTradizionali;
 
-        ConfigurationManager config = new ConfigurationManager();
-        P_EXIT = config.getDouble("probabilities", "rideExit");
-        P_MATCH_BUSY = config.getDouble("probabilities", "rideMatchBusy");
-        TIME_WINDOW = config.getDouble("simulation", "timeWindow");
+        this.distrs = new Distrs(config);
+        P_EXIT = config.rideExit;
+        P_MATCH_BUSY = config.rideMatchBusy;
+        TIME_WINDOW = config.timeWindow;
 
-        String[] srv = config.getString("simulation", "rideSharingServers").split(",");
-        int small = Integer.parseInt(srv[0].trim());
-        var medium = Integer.parseInt(srv[1].trim());
-        RIDESERVERS = config.getInt("simulation", "rideServers");
+        int small = config.rideSharingServers(0);
+        int medium = config.rideSharingServers(1);
+        RIDESERVERS = config.rideServers;
 
         sum = new MsqSum[RIDESERVERS + 1];
         event = new ArrayList<>(RIDESERVERS + 1);
+        calendar = new EventCalendar(RIDESERVERS + 1);
+        vehicles = new VehicleIndex(RIDESERVERS);
+        matcher = config.rideMatching == BatchMatcher.Mode.SEQUENTIAL ? null
+                : new BatchMatcher(config.rideMatching, RIDESERVERS, vehicles, rng, P_MATCH_BUSY, this::assignToServer);
 
         for (int i = 0; i <= RIDESERVERS; i++) {
 
@@ -60,9 +70,11 @@ public class RideSharingMultiServerNode implements Node {
                 else ev.capacita = ev.capacitaRimanente = 8;
                 ev.numRichiesteServite = 0;
                 ev.x = 0;
+                vehicles.update(i, ev.x, ev.capacitaRimanente);
             } else {
                 ev.t = distrs.getNextArrivalTimeRideSharing(rng, clock.current);
                 ev.x = 1;
+                calendar.schedule(ARRIVAL, ev.t);
             }
             sum[i] = new MsqSum();
             event.add(ev);
@@ -72,26 +84,12 @@ public class RideSharingMultiServerNode implements Node {
 
     @Override
     public double peekNextEventTime() {
-        double tmin = Double.POSITIVE_INFINITY;
-        for (int i = 0; i <= RIDESERVERS; i++) {
-            MsqEvent ev = event.get(i);
-            if (ev.x == 1 && ev.t < tmin) tmin = ev.t;
-        }
-        return tmin;
+        return calendar.peekTime();
     }
 
     @Override
     public int peekNextEventType() {
-        int best = -1;
-        double tmin = Double.POSITIVE_INFINITY;
-        for (int i = 0; i <= RIDESERVERS; i++) {
-            MsqEvent ev = event.get(i);
-            if (ev.x == 1 && ev.t < tmin) {
-                tmin = ev.t;
-                best = i;
-            }
-        }
-        return best;
+        return calendar.peekSlot();
     }
 
     // Campo di classe:
@@ -100,18 +98,20 @@ public class RideSharingMultiServerNode implements Node {
     @Override
     public int processNextEvent(double t) {
         int e = peekNextEventType();
+        integrateTo(t); // integrazione pigra: le aree si aggiornano solo al cambio di stato
         clock.current = t;
 
         if (e == ARRIVAL) {
             // 1) ARRIVAL
             numberJobInSystem++;
 
-            // Schedule next ARRIVAL
-            MsqEvent arr = new MsqEvent();
+            // Schedule next ARRIVAL (riuso lo stesso evento)
+            MsqEvent arr = event.get(ARRIVAL);
             arr.t = distrs.getNextArrivalTimeRideSharing(rng, clock.current);
             arr.x = 1;
-            arr.postiRichiesti = getNumPosti();
-            event.set(ARRIVAL, arr);
+            int posti = getNumPosti();
+            calendar.schedule(ARRIVAL, arr.t);
+            aliasedRequest = -1;
 
             rng.selectStream(6);
             double p = rng.random();
@@ -120,8 +120,9 @@ public class RideSharingMultiServerNode implements Node {
                 return -1;
             }
 
-            // 2) Accumulo in coda
-            pendingArrivals.add(arr);
+            // 2) Accumulo in coda: come quando la richiesta era lo stesso oggetto
+            // dell'arrivo schedulato, un suo feedback ne riscrive il tempo
+            aliasedRequest = pendingArrivals.add(posti);
 
             // 3) Imposto finestra se prima
             if (Double.isInfinite(nextMatchTime)) {
@@ -142,23 +143,34 @@ public class RideSharingMultiServerNode implements Node {
             sum[e].service += event.get(e).svc;
 
             sEvent.x = 0;
+            calendar.cancel(e);
             sEvent.capacitaRimanente   = sEvent.capacita;
             sEvent.numRichiesteServite = 0;
             sEvent.postiRichiesti      = 0;
+            vehicles.update(e, sEvent.x, sEvent.capacitaRimanente);
 
             return e;
         }
 
         // 5) Batch‑matching
         if (clock.current >= nextMatchTime) {
+            matchPendingRequests();
+        }
+
+        return -1;
+    }
+
+    /** Chiude la finestra di matching: abbina le richieste in coda, le altre vanno in feedback. */
+    public void matchPendingRequests() {
+        if (matcher != null) {
+            matcher.match(pendingArrivals);
+            while (!pendingArrivals.isEmpty()) feedbackFirst();
+        } else {
             while (true) {
                 int matched = findOne();
                 if (matched == 0) {
                     if (!pendingArrivals.isEmpty()) {
-                        numberJobInSystem --;
-                        MsqEvent toFb = pendingArrivals.getFirst();
-                        generateFeedback(toFb);
-                        pendingArrivals.removeFirst();
+                        feedbackFirst();
                         /*aggiunta per prova*/
                         continue;
                         /*aggiunta per prova*/
@@ -166,12 +178,21 @@ public class RideSharingMultiServerNode implements Node {
                     break;
                 }
             }
-            nextMatchTime = Double.POSITIVE_INFINITY;
         }
+        nextMatchTime = Double.POSITIVE_INFINITY;
+        // il feedback della richiesta legata all'arrivo schedulato ne riscrive il tempo:
+        // riallineo il calendario
+        calendar.schedule(ARRIVAL, event.get(ARRIVAL).t);
+    }
 
-        
-
-        return -1;
+    /* la richiesta in testa alla coda non trova posto: torna ai centri tradizionali */
+    private void feedbackFirst() {
+        numberJobInSystem --;
+        if (pendingArrivals.idAt(0) == aliasedRequest) {
+            event.get(ARRIVAL).t = clock.current;
+        }
+        generateFeedback(pendingArrivals.postiAt(0));
+        pendingArrivals.removeFirst();
     }
 
     @Override
@@ -197,12 +218,7 @@ public class RideSharingMultiServerNode implements Node {
     }
 
     public int getNumBusyServers() {
-        int busyServers = 0;
-        // server sono gli indici 1..RIDESERVERS
-        for (int i = 1; i < event.size(); i++) {
-            if (event.get(i).isBusy()) busyServers++;
-        }
-        return busyServers;
+        return vehicles.busyCount();
     }
 
     @Override
@@ -217,6 +233,7 @@ public class RideSharingMultiServerNode implements Node {
         clock.current = clock.next = 0.0;
         areaCollector.reset();
         pendingArrivals.clear();
+        aliasedRequest = -1;
         nextMatchTime = Double.POSITIVE_INFINITY;
         for (MsqSum s : sum) s.reset();
     }
@@ -252,59 +269,44 @@ public class RideSharingMultiServerNode implements Node {
         }
     }
 
-    public void generateFeedback(MsqEvent event) {
-        event.t = clock.current; //prova greta
-        int num_posti = event.postiRichiesti;
+    public void generateFeedback(int num_posti) {
         if(num_posti <= 3){
-            centriTradizionali.getFirst().generateArrival(event.t);
+            centriTradizionali.getFirst().generateArrival(clock.current);
             //genera evento di tipo 1
         } else if(num_posti == 4){
-            centriTradizionali.get(1).generateArrival(event.t);
+            centriTradizionali.get(1).generateArrival(clock.current);
             //genera eventi di tipo 2
         } else {
-            centriTradizionali.get(2).generateArrival(event.t);
+            centriTradizionali.get(2).generateArrival(clock.current);
             //genera eventi di tipo 3
         }
     }
 
+    /** Accoda una richiesta di matching senza passare da un arrivo (usato dai benchmark). */
+    public void enqueueRequest(int posti) {
+        numberJobInSystem++;
+        pendingArrivals.add(posti);
+    }
+
     public int findOne() {
         if (pendingArrivals.isEmpty()) return 0;
 
         // 1. Prendo la PRIMA richiesta in coda
-        MsqEvent firstReq = pendingArrivals.getFirst();
-
-        // 2. CERCO best‑fit tra i server *attivi*
-        int bestActive = -1;
-        double bestCapActive = -1;
+        int firstPosti = pendingArrivals.postiAt(0);
 
+        // 2. CERCO best‑fit tra i server *attivi* compatibili col percorso (prob. P_MATCH_BUSY)
         rng.selectStream(7);
-        for (int i = 1; i <= RIDESERVERS; i++) {
-            if (event.get(i).x == 1
-                    && event.get(i).capacitaRimanente>= firstReq.postiRichiesti
-                    && rng.random() < P_MATCH_BUSY /*indica la probabilità che sto nel percorso giusto*/
-                    && event.get(i).capacitaRimanente > bestCapActive) {
-                bestCapActive = event.get(i).capacitaRimanente;
-                bestActive = i;
-            }
-        }
+        int bestActive = vehicles.bestBusy(firstPosti, P_MATCH_BUSY, rng);
 
         if (bestActive != -1) {
             // 2.a Assegno *solo* la prima richiesta a questo server
-            assignToServer(bestActive, firstReq);
+            assignToServer(bestActive, firstPosti);
             pendingArrivals.removeFirst();
             return 1;
         }
 
         // 3. FALLBACK interno: best‑fit tra server *inattivi*
-        int bestIdle = -1; double bestCapIdle = -1;
-        for (int i = 1; i <= RIDESERVERS; i++) {
-            if (event.get(i).x == 0
-                    && event.get(i).capacitaRimanente >= firstReq.postiRichiesti
-                    && event.get(i).capacitaRimanente > bestCapIdle) {
-                bestCapIdle = event.get(i).capacitaRimanente;
-                bestIdle = i;
-            }
-        }
+        int bestIdle = vehicles.bestIdle(firstPosti);
         if (bestIdle == -1) {
             return 0;  // né attivi né inattivi hanno accettato
         }
@@ -312,20 +314,21 @@ public class RideSharingMultiServerNode implements Node {
         // 3.a Attivo il server e *accorpo* quante richieste posso
         event.get(bestIdle).x = 1;
         int totalMatched = 0;
-        Iterator<MsqEvent> it = pendingArrivals.iterator();
-        while (it.hasNext()) {
-            MsqEvent req = it.next();
-            if (req.postiRichiesti <= event.get(bestIdle).capacitaRimanente) {
-                assignToServer(bestIdle, req);
-                it.remove();
+        for (int k = 0; k < pendingArrivals.size(); ) {
+            int posti = pendingArrivals.postiAt(k);
+            if (posti <= event.get(bestIdle).capacitaRimanente) {
+                assignToServer(bestIdle, posti);
+                pendingArrivals.removeAt(k);
                 totalMatched++;
                 if (event.get(bestIdle).capacitaRimanente == 0) break;
+            } else {
+                k++;
             }
         }
         return totalMatched; //totale di richieste matchate
     }
 
-    private void assignToServer(int serverIdx, MsqEvent req) {
+    private void assignToServer(int serverIdx, int postiRichiesti) {
         MsqEvent s = event.get(serverIdx);
         double svcNew = distrs.getServiceTimeRideSharing(rng);
 
@@ -342,10 +345,12 @@ public class RideSharingMultiServerNode implements Node {
             s.svc = (s.svc*s.numRichiesteServite + svcNew + overhead) / (s.numRichiesteServite+1);
             s.t = clock.current + s.svc;
         }
+        calendar.schedule(serverIdx, s.t);
 
         // Aggiorna batch
         s.numRichiesteServite++;
-        s.capacitaRimanente -= req.postiRichiesti;
-        s.postiRichiesti += req.postiRichiesti;
+        s.capacitaRimanente -= postiRichiesti;
+        s.postiRichiesti += postiRichiesti;
+        vehicles.update(serverIdx, s.x, s.capacitaRimanente);
     }
 }
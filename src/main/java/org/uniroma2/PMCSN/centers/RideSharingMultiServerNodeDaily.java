@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.centers;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.DailyServerSelectorRideSharing;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
@@ -17,14 +17,22 @@ public class RideSharingMultiServerNodeDaily implements Node {
     private final Rngs rng;
     private final MsqTime clock = new MsqTime();
     private final Area areaCollector = new Area();
-    private final DailyDistr distrs = new DailyDistr();
+    private final DailyDistr distrs;
 
     // liste preallocare di dimensione maxServers+1 (0=arrival, 1..maxServers = servers)
     private final MsqSum[] sum;
     private final List<MsqServer> serversCompletion = new ArrayList<>();
     private final List<MsqEvent> event = new ArrayList<>();
+    private final EventCalendar calendar;
+    /* veicoli attivi per stato e posti rimanenti, per il best-fit del matching */
+    private final VehicleIndex vehicles;
+    /* matching a finestra in un solo passaggio, null se si abbina una richiesta per volta */
+    private final BatchMatcher matcher;
 
-    private final Deque<MsqEvent> pendingArrivals = new ArrayDeque<>();
+    /* richieste in attesa di matching (posti richiesti), senza oggetti per richiesta */
+    private final RequestQueue pendingArrivals = new RequestQueue(64);
+    /* id della richiesta che condivide il tempo con l'arrivo schedulato (-1 se nessuna) */
+    private long aliasedRequest = -1;
 
     private int numberJobInSystem = 0;
 
@@ -65,15 +73,16 @@ public class RideSharingMultiServerNodeDaily implements Node {
     public RideSharingMultiServerNodeDaily(Sistema system,
                                            Rngs rng,
                                            List<RideSharingMultiServerNodeSimpleDaily> centriTradizionali,
-                                           DailyServerSelectorRideSharing selector) {
+                                           DailyServerSelectorRideSharing selector,
+                                           SimulationConfig config) {
         this.rng = rng;
         this.centriTradizionali = centriTradizionali;
         this.selector = selector;
 
-        ConfigurationManager config = new ConfigurationManager();
-        P_EXIT = config.getDouble("probabilities", "rideExit");
-        P_MATCH_BUSY = config.getDouble("probabilities", "rideMatchBusy");
-        TIME_WINDOW = config.getDouble("simulation", "timeWindow");
+        this.distrs = new DailyDistr(config);
+        P_EXIT = config.rideExit;
+        P_MATCH_BUSY = config.rideMatchBusy;
+        TIME_WINDOW = config.timeWindow;
 
         int x = 120;
         // campioniamo il selector nelle fasce note per calcolare i massimali
@@ -111,6 +120,10 @@ public class RideSharingMultiServerNodeDaily implements Node {
         this.largeEnd = largeStart + maxLarge - 1;
 
         sum = new MsqSum[totalMax+1];
+        calendar = new EventCalendar(totalMax + 1);
+        vehicles = new VehicleIndex(totalMax);
+        matcher = config.rideMatching == BatchMatcher.Mode.SEQUENTIAL ? null
+                : new BatchMatcher(config.rideMatching, totalMax, vehicles, rng, P_MATCH_BUSY, this::assignToServer);
 
         // preallocazione liste (0 = ARRIVAL; 1..totalMax = server slots)
         for (int i = 0; i <= totalMax; i++) {
@@ -128,6 +141,7 @@ public class RideSharingMultiServerNodeDaily implements Node {
                 ev.x = 1;
                 ev.x = 1;
                 ev.postiRichiesti = 0;
+                calendar.schedule(ARRIVAL, ev.t);
             } else {
                 // assegniamo capacità in funzione della mappatura indice->tipo
                 if (i >= smallStart && i <= smallEnd) {
@@ -165,30 +179,19 @@ public class RideSharingMultiServerNodeDaily implements Node {
 
     @Override
     public double peekNextEventTime() {
-        double tmin = Double.POSITIVE_INFINITY;
-        for (int i = 0; i < totalMax+1; i++) {
-            MsqEvent ev = event.get(i);
-            if (ev.x == 1 && ev.t < tmin) tmin = ev.t;
-        }
-        return tmin;
+        return calendar.peekTime();
     }
 
     @Override
     public int peekNextEventType() {
-        int best = -1;
-        double tmin = Double.POSITIVE_INFINITY;
-        for (int i = 0; i < totalMax+1; i++) {
-            MsqEvent ev = event.get(i);
-            if (ev.x == 1 && ev.t < tmin) {
-                tmin = ev.t;
-                best = i;
-            }
-        }
-        return best;
+        return calendar.peekSlot();
     }
 
     @Override
     public int processNextEvent(double t) {
+        // integrazione pigra: porto le aree al tempo dell'evento prima di cambiare stato
+        integrateTo(t);
+
         // aggiorna i server attivi/liberi secondo la fascia corrente
         updateServersForCurrentTime();
 
@@ -205,12 +208,13 @@ public class RideSharingMultiServerNodeDaily implements Node {
             // ARRIVO ESTERNO
             numberJobInSystem++;
 
-            // schedula il prossimo arrivo
-            MsqEvent newArr = new MsqEvent();
+            // schedula il prossimo arrivo (riuso lo stesso evento)
+            MsqEvent newArr = event.get(ARRIVAL);
             newArr.t = distrs.getNextArrivalTimeRideSharing(rng, clock.current);
             newArr.x = 1;
-            newArr.postiRichiesti = getNumPosti();
-            event.set(ARRIVAL, newArr);
+            int posti = getNumPosti();
+            calendar.schedule(ARRIVAL, newArr.t);
+            aliasedRequest = -1;
 
             // probabilità di uscita
             rng.selectStream(6);
@@ -219,8 +223,9 @@ public class RideSharingMultiServerNodeDaily implements Node {
                 return -1;
             }
 
-            // aggiungi in coda (salviamo l'evento per il matching)
-            pendingArrivals.add(newArr);
+            // aggiungi in coda per il matching: come quando la richiesta era lo stesso
+            // oggetto dell'arrivo schedulato, un suo feedback ne riscrive il tempo
+            aliasedRequest = pendingArrivals.add(posti);
 
             // imposta finestra di batch matching se necessario
             if (Double.isInfinite(nextMatchTime)) {
@@ -245,6 +250,8 @@ public class RideSharingMultiServerNodeDaily implements Node {
                 sEvent.postiRichiesti = 0;
                 sEvent.svc = 0;
                 sEvent.t = Double.POSITIVE_INFINITY;
+                calendar.cancel(e);
+                vehicles.update(e, sEvent.x, sEvent.capacitaRimanente);
             }
 
             return e;
@@ -252,24 +259,43 @@ public class RideSharingMultiServerNodeDaily implements Node {
 
         // batch matching se scaduta la finestra
         if (clock.current >= nextMatchTime) {
+            matchPendingRequests();
+        }
+
+        return -1;
+    }
+
+    /** Chiude la finestra di matching: abbina le richieste in coda, le altre vanno in feedback. */
+    public void matchPendingRequests() {
+        if (matcher != null) {
+            updateServersForCurrentTime();
+            matcher.match(pendingArrivals);
+            while (!pendingArrivals.isEmpty()) feedbackFirst();
+        } else {
             while (true) {
                 int matched = findOne();
                 if (matched == 0) {
                     if (!pendingArrivals.isEmpty()) {
-                        // feedback verso centri tradizionali
-                        numberJobInSystem--;
-                        MsqEvent toFb = pendingArrivals.getFirst();
-                        generateFeedback(toFb);
-                        pendingArrivals.removeFirst();
+                        feedbackFirst();
                         continue; // riprova con eventuali altri server liberi
                     }
                     break;
                 }
             }
-            nextMatchTime = Double.POSITIVE_INFINITY;
         }
+        nextMatchTime = Double.POSITIVE_INFINITY;
+        // il feedback della richiesta legata all'arrivo schedulato ne riscrive il tempo
+        calendar.schedule(ARRIVAL, event.get(ARRIVAL).t);
+    }
 
-        return -1;
+    // feedback verso centri tradizionali della richiesta in testa alla coda
+    private void feedbackFirst() {
+        numberJobInSystem--;
+        if (pendingArrivals.idAt(0) == aliasedRequest) {
+            event.get(ARRIVAL).t = clock.current;
+        }
+        generateFeedback(pendingArrivals.postiAt(0));
+        pendingArrivals.removeFirst();
     }
 
     @Override
@@ -306,6 +332,7 @@ public class RideSharingMultiServerNodeDaily implements Node {
         clock.current = clock.next = 0.0;
         areaCollector.reset();
         pendingArrivals.clear();
+        aliasedRequest = -1;
         nextMatchTime = Double.POSITIVE_INFINITY;
         for (MsqSum s : sum) if (s != null) s.reset();
         // NOTA: non resettiamo l'array event qui (capacità e mapping rimangono)
@@ -326,39 +353,20 @@ public class RideSharingMultiServerNodeDaily implements Node {
         // Aggiorna targets (potrebbe cambiare all'interno della giornata)
         updateServersForCurrentTime();
 
-        MsqEvent firstReq = pendingArrivals.getFirst();
+        int firstPosti = pendingArrivals.postiAt(0);
 
         // Primo tentativo: server attivi e busy (x==1) con probabilità P_MATCH_BUSY
-        int bestActive = -1;
-        int bestCapActive = -1;
-
         rng.selectStream(7);
-        for (int i = 1; i <= totalMax; i++) {
-            MsqEvent s = event.get(i);
-            if (s.x == 1 && s.capacitaRimanente >= firstReq.postiRichiesti && rng.random() < P_MATCH_BUSY) {
-                if (s.capacitaRimanente > bestCapActive) {
-                    bestCapActive = s.capacitaRimanente;
-                    bestActive = i;
-                }
-            }
-        }
+        int bestActive = vehicles.bestBusy(firstPosti, P_MATCH_BUSY, rng);
 
         if (bestActive != -1) {
-            assignToServer(bestActive, firstReq);
+            assignToServer(bestActive, firstPosti);
             pendingArrivals.removeFirst();
             return 1;
         }
 
         // Secondo tentativo: server attivi ma idle (x==0)
-        int bestIdle = -1;
-        int bestCapIdle = -1;
-        for (int i = 1; i <= totalMax; i++) {
-            MsqEvent s = event.get(i);
-            if (s.x == 0 && s.capacitaRimanente >= firstReq.postiRichiesti && s.capacitaRimanente > bestCapIdle) {
-                bestCapIdle = s.capacitaRimanente;
-                bestIdle = i;
-            }
-        }
+        int bestIdle = vehicles.bestIdle(firstPosti);
 
         if (bestIdle == -1) return 0; // nessun server disponibile
 
@@ -367,22 +375,23 @@ public class RideSharingMultiServerNodeDaily implements Node {
         s.x = 1;
 
         // Assegna richieste dalla coda fino a saturare
-        Iterator<MsqEvent> it = pendingArrivals.iterator();
         int totalMatched = 0;
-        while (it.hasNext()) {
-            MsqEvent req = it.next();
-            if (req.postiRichiesti <= s.capacitaRimanente) {
-                assignToServer(bestIdle, req);
-                it.remove();
+        for (int k = 0; k < pendingArrivals.size(); ) {
+            int posti = pendingArrivals.postiAt(k);
+            if (posti <= s.capacitaRimanente) {
+                assignToServer(bestIdle, posti);
+                pendingArrivals.removeAt(k);
                 totalMatched++;
                 if (s.capacitaRimanente == 0) break;
+            } else {
+                k++;
             }
         }
 
         return totalMatched;
     }
 
-    private void assignToServer(int serverIdx, MsqEvent req) {
+    private void assignToServer(int serverIdx, int postiRichiesti) {
         MsqEvent s = event.get(serverIdx);
 
         // 1. Tempo di servizio base per il nuovo passeggero
@@ -399,9 +408,9 @@ public class RideSharingMultiServerNodeDaily implements Node {
         sum[serverIdx].service += realServiceTime;
 
         // 5. Aggiorna lo stato del server
-        s.capacitaRimanente -= req.postiRichiesti;
+        s.capacitaRimanente -= postiRichiesti;
         s.numRichiesteServite++;
-        s.postiRichiesti += req.postiRichiesti;
+        s.postiRichiesti += postiRichiesti;
 
         // 6. Imposta il tempo di completamento del server
         if (!s.isBusy()) {
@@ -414,6 +423,8 @@ public class RideSharingMultiServerNodeDaily implements Node {
             s.svc = (s.svc * (s.numRichiesteServite - 1) + realServiceTime) / s.numRichiesteServite;
             s.t = clock.current + s.svc;
         }
+        calendar.schedule(serverIdx, s.t);
+        vehicles.update(serverIdx, s.x, s.capacitaRimanente);
     }
 
     // ritorna numero di passeggeri in servizio (somma numRichiesteServite su tutti i server)
@@ -431,9 +442,7 @@ public class RideSharingMultiServerNodeDaily implements Node {
     }
 
     public int getNumBusyServers() {
-        int busyServers = 0;
-        for (int i = 1; i <= totalMax; i++) if (event.get(i).isBusy()) busyServers++;
-        return busyServers;
+        return vehicles.busyCount();
     }
 
     public double getUtilization() {
@@ -451,16 +460,14 @@ public class RideSharingMultiServerNodeDaily implements Node {
         if (sum != null) for (MsqSum s : sum) if (s != null) s.reset();
     }
 
-    public void generateFeedback(MsqEvent event) {
-        int num_posti = event.postiRichiesti;
-        event.t = clock.current; //prova greta
+    public void generateFeedback(int num_posti) {
         if (num_posti <= 3) {
             // use get(0) to be safe on List type
-            centriTradizionali.get(0).generateArrival(event.t);
+            centriTradizionali.get(0).generateArrival(clock.current);
         } else if (num_posti == 4) {
-            centriTradizionali.get(1).generateArrival(event.t);
+            centriTradizionali.get(1).generateArrival(clock.current);
         } else {
-            centriTradizionali.get(2).generateArrival(event.t);
+            centriTradizionali.get(2).generateArrival(clock.current);
         }
     }
 
@@ -494,6 +501,7 @@ public class RideSharingMultiServerNodeDaily implements Node {
                     s.capacita = s.capacitaRimanente = 0;
                 }
             }
+            vehicles.update(idx, s.x, s.capacitaRimanente);
         }
 
         // MEDIUM
@@ -516,6 +524,7 @@ public class RideSharingMultiServerNodeDaily implements Node {
                     s.capacita = s.capacitaRimanente = 0;
                 }
             }
+            vehicles.update(idx, s.x, s.capacitaRimanente);
         }
 
         // LARGE
@@ -538,6 +547,7 @@ public class RideSharingMultiServerNodeDaily implements Node {
                     s.capacita = s.capacitaRimanente = 0;
                 }
             }
+            vehicles.update(idx, s.x, s.capacitaRimanente);
         }
 
         // Numero effettivo di server attivi (includendo quelli occupati): troviamo highest active index
@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.centers;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
@@ -15,32 +15,38 @@ public class RideSharingMultiServerNodeSimple implements Node {
     private final Rngs rng;
     private final MsqTime clock = new MsqTime();
     private final Area areaCollector = new Area();
-    private final Distrs distrs = new Distrs();
+    private final Distrs distrs;
     private final MsqSum[] sum;
     private final MsqServer[] serversCompletion;
     private final List<MsqEvent> eventList;
+    /* arrivi di feedback dal ride sharing, in ordine di tempo */
+    private final TimeQueue feedback = new TimeQueue(16);
+    /* slot 0 = esterno, 1..S = server, S+1 = primo arrivo interno in coda */
+    private final EventCalendar calendar;
+    private final IdleServerIndex idleServers;
     private int numberJobInSystem = 0;
     private final double P_EXIT;
     private final int centerIndex;
     private final Sistema system;
     private final int serverCount;
 
-    public RideSharingMultiServerNodeSimple(Sistema system, int centerIndex, Rngs rng) {
+    public RideSharingMultiServerNodeSimple(Sistema system, int centerIndex, Rngs rng, SimulationConfig config) {
         this.rng = rng;
         this.centerIndex = centerIndex;
         this.system = system;
 
-        ConfigurationManager config = new ConfigurationManager();
-        this.P_EXIT = config.getDouble("probabilities", "exit");
+        this.distrs = new Distrs(config);
+        this.P_EXIT = config.pExit;
 
-        // leggo quanti server ha questo centro
-        String[] srv = config.getString("simulation", "rideSimpleServers").split(",");
-        serverCount = Integer.parseInt(srv[centerIndex].trim());
+        // quanti server ha questo centro
+        serverCount = config.rideSimpleServers(centerIndex);
 
         // array per stats [0]=per gli arrivi, [1..S]=per i server
         sum = new MsqSum[serverCount + 1];
         serversCompletion = new MsqServer[serverCount + 1];
-        eventList = new ArrayList<>(serverCount + 2);
+        eventList = new ArrayList<>(serverCount + 1);
+        calendar = new EventCalendar(serverCount + 2);
+        idleServers = new IdleServerIndex(serverCount, config.serverSelection, rng);
 
         // inizializzo sum, serverCompletion e lista eventi
         for (int i = 0; i <= serverCount; i++) {
@@ -54,74 +60,44 @@ public class RideSharingMultiServerNodeSimple implements Node {
         MsqEvent e0 = eventList.getFirst();
         e0.t = firstArr;
         e0.x = 1;
+        calendar.schedule(ARRIVO_ESTERNO, e0.t);
 
         resetState();
     }
 
     @Override
     public double peekNextEventTime() {
-        double tmin = Double.POSITIVE_INFINITY;
-        // controlla arrivo esterno e completions server
-        for (int i = 0; i <= serverCount; i++) {
-            MsqEvent e = eventList.get(i);
-            if (e.x == 1 && e.t < tmin) {
-                tmin = e.t;
-            }
-        }
-        // e poi il primo evento interno dopo i server (se esiste)
-        if (eventList.size() > serverCount + 1) {
-            MsqEvent internal = eventList.get(serverCount + 1);
-            if (internal.x == 1 && internal.t < tmin) {
-                tmin = internal.t;
-            }
-        }
-        return tmin;
+        return calendar.peekTime();
     }
 
     @Override
     public int peekNextEventType() {
-        double tmin = Double.POSITIVE_INFINITY;
-        int idx = -1;
-        // 0 = esterno, 1..S = server completion
-        for (int i = 0; i <= serverCount; i++) {
-            MsqEvent e = eventList.get(i);
-            if (e.x == 1 && e.t < tmin) {
-                tmin = e.t;
-                idx = i;
-            }
-        }
-        // solo il primo evento interno (se presente) può competere
-        if (eventList.size() > serverCount + 1) {
-            MsqEvent internal = eventList.get(serverCount + 1);
-            if (internal.x == 1 && internal.t < tmin) {
-                tmin = internal.t;
-                idx = serverCount + 1;
-            }
-        }
-        return idx;
+        // solo il primo evento interno (se presente) compete: è l'unico nel calendario
+        return calendar.peekSlot();
     }
 
     @Override
     public int processNextEvent(double t) {
         int eIdx = peekNextEventType();
 
-        MsqEvent ev = eventList.get(eIdx);
-        clock.next = ev.t;
-        clock.current = clock.next;
-
         // ARRIVO (esterno = indice 0, interno = primo dopo i server)
         boolean isExternal = (eIdx == ARRIVO_ESTERNO);
         boolean isInternal = (eIdx == serverCount + 1);
 
+        double te = isInternal ? feedback.peek() : eventList.get(eIdx).t;
+        integrateTo(te); // integrazione pigra: le aree si aggiornano solo al cambio di stato
+        clock.next = te;
+        clock.current = clock.next;
+
         if (isExternal || isInternal) {
             numberJobInSystem++;
             // se esterno, ne genero subito uno nuovo
             if (isExternal) {
                 double nextArr = distrs.getNextArrivalTimeSimpleCenter(rng, system, centerIndex, clock.current);
-                MsqEvent newArr = new MsqEvent();
-                newArr.t = nextArr;
-                newArr.x = 1;
-                eventList.set(ARRIVO_ESTERNO, newArr);
+                MsqEvent arr = eventList.get(ARRIVO_ESTERNO); // riuso lo stesso evento
+                arr.t = nextArr;
+                arr.x = 1;
+                calendar.schedule(ARRIVO_ESTERNO, arr.t);
 
                 rng.selectStream(5);
                 if (rng.random() < P_EXIT) {
@@ -129,8 +105,13 @@ public class RideSharingMultiServerNodeSimple implements Node {
                     return -1;
                 }
             } else {
-                // se era interno, lo rimuovo: l'ArrayList si ridimensiona e sposta all'indietro
-                eventList.remove(eIdx);
+                // se era interno, lo tolgo dalla coda e schedulo il successivo
+                feedback.poll();
+                if (!feedback.isEmpty()) {
+                    calendar.schedule(serverCount + 1, feedback.peek());
+                } else {
+                    calendar.cancel(serverCount + 1);
+                }
             }
 
             int freeSrv = findFreeServer();
@@ -139,6 +120,7 @@ public class RideSharingMultiServerNodeSimple implements Node {
                 MsqEvent comp = eventList.get(freeSrv);
                 comp.t = clock.current + st;
                 comp.x = 1;
+                calendar.schedule(freeSrv, comp.t);
                 serversCompletion[freeSrv].setLastCompletionTime(comp.t);
                 sum[freeSrv].service += st;
                 return freeSrv;
@@ -153,21 +135,21 @@ public class RideSharingMultiServerNodeSimple implements Node {
                 MsqEvent comp = eventList.get(eIdx);
                 comp.t = clock.current + st;
                 comp.x = 1;
+                calendar.schedule(eIdx, comp.t);
                 serversCompletion[eIdx].setLastCompletionTime(comp.t);
                 sum[eIdx].service += st;
                 return eIdx;
             } else {
                 eventList.get(eIdx).x = 0;  // server ora libero
+                calendar.cancel(eIdx);
+                idleServers.release(eIdx, clock.current);
             }
         }
         return -1;
     }
 
     private int findFreeServer() {
-        for (int i = 1; i <= serverCount; i++) {
-            if (eventList.get(i).x == 0) return i;
-        }
-        return -1;
+        return idleServers.acquire(clock.current);
     }
 
     @Override
@@ -227,10 +209,9 @@ public class RideSharingMultiServerNodeSimple implements Node {
 
     /** Genera un arrivo “di feedback” appendendolo in coda */
     public void generateArrival(double timeArrivalFromRideSharing) {
-        MsqEvent arr = new MsqEvent();
-        arr.t = timeArrivalFromRideSharing;
-        arr.x = 1;
-        eventList.add(arr);
-        // ArrayList.remove(i) sposterà tutti gli elementi successivi verso indici più bassi
+        feedback.offer(timeArrivalFromRideSharing);
+        if (feedback.size() == 1) {
+            calendar.schedule(serverCount + 1, timeArrivalFromRideSharing);
+        }
     }
 }
\ No newline at end of file
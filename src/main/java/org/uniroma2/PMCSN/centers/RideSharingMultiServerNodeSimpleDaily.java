@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.centers;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.DailyServerSelectorRideSharingSimple;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
@@ -19,15 +19,18 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
     private final Rngs rng;
     private final MsqTime clock = new MsqTime();
     private final Area areaCollector = new Area();
-    private final DailyDistr distrs = new DailyDistr();
+    private final DailyDistr distrs;
 
     // liste preallocare di dimensione maxServers+1 (0=arrival, 1..maxServers = servers)
     private final List<MsqSum> sum = new ArrayList<>();
     private final List<MsqServer> serversCompletion = new ArrayList<>();
     private final List<MsqEvent> event = new ArrayList<>();
+    /* slot 0 = esterno, 1..maxServers = server, maxServers+1 = evento interno di feedback */
+    private final EventCalendar calendar;
 
     private int numberJobInSystem = 0;
     private int numberOfServersInTheCenter; // attivi nella fascia corrente
+    private long feedbackReceived = 0;      // arrivi di feedback ricevuti dal ride sharing
 
     private final double P_EXIT;
     private final int centerIndex;
@@ -35,14 +38,14 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
 
     private final DailyServerSelectorRideSharingSimple dailyServerSelectorMultiType;
 
-    public RideSharingMultiServerNodeSimpleDaily(Sistema system, int centerIndex, Rngs rng, DailyServerSelectorRideSharingSimple selector) {
+    public RideSharingMultiServerNodeSimpleDaily(Sistema system, int centerIndex, Rngs rng, DailyServerSelectorRideSharingSimple selector, SimulationConfig config) {
         this.system = system;
         this.centerIndex = centerIndex;
         this.rng = rng;
         this.dailyServerSelectorMultiType = selector;
 
-        ConfigurationManager config = new ConfigurationManager();
-        this.P_EXIT = config.getDouble("probabilities", "rideExit");
+        this.distrs = new DailyDistr(config);
+        this.P_EXIT = config.rideExit;
 
         // Calcola il numero massimo di server richiesti in qualunque fascia della giornata
         maxServers = 0;
@@ -57,12 +60,15 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
         int[] serversAt0 = selector.getServers(0);
         numberOfServersInTheCenter = serversAt0[centerIndex];
 
+        calendar = new EventCalendar(maxServers + 2);
+
         // Pre-allocazione delle liste (0 = ARRIVAL, 1..maxServers = server)
         for (int i = 0; i <= maxServers; i++) {
             sum.add(new MsqSum());
             serversCompletion.add(new MsqServer());
             event.add(new MsqEvent());
         }
+        event.add(new MsqEvent()); // maxServers+1 = evento interno di feedback
 
         // Primo arrivo esterno
         double arrivalTime = distrs.getNextArrivalTimeRideSharing(rng, 0.0);
@@ -79,46 +85,19 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
 
     @Override
     public double peekNextEventTime() {
-        double tmin = Double.POSITIVE_INFINITY;
-        for (int i = 0; i <= maxServers; i++) {
-            MsqEvent e = event.get(i);
-            if (e.x == 1 && e.t < tmin) tmin = e.t;
-        }
-        // e poi il primo evento interno dopo i server (se esiste)
-        if (event.size() > maxServers + 1) {
-            MsqEvent internal = event.get(maxServers + 1);
-            if (internal.x == 1 && internal.t < tmin) {
-                tmin = internal.t;
-            }
-        }
-        return tmin;
+        return calendar.peekTime();
     }
 
     @Override
     public int peekNextEventType() {
-        double tmin = Double.POSITIVE_INFINITY;
-        int idx = -1;
-        // 0 = esterno, 1..S = server completion
-        for (int i = 0; i <= maxServers; i++) {
-            MsqEvent e = event.get(i);
-            if (e.x == 1 && e.t < tmin) {
-                tmin = e.t;
-                idx = i;
-            }
-        }
         // solo il primo evento interno (se presente) può competere
-        if (event.size() > maxServers + 1) {
-            MsqEvent internal = event.get(maxServers + 1);
-            if (internal.x == 1 && internal.t < tmin) {
-                tmin = internal.t;
-                idx = maxServers + 1;
-            }
-        }
-        return idx;
+        return calendar.peekSlot();
     }
 
     @Override
     public int processNextEvent(double t) {
+        // integrazione pigra: porto le aree al tempo dell'evento prima di cambiare stato
+        integrateTo(t);
         updateServersForCurrentTime();
 
         int e = peekNextEventType();
@@ -141,6 +120,7 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
                 MsqEvent newArr = event.getFirst();
                 newArr.t = nextArr;
                 newArr.x = 1;
+                calendar.schedule(ARRIVO_ESTERNO, newArr.t);
 
                 rng.selectStream(5);
                 if (rng.random() < P_EXIT) {
@@ -151,6 +131,7 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
                 // Evento interno di feedback, considerato servito
                 ev.x = 0; // server idle
                 ev.t = Double.POSITIVE_INFINITY;
+                calendar.cancel(e);
             }
 
             // Assegna job a server libero
@@ -160,6 +141,7 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
                 MsqEvent comp = event.get(freeServer);
                 comp.t = clock.current + st;
                 comp.x = 1; // server busy
+                calendar.schedule(freeServer, comp.t);
                 serversCompletion.get(freeServer).setLastCompletionTime(comp.t);
                 sum.get(freeServer).service += st;
                 return freeServer;
@@ -179,6 +161,7 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
                 MsqEvent comp = event.get(e);
                 comp.t = clock.current + st;
                 comp.x = 1; // server busy
+                calendar.schedule(e, comp.t);
                 serversCompletion.get(e).setLastCompletionTime(comp.t);
                 sum.get(e).service += st;
                 return e;
@@ -187,6 +170,7 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
                 MsqEvent comp = event.get(e);
                 comp.x = 0;
                 comp.t = Double.POSITIVE_INFINITY;
+                calendar.cancel(e);
             }
         }
 
@@ -216,11 +200,13 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
         for (MsqServer s : serversCompletion) if (s != null) s.reset();
 
         // reset events: arrival programmato, server idle/inactive
+        calendar.clear();
         for (int i = 0; i <= maxServers; i++) {
             MsqEvent ev = event.get(i);
             if (i == ARRIVO_ESTERNO) {
                 ev.t = distrs.getNextArrivalTimeRideSharing(rng, 0.0);
                 ev.x = 1;
+                calendar.schedule(ARRIVO_ESTERNO, ev.t);
             } else {
                 ev.t = Double.POSITIVE_INFINITY;
                 // default: se siamo dentro il target verrà attivato in updateServersForCurrentTime,
@@ -325,11 +311,17 @@ public class RideSharingMultiServerNodeSimpleDaily implements Node {
         return busy;
     }
 
-    /** Genera un arrivo “di feedback” appendendolo in coda (se serve) */
+    /**
+     * Genera un arrivo “di feedback”. Come con la lista che cresceva a ogni feedback,
+     * solo il primo occupa lo slot maxServers+1 del calendario: gli altri vengono solo
+     * contati, senza allocare un evento per ciascuno.
+     */
     public void generateArrival(double timeArrivalFromRideSharing) {
-        MsqEvent arr = new MsqEvent();
-        arr.t = timeArrivalFromRideSharing;
-        arr.x = 1;
-        event.add(arr);
+        if (feedbackReceived++ == 0) {
+            MsqEvent arr = event.get(maxServers + 1);
+            arr.t = timeArrivalFromRideSharing;
+            arr.x = 1;
+            calendar.schedule(maxServers + 1, arr.t);
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.centers;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
@@ -18,7 +18,7 @@ public class SimpleMultiServerNode implements Node {
 
     private final MsqTime clock = new MsqTime();
     private final Area areaCollector = new Area();
-    private final Distrs distrs = new Distrs();
+    private final Distrs distrs;
 
     // somme di servizio per ciascun server
     private final MsqSum[] sum;
@@ -27,6 +27,9 @@ public class SimpleMultiServerNode implements Node {
 
     // eventi: [0]=arrival, [1..S]=departure
     private final List<MsqEvent> event;
+    // calendario degli eventi attivi (x == 1), indicizzato per slot di event
+    private final EventCalendar calendar;
+    private final IdleServerIndex idleServers;
 
     // stato
     private int   numberJobInSystem = 0; /*numero di job attualmente nel centro, sia in coda che in servizio*/
@@ -41,22 +44,15 @@ public class SimpleMultiServerNode implements Node {
     private final int centerIndex;
     private final Sistema system;
 
-    public SimpleMultiServerNode(Sistema system, int centerIndex, Rngs rng) {
+    public SimpleMultiServerNode(Sistema system, int centerIndex, Rngs rng, SimulationConfig config) {
         this.system      = system;
         this.centerIndex = centerIndex;
         this.rng         = rng;
+        this.distrs      = new Distrs(config);
 
-        // leggi probabilità
-        ConfigurationManager config = new ConfigurationManager();
-        P_EXIT   = config.getDouble("probabilities", "exit");
-
-        // leggi configurazione server
-        String[] srv = config.getString("simulation", "servers").split(",");
-        Integer[] SERVERS = new Integer[srv.length];
-        for (int i = 0; i < srv.length; i++) {
-            SERVERS[i] = Integer.parseInt(srv[i].trim());
-        }
-        numberOfServersInTheCenter = SERVERS[centerIndex];
+        // probabilità e configurazione server
+        P_EXIT   = config.pExit;
+        numberOfServersInTheCenter = config.servers(centerIndex);
 
         // init somme ed eventi
         sum   = new MsqSum[numberOfServersInTheCenter + 1];
@@ -68,6 +64,8 @@ public class SimpleMultiServerNode implements Node {
             serversCompletition[i] = new MsqServer();
 
         }
+        calendar = new EventCalendar(numberOfServersInTheCenter + 1);
+        idleServers = new IdleServerIndex(numberOfServersInTheCenter, config.serverSelection, rng);
 
         /*genero il tempo di primo arrivo*/
         arrivalTime = distrs.getNextArrivalTimeSimpleCenter(rng, system, centerIndex, arrivalTime);
@@ -75,38 +73,26 @@ public class SimpleMultiServerNode implements Node {
         MsqEvent arr = event.getFirst();
         arr.t = arrivalTime;
         arr.x = 1;
+        calendar.schedule(ARRIVAL, arr.t);
 
         this.resetState();
     }
 
     @Override
     public double peekNextEventTime() {
-        double tmin = Double.POSITIVE_INFINITY;
-        for (MsqEvent e : event) {
-            if (e.x == 1 && e.t < tmin)
-                tmin = e.t;
-        }
-        return tmin;
+        return calendar.peekTime();
     }
 
     @Override
     public int peekNextEventType() {
-        double tmin = Double.POSITIVE_INFINITY;
-        int    idx  = -1;
-        for (int i = 0; i < event.size(); i++) {
-            MsqEvent e = event.get(i);
-            if (e.x == 1 && e.t < tmin) {
-                tmin = e.t;
-                idx  = i;
-            }
-        }
-        return idx;
+        return calendar.peekSlot();
     }
 
     @Override
     public int processNextEvent(double t) {
         int e = peekNextEventType();
         MsqEvent ev = event.get(e);
+        integrateTo(ev.t); // integrazione pigra: le aree si aggiornano solo al cambio di stato
         clock.next = ev.t;
 
         clock.current = clock.next;
@@ -124,6 +110,7 @@ public class SimpleMultiServerNode implements Node {
                 arr.t = distrs.getNextArrivalTimeSimpleCenter(rng, system, centerIndex, clock.current);
                 /*tempo del successivo arrivo*/
                 arr.x = 1;
+                calendar.schedule(ARRIVAL, arr.t);
                 rng.selectStream(5);
                 double rnd = rng.random();
                 //System.out.printf("[DEBUG] RNG per uscita: %.4f\n", rnd);
@@ -151,11 +138,13 @@ public class SimpleMultiServerNode implements Node {
                 /*completion time*/
 
                 sEvent.x = 1; /*server occupato*/
+                calendar.schedule(serverIndex, sEvent.t);
 
                 sum[serverIndex].service += serviceTimeSimple;
                 /*sommiamo il tempo di servizio, questo ci servità poi per il calcolo delle statistiche*/
 
                 if (e > numberOfServersInTheCenter) {
+                    calendar.cancel(e);
                     event.remove(e);  // rimuovi evento routing
                 }
                 return serverIndex;
@@ -170,6 +159,7 @@ public class SimpleMultiServerNode implements Node {
 
                 MsqEvent sEvent = event.get(e);
                 sEvent.t = clock.current + serviceTimeSimple; /*nuovo tempo di completamento*/
+                calendar.schedule(e, sEvent.t);
 
 
                 /*completion time*/
@@ -180,6 +170,8 @@ public class SimpleMultiServerNode implements Node {
                 return e;
             } else {
                 event.get(e).x = 0;
+                calendar.cancel(e);
+                idleServers.release(e, clock.current);
             }
         }
         return -1;
@@ -223,11 +215,13 @@ public class SimpleMultiServerNode implements Node {
     // helper privati
 
     private int findOne() {
-        /*selection in order*/
-        for (int i = 1; i < event.size(); i++) {
-            if (event.get(i).x == 0) return i;
-        }
-        return -1;
+        /*selection in order (o la politica di simulation.serverSelection)*/
+        return idleServers.acquire(clock.current);
+    }
+
+    /** Job attualmente nel centro, in coda o in servizio. */
+    public int getJobsInSystem() {
+        return numberJobInSystem;
     }
 
     /**
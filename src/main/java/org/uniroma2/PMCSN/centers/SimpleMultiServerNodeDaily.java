@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.centers;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.DailyServerSelectorMultiType;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
@@ -17,12 +17,14 @@ public class SimpleMultiServerNodeDaily implements Node {
     private final Rngs rng;
     private final MsqTime clock = new MsqTime();
     private final Area areaCollector = new Area();
-    private final DailyDistr distrs = new DailyDistr();
+    private final DailyDistr distrs;
 
     // manteniamo liste di dimensione fissa = maxServers+1 (0=arrival, 1..maxServers = servers)
     private final List<MsqSum> sum = new ArrayList<>();
     private final List<MsqServer> serversCompletition = new ArrayList<>();
     private final List<MsqEvent> event = new ArrayList<>();
+    private final EventCalendar calendar;
+    private final IdleServerIndex idleServers;
 
     private int numberJobInSystem = 0;
     private double arrivalTime;
@@ -35,14 +37,14 @@ public class SimpleMultiServerNodeDaily implements Node {
 
     private final DailyServerSelectorMultiType dailyServerSelectorMultiType;
 
-    public SimpleMultiServerNodeDaily(Sistema system, int centerIndex, Rngs rng, DailyServerSelectorMultiType selector) {
+    public SimpleMultiServerNodeDaily(Sistema system, int centerIndex, Rngs rng, DailyServerSelectorMultiType selector, SimulationConfig config) {
         this.system = system;
         this.centerIndex = centerIndex;
         this.rng = rng;
         this.dailyServerSelectorMultiType = selector;
 
-        ConfigurationManager config = new ConfigurationManager();
-        P_EXIT = config.getDouble("probabilities", "exit");
+        this.distrs = new DailyDistr(config);
+        P_EXIT = config.pExit;
 
         // calcola il numero massimo di server che potrebbe servire questo tipo su tutta la giornata
         // (campioniamo le fasce note del selector: 0,180,360,660,840,1140,1260)
@@ -76,12 +78,16 @@ public class SimpleMultiServerNodeDaily implements Node {
             serversCompletition.add(new MsqServer());
             event.add(new MsqEvent());
         }
+        calendar = new EventCalendar(initialSize);
+        idleServers = new IdleServerIndex(maxServers, config.serverSelection, rng);
+        idleServers.setActiveServers(numberOfServersInTheCenter);
 
         // inizializza evento ARRIVAL (index 0)
         arrivalTime = distrs.getNextArrivalTimeSimpleCenter(rng, system, centerIndex, 0.0);
         MsqEvent arr = event.getFirst();
         arr.t = arrivalTime;
         arr.x = 1;
+        calendar.schedule(ARRIVAL, arr.t);
 
         System.out.println("[INIT] node=" + centerIndex + " maxServers=" + maxServers + " initialActive=" + numberOfServersInTheCenter);
 
@@ -90,25 +96,12 @@ public class SimpleMultiServerNodeDaily implements Node {
 
     @Override
     public double peekNextEventTime() {
-        double tmin = Double.POSITIVE_INFINITY;
-        for (MsqEvent e : event) {
-            if (e.x == 1 && e.t < tmin) tmin = e.t;
-        }
-        return tmin;
+        return calendar.peekTime();
     }
 
     @Override
     public int peekNextEventType() {
-        double tmin = Double.POSITIVE_INFINITY;
-        int idx = -1;
-        for (int i = 0; i < event.size(); i++) {
-            MsqEvent e = event.get(i);
-            if (e.x == 1 && e.t < tmin) {
-                tmin = e.t;
-                idx = i;
-            }
-        }
-        return idx;
+        return calendar.peekSlot();
     }
 
     @Override
@@ -117,6 +110,7 @@ public class SimpleMultiServerNodeDaily implements Node {
         //if (e == -1) return -1;
 
         MsqEvent ev = event.get(e);
+        integrateTo(ev.t); // integrazione pigra: le aree si aggiornano solo al cambio di stato
         clock.next = ev.t;
         clock.current = clock.next;
 
@@ -135,6 +129,7 @@ public class SimpleMultiServerNodeDaily implements Node {
             MsqEvent arr = event.getFirst();
             arr.t = distrs.getNextArrivalTimeSimpleCenter(rng, system, centerIndex, clock.current);
             arr.x = 1;
+            calendar.schedule(ARRIVAL, arr.t);
 
             rng.selectStream(5);
             double rnd = rng.random();
@@ -152,6 +147,7 @@ public class SimpleMultiServerNodeDaily implements Node {
                 MsqEvent sEvent = event.get(serverIndex);
                 sEvent.t = clock.current + serviceTimeSimple;
                 sEvent.x = 1;
+                calendar.schedule(serverIndex, sEvent.t);
                 serversCompletition.get(serverIndex).setLastCompletionTime(sEvent.t);
                 sum.get(serverIndex).service += serviceTimeSimple;
                 System.out.println("[DEBUG] ARRIVAL -> assegnato server=" + serverIndex + " svc=" + serviceTimeSimple);
@@ -174,6 +170,7 @@ public class SimpleMultiServerNodeDaily implements Node {
                 MsqEvent sEvent = event.get(e);
                 sEvent.t = clock.current + serviceTimeSimple;
                 sEvent.x = 1;
+                calendar.schedule(e, sEvent.t);
                 serversCompletition.get(e).setLastCompletionTime(sEvent.t);
                 sum.get(e).service += serviceTimeSimple;
                 System.out.println("[DEBUG] DEPARTURE -> server " + e + " ri-servirà (jobs left=" + numberJobInSystem + ")");
@@ -181,6 +178,8 @@ public class SimpleMultiServerNodeDaily implements Node {
             } else {
                 // server diventa libero
                 event.get(e).x = 0;
+                calendar.cancel(e);
+                idleServers.release(e, clock.current);
                 System.out.println("[DEBUG] DEPARTURE -> server " + e + " libero (jobs left=" + numberJobInSystem + ")");
                 return e;
             }
@@ -228,11 +227,10 @@ public class SimpleMultiServerNodeDaily implements Node {
 
     /** trova un server libero tra gli attivi (1..numberOfServersInTheCenter) */
     private int findOne() {
-        for (int i = 1; i <= numberOfServersInTheCenter && i < event.size(); i++) {
-            if (event.get(i).x == 0) {
-                System.out.println("[DEBUG] findOne(): trovato server libero index=" + i);
-                return i;
-            }
+        int i = idleServers.acquire(clock.current);
+        if (i != -1) {
+            System.out.println("[DEBUG] findOne(): trovato server libero index=" + i);
+            return i;
         }
         System.out.println("[DEBUG] findOne(): nessun server libero, jobs=" + numberJobInSystem);
         return -1;
@@ -249,6 +247,7 @@ public class SimpleMultiServerNodeDaily implements Node {
                     + " newActive=" + newNumberOfServers);
         }
         numberOfServersInTheCenter = Math.min(newNumberOfServers, event.size()-1); // non superare la capacity preallocata
+        idleServers.setActiveServers(numberOfServersInTheCenter);
     }
 
     public double getUtilization() {
@@ -2,6 +2,8 @@ package org.uniroma2.PMCSN.configuration;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Properties;
 
 public class ConfigurationManager {
@@ -10,6 +12,22 @@ public class ConfigurationManager {
     private final Properties properties = new Properties();
 
     public ConfigurationManager() {
+        this(new Properties());
+    }
+
+    /*
+     * Legge config.properties e applica, nell'ordine, gli override da JVM (-Dsezione.chiave=valore,
+     * solo per chiavi già presenti nel file) e quelli passati esplicitamente (es. dai benchmark).
+     */
+    public ConfigurationManager(Properties overrides) {
+        this(null, overrides);
+    }
+
+    /*
+     * Come sopra, ma tra config.properties e gli override da JVM applica il file base (se non null),
+     * ad esempio una copia di config.properties preparata per uno studio di capacità.
+     */
+    public ConfigurationManager(Path base, Properties overrides) {
         try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
             if (input == null) {
                 throw new RuntimeException("Sorry, unable to find config.properties");
@@ -18,6 +36,20 @@ public class ConfigurationManager {
         } catch (IOException e) {
             throw new RuntimeException("Failed to load configuration file", e);
         }
+        if (base != null) {
+            try (InputStream input = Files.newInputStream(base)) {
+                properties.load(input);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load configuration file " + base, e);
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            String value = System.getProperty(key);
+            if (value != null) properties.setProperty(key, value);
+        }
+        for (String key : overrides.stringPropertyNames()) {
+            properties.setProperty(key, overrides.getProperty(key));
+        }
     }
 
     public String getString(String section, String key) {
@@ -0,0 +1,117 @@
+package org.uniroma2.PMCSN.configuration;
+
+import org.uniroma2.PMCSN.libs.TruncatedNormal;
+import org.uniroma2.PMCSN.model.BatchMatcher;
+import org.uniroma2.PMCSN.model.IdleServerIndex;
+
+/**
+ * Fotografia immutabile e tipizzata dei parametri usati durante la simulazione, letta una
+ * sola volta da {@link ConfigurationManager} e passata a centri e distribuzioni: sul percorso
+ * per-evento non restano lookup su Properties né parsing di stringhe.
+ * Contiene anche i valori derivati (λ per centro, normale troncata dei tempi di servizio).
+ */
+public final class SimulationConfig {
+
+    /* normale troncata dei tempi di servizio: N(esi, SERVICE_SD) troncata in [SERVICE_MIN, SERVICE_MAX] */
+    public static final double SERVICE_SD = 4;
+    public static final double SERVICE_MIN = 2;
+    public static final double SERVICE_MAX = 30;
+
+    // parametri letti dal file
+    public final double levelOfConfidence;
+    public final double esi;
+    public final double pExit;
+    public final double rideExit;
+    public final double rideMatchBusy;
+    public final double timeWindow;
+    public final int rideServers;
+    public final IdleServerIndex.Policy serverSelection;
+    public final BatchMatcher.Mode rideMatching;
+    private final int[] servers;
+    private final int[] rideSimpleServers;
+    private final int[] rideSharingServers;
+
+    // valori derivati
+    private final double lambdaSimple;
+    private final double[] simpleWeights;     /* p_small, p_medium, p_large             */
+    private final double[] rideSimpleWeights; /* p_i * psimple (centri del ride sharing)  */
+    private final double[] simpleRates;       /* λ per centro nel sistema semplice        */
+    private final double[] rideSimpleRates;   /* λ per centro nel sistema ride sharing    */
+    public final double rideRate;             /* lambdaride * pride                       */
+    public final TruncatedNormal serviceTime; /* N(esi, SERVICE_SD) in [MIN, MAX]         */
+
+    public SimulationConfig(ConfigurationManager config) {
+        levelOfConfidence = config.getDouble("general", "levelOfConfidence");
+        esi = config.getDouble("simulation", "esi");
+        pExit = config.getDouble("probabilities", "exit");
+        rideExit = config.getDouble("probabilities", "rideExit");
+        rideMatchBusy = config.getDouble("probabilities", "rideMatchBusy");
+        timeWindow = config.getDouble("simulation", "timeWindow");
+        rideMatching = BatchMatcher.Mode.parse(config.getString("simulation", "rideMatching"));
+        rideServers = config.getInt("simulation", "rideServers");
+        serverSelection = IdleServerIndex.Policy.parse(config.getString("simulation", "serverSelection"));
+        servers = parseInts(config.getString("simulation", "servers"));
+        rideSimpleServers = parseInts(config.getString("simulation", "rideSimpleServers"));
+        rideSharingServers = parseInts(config.getString("simulation", "rideSharingServers"));
+
+        lambdaSimple = config.getDouble("simulation", "lambdasimple");
+        double pSimple = config.getDouble("simulation", "psimple");
+        simpleWeights = new double[]{
+                config.getDouble("simulation", "p_small"),
+                config.getDouble("simulation", "p_medium"),
+                config.getDouble("simulation", "p_large")
+        };
+        rideSimpleWeights = new double[simpleWeights.length];
+        simpleRates = new double[simpleWeights.length];
+        rideSimpleRates = new double[simpleWeights.length];
+        for (int i = 0; i < simpleWeights.length; i++) {
+            rideSimpleWeights[i] = simpleWeights[i] * pSimple;
+            simpleRates[i] = lambdaSimple * simpleWeights[i];
+            rideSimpleRates[i] = lambdaSimple * rideSimpleWeights[i];
+        }
+        rideRate = config.getDouble("simulation", "lambdaride") * config.getDouble("simulation", "pride");
+
+        serviceTime = new TruncatedNormal(esi, SERVICE_SD, SERVICE_MIN, SERVICE_MAX);
+    }
+
+    /** Server del centro i nel sistema semplice. */
+    public int servers(int centerIndex) {
+        return servers[centerIndex];
+    }
+
+    /** Server del centro tradizionale i nel sistema ride sharing. */
+    public int rideSimpleServers(int centerIndex) {
+        return rideSimpleServers[centerIndex];
+    }
+
+    /** Veicoli del ride sharing per tipo (0 = small, 1 = medium, 2 = large). */
+    public int rideSharingServers(int type) {
+        return rideSharingServers[type];
+    }
+
+    /**
+     * λ del centro i: nel sistema semplice λ·p_i, nel ride sharing λ·(p_i·psimple).
+     * Per un indice inesistente restituisce NaN.
+     */
+    public double arrivalRate(int centerIndex, boolean simpleSystem) {
+        if (centerIndex < 0 || centerIndex >= simpleRates.length) return Double.NaN;
+        return simpleSystem ? simpleRates[centerIndex] : rideSimpleRates[centerIndex];
+    }
+
+    /** Peso con cui il λ giornaliero si ripartisce sul centro i (come {@link #arrivalRate}). */
+    public double arrivalWeight(int centerIndex, boolean simpleSystem) {
+        if (centerIndex < 0 || centerIndex >= simpleWeights.length) return Double.NaN;
+        return simpleSystem ? simpleWeights[centerIndex] : rideSimpleWeights[centerIndex];
+    }
+
+    public double getLambdaSimple() {
+        return lambdaSimple;
+    }
+
+    private static int[] parseInts(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
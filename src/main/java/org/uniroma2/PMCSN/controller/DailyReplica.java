@@ -0,0 +1,77 @@
+package org.uniroma2.PMCSN.controller;
+
+import org.uniroma2.PMCSN.utils.AsyncCsvWriter;
+import org.uniroma2.PMCSN.utils.ColumnLayout;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer dei risultati di una singola replica giornaliera, riempito dal worker che la esegue.
+ * Il thread principale li riduce in ordine di replica (valori per intervallo, medie di fine
+ * replica e righe CSV), quindi l'output non dipende dal numero di thread. Le righe CSV restano
+ * valori fino al thread di scrittura, che le formatta.
+ */
+class DailyReplica {
+
+    /* per nodo e reportIndex: {E[Ts], E[Tq], E[S], E[N], E[Nq], rho, lambda, E[NS]}, null se non riportato */
+    final double[][][] perInterval;
+    /* per reportIndex: {E[Ts], E[N], E[Tq], E[Nq], E[S], E[NS], rho} dell'intero sistema */
+    final double[][] globalPerInterval;
+    /* per nodo: {E[Ts], E[Tq], E[S], E[N], E[Nq], rho, lambda} a fine replica, null se assenti */
+    final double[][] metrics;
+    final long[] jobs;
+
+    private final Map<String, List<double[]>> csvRows = new LinkedHashMap<>();
+    private final Map<String, ColumnLayout> csvLayouts = new LinkedHashMap<>();
+
+    DailyReplica(int nodes, int numReports) {
+        perInterval = new double[nodes][numReports][];
+        globalPerInterval = new double[numReports][];
+        metrics = new double[nodes][];
+        jobs = new long[nodes];
+    }
+
+    void addRow(String file, ColumnLayout layout, double[] row) {
+        csvLayouts.putIfAbsent(file, layout);
+        csvRows.computeIfAbsent(file, f -> new ArrayList<>()).add(row);
+    }
+
+    /** Accoda le righe bufferizzate, scrivendo l'header del layout se il file è vuoto. */
+    void flushCsv() {
+        for (Map.Entry<String, List<double[]>> e : csvRows.entrySet()) {
+            AsyncCsvWriter.shared().appendRows(e.getKey(), csvLayouts.get(e.getKey()), e.getValue(), false);
+        }
+    }
+
+    /** Aggiunge i valori della replica alle liste per-intervallo (una lista per metrica, nodo e report). */
+    static void collect(double[][][] perInterval, List<List<List<List<Double>>>> byMetric) {
+        for (int i = 0; i < perInterval.length; i++) {
+            for (int r = 0; r < perInterval[i].length; r++) {
+                double[] v = perInterval[i][r];
+                if (v == null) continue;
+                for (int m = 0; m < v.length; m++) byMetric.get(m).get(i).get(r).add(v[m]);
+            }
+        }
+    }
+
+    /** Aggiunge le medie di fine replica alle liste per nodo (una lista per metrica). */
+    static void collectMetrics(double[][] metrics, List<List<List<Double>>> byMetric) {
+        for (int i = 0; i < metrics.length; i++) {
+            double[] v = metrics[i];
+            if (v == null) continue;
+            for (int m = 0; m < v.length; m++) byMetric.get(m).get(i).add(v[m]);
+        }
+    }
+
+    /** Come {@link #collect(double[][][], List)} per i valori globali del sistema. */
+    static void collectGlobal(double[][] globalPerInterval, List<List<List<Double>>> byMetric) {
+        for (int r = 0; r < globalPerInterval.length; r++) {
+            double[] v = globalPerInterval[r];
+            if (v == null) continue;
+            for (int m = 0; m < v.length; m++) byMetric.get(m).get(r).add(v[m]);
+        }
+    }
+}
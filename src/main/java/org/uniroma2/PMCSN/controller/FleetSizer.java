@@ -0,0 +1,275 @@
+package org.uniroma2.PMCSN.controller;
+
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.model.ConfidenceInterval;
+import org.uniroma2.PMCSN.utils.AnalyticalComputation;
+import org.uniroma2.PMCSN.utils.AnalyticalComputation.AnalyticalResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Dimensionamento della flotta del sistema semplice: per ogni centro, nel caso stazionario
+ * (simulation.servers) e in ogni fascia giornaliera di {@link DailyServerSelectorMultiType}
+ * (simulation.small|medium|large + fascia), il numero minimo di veicoli per cui la metrica
+ * sizing.metric resta entro sizing.target.
+ *
+ * Ogni fascia è trattata come stazionaria con il proprio λ (simulation.lambdasimple + fascia):
+ * <ol>
+ *   <li>punto di partenza analitico: il minimo m per cui il centro M/M/m di
+ *       {@link AnalyticalComputation#multiServer} (con la media della normale troncata) rispetta
+ *       la soglia;</li>
+ *   <li>candidati m in [seed - sizing.window, seed + sizing.window], simulati con repliche brevi
+ *       (sizing.stop minuti) di {@link SimpleSystem} in parallelo; lo stesso indice di candidato
+ *       per tutti i centri forma una configurazione, e la replica k usa la stessa sottosequenza
+ *       in ogni configurazione (numeri casuali comuni);</li>
+ *   <li>screening sequenziale di fattibilità: dopo sizing.initialReplicas repliche, e poi a ogni
+ *       blocco di sizing.replicaStep, un candidato il cui intervallo di confidenza sta tutto sopra
+ *       la soglia è scartato, uno il cui intervallo sta tutto sotto è accettato. Poiché le metriche
+ *       non crescono con m, un candidato accettato rende accettati quelli maggiori e uno scartato
+ *       scarta quelli minori. Si simulano solo le configurazioni con candidati ancora incerti, fino
+ *       a sizing.maxReplicas; oltre, si decide sulla media.</li>
+ * </ol>
+ */
+public class FleetSizer {
+
+    private static final String[] BANDS = {"verylow", "low", "medium", "high", "veryhigh"};
+    private static final String[] TYPES = {"small", "medium", "large"};
+    /* metriche di fine replica di SimpleSystem, nell'ordine di replicaMetrics */
+    private static final List<String> METRICS = List.of("E[Ts]", "E[Tq]", "E[S]", "E[N]", "E[Nq]", "rho", "lambda");
+    /* oltre questo numero di server il fattoriale di calculateP0 non è più rappresentabile */
+    private static final int MAX_SERVERS = 150;
+
+    private enum Status { OPEN, FEASIBLE, INFEASIBLE }
+
+    /** Esito per un centro in una fascia. */
+    public record Recommendation(int center, int seed, int servers, double mean, double halfWidth,
+                                 int replicas, boolean decided) {
+        /** true se nessun candidato della finestra rispetta la soglia (servers = estremo superiore) */
+        public boolean aboveWindow() {
+            return Double.isNaN(mean);
+        }
+    }
+
+    private final ConfigurationManager config;
+    private final SimulationConfig simConfig;
+    private final ReplicationEngine engine;
+    private final int nodes;
+    private final int metric;
+    private final double target;
+    private final int window;
+    private final double stop;
+    private final int initialReplicas;
+    private final int replicaStep;
+    private final int maxReplicas;
+    private final double levelOfConfidence;
+
+    /* repliche simulate e repliche che servirebbero senza screening, per il riepilogo */
+    private long simulatedReplicas = 0;
+    private long exhaustiveReplicas = 0;
+
+    public FleetSizer(ConfigurationManager config) {
+        this.config = config;
+        this.simConfig = new SimulationConfig(config);
+        this.engine = new ReplicationEngine(config);
+        this.nodes = config.getInt("simulation", "nodes");
+        String name = config.getString("sizing", "metric").trim();
+        this.metric = METRICS.indexOf(name);
+        if (metric < 0 || name.equals("E[S]") || name.equals("lambda")) {
+            throw new IllegalArgumentException("sizing.metric non valida: " + name
+                    + " (E[Ts], E[Tq], E[N], E[Nq] o rho)");
+        }
+        this.target = config.getDouble("sizing", "target");
+        this.window = config.getInt("sizing", "window");
+        this.stop = config.getDouble("sizing", "stop");
+        this.initialReplicas = Math.max(2, config.getInt("sizing", "initialReplicas"));
+        this.replicaStep = Math.max(1, config.getInt("sizing", "replicaStep"));
+        this.maxReplicas = Math.max(initialReplicas, config.getInt("sizing", "maxReplicas"));
+        ReplicationEngine.checkReplicas("sizing.maxReplicas", maxReplicas, maxReplicas);
+        this.levelOfConfidence = config.getDouble("general", "levelOfConfidence");
+    }
+
+    public static void main(String[] args) {
+        new FleetSizer(new ConfigurationManager()).run();
+    }
+
+    /** Dimensiona il caso stazionario e tutte le fasce, poi stampa le chiavi di configurazione. */
+    public void run() {
+        System.out.printf(Locale.US, "=== Fleet sizing: %s <= %.4f (finestra ±%d, stop %.0f min, repliche %d..%d) ===%n",
+                METRICS.get(metric), target, window, stop, initialReplicas, maxReplicas);
+
+        List<String> suggested = new ArrayList<>();
+        List<Recommendation> stationary = size("stazionario", config.getDouble("simulation", "lambdasimple"));
+        suggested.add("simulation.servers=" + stationary.stream()
+                .map(r -> String.valueOf(r.servers())).collect(Collectors.joining(",")));
+        for (String band : BANDS) {
+            List<Recommendation> result = size(band, config.getDouble("simulation", "lambdasimple" + band));
+            for (Recommendation r : result) {
+                if (r.center() < TYPES.length) suggested.add("simulation." + TYPES[r.center()] + band + "=" + r.servers());
+            }
+        }
+
+        System.out.printf("=== Repliche simulate: %d (senza screening %d) ===%n", simulatedReplicas, exhaustiveReplicas);
+        System.out.println("=== Configurazione suggerita ===");
+        suggested.forEach(System.out::println);
+    }
+
+    /** Numero minimo di server per ogni centro con arrivi lambda (arrivi/minuto del sistema). */
+    public List<Recommendation> size(String band, double lambda) {
+        int slots = 2 * window + 1;
+        int[] seeds = new int[nodes];
+        int[][] servers = new int[slots][nodes];
+        Status[][] status = new Status[nodes][slots];
+        for (int i = 0; i < nodes; i++) {
+            seeds[i] = analyticalSeed(i, lambda);
+            int stable = (int) Math.floor(centerLambda(i, lambda) * simConfig.serviceTime.expectedValue()) + 1;
+            for (int j = 0; j < slots; j++) {
+                int m = seeds[i] - window + j;
+                servers[j][i] = Math.max(m, 1);
+                // senza server o con rho >= 1 il vincolo non è rispettabile a regime
+                status[i][j] = m < stable ? Status.INFEASIBLE : Status.OPEN;
+            }
+        }
+
+        SimpleSystem[] systems = new SimpleSystem[slots];
+        for (int j = 0; j < slots; j++) systems[j] = new SimpleSystem(new ConfigurationManager(overrides(lambda, servers[j])));
+
+        // [slot][centro] osservazioni della metrica, una per replica
+        List<List<List<Double>>> observations = new ArrayList<>(slots);
+        for (int j = 0; j < slots; j++) {
+            List<List<Double>> perCenter = new ArrayList<>(nodes);
+            for (int i = 0; i < nodes; i++) perCenter.add(new ArrayList<>());
+            observations.add(perCenter);
+        }
+
+        int done = 0;
+        int next = initialReplicas;
+        while (true) {
+            List<Integer> active = new ArrayList<>();
+            for (int j = 0; j < slots; j++) {
+                for (int i = 0; i < nodes; i++) {
+                    if (status[i][j] == Status.OPEN) {
+                        active.add(j);
+                        break;
+                    }
+                }
+            }
+            if (active.isEmpty()) break;
+
+            // (configurazione, replica) in parallelo; la replica k è la stessa per tutte le configurazioni
+            final int from = done;
+            final int span = next - done;
+            List<double[][]> results = engine.run(active.size() * span,
+                    k -> systems[active.get(k / span)].replicaMetrics(from + k % span));
+            simulatedReplicas += results.size();
+            for (int k = 0; k < results.size(); k++) {
+                double[][] r = results.get(k);
+                List<List<Double>> perCenter = observations.get(active.get(k / span));
+                for (int i = 0; i < nodes; i++) {
+                    if (r[i] != null) perCenter.get(i).add(r[i][metric]);
+                }
+            }
+
+            for (int i = 0; i < nodes; i++) {
+                for (int j = 0; j < slots; j++) {
+                    if (status[i][j] != Status.OPEN) continue;
+                    List<Double> values = observations.get(j).get(i);
+                    if (values.size() < 2) continue;
+                    double mean = mean(values);
+                    double hw = ConfidenceInterval.computeConfidenceInterval(values, levelOfConfidence);
+                    if (mean - hw > target) status[i][j] = Status.INFEASIBLE;
+                    else if (mean + hw <= target) status[i][j] = Status.FEASIBLE;
+                }
+                // monotonia in m: accettato => accettati i maggiori, scartato => scartati i minori
+                for (int j = 1; j < slots; j++) {
+                    if (status[i][j - 1] == Status.FEASIBLE) status[i][j] = Status.FEASIBLE;
+                }
+                for (int j = slots - 2; j >= 0; j--) {
+                    if (status[i][j + 1] == Status.INFEASIBLE) status[i][j] = Status.INFEASIBLE;
+                }
+            }
+
+            done = next;
+            if (done >= maxReplicas) break;
+            next = Math.min(done + replicaStep, maxReplicas);
+        }
+        exhaustiveReplicas += (long) slots * maxReplicas;
+
+        List<Recommendation> out = new ArrayList<>(nodes);
+        System.out.printf(Locale.US, "=== Fascia %s (λ = %.2f/min) ===%n", band, lambda);
+        for (int i = 0; i < nodes; i++) {
+            Recommendation r = recommend(i, seeds[i], servers, status[i], observations);
+            out.add(r);
+            if (r.aboveWindow()) {
+                System.out.printf("Centro %d: analitico %d, nessun candidato fino a %d rispetta la soglia%n",
+                        i, r.seed(), r.servers());
+            } else {
+                System.out.printf(Locale.US, "Centro %d: analitico %d, simulato %d%s  %s=%.4f ± %.4f (%d repliche)%s%n",
+                        i, r.seed(), r.servers(),
+                        r.servers() == Math.max(r.seed() - window, 1) && r.servers() > 1 ? " (estremo inferiore della finestra)" : "",
+                        METRICS.get(metric), r.mean(), r.halfWidth(), r.replicas(),
+                        r.decided() ? "" : " [deciso sulla media]");
+            }
+        }
+        return out;
+    }
+
+    /* primo candidato accettato, oppure il primo ancora incerto con media entro la soglia */
+    private Recommendation recommend(int center, int seed, int[][] servers, Status[] status,
+                                     List<List<List<Double>>> observations) {
+        for (int j = 0; j < status.length; j++) {
+            // i candidati non scartati in partenza sono simulati almeno nel primo blocco
+            List<Double> values = observations.get(j).get(center);
+            if (status[j] == Status.INFEASIBLE || values.size() < 2) continue;
+            double mean = mean(values);
+            if (status[j] == Status.OPEN && mean > target) continue;
+            return new Recommendation(center, seed, servers[j][center], mean,
+                    ConfidenceInterval.computeConfidenceInterval(values, levelOfConfidence),
+                    values.size(), status[j] == Status.FEASIBLE);
+        }
+        return new Recommendation(center, seed, servers[status.length - 1][center], Double.NaN, Double.NaN, 0, false);
+    }
+
+    /** λ dei job serviti dal centro (al netto delle uscite), come in AnalyticalComputation. */
+    private double centerLambda(int center, double lambda) {
+        return lambda * simConfig.arrivalWeight(center, true) * (1 - simConfig.pExit);
+    }
+
+    /** Minimo m per cui il modello M/M/m del centro rispetta la soglia. */
+    private int analyticalSeed(int center, double lambda) {
+        double lambdaCenter = centerLambda(center, lambda);
+        double es = simConfig.serviceTime.expectedValue();
+        for (int m = Math.max(1, (int) Math.floor(lambdaCenter * es) + 1); m < MAX_SERVERS; m++) {
+            AnalyticalResult a = AnalyticalComputation.multiServer(String.valueOf(center), lambdaCenter, es, m);
+            if (a.rho < 1 && analyticalValue(a) <= target) return m;
+        }
+        return MAX_SERVERS;
+    }
+
+    private double analyticalValue(AnalyticalResult a) {
+        return switch (METRICS.get(metric)) {
+            case "E[Ts]" -> a.Ets;
+            case "E[Tq]" -> a.Etq;
+            case "E[N]" -> a.Ens;
+            case "E[Nq]" -> a.Enq;
+            default -> a.rho;
+        };
+    }
+
+    private Properties overrides(double lambda, int[] servers) {
+        Properties p = new Properties();
+        p.setProperty("simulation.lambdasimple", String.valueOf(lambda));
+        p.setProperty("simulation.servers", Arrays.stream(servers).mapToObj(String::valueOf).collect(Collectors.joining(",")));
+        p.setProperty("simulation.stop", String.valueOf(stop));
+        return p;
+    }
+
+    private static double mean(List<Double> values) {
+        return values.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+    }
+}
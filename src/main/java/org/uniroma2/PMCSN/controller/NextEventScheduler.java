@@ -0,0 +1,76 @@
+package org.uniroma2.PMCSN.controller;
+
+import org.uniroma2.PMCSN.centers.Node;
+import org.uniroma2.PMCSN.model.EventCalendar;
+
+import java.util.List;
+
+/**
+ * Calendario di sistema: tiene in un unico heap il prossimo evento di ciascun centro
+ * (tempo, nodo) e lo smista direttamente al centro che lo possiede; lo slot dell'evento
+ * è poi risolto dal calendario interno del centro.
+ * Le aree del singolo centro vengono integrate solo quando il centro cambia stato:
+ * prima di leggere le statistiche (report o fine batch) va chiamato {@link #integrateAll()}.
+ */
+public final class NextEventScheduler {
+
+    private final List<? extends Node> nodes;
+    private final EventCalendar calendar;
+    private double clock = 0.0; /* tempo dell'ultimo evento processato */
+    private long processed = 0; /* eventi processati */
+
+    public NextEventScheduler(List<? extends Node> nodes) {
+        this.nodes = nodes;
+        this.calendar = new EventCalendar(nodes.size());
+        refreshAll();
+    }
+
+    /** Tempo del prossimo evento nel sistema, +inf se non ce ne sono. */
+    public double peekNextEventTime() {
+        return calendar.peekTime();
+    }
+
+    /** Indice del centro che possiede il prossimo evento, -1 se non ce ne sono. */
+    public int peekNextNode() {
+        return calendar.peekSlot();
+    }
+
+    /**
+     * Processa il prossimo evento sul centro che lo possiede (che integra da sé le proprie aree)
+     * e riposiziona il centro nel calendario.
+     * @return indice del centro che ha processato l'evento
+     */
+    public int processNextEvent() {
+        int idx = calendar.peekSlot();
+        double t = calendar.peekTime();
+        nodes.get(idx).processNextEvent(t);
+        clock = t;
+        processed++;
+        refresh(idx);
+        return idx;
+    }
+
+    /** Da chiamare quando un centro riceve eventi dall'esterno (es. feedback dal ride sharing). */
+    public void refresh(int idx) {
+        double t = nodes.get(idx).peekNextEventTime();
+        if (t == Double.POSITIVE_INFINITY) calendar.cancel(idx);
+        else calendar.schedule(idx, t);
+    }
+
+    public void refreshAll() {
+        for (int i = 0; i < nodes.size(); i++) refresh(i);
+    }
+
+    /** Porta le aree di tutti i centri al tempo dell'ultimo evento (snapshot per report/batch). */
+    public void integrateAll() {
+        for (Node n : nodes) n.integrateTo(clock);
+    }
+
+    public double getClock() {
+        return clock;
+    }
+
+    public long getProcessedEvents() {
+        return processed;
+    }
+}
@@ -0,0 +1,155 @@
+package org.uniroma2.PMCSN.controller;
+
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.model.BatchAccumulator;
+import org.uniroma2.PMCSN.model.ConfidenceInterval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.IntFunction;
+
+/**
+ * Confronto a coppie di configurazioni alternative (es. numero di server per centro) con numeri
+ * casuali comuni: la replica k di ogni configurazione usa le stesse sottosequenze degli stream di
+ * Rngs ({@code plantSeeds(seed, k)}), quindi arrivi, servizi, uscite, matching e posti sono
+ * sincronizzati e le differenze tra configurazioni non sono coperte dal rumore delle repliche.
+ *
+ * La prima configurazione è il riferimento; per ogni altra e per ogni centro si riporta la
+ * differenza media delle metriche di fine replica (altra - riferimento) con la semiampiezza
+ * dell'intervallo di confidenza sulle differenze appaiate, accanto a quella che si avrebbe con
+ * repliche indipendenti dello stesso numero e al rapporto di riduzione della varianza (quante
+ * volte più repliche servirebbero senza numeri casuali comuni).
+ *
+ * Configurazioni: comparison.simple / comparison.rideSharing, separate da '|'; ciascuna è un
+ * elenco di override chiave=valore separati da ';' applicati a config.properties.
+ */
+public class PairedComparison {
+
+    private static final String RESET         = "\u001B[0m";
+    private static final String BRIGHT_GREEN  = "\u001B[92m";
+    private static final String BRIGHT_YELLOW = "\u001B[93m";
+
+    private static final String[] METRICS = {"E[Ts]", "E[Tq]", "E[S]", "E[N]", "E[Nq]", "ρ", "λ"};
+
+    private final ConfigurationManager config;
+    private final boolean rideSharing;
+    private final List<String> names = new ArrayList<>();
+    private final List<IntFunction<double[][]>> replicas = new ArrayList<>();
+    private final int nodes;
+    private final int replicaCount;
+    private final double levelOfConfidence;
+
+    public PairedComparison(boolean rideSharing) {
+        this(new ConfigurationManager(), rideSharing);
+    }
+
+    public PairedComparison(ConfigurationManager config, boolean rideSharing) {
+        this.config = config;
+        this.rideSharing = rideSharing;
+        this.replicaCount = config.getInt("simulation", "replicas");
+        ReplicationEngine.checkReplicas("simulation.replicas", replicaCount, replicaCount);
+        this.levelOfConfidence = config.getDouble("general", "levelOfConfidence");
+
+        String spec = config.getString("comparison", rideSharing ? "rideSharing" : "simple");
+        for (String configuration : spec.split("\\|")) {
+            ConfigurationManager cm = new ConfigurationManager(parseOverrides(configuration));
+            if (cm.getInt("simulation", "nodes") != config.getInt("simulation", "nodes")
+                    || cm.getInt("simulation", "rideNodes") != config.getInt("simulation", "rideNodes")) {
+                throw new IllegalArgumentException("Le configurazioni devono avere gli stessi centri: " + configuration);
+            }
+            if (rideSharing) {
+                replicas.add(new RideSharingSystem(cm)::replicaMetrics);
+            } else {
+                replicas.add(new SimpleSystem(cm)::replicaMetrics);
+            }
+            names.add(configuration.trim().isEmpty() ? "config.properties" : configuration.trim());
+        }
+        if (replicas.size() < 2) {
+            throw new IllegalArgumentException("Servono almeno due configurazioni da confrontare: " + spec);
+        }
+        this.nodes = rideSharing
+                ? config.getInt("simulation", "nodes") + config.getInt("simulation", "rideNodes")
+                : config.getInt("simulation", "nodes");
+    }
+
+    /** Override "sezione.chiave=valore;sezione.chiave=valore" (vuoto = config.properties). */
+    static Properties parseOverrides(String configuration) {
+        Properties overrides = new Properties();
+        for (String entry : configuration.split(";")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Override non valido (atteso chiave=valore): " + entry);
+            overrides.setProperty(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+        }
+        return overrides;
+    }
+
+    public void run() {
+        int configurations = replicas.size();
+        System.out.println("=== Paired Comparison (common random numbers) ===");
+        System.out.println("Sistema: " + (rideSharing ? "Ride Sharing" : "Simple") + ", repliche: " + replicaCount);
+        for (int c = 0; c < configurations; c++) {
+            System.out.printf("  [%d]%s %s%n", c, c == 0 ? " (riferimento)" : "", names.get(c));
+        }
+
+        // per replica tutte le configurazioni, così ogni coppia usa le stesse sottosequenze
+        ReplicationEngine engine = new ReplicationEngine(config);
+        List<double[][][]> results = engine.run(replicaCount, rep -> {
+            double[][][] r = new double[configurations][][];
+            for (int c = 0; c < configurations; c++) r[c] = replicas.get(c).apply(rep);
+            return r;
+        });
+
+        // [configurazione][centro][metrica]
+        BatchAccumulator[][][] values = new BatchAccumulator[configurations][nodes][];
+        BatchAccumulator[][][] differences = new BatchAccumulator[configurations][nodes][];
+        for (int c = 0; c < configurations; c++) {
+            for (int i = 0; i < nodes; i++) {
+                values[c][i] = BatchAccumulator.forNodes(METRICS.length);
+                differences[c][i] = BatchAccumulator.forNodes(METRICS.length);
+            }
+        }
+        for (double[][][] r : results) {
+            for (int c = 0; c < configurations; c++) {
+                for (int i = 0; i < nodes; i++) {
+                    double[] m = r[c][i];
+                    if (m == null) continue;
+                    for (int k = 0; k < METRICS.length; k++) values[c][i][k].add(m[k]);
+                    // coppia valida solo se il centro ha servito job in entrambe le configurazioni
+                    double[] ref = r[0][i];
+                    if (c > 0 && ref != null) {
+                        for (int k = 0; k < METRICS.length; k++) differences[c][i][k].add(m[k] - ref[k]);
+                    }
+                }
+            }
+        }
+
+        for (int c = 1; c < configurations; c++) {
+            System.out.printf("=== [%d] - [0]: %s ===%n", c, names.get(c));
+            for (int i = 0; i < nodes; i++) {
+                System.out.printf("Node %d (%d coppie)%n", i, differences[c][i][0].count());
+                for (int k = 0; k < METRICS.length; k++) {
+                    BatchAccumulator d = differences[c][i][k];
+                    if (d.count() < 2) {
+                        System.out.printf("  %-6s coppie insufficienti%n", METRICS[k]);
+                        continue;
+                    }
+                    double paired = ConfidenceInterval.computeConfidenceInterval(d, levelOfConfidence);
+                    double w0 = ConfidenceInterval.computeConfidenceInterval(values[0][i][k], levelOfConfidence);
+                    double wc = ConfidenceInterval.computeConfidenceInterval(values[c][i][k], levelOfConfidence);
+                    // repliche indipendenti: varianza della differenza = somma delle varianze
+                    double independent = Math.sqrt(w0 * w0 + wc * wc);
+                    // intervallo che esclude lo zero: la differenza è significativa al livello scelto
+                    String color = Math.abs(d.mean()) > paired ? BRIGHT_GREEN : BRIGHT_YELLOW;
+                    // differenza identica in ogni replica: nessuna varianza residua
+                    String reduction = paired > 0
+                            ? String.format("riduzione varianza %.1fx", (independent / paired) * (independent / paired))
+                            : "differenza costante";
+                    System.out.printf("  %-6s Δ=%s%+.4f ± %.4f%s (indipendenti ± %.4f, %s)%n",
+                            METRICS[k], color, d.mean(), paired, RESET, independent, reduction);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.uniroma2.PMCSN.controller;
+
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Esegue le repliche di una simulazione a orizzonte finito su un pool di thread.
+ * Ogni replica deve essere indipendente (propri nodi e proprio Rngs, seminato con
+ * {@code Rngs.plantSeeds(seed, replica)}): i risultati vengono restituiti in ordine di
+ * replica, quindi l'output è identico qualunque sia il numero di thread.
+ *
+ * Configurazione: simulation.threads (0 = tutti i core, 1 = sequenziale)
+ * e simulation.virtualThreads (true per usare virtual thread).
+ */
+public class ReplicationEngine {
+
+    private final int threads;
+    private final boolean virtualThreads;
+
+    public ReplicationEngine(ConfigurationManager config) {
+        int t = config.getInt("simulation", "threads");
+        this.threads = t > 0 ? t : Runtime.getRuntime().availableProcessors();
+        this.virtualThreads = Boolean.parseBoolean(config.getString("simulation", "virtualThreads"));
+    }
+
+    public ReplicationEngine(int threads, boolean virtualThreads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Esegue le repliche 0..replicas-1.
+     * @param replica funzione che esegue la replica k e ne restituisce il risultato
+     * @return i risultati, in ordine di replica
+     */
+    public <R> List<R> run(int replicas, IntFunction<R> replica) {
+        return run(0, replicas, replica);
+    }
+
+    /**
+     * Esegue le repliche from..to-1 (per aggiungere repliche a quelle già eseguite).
+     * @return i risultati, in ordine di replica
+     */
+    public <R> List<R> run(int from, int to, IntFunction<R> replica) {
+        int replicas = to - from;
+        List<R> results = new ArrayList<>(Math.max(replicas, 0));
+        if (threads == 1 || replicas <= 1) {
+            for (int k = from; k < to; k++) results.add(replica.apply(k));
+            return results;
+        }
+
+        ExecutorService pool = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Math.min(threads, replicas));
+        try {
+            List<Future<R>> futures = new ArrayList<>(replicas);
+            for (int k = from; k < to; k++) {
+                final int rep = k;
+                futures.add(pool.submit(() -> replica.apply(rep)));
+            }
+            for (Future<R> f : futures) results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Esecuzione delle repliche interrotta", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Errore durante l'esecuzione di una replica", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Controlla, prima di eseguire qualsiasi replica, che le sottosequenze richieste entrino in Rngs:
+     * la replica k è seminata con {@code plantSeeds(seed, k)}, che accetta solo k < {@link Rngs#MAX_REPLICAS}.
+     * @param key        chiave di configurazione da cui viene il numero di repliche
+     * @param value      valore della chiave
+     * @param substreams sottosequenze usate (repliche, o coppie antitetiche)
+     */
+    static void checkReplicas(String key, int value, int substreams) {
+        if (substreams > Rngs.MAX_REPLICAS) {
+            throw new IllegalArgumentException(key + "=" + value + ": servono " + substreams
+                    + " sottosequenze di Rngs, al più " + Rngs.MAX_REPLICAS
+                    + " (repliche indipendenti, o coppie antitetiche, per seme)");
+        }
+    }
+
+    /**
+     * Media di coppia delle metriche di fine replica (per centro) di una replica e della sua
+     * antitetica: è l'osservazione della coppia. null per i centri senza job in una delle due.
+     */
+    static double[][] antitheticAverage(double[][] plain, double[][] antithetic) {
+        double[][] avg = new double[plain.length][];
+        for (int i = 0; i < plain.length; i++) {
+            if (plain[i] == null || antithetic[i] == null) continue;
+            avg[i] = new double[plain[i].length];
+            for (int k = 0; k < avg[i].length; k++) avg[i][k] = (plain[i][k] + antithetic[i][k]) / 2.0;
+        }
+        return avg;
+    }
+}
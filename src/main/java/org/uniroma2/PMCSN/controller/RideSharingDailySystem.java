@@ -394,15 +394,14 @@ package org.uniroma2.PMCSN.controller;
 
 import org.uniroma2.PMCSN.centers.*;
 import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
+import org.uniroma2.PMCSN.utils.AsyncCsvWriter;
 import org.uniroma2.PMCSN.utils.IntervalCSVGenerator;
+import org.uniroma2.PMCSN.utils.SequentialStoppingRule;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.*;
-import java.util.Locale;
 import java.io.File;
 
 public class RideSharingDailySystem implements Sistema {
@@ -413,8 +412,11 @@ public class RideSharingDailySystem implements Sistema {
     private final int REPLICAS;
     private final double REPORTINTERVAL;
     private final long SEED;
+    /* arresto sequenziale sulla semiampiezza degli intervalli (repliche come pilota) */
+    private final boolean ADAPTIVE;
 
     ConfigurationManager config = new ConfigurationManager();
+    private final SimulationConfig simConfig = new SimulationConfig(config);
 
     public RideSharingDailySystem() {
         this.SIMPLE_NODES = config.getInt("simulation", "nodes");
@@ -423,29 +425,21 @@ public class RideSharingDailySystem implements Sistema {
         this.REPORTINTERVAL = new ConfigurationManager()
                 .getDouble("simulation", "reportInterval");
         this.SEED = config.getInt("simulation", "seed");
+        this.ADAPTIVE = Boolean.parseBoolean(config.getString("simulation", "adaptive").trim());
     }
 
     @Override
     public void runFiniteSimulation() {
+        // la replica k usa plantSeeds(SEED, k): controllo prima di creare file o eseguire repliche
+        ReplicationEngine.checkReplicas("simulation.replicas", REPLICAS, REPLICAS);
         final double STOP = 1440; //min
         String baseDir = "csvFilesIntervals";
 
-        Rngs rngs = new Rngs();
-
         List<List<Long>> jobsProcessedByNode = new ArrayList<>(SIMPLE_NODES+RIDE_NODES);
         for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
             jobsProcessedByNode.add(new ArrayList<>());
         }
 
-        double[] ETs = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ETq = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ES = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ENs = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ENq = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ENS = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] lambda = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] rho = new double[SIMPLE_NODES+RIDE_NODES];
-
         // Liste per replica (per le medie cumulative a replica)
         List<List<Double>> respTimeMeansByNode     = new ArrayList<>(SIMPLE_NODES+RIDE_NODES);
         List<List<Double>> queueTimeMeansByNode    = new ArrayList<>(SIMPLE_NODES+RIDE_NODES);
@@ -499,272 +493,42 @@ public class RideSharingDailySystem implements Sistema {
         List<List<Double>> globalRhoByTime = makeEmptyPerTime(numReports);
 
         System.out.println("=== Finite Simulation ===");
-        rngs.plantSeeds(SEED);
 
         // prepare per_interval global file path for reuse
         String dirPerInterval = baseDir + "/per_interval";
-        String fileGlobal = dirPerInterval + "/global.csv";
         new File(dirPerInterval).mkdirs();
-        final String CSV_HEADER = "Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho";
-
-        for (int rep = 1; rep <= REPLICAS; rep++) {
-
-            long seedForRep = rngs.getSeed();
-
-            List<Node> localNodes = init(rngs);
 
-            // inizializza file CSV t=0 (original behavior)
-            for (int i = 0; i < totalNodes; i++) {
-                IntervalCSVGenerator.writeIntervalData(
-                        true, seedForRep, i, 0,
-                        0, 0, 0, 0,
-                        0, 0, 0,
-                        baseDir
-                );
+        // ogni worker ha i propri nodi e il proprio Rngs; i buffer delle repliche
+        // vengono ridotti in ordine di replica, quindi l'output non dipende dai thread
+        // (con simulation.adaptive=true a blocchi, finché la regola di arresto non è soddisfatta)
+        ReplicationEngine engine = new ReplicationEngine(config);
+        SequentialStoppingRule stopping = ADAPTIVE ? SequentialStoppingRule.forReplicas(config) : null;
+
+        List<List<List<List<Double>>>> perIntervalByMetric = List.of(
+                respTimeByNodeTime, queueTimeByNodeTime, serviceTimeByNodeTime, sysPopByNodeTime,
+                queuePopByNodeTime, utilByNodeTime, lambdaByNodeTime, servicePopByNodeTime);
+        List<List<List<Double>>> globalByMetric = List.of(
+                globalRespTimeByTime, globalSysPopByTime, globalQueueTimeByTime, globalQueuePopByTime,
+                globalServiceTimeByTime, globalServicePopByTime, globalRhoByTime);
+        List<List<List<Double>>> metricsByNode = List.of(
+                respTimeMeansByNode, queueTimeMeansByNode, serviceTimeMeansByNode, systemPopMeansByNode,
+                queuePopMeansByNode, utilizationByNode, lambdaByNode);
+
+        int done = 0;
+        int target = REPLICAS;
+        while (done < target) {
+            List<DailyReplica> replicas = engine.run(done, target,
+                    rep -> runDailyReplica(rep, STOP, numReports, baseDir, dirPerInterval));
+            for (DailyReplica r : replicas) {
+                r.flushCsv();
+                DailyReplica.collect(r.perInterval, perIntervalByMetric);
+                DailyReplica.collectGlobal(r.globalPerInterval, globalByMetric);
+                DailyReplica.collectMetrics(r.metrics, metricsByNode);
+                for (int i = 0; i < totalNodes; i++) jobsProcessedByNode.get(i).add(r.jobs[i]);
             }
-
-            // --- NEW: create per-node per-interval files and write header + t=0 row (replica-wise per_interval files)
-            for (int i = 0; i < totalNodes; i++) {
-                String fileNode = dirPerInterval + "/node_" + i + ".csv";
-                IntervalCSVGenerator.ensureFile(fileNode);
-                String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                        seedForRep, i, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
-                appendCsvLine(fileNode, CSV_HEADER, line);
-            }
-
-            // global initial
-            IntervalCSVGenerator.ensureFile(fileGlobal);
-            String lineG0 = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                    seedForRep, -1, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
-            appendCsvLine(fileGlobal, CSV_HEADER, lineG0);
-
-            // PREV cumulativi per intervalli (usati per delta)
-            double[] prevNodeArea = new double[totalNodes];
-            double[] prevQueueArea = new double[totalNodes];
-            double[] prevServiceArea = new double[totalNodes];
-            double[] prevActiveServerArea = new double[totalNodes];
-            long[] prevServed = new long[totalNodes];
-
-            Arrays.fill(prevNodeArea, 0.0);
-            Arrays.fill(prevQueueArea, 0.0);
-            Arrays.fill(prevServiceArea, 0.0);
-            Arrays.fill(prevActiveServerArea, 0.0);
-            Arrays.fill(prevServed, 0L);
-
-            double nextReportTime = REPORTINTERVAL;
-            double lastArrivalTime = 0.0;
-            double lastCompletionTime = 0.0;
-
-            while (true) {
-                double tmin = Double.POSITIVE_INFINITY;
-                int idxMin = -1;
-                for (int i = 0; i < totalNodes; i++) {
-                    double t = localNodes.get(i).peekNextEventTime();
-                    if (t < tmin) {
-                        tmin = t;
-                        idxMin = i;
-                    }
-                }
-
-                // --- reporting: INTEGRA TUTTI i nodi fino a nextReportTime PRIMA di leggere aree ---
-                if (nextReportTime <= tmin && nextReportTime <= STOP) {
-                    double reportTime = nextReportTime;
-                    int reportIndex = (int) (reportTime / REPORTINTERVAL);
-
-                    // integra ogni nodo fino al bordo dell'intervallo
-                    for (int i = 0; i < totalNodes; i++) {
-                        localNodes.get(i).integrateTo(reportTime);
-                    }
-
-                    // Calcola per ogni nodo i delta e scrive CSV
-                    // --- NEW: accumulate global deltas for global per-interval file ---
-                    double cumDeltaNodeArea = 0.0;
-                    double cumDeltaQueueArea = 0.0;
-                    double cumDeltaServiceArea = 0.0;
-                    long cumDeltaServed = 0L;
-                    double sumRho = 0.0;
-
-                    for (int i = 0; i < totalNodes; i++) {
-                        Node n = localNodes.get(i);
-                        Area a = n.getAreaObject();
-                        MsqSum[] sums = n.getMsqSums();
-
-                        long servedNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-                        double nodeAreaNow = a.getNodeArea();
-                        double queueAreaNow = a.getQueueArea();
-                        double serviceAreaNow = a.getServiceArea();
-                        double activeServerAreaNow = a.getActiveServerArea();
-
-                        long deltaServed = servedNow - prevServed[i];
-                        double deltaNodeArea = nodeAreaNow - prevNodeArea[i];
-                        double deltaQueueArea = queueAreaNow - prevQueueArea[i];
-                        double deltaServiceArea = serviceAreaNow - prevServiceArea[i];
-                        double deltaActiveServers = activeServerAreaNow - prevActiveServerArea[i];
-
-                        // Sanity-check: non dovrebbero essere negativi. Log & clamp se succede.
-                        final double EPS = 1e-9;
-                        if (deltaServed < 0 || deltaNodeArea < -EPS || deltaQueueArea < -EPS || deltaServiceArea < -EPS || deltaActiveServers < -EPS) {
-                            System.err.printf("[WARN] Negative delta at rep=%d t=%.2f node=%d -> dServed=%d dNode=%.6f dQ=%.6f dS=%.6f dAS=%.6f%n",
-                                    rep, reportTime-120, i, deltaServed, deltaNodeArea, deltaQueueArea, deltaServiceArea, deltaActiveServers);
-                            // clamp to zero to avoid NaN/Infinity downstream
-                            deltaServed = Math.max(0L, deltaServed);
-                            deltaNodeArea = Math.max(0.0, deltaNodeArea);
-                            deltaQueueArea = Math.max(0.0, deltaQueueArea);
-                            deltaServiceArea = Math.max(0.0, deltaServiceArea);
-                        }
-
-                        // metriche per intervallo (uso deltaServed come denominatore)
-                        double respTimeInterval = (deltaServed > 0) ? deltaNodeArea / deltaServed : 0.0;
-                        double waitTimeInterval = (deltaServed > 0) ? deltaQueueArea / deltaServed : 0.0;
-                        double serviceTimeInterval = (deltaServed > 0) ? deltaServiceArea / deltaServed : 0.0;
-
-                        double ENInterval = deltaNodeArea / REPORTINTERVAL;
-                        double ENqInterval = deltaQueueArea / REPORTINTERVAL;
-                        double ENsInterval = deltaServiceArea / REPORTINTERVAL;
-
-                        double lambdaInterval = deltaServed / REPORTINTERVAL;
-
-                        int numServers = Math.max(sums.length - 1, 1);
-                        double rhoInterval = 0.0;
-                        if (deltaServed > 0) {
-                            rhoInterval = (lambdaInterval * serviceTimeInterval) / numServers;
-                            rhoInterval = Math.max(0.0, Math.min(1.0, rhoInterval));
-                        }
-
-                        // scrive CSV per questo nodo e intervallo (comportamento originale)
-                        IntervalCSVGenerator.writeIntervalData(
-                                true, seedForRep, i, reportTime-120,
-                                respTimeInterval, ENInterval, waitTimeInterval, ENqInterval,
-                                serviceTimeInterval, ENsInterval, rhoInterval,
-                                baseDir
-                        );
-
-                        // --- NEW: append per-node replica-wise per_interval file & collect into per-time structures ---
-                        String file = dirPerInterval + "/node_" + i + ".csv";
-                        String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                                seedForRep, i, reportTime-120,
-                                respTimeInterval,
-                                ENInterval,
-                                waitTimeInterval,
-                                ENqInterval,
-                                serviceTimeInterval,
-                                ENsInterval,
-                                rhoInterval);
-                        appendCsvLine(file, CSV_HEADER, line);
-
-                        respTimeByNodeTime.get(i).get(reportIndex).add(respTimeInterval);
-                        queueTimeByNodeTime.get(i).get(reportIndex).add(waitTimeInterval);
-                        serviceTimeByNodeTime.get(i).get(reportIndex).add(serviceTimeInterval);
-                        sysPopByNodeTime.get(i).get(reportIndex).add(ENInterval);
-                        queuePopByNodeTime.get(i).get(reportIndex).add(ENqInterval);
-                        utilByNodeTime.get(i).get(reportIndex).add(rhoInterval);
-                        lambdaByNodeTime.get(i).get(reportIndex).add(lambdaInterval);
-                        servicePopByNodeTime.get(i).get(reportIndex).add(ENsInterval);
-
-                        // aggiorna prev per il prossimo intervallo
-                        prevServed[i] = servedNow;
-                        prevNodeArea[i] = nodeAreaNow;
-                        prevQueueArea[i] = queueAreaNow;
-                        prevServiceArea[i] = serviceAreaNow;
-                        prevActiveServerArea[i] = activeServerAreaNow;
-
-                        // update global accumulators
-                        cumDeltaNodeArea += deltaNodeArea;
-                        cumDeltaQueueArea += deltaQueueArea;
-                        cumDeltaServiceArea += deltaServiceArea;
-                        cumDeltaServed += deltaServed;
-                        sumRho += rhoInterval;
-                    }
-
-                    // scrivo file globale per l'intervallo (per replica) includendo Time e Center=-1
-                    double globalETs = (cumDeltaServed > 0) ? cumDeltaNodeArea / cumDeltaServed : 0.0;
-                    double globalEN = cumDeltaNodeArea / REPORTINTERVAL;
-                    double globalETq = (cumDeltaServed > 0) ? cumDeltaQueueArea / cumDeltaServed : 0.0;
-                    double globalENq = cumDeltaQueueArea / REPORTINTERVAL;
-                    double globalES  = (cumDeltaServed > 0) ? cumDeltaServiceArea / cumDeltaServed : 0.0;
-                    double globalENS = cumDeltaServiceArea / REPORTINTERVAL;
-
-                    double globalRho = (totalNodes > 0) ? (sumRho / (double) totalNodes) : 0.0;
-
-                    String lineG = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                            seedForRep, -1, reportTime-120,
-                            globalETs, globalEN, globalETq, globalENq, globalES, globalENS, globalRho);
-                    appendCsvLine(fileGlobal, CSV_HEADER, lineG);
-
-                    // Salva i valori globali di questa replica per l'intervallo
-                    globalRespTimeByTime.get(reportIndex).add(globalETs);
-                    globalSysPopByTime.get(reportIndex).add(globalEN);
-                    globalQueueTimeByTime.get(reportIndex).add(globalETq);
-                    globalQueuePopByTime.get(reportIndex).add(globalENq);
-                    globalServiceTimeByTime.get(reportIndex).add(globalES);
-                    globalServicePopByTime.get(reportIndex).add(globalENS);
-                    globalRhoByTime.get(reportIndex).add(globalRho);
-
-                    nextReportTime += REPORTINTERVAL;
-                    continue;
-                }
-
-                if (tmin > STOP) break;
-
-                // integra fino al prossimo evento e processa
-                for (Node n : localNodes) {
-                    n.integrateTo(tmin);
-                }
-
-                localNodes.get(idxMin).processNextEvent(tmin);
-
-                if (idxMin == 0) {
-                    lastArrivalTime = Math.max(lastArrivalTime, tmin);
-                } else {
-                    lastCompletionTime = Math.max(lastCompletionTime, tmin);
-                }
-            } // end while events
-
-            // --- fine replica: calcoli cumulativi per la replica (come prima) ---
-            for (int i = 0; i < totalNodes; i++) {
-                Area a = localNodes.get(i).getAreaObject();
-                MsqSum[] sums = localNodes.get(i).getMsqSums();
-
-                long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-                jobsProcessedByNode.get(i).add(jobsNow);
-
-                int numServers = Math.max(sums.length - 1, 1);
-
-                if (jobsNow > 0) {
-                    double ETsReplica = a.getNodeArea() / jobsNow;
-                    double ETqReplica = a.getQueueArea() / jobsNow;
-                    double ESReplica  = a.getServiceArea() / jobsNow;
-
-                    double ENsReplica = a.getNodeArea() / STOP;
-                    double ENqReplica = a.getQueueArea() / STOP;
-
-                    double lambdaReplica = jobsNow / STOP;
-                    double rhoReplica;
-
-                    if (localNodes.get(i) instanceof RideSharingMultiServerNodeDaily) {
-                        int busyServers = ((RideSharingMultiServerNodeDaily) localNodes.get(i)).getNumBusyServers();
-                        rhoReplica = (double) busyServers / numServers;
-                    } else {
-                        rhoReplica = lambdaReplica * ESReplica / numServers;
-                    }
-
-                    rhoReplica = Math.min(rhoReplica, 1.0);
-
-                    respTimeMeansByNode.get(i).add(ETsReplica);
-                    queueTimeMeansByNode.get(i).add(ETqReplica);
-                    serviceTimeMeansByNode.get(i).add(ESReplica);
-                    systemPopMeansByNode.get(i).add(ENsReplica);
-                    queuePopMeansByNode.get(i).add(ENqReplica);
-                    utilizationByNode.get(i).add(rhoReplica);
-                    lambdaByNode.get(i).add(lambdaReplica);
-                }
-            }
-
-            // Reset delle statistiche interne per i nodi per la prossima replica
-            for (Node n : localNodes) {
-                n.resetStatistics();
-            }
-        } // end replicas
+            done = target;
+            if (stopping != null) target = (int) stopping.nextTarget(done, metricsByNode);
+        }
 
         //=== Dopo tutte le repliche: calcolo le medie per ogni nodo e per ogni reportIndex e scrivo CSV per il plotting ===
         String dirMean = baseDir + "/interval_mean";
@@ -772,13 +536,6 @@ public class RideSharingDailySystem implements Sistema {
 
         for (int i = 0; i < totalNodes; i++) {
             String file = dirMean + "/node_" + i + "_interval_mean.csv";
-            String header = "Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho";
-            IntervalCSVGenerator.ensureFile(file);
-            try {
-                appendCsvLineIfFileEmpty(file, header);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
             for (int r = 0; r < numReports; r++) {
                 double reportTime = r * REPORTINTERVAL;
                 double meanETs = mean(respTimeByNodeTime.get(i).get(r));
@@ -790,7 +547,7 @@ public class RideSharingDailySystem implements Sistema {
                 double meanRho = mean(utilByNodeTime.get(i).get(r));
                 double meanENS = mean(servicePopByNodeTime.get(i).get(r));
 
-                String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
+                double[] row = new double[]{
                         0, // seed=0 for aggregated mean file (no single seed)
                         i,
                         reportTime-120,
@@ -800,15 +557,13 @@ public class RideSharingDailySystem implements Sistema {
                         meanENq,
                         meanES,
                         meanENS,
-                        meanRho);
-                appendCsvLine(file, header, line);
+                        meanRho};
+                appendCsvRow(file, row);
             }
         }
 
         // scrivo file globale di medie per-interval: media sui seed dei valori globali per-interval
         String fileG = dirMean + "/global_interval_mean.csv";
-        IntervalCSVGenerator.ensureFile(fileG);
-        appendCsvLineIfFileEmpty(fileG, CSV_HEADER);
         for (int r = 0; r < numReports; r++) {
             double reportTime = r * REPORTINTERVAL;
 
@@ -820,7 +575,7 @@ public class RideSharingDailySystem implements Sistema {
             double meanENSG = mean(globalServicePopByTime.get(r));
             double meanRhoG = mean(globalRhoByTime.get(r));
 
-            String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
+            double[] row = new double[]{
                     0,
                     -1,
                     reportTime-120,
@@ -830,8 +585,8 @@ public class RideSharingDailySystem implements Sistema {
                     meanENqG,
                     meanESG,
                     meanENSG,
-                    meanRhoG);
-            appendCsvLine(fileG, CSV_HEADER, line);
+                    meanRhoG};
+            appendCsvRow(fileG, row);
         }
 
         // === STATISTICHE MEDIE CUMULATIVE ===
@@ -880,6 +635,7 @@ public class RideSharingDailySystem implements Sistema {
         List<ConfidenceInterval> ciList = new ArrayList<>();
         for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
             ConfidenceInterval ci = new ConfidenceInterval(
+                    simConfig.levelOfConfidence,
                     respTimeMeansByNode.get(i),
                     queueTimeMeansByNode.get(i),
                     serviceTimeMeansByNode.get(i),
@@ -912,9 +668,228 @@ public class RideSharingDailySystem implements Sistema {
             totalAvgJobsProcessed += Math.floor(avgJobs);  // tronca la media per difetto
         }
         System.out.printf("Media totale jobs processati (approssimazione per difetto): %.0f%n", totalAvgJobsProcessed);
+        if (stopping != null) System.out.println(stopping.summary());
+        // i CSV a intervalli sono completi su disco quando la simulazione ritorna
+        AsyncCsvWriter.shared().flush();
     }
 
 
+    /**
+     * Esegue la replica rep (Rngs seminato con la sottosequenza della replica) e ne
+     * bufferizza i valori per intervallo, le medie di fine replica e le righe CSV.
+     */
+    private DailyReplica runDailyReplica(int rep, double STOP, int numReports, String baseDir, String dirPerInterval) {
+        final int totalNodes = SIMPLE_NODES + RIDE_NODES;
+
+        Rngs rngs = new Rngs();
+        rngs.plantSeeds(SEED, rep);
+        long seedForRep = rngs.getSeed();
+
+        DailyReplica out = new DailyReplica(totalNodes, numReports);
+        String fileGlobal = dirPerInterval + "/global.csv";
+
+        List<Node> localNodes = init(rngs);
+
+        // righe iniziali t=0 (file a intervalli originali e per_interval per replica)
+        for (int i = 0; i < totalNodes; i++) {
+            out.addRow(IntervalCSVGenerator.intervalFile(true, i, baseDir), IntervalCSVGenerator.LAYOUT,
+                    IntervalCSVGenerator.intervalRow(seedForRep, i, 0, 0, 0, 0, 0, 0, 0, 0));
+        }
+        for (int i = 0; i < totalNodes; i++) {
+            out.addRow(dirPerInterval + "/node_" + i + ".csv", IntervalCSVGenerator.DAILY_LAYOUT,
+                    new double[]{seedForRep, i, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0});
+        }
+        out.addRow(fileGlobal, IntervalCSVGenerator.DAILY_LAYOUT, new double[]{
+                seedForRep, -1, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0});
+
+        // PREV cumulativi per intervalli (usati per delta)
+        double[] prevNodeArea = new double[totalNodes];
+        double[] prevQueueArea = new double[totalNodes];
+        double[] prevServiceArea = new double[totalNodes];
+        double[] prevActiveServerArea = new double[totalNodes];
+        long[] prevServed = new long[totalNodes];
+
+        double nextReportTime = REPORTINTERVAL;
+
+        NextEventScheduler scheduler = new NextEventScheduler(localNodes);
+
+        while (true) {
+            double tmin = scheduler.peekNextEventTime();
+
+            // --- reporting: INTEGRA TUTTI i nodi fino a nextReportTime PRIMA di leggere aree ---
+            if (nextReportTime <= tmin && nextReportTime <= STOP) {
+                double reportTime = nextReportTime;
+                int reportIndex = (int) (reportTime / REPORTINTERVAL);
+
+                // integra ogni nodo fino al bordo dell'intervallo
+                for (int i = 0; i < totalNodes; i++) {
+                    localNodes.get(i).integrateTo(reportTime);
+                }
+
+                // accumulo dei delta globali per il file globale per-interval
+                double cumDeltaNodeArea = 0.0;
+                double cumDeltaQueueArea = 0.0;
+                double cumDeltaServiceArea = 0.0;
+                long cumDeltaServed = 0L;
+                double sumRho = 0.0;
+
+                for (int i = 0; i < totalNodes; i++) {
+                    Node n = localNodes.get(i);
+                    Area a = n.getAreaObject();
+                    MsqSum[] sums = n.getMsqSums();
+
+                    long servedNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+                    double nodeAreaNow = a.getNodeArea();
+                    double queueAreaNow = a.getQueueArea();
+                    double serviceAreaNow = a.getServiceArea();
+                    double activeServerAreaNow = a.getActiveServerArea();
+
+                    long deltaServed = servedNow - prevServed[i];
+                    double deltaNodeArea = nodeAreaNow - prevNodeArea[i];
+                    double deltaQueueArea = queueAreaNow - prevQueueArea[i];
+                    double deltaServiceArea = serviceAreaNow - prevServiceArea[i];
+                    double deltaActiveServers = activeServerAreaNow - prevActiveServerArea[i];
+
+                    // Sanity-check: non dovrebbero essere negativi. Log & clamp se succede.
+                    final double EPS = 1e-9;
+                    if (deltaServed < 0 || deltaNodeArea < -EPS || deltaQueueArea < -EPS || deltaServiceArea < -EPS || deltaActiveServers < -EPS) {
+                        System.err.printf("[WARN] Negative delta at rep=%d t=%.2f node=%d -> dServed=%d dNode=%.6f dQ=%.6f dS=%.6f dAS=%.6f%n",
+                                rep + 1, reportTime-120, i, deltaServed, deltaNodeArea, deltaQueueArea, deltaServiceArea, deltaActiveServers);
+                        // clamp to zero to avoid NaN/Infinity downstream
+                        deltaServed = Math.max(0L, deltaServed);
+                        deltaNodeArea = Math.max(0.0, deltaNodeArea);
+                        deltaQueueArea = Math.max(0.0, deltaQueueArea);
+                        deltaServiceArea = Math.max(0.0, deltaServiceArea);
+                    }
+
+                    // metriche per intervallo (uso deltaServed come denominatore)
+                    double respTimeInterval = (deltaServed > 0) ? deltaNodeArea / deltaServed : 0.0;
+                    double waitTimeInterval = (deltaServed > 0) ? deltaQueueArea / deltaServed : 0.0;
+                    double serviceTimeInterval = (deltaServed > 0) ? deltaServiceArea / deltaServed : 0.0;
+
+                    double ENInterval = deltaNodeArea / REPORTINTERVAL;
+                    double ENqInterval = deltaQueueArea / REPORTINTERVAL;
+                    double ENsInterval = deltaServiceArea / REPORTINTERVAL;
+
+                    double lambdaInterval = deltaServed / REPORTINTERVAL;
+
+                    int numServers = Math.max(sums.length - 1, 1);
+                    double rhoInterval = 0.0;
+                    if (deltaServed > 0) {
+                        rhoInterval = (lambdaInterval * serviceTimeInterval) / numServers;
+                        rhoInterval = Math.max(0.0, Math.min(1.0, rhoInterval));
+                    }
+
+                    // CSV a intervalli del nodo (comportamento originale)
+                    out.addRow(IntervalCSVGenerator.intervalFile(true, i, baseDir), IntervalCSVGenerator.LAYOUT,
+                            IntervalCSVGenerator.intervalRow(seedForRep, i, reportTime-120,
+                                    respTimeInterval, ENInterval, waitTimeInterval, ENqInterval,
+                                    serviceTimeInterval, ENsInterval, rhoInterval));
+
+                    // per_interval per replica e valori per le medie per-intervallo
+                    out.addRow(dirPerInterval + "/node_" + i + ".csv", IntervalCSVGenerator.DAILY_LAYOUT,
+                            new double[]{
+                                    seedForRep, i, reportTime-120,
+                                    respTimeInterval,
+                                    ENInterval,
+                                    waitTimeInterval,
+                                    ENqInterval,
+                                    serviceTimeInterval,
+                                    ENsInterval,
+                                    rhoInterval});
+
+                    out.perInterval[i][reportIndex] = new double[]{
+                            respTimeInterval, waitTimeInterval, serviceTimeInterval, ENInterval,
+                            ENqInterval, rhoInterval, lambdaInterval, ENsInterval
+                    };
+
+                    // aggiorna prev per il prossimo intervallo
+                    prevServed[i] = servedNow;
+                    prevNodeArea[i] = nodeAreaNow;
+                    prevQueueArea[i] = queueAreaNow;
+                    prevServiceArea[i] = serviceAreaNow;
+                    prevActiveServerArea[i] = activeServerAreaNow;
+
+                    // update global accumulators
+                    cumDeltaNodeArea += deltaNodeArea;
+                    cumDeltaQueueArea += deltaQueueArea;
+                    cumDeltaServiceArea += deltaServiceArea;
+                    cumDeltaServed += deltaServed;
+                    sumRho += rhoInterval;
+                }
+
+                // riga globale per l'intervallo (per replica) includendo Time e Center=-1
+                double globalETs = (cumDeltaServed > 0) ? cumDeltaNodeArea / cumDeltaServed : 0.0;
+                double globalEN = cumDeltaNodeArea / REPORTINTERVAL;
+                double globalETq = (cumDeltaServed > 0) ? cumDeltaQueueArea / cumDeltaServed : 0.0;
+                double globalENq = cumDeltaQueueArea / REPORTINTERVAL;
+                double globalES  = (cumDeltaServed > 0) ? cumDeltaServiceArea / cumDeltaServed : 0.0;
+                double globalENS = cumDeltaServiceArea / REPORTINTERVAL;
+
+                double globalRho = (totalNodes > 0) ? (sumRho / (double) totalNodes) : 0.0;
+
+                out.addRow(fileGlobal, IntervalCSVGenerator.DAILY_LAYOUT, new double[]{
+                        seedForRep, -1, reportTime-120,
+                        globalETs, globalEN, globalETq, globalENq, globalES, globalENS, globalRho});
+
+                out.globalPerInterval[reportIndex] = new double[]{
+                        globalETs, globalEN, globalETq, globalENq, globalES, globalENS, globalRho
+                };
+
+                nextReportTime += REPORTINTERVAL;
+                continue;
+            }
+
+            if (tmin > STOP) break;
+
+            // processa il prossimo evento (il nodo integra da sé le proprie aree)
+            int idxMin = scheduler.processNextEvent();
+            if (idxMin >= SIMPLE_NODES) {
+                // il matching può aver generato feedback verso i centri tradizionali
+                scheduler.refreshAll();
+            }
+        } // end while events
+
+        // --- fine replica: calcoli cumulativi per la replica (come prima) ---
+        scheduler.integrateAll();
+        for (int i = 0; i < totalNodes; i++) {
+            Area a = localNodes.get(i).getAreaObject();
+            MsqSum[] sums = localNodes.get(i).getMsqSums();
+
+            long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+            out.jobs[i] = jobsNow;
+
+            int numServers = Math.max(sums.length - 1, 1);
+
+            if (jobsNow > 0) {
+                double ETsReplica = a.getNodeArea() / jobsNow;
+                double ETqReplica = a.getQueueArea() / jobsNow;
+                double ESReplica  = a.getServiceArea() / jobsNow;
+
+                double ENsReplica = a.getNodeArea() / STOP;
+                double ENqReplica = a.getQueueArea() / STOP;
+
+                double lambdaReplica = jobsNow / STOP;
+                double rhoReplica;
+
+                if (localNodes.get(i) instanceof RideSharingMultiServerNodeDaily) {
+                    int busyServers = ((RideSharingMultiServerNodeDaily) localNodes.get(i)).getNumBusyServers();
+                    rhoReplica = (double) busyServers / numServers;
+                } else {
+                    rhoReplica = lambdaReplica * ESReplica / numServers;
+                }
+
+                rhoReplica = Math.min(rhoReplica, 1.0);
+
+                out.metrics[i] = new double[]{
+                        ETsReplica, ETqReplica, ESReplica,
+                        ENsReplica, ENqReplica, rhoReplica, lambdaReplica
+                };
+            }
+        }
+        return out;
+    }
+
     // helper locali
     private double computeMean(List<Double> list) {
         // media dei valori in list ignorando NaN; se vuota -> 0.0
@@ -941,58 +916,28 @@ public class RideSharingDailySystem implements Sistema {
         return list.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
     }
 
-    /** Append a CSV line, writing header only if file is empty. */
-    private void appendCsvLine(String filepath, String header, String line) {
-        File f = new File(filepath);
-        try {
-            File parent = f.getParentFile();
-            if (parent != null) parent.mkdirs();
-            boolean needHeader = ( !f.exists() || f.length() == 0 );
-            try (FileWriter fw = new FileWriter(f, true);
-                 PrintWriter pw = new PrintWriter(fw)) {
-                if (needHeader) pw.println(header);
-                pw.println(line);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /** Write header only if file empty (helper used when header may already exist). */
-    private void appendCsvLineIfFileEmpty(String filepath, String header) {
-        File f = new File(filepath);
-        try {
-            File parent = f.getParentFile();
-            if (parent != null) parent.mkdirs();
-            if (!f.exists() || f.length() == 0) {
-                try (FileWriter fw = new FileWriter(f, true);
-                     PrintWriter pw = new PrintWriter(fw)) {
-                    pw.println(header);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /** Accoda una riga di medie per intervallo, con l'header se il file è vuoto. */
+    private void appendCsvRow(String filepath, double[] row) {
+        AsyncCsvWriter.shared().appendRows(filepath, IntervalCSVGenerator.DAILY_LAYOUT, List.of(row), false);
     }
 
 
     private List<Node> init(Rngs rng) {
         List<Node> localNodes = new ArrayList<>();
         List<RideSharingMultiServerNodeSimpleDaily> centriTradizionali = new ArrayList<>();
-        ConfigurationManager config = new ConfigurationManager();
         DailyServerSelectorRideSharingSimple selectorRideSimple = new DailyServerSelectorRideSharingSimple(config);
         DailyServerSelectorRideSharing selectorRide = new DailyServerSelectorRideSharing(config);
 
         // Nodi “tradizionali” (SIMPLE_NODES)
         for (int i = 0; i < SIMPLE_NODES; i++) {
-            RideSharingMultiServerNodeSimpleDaily n = new RideSharingMultiServerNodeSimpleDaily(this, i, rng, selectorRideSimple);
+            RideSharingMultiServerNodeSimpleDaily n = new RideSharingMultiServerNodeSimpleDaily(this, i, rng, selectorRideSimple, simConfig);
             localNodes.add(n);
             centriTradizionali.add(n);
         }
 
         // Nodi RideSharing “avanzati” (RIDE_NODES)
         for (int i = SIMPLE_NODES; i < SIMPLE_NODES + RIDE_NODES; i++) {
-            Node n = new RideSharingMultiServerNodeDaily(this, rng, centriTradizionali, selectorRide);
+            Node n = new RideSharingMultiServerNodeDaily(this, rng, centriTradizionali, selectorRide, simConfig);
             localNodes.add(n);
         }
 
@@ -4,25 +4,27 @@ import org.uniroma2.PMCSN.centers.Node;
 import org.uniroma2.PMCSN.centers.RideSharingMultiServerNode;
 import org.uniroma2.PMCSN.centers.RideSharingMultiServerNodeSimple;
 import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.libs.AntitheticRngs;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
+import org.uniroma2.PMCSN.utils.AllocationMeter;
 import org.uniroma2.PMCSN.utils.AnalyticalComputation;
+import org.uniroma2.PMCSN.utils.AsyncCsvWriter;
+import org.uniroma2.PMCSN.utils.BatchResultWriter;
 import org.uniroma2.PMCSN.utils.Comparison;
 import org.uniroma2.PMCSN.utils.IntervalCSVGenerator;
+import org.uniroma2.PMCSN.utils.OutputFormat;
+import org.uniroma2.PMCSN.utils.SequentialStoppingRule;
 import org.uniroma2.PMCSN.utils.Verification;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 
 public class RideSharingSystem implements Sistema {
 
@@ -42,21 +44,60 @@ public class RideSharingSystem implements Sistema {
     /*Case Infinite*/
     private final int BATCHSIZE ;
     private final int NUMBATCHES ;
+    /* dimensione dei batch scelta sull'autocorrelazione (LBATCH/ASAP) invece di BATCHSIZE */
+    private final boolean AUTO_BATCH_SIZE ;
+    private final int MIN_BATCHSIZE ;
+    private final int MAX_BATCHSIZE ;
+    private final double BATCH_ACF_THRESHOLD ;
+    /* transitorio iniziale rilevato con MSER-5 prima dei batch */
+    private final boolean AUTO_WARMUP ;
+    private final int WARMUP_WINDOW ;
+    private final int WARMUP_OBSERVATIONS ;
+    private final int MAX_WARMUP_OBSERVATIONS ;
     private final int SEED ;
+    private final boolean CSV_OUTPUT ;
+    /* solo simulazione a orizzonte infinito: niente verifica né report (benchmark) */
+    private final boolean BENCHMARK_MODE ;
+    /* CSV o binario a colonne per i file a intervalli e per batch */
+    private final OutputFormat OUTPUT_FORMAT ;
+    /* arresto sequenziale sulla semiampiezza degli intervalli (repliche/batch come pilota) */
+    private final boolean ADAPTIVE ;
+    /* repliche finite a coppie antitetiche (u e 1 - u), osservazione = media della coppia */
+    private final boolean ANTITHETIC ;
+
+    final ConfigurationManager config;
+    private final SimulationConfig simConfig;
 
     public RideSharingSystem() {
+        this(new ConfigurationManager());
+    }
+
+    public RideSharingSystem(ConfigurationManager config) {
 
-        // legge tutto da config.properties
-        ConfigurationManager config = new ConfigurationManager();
+        // legge tutto da config.properties (più eventuali override)
+        this.config = config;
         this.SIMPLE_NODES = config.getInt("simulation", "nodes");
         this.RIDE_NODES = config.getInt("simulation", "rideNodes");
         this.REPLICAS = config.getInt("simulation", "replicas");
         this.STOP = config.getDouble("simulation", "stop");
-        this.REPORTINTERVAL = new ConfigurationManager()
-                .getDouble("simulation", "reportInterval");
+        this.REPORTINTERVAL = config.getDouble("simulation", "reportInterval");
         this.BATCHSIZE = config.getInt("simulation", "batchSize");
         this.NUMBATCHES = config.getInt("simulation", "numBatches");
+        this.AUTO_BATCH_SIZE = Boolean.parseBoolean(config.getString("simulation", "autoBatchSize").trim());
+        this.MIN_BATCHSIZE = config.getInt("simulation", "minBatchSize");
+        this.MAX_BATCHSIZE = config.getInt("simulation", "maxBatchSize");
+        this.BATCH_ACF_THRESHOLD = config.getDouble("simulation", "batchAcfThreshold");
+        this.AUTO_WARMUP = Boolean.parseBoolean(config.getString("simulation", "autoWarmup").trim());
+        this.WARMUP_WINDOW = config.getInt("simulation", "warmupWindow");
+        this.WARMUP_OBSERVATIONS = config.getInt("simulation", "warmupObservations");
+        this.MAX_WARMUP_OBSERVATIONS = config.getInt("simulation", "maxWarmupObservations");
         this.SEED = config.getInt("simulation", "seed");
+        this.CSV_OUTPUT = Boolean.parseBoolean(config.getString("simulation", "csvOutput").trim());
+        this.BENCHMARK_MODE = Boolean.parseBoolean(config.getString("simulation", "benchmarkMode").trim());
+        this.OUTPUT_FORMAT = OutputFormat.parse(config.getString("simulation", "outputFormat"));
+        this.ADAPTIVE = Boolean.parseBoolean(config.getString("simulation", "adaptive").trim());
+        this.ANTITHETIC = Boolean.parseBoolean(config.getString("simulation", "antithetic").trim());
+        this.simConfig = new SimulationConfig(config);
     }
 
     @Override
@@ -71,15 +112,6 @@ public class RideSharingSystem implements Sistema {
             jobsProcessedByNode.add(new ArrayList<>());
         }
 
-        double[] ETs = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ETq = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ES = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ENs = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ENq = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] ENS = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] lambda = new double[SIMPLE_NODES+RIDE_NODES];
-        double[] rho = new double[SIMPLE_NODES+RIDE_NODES];
-
         // Liste per replica
         List<List<Double>> respTimeMeansByNode     = new ArrayList<>(SIMPLE_NODES+RIDE_NODES);
         List<List<Double>> queueTimeMeansByNode    = new ArrayList<>(SIMPLE_NODES+RIDE_NODES);
@@ -104,153 +136,44 @@ public class RideSharingSystem implements Sistema {
 
         rngs.plantSeeds(SEED);
 
-
-
-        for (int rep = 1; rep <= REPLICAS; rep++) {
-
-            long seedForRep = rngs.getSeed();
-
-            List<Node> localNodes = init(rngs);
-
+        // con simulation.adaptive=true si aggiungono repliche finché la regola di arresto non è soddisfatta
+        SequentialStoppingRule stopping = ADAPTIVE ? SequentialStoppingRule.forReplicas(config) : null;
+        // con simulation.antithetic=true le REPLICAS repliche formano REPLICAS/2 coppie antitetiche
+        // (stesso costo) e ogni coppia conta come una replica: media della coppia come osservazione
+        int target = ANTITHETIC ? REPLICAS / 2 : REPLICAS;
+        // solo le coppie antitetiche usano le sottosequenze di replica
+        if (ANTITHETIC) ReplicationEngine.checkReplicas("simulation.replicas", REPLICAS, target);
+        if (ANTITHETIC) System.out.println("Variabili antitetiche: " + target + " coppie di repliche");
+
+        for (int rep = 1; rep <= target; rep++) {
+
+            // senza coppie antitetiche le repliche proseguono la stessa sequenza di rngs
+            long[] jobs = new long[SIMPLE_NODES+RIDE_NODES];
+            // le coppie usano le sottosequenze 0..target-1, come replicaMetrics
+            double[][] metrics = ANTITHETIC
+                    ? runAntitheticPair(rep - 1, baseDir, jobs)
+                    : runFiniteReplica(rngs, baseDir, jobs);
             for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
-                IntervalCSVGenerator.writeIntervalData(
-                        true, seedForRep, i, 0,
-                        0, 0, 0, 0,
-                        0, 0, 0,
-                        baseDir
-                );
-            }
-            writeGlobalInterval(seedForRep, 0, localNodes, baseDir);
-
-            double nextReportTime = REPORTINTERVAL;
-            double lastArrivalTime = 0.0;
-            double lastCompletionTime = 0.0;
-
-            while (true) {
-                double tmin = Double.POSITIVE_INFINITY;
-                int idxMin = -1;
-                for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
-                    double t = localNodes.get(i).peekNextEventTime();
-                    if (t < tmin) {
-                        tmin = t;
-                        idxMin = i;
-                    }
-                }
-
-                if (nextReportTime <= tmin && nextReportTime <= STOP) {
-                    for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
-                        Node n = localNodes.get(i);
-                        Area a = n.getAreaObject();
-                        MsqSum[] sums = n.getMsqSums();
-
-                        long served = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-
-                        if (served > 0) {
-                            ETs[i] = a.getNodeArea() / served;
-                            ETq[i] = a.getQueueArea() / served;
-                            ES[i] = a.getServiceArea() / served;
-
-                            ENs[i] = a.getNodeArea() / nextReportTime;
-                            ENq[i] = a.getQueueArea() / nextReportTime;
-                            ENS[i] = a.getServiceArea() / nextReportTime;
-
-                            int numServers = sums.length - 1;
-
-                            // Calcolo lambda e rho: se è un RideSharingMultiServerNode uso busy servers fraction
-                            lambda[i] = served / nextReportTime;
-                            if (localNodes.get(i) instanceof RideSharingMultiServerNode) {
-                                int busyServers = ((RideSharingMultiServerNode) localNodes.get(i)).getNumBusyServers();
-                                rho[i] = numServers > 0 ? (double) busyServers / numServers : 0.0;
-                            } else {
-                                rho[i] = numServers > 0 ? (lambda[i] * ES[i]) / numServers : 0.0;
-                            }
-                        } else {
-                            ETs[i] = 0.0;
-                            ETq[i] = 0.0;
-                            ES[i] = 0.0;
-
-                            ENs[i] = 0.0;
-                            ENq[i] = 0.0;
-                            ENS[i] = 0.0;
-
-                            lambda[i] = 0.0;
-                            rho[i] = 0.0;
-                        }
-
-                        IntervalCSVGenerator.writeIntervalData(
-                                true, seedForRep, i, nextReportTime,
-                                ETs[i], ENs[i], ETq[i], ENq[i],
-                                ES[i], ENS[i], rho[i],
-                                baseDir
-                        );
-                    }
-
-                    writeGlobalInterval(seedForRep, nextReportTime, localNodes, baseDir);
-                    nextReportTime += REPORTINTERVAL;
-                    continue;
-                }
-
-                if (tmin > STOP) break;
-
-                for (Node n : localNodes) {
-                    n.integrateTo(tmin);
-                }
-
-                localNodes.get(idxMin).processNextEvent(tmin);
-
-                if (idxMin == 0) {
-                    lastArrivalTime = Math.max(lastArrivalTime, tmin);
-                } else {
-                    lastCompletionTime = Math.max(lastCompletionTime, tmin);
+                jobsProcessedByNode.get(i).add(jobs[i]);
+
+                double[] m = metrics[i];
+                if (m != null) {
+                    respTimeMeansByNode.get(i).add(m[0]);
+                    queueTimeMeansByNode.get(i).add(m[1]);
+                    serviceTimeMeansByNode.get(i).add(m[2]);
+                    systemPopMeansByNode.get(i).add(m[3]);
+                    queuePopMeansByNode.get(i).add(m[4]);
+                    utilizationByNode.get(i).add(m[5]);
+                    lambdaByNode.get(i).add(m[6]);
                 }
             }
 
-            for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
-                Area a = localNodes.get(i).getAreaObject();
-                MsqSum[] sums = localNodes.get(i).getMsqSums();
-
-                long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-                jobsProcessedByNode.get(i).add(jobsNow);
-
-                int numServers = sums.length - 1;
-
-                if (jobsNow > 0) {
-                    double ETsReplica = a.getNodeArea() / jobsNow;
-                    double ETqReplica = a.getQueueArea() / jobsNow;
-                    double ESReplica  = a.getServiceArea() / jobsNow;
-
-                    double ENsReplica = a.getNodeArea() / STOP;
-                    double ENqReplica = a.getQueueArea() / STOP;
-
-                    double lambdaReplica = jobsNow / STOP;
-                    double rhoReplica;
-
-                    if (localNodes.get(i) instanceof RideSharingMultiServerNode) {
-                        int busyServers = ((RideSharingMultiServerNode) localNodes.get(i)).getNumBusyServers();
-                        rhoReplica = numServers > 0 ? (double) busyServers / numServers : 0.0;
-                    } else {
-                        rhoReplica = numServers > 0 ? (lambdaReplica * ESReplica) / numServers : 0.0;
-                    }
-
-                    rhoReplica = Math.min(rhoReplica, 1.0);
-
-                    lambda[i] = jobsNow / STOP;
-                    rho[i] = rhoReplica;
-
-                    respTimeMeansByNode.get(i).add(ETsReplica);
-                    queueTimeMeansByNode.get(i).add(ETqReplica);
-                    serviceTimeMeansByNode.get(i).add(ESReplica);
-                    systemPopMeansByNode.get(i).add(ENsReplica);
-                    queuePopMeansByNode.get(i).add(ENqReplica);
-                    utilizationByNode.get(i).add(rhoReplica);
-                    lambdaByNode.get(i).add(lambdaReplica);
-                }
-            }
-
-            // Reset delle statistiche interne per i nodi per la prossima replica
-            for (Node n : localNodes) {
-                n.resetStatistics();
-                // eventualmente resettare anche aree se necessario
+            if (stopping != null && rep == target) {
+                target = (int) stopping.nextTarget(rep, List.of(
+                        respTimeMeansByNode, queueTimeMeansByNode, serviceTimeMeansByNode, systemPopMeansByNode,
+                        queuePopMeansByNode, utilizationByNode, lambdaByNode));
+                // le coppie antitetiche non vanno oltre le sottosequenze disponibili in Rngs
+                if (ANTITHETIC) target = Math.min(target, Rngs.MAX_REPLICAS);
             }
         }
 
@@ -300,6 +223,7 @@ public class RideSharingSystem implements Sistema {
         List<ConfidenceInterval> ciList = new ArrayList<>();
         for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
             ConfidenceInterval ci = new ConfidenceInterval(
+                    simConfig.levelOfConfidence,
                     respTimeMeansByNode.get(i),
                     queueTimeMeansByNode.get(i),
                     serviceTimeMeansByNode.get(i),
@@ -332,6 +256,200 @@ public class RideSharingSystem implements Sistema {
             totalAvgJobsProcessed += Math.floor(avgJobs);  // tronca la media per difetto
         }
         System.out.printf("Media totale jobs processati (approssimazione per difetto): %.0f%n", totalAvgJobsProcessed);
+        if (stopping != null) System.out.println(stopping.summary());
+        // i CSV a intervalli sono completi su disco quando la simulazione ritorna
+        AsyncCsvWriter.shared().flush();
+    }
+
+    /**
+     * Metriche di fine replica della replica rep, senza CSV a intervalli. A differenza di
+     * {@link #runFiniteSimulation()}, dove le repliche proseguono un'unica sequenza, il generatore
+     * è seminato con la sottosequenza della replica: con lo stesso SEED la replica rep usa gli
+     * stessi numeri casuali qualunque sia la configurazione dei centri (numeri casuali comuni,
+     * vedi {@link PairedComparison}).
+     */
+    double[][] replicaMetrics(int rep) {
+        Rngs rngs = new Rngs();
+        rngs.plantSeeds(SEED, rep);
+        return runFiniteReplica(rngs, null, new long[SIMPLE_NODES+RIDE_NODES]);
+    }
+
+    /**
+     * Coppia antitetica della replica rep: entrambe seminate con la sottosequenza della replica,
+     * la seconda con 1 - u ({@link AntitheticRngs}).
+     * @param jobs riempito con la media (per difetto) dei job serviti da ogni centro
+     * @return le medie di coppia delle metriche, come {@link #runFiniteReplica}
+     */
+    private double[][] runAntitheticPair(int rep, String baseDir, long[] jobs) {
+        Rngs plain = new Rngs();
+        plain.plantSeeds(SEED, rep);
+        Rngs antithetic = new AntitheticRngs();
+        antithetic.plantSeeds(SEED, rep);
+
+        long[] antitheticJobs = new long[jobs.length];
+        double[][] plainMetrics = runFiniteReplica(plain, baseDir, jobs);
+        double[][] antitheticMetrics = runFiniteReplica(antithetic, baseDir, antitheticJobs);
+        for (int i = 0; i < jobs.length; i++) jobs[i] = (jobs[i] + antitheticJobs[i]) / 2;
+        return ReplicationEngine.antitheticAverage(plainMetrics, antitheticMetrics);
+    }
+
+    /**
+     * Esegue una replica a orizzonte finito a partire dallo stato corrente di rngs; con baseDir
+     * null non scrive i CSV a intervalli.
+     * @param jobs riempito con i job serviti da ogni centro
+     * @return per centro {E[Ts], E[Tq], E[S], E[N], E[Nq], rho, lambda}, null se nessun job servito
+     */
+    private double[][] runFiniteReplica(Rngs rngs, String baseDir, long[] jobs) {
+        final double STOP = this.STOP;
+
+        double[] ETs = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] ETq = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] ES = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] ENs = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] ENq = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] ENS = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] lambda = new double[SIMPLE_NODES+RIDE_NODES];
+        double[] rho = new double[SIMPLE_NODES+RIDE_NODES];
+        double[][] metrics = new double[SIMPLE_NODES+RIDE_NODES][];
+
+        // nei CSV la replica antitetica ha il seme col segno opposto, per distinguerla dalla sua coppia
+        long seedForRep = rngs instanceof AntitheticRngs ? -rngs.getSeed() : rngs.getSeed();
+
+        List<Node> localNodes = init(rngs);
+        NextEventScheduler scheduler = new NextEventScheduler(localNodes);
+
+        if (baseDir != null) {
+            for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
+                IntervalCSVGenerator.writeIntervalData(
+                        OUTPUT_FORMAT, true, seedForRep, i, 0,
+                        0, 0, 0, 0,
+                        0, 0, 0,
+                        baseDir
+                );
+            }
+            IntervalCSVGenerator.writeGlobalInterval(OUTPUT_FORMAT, seedForRep, 0, localNodes, baseDir);
+        }
+
+        double nextReportTime = REPORTINTERVAL;
+        double lastArrivalTime = 0.0;
+        double lastCompletionTime = 0.0;
+
+        while (true) {
+            double tmin = scheduler.peekNextEventTime();
+
+            if (baseDir != null && nextReportTime <= tmin && nextReportTime <= STOP) {
+                scheduler.integrateAll();
+                for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
+                    Node n = localNodes.get(i);
+                    Area a = n.getAreaObject();
+                    MsqSum[] sums = n.getMsqSums();
+
+                    long served = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+
+                    if (served > 0) {
+                        ETs[i] = a.getNodeArea() / served;
+                        ETq[i] = a.getQueueArea() / served;
+                        ES[i] = a.getServiceArea() / served;
+
+                        ENs[i] = a.getNodeArea() / nextReportTime;
+                        ENq[i] = a.getQueueArea() / nextReportTime;
+                        ENS[i] = a.getServiceArea() / nextReportTime;
+
+                        int numServers = sums.length - 1;
+
+                        // Calcolo lambda e rho: se è un RideSharingMultiServerNode uso busy servers fraction
+                        lambda[i] = served / nextReportTime;
+                        if (localNodes.get(i) instanceof RideSharingMultiServerNode) {
+                            int busyServers = ((RideSharingMultiServerNode) localNodes.get(i)).getNumBusyServers();
+                            rho[i] = numServers > 0 ? (double) busyServers / numServers : 0.0;
+                        } else {
+                            rho[i] = numServers > 0 ? (lambda[i] * ES[i]) / numServers : 0.0;
+                        }
+                    } else {
+                        ETs[i] = 0.0;
+                        ETq[i] = 0.0;
+                        ES[i] = 0.0;
+
+                        ENs[i] = 0.0;
+                        ENq[i] = 0.0;
+                        ENS[i] = 0.0;
+
+                        lambda[i] = 0.0;
+                        rho[i] = 0.0;
+                    }
+
+                    IntervalCSVGenerator.writeIntervalData(
+                            OUTPUT_FORMAT, true, seedForRep, i, nextReportTime,
+                            ETs[i], ENs[i], ETq[i], ENq[i],
+                            ES[i], ENS[i], rho[i],
+                            baseDir
+                    );
+                }
+
+                IntervalCSVGenerator.writeGlobalInterval(OUTPUT_FORMAT, seedForRep, nextReportTime, localNodes, baseDir);
+                nextReportTime += REPORTINTERVAL;
+                continue;
+            }
+
+            if (tmin > STOP) break;
+
+            int idxMin = scheduler.processNextEvent();
+            if (idxMin >= SIMPLE_NODES) {
+                // il matching può aver generato feedback verso i centri tradizionali
+                scheduler.refreshAll();
+            }
+
+            if (idxMin == 0) {
+                lastArrivalTime = Math.max(lastArrivalTime, tmin);
+            } else {
+                lastCompletionTime = Math.max(lastCompletionTime, tmin);
+            }
+        }
+
+        scheduler.integrateAll();
+        for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
+            Area a = localNodes.get(i).getAreaObject();
+            MsqSum[] sums = localNodes.get(i).getMsqSums();
+
+            long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+            jobs[i] = jobsNow;
+
+            int numServers = sums.length - 1;
+
+            if (jobsNow > 0) {
+                double ETsReplica = a.getNodeArea() / jobsNow;
+                double ETqReplica = a.getQueueArea() / jobsNow;
+                double ESReplica  = a.getServiceArea() / jobsNow;
+
+                double ENsReplica = a.getNodeArea() / STOP;
+                double ENqReplica = a.getQueueArea() / STOP;
+
+                double lambdaReplica = jobsNow / STOP;
+                double rhoReplica;
+
+                if (localNodes.get(i) instanceof RideSharingMultiServerNode) {
+                    int busyServers = ((RideSharingMultiServerNode) localNodes.get(i)).getNumBusyServers();
+                    rhoReplica = numServers > 0 ? (double) busyServers / numServers : 0.0;
+                } else {
+                    rhoReplica = numServers > 0 ? (lambdaReplica * ESReplica) / numServers : 0.0;
+                }
+
+                rhoReplica = Math.min(rhoReplica, 1.0);
+
+                metrics[i] = new double[]{
+                        ETsReplica, ETqReplica, ESReplica,
+                        ENsReplica, ENqReplica, rhoReplica, lambdaReplica
+                };
+            }
+        }
+
+        // Reset delle statistiche interne per i nodi per la prossima replica
+        for (Node n : localNodes) {
+            n.resetStatistics();
+            // eventualmente resettare anche aree se necessario
+        }
+
+        return metrics;
     }
 
     private static void printVerificationResult(Verification.VerificationResult result) {
@@ -443,110 +561,41 @@ public class RideSharingSystem implements Sistema {
         List<Node> localNodes = new ArrayList<>();
         List<RideSharingMultiServerNodeSimple> centriTradizionali = new ArrayList<>();
         for (int i = 0; i < SIMPLE_NODES; i++) {
-            RideSharingMultiServerNodeSimple n = new RideSharingMultiServerNodeSimple(this, i, rng);
+            RideSharingMultiServerNodeSimple n = new RideSharingMultiServerNodeSimple(this, i, rng, simConfig);
             localNodes.add(n);
             centriTradizionali.add(n);
         }
         for (int i = SIMPLE_NODES; i < SIMPLE_NODES+RIDE_NODES; i++) {
-            Node n = new RideSharingMultiServerNode(this, rng,centriTradizionali);
+            Node n = new RideSharingMultiServerNode(this, rng, centriTradizionali, simConfig);
             localNodes.add(n);
         }
         return localNodes;
     }
 
-    // utilitario per sommare tutti i served in un array di MsqSum
-    private long sumsTotalServed(MsqSum[] sums) {
-        long tot = 0;
-        for (MsqSum s : sums) tot += s.served;
-        return tot;
-    }
-
-    private void writeGlobalInterval(
-            long rep,
-            double reportTime,
-            List<Node> localNodes,
-            String baseDir
-    ) {
-        double cumArea = 0.0;
-        double cumAreaQ = 0.0;
-        double cumServiceArea = 0.0;
-        double sumRho = 0.0;
-        long cumJobs = 0L;
-
-        for (Node n: localNodes) {
-            Area a = n.getAreaObject();
-            MsqSum[] sums = n.getMsqSums();
-            cumArea += a.getNodeArea();
-            cumAreaQ += a.getQueueArea();
-            cumServiceArea += a.getServiceArea();
-            cumJobs += sumsTotalServed(sums);
-            sumRho += n.getUtilization();
-        }
-
-        double ETs = cumJobs > 0 ? cumArea / cumJobs : 0.0;
-        double ENs = reportTime > 0 ? cumArea / reportTime: 0.0;
-        double ETq = cumJobs > 0 ? cumAreaQ / cumJobs : 0.0;
-        double ENq = reportTime > 0 ? cumAreaQ / reportTime : 0.0;
-        double ES = cumJobs > 0 ? cumServiceArea / cumJobs : 0.0;
-        double ENS = reportTime > 0 ? cumServiceArea / reportTime  : 0.0;
-        double rho = sumRho / (SIMPLE_NODES + RIDE_NODES);//aggiungi rn
-
-        //prepare file global.csv in baseDir/finite_interval
-        String dir = baseDir + "/finite_interval";
-        String file = dir + "/global.csv";
-        boolean isNew = IntervalCSVGenerator.ensureFile(file);
-        try (FileWriter fw = new FileWriter(file, true)) {
-            if (isNew) {
-                fw.append("Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho\n");
-            }
-            fw.append(String.join(",",
-                    String.valueOf(rep),
-                    "-1",
-                    String.format(Locale.US, "%.2f", reportTime),
-                    String.format(Locale.US, "%.5f", ETs),
-                    String.format(Locale.US, "%.5f", ENs),
-                    String.format(Locale.US, "%.5f", ETq),
-                    String.format(Locale.US, "%.5f", ENq),
-                    String.format(Locale.US, "%.5f", ES),
-                    String.format(Locale.US, "%.5f", ENS),
-                    String.format(Locale.US, "%.5f", rho)
-            ));
-            fw.append("\n");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-    }
-
-
     @Override
     public void runInfiniteSimulation() {
         // --- Preparazione directory CSV ---
         String baseDir = "csvFilesBatchesRide";
-        try {
-            Files.createDirectories(Paths.get(baseDir));
-        } catch (IOException e) {
-            System.err.println("Impossibile creare directory " + baseDir + ": " + e.getMessage());
+        if (CSV_OUTPUT) {
+            try {
+                Files.createDirectories(Paths.get(baseDir));
+            } catch (IOException e) {
+                System.err.println("Impossibile creare directory " + baseDir + ": " + e.getMessage());
+            }
         }
 
         // --- Creo un writer per ciascun nodo e scrivo intestazione solo cumulative ---
-        List<BufferedWriter> writers = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
+        // (con simulation.csvOutput=false i writer restano null e non si scrive nulla;
+        // con simulation.outputFormat=BINARY i file hanno estensione .bin)
+        List<BatchResultWriter> writers = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
         for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
+            if (!CSV_OUTPUT) {
+                writers.add(null);
+                continue;
+            }
             Path nodePath = Paths.get(baseDir, String.format("INFINITE_node%d.csv", i));
             try {
-                BufferedWriter w = Files.newBufferedWriter(
-                        nodePath,
-                        StandardCharsets.UTF_8,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING
-                );
-                // Header: batch + solo medie cumulative
-                w.write("SimulationType,Batch,"
-                        + "ETs,ETq,ES,"
-                        + "EN,ENq,rho,lambda");
-                w.newLine();
-                w.write("INFINITE,0,0,0,0,0,0,0,0");
-                w.newLine();
-                writers.add(w);
+                writers.add(BatchResultWriter.open(OUTPUT_FORMAT, nodePath));
             } catch (IOException e) {
                 System.err.println("Impossibile inizializzare CSV per nodo " + i + ": " + e.getMessage());
                 writers.add(null);
@@ -554,42 +603,24 @@ public class RideSharingSystem implements Sistema {
         }
 
         Path globalPath = Paths.get(baseDir, "global.csv");
-        BufferedWriter globalWriter = null;
-        try {
-            globalWriter = Files.newBufferedWriter(
-                    globalPath,
-                    StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING
-            );
-            // Header: batch + solo medie cumulative
-            globalWriter.write("SimulationType,Batch,"
-                    + "ETs,ETq,ES,"
-                    + "EN,ENq,rho,lambda");
-            globalWriter.newLine();
-            globalWriter.write("INFINITE,0,0,0,0,0,0,0,0");
-            globalWriter.newLine();
-        } catch (IOException e) {
-            System.err.println("Impossibile inizializzare CSV per sistema : " + e.getMessage());
+        BatchResultWriter globalWriter = null;
+        if (CSV_OUTPUT) {
+            try {
+                globalWriter = BatchResultWriter.open(OUTPUT_FORMAT, globalPath);
+            } catch (IOException e) {
+                System.err.println("Impossibile inizializzare CSV per sistema : " + e.getMessage());
+            }
         }
+        double[] row = new double[BatchResultWriter.LAYOUT.stored()];
 
-        // Liste per accumulare i valori batch-per-batch
-        List<List<Double>> respTimeMeansByNode    = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        List<List<Double>> queueTimeMeansByNode   = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        List<List<Double>> serviceTimeMeansByNode = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        List<List<Double>> systemPopMeansByNode   = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        List<List<Double>> queuePopMeansByNode    = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        List<List<Double>> utilizationByNode      = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        List<List<Double>> lambdaByNode           = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
-        for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
-            respTimeMeansByNode   .add(new ArrayList<>());
-            queueTimeMeansByNode  .add(new ArrayList<>());
-            serviceTimeMeansByNode.add(new ArrayList<>());
-            systemPopMeansByNode  .add(new ArrayList<>());
-            queuePopMeansByNode   .add(new ArrayList<>());
-            utilizationByNode     .add(new ArrayList<>());
-            lambdaByNode          .add(new ArrayList<>());
-        }
+        // Statistiche in streaming dei valori batch-per-batch (memoria costante in NUMBATCHES)
+        BatchAccumulator[] respTimeMeansByNode    = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
+        BatchAccumulator[] queueTimeMeansByNode   = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
+        BatchAccumulator[] serviceTimeMeansByNode = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
+        BatchAccumulator[] systemPopMeansByNode   = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
+        BatchAccumulator[] queuePopMeansByNode    = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
+        BatchAccumulator[] utilizationByNode      = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
+        BatchAccumulator[] lambdaByNode           = BatchAccumulator.forNodes(SIMPLE_NODES + RIDE_NODES);
 
         double[] areaNodeSnap   = new double[SIMPLE_NODES + RIDE_NODES];
         double[] areaQueueSnap  = new double[SIMPLE_NODES + RIDE_NODES];
@@ -601,11 +632,22 @@ public class RideSharingSystem implements Sistema {
         double endTimeBatch;
         int batchNumber     = 0;
         int jobObservations = 0;
+        long batchTarget    = NUMBATCHES;
+        SequentialStoppingRule stopping = ADAPTIVE ? SequentialStoppingRule.forBatches(config) : null;
+        // dimensione dei batch: fissa (BATCHSIZE) o scelta raddoppiando da minBatchSize
+        BatchSizer sizer = AUTO_BATCH_SIZE ? new BatchSizer(NUMBATCHES, MIN_BATCHSIZE, MAX_BATCHSIZE, BATCH_ACF_THRESHOLD) : null;
+        int batchSize       = AUTO_BATCH_SIZE ? MIN_BATCHSIZE : BATCHSIZE;
+        // transitorio iniziale: finestre di WARMUP_WINDOW completamenti finché MSER-5 non lo individua
+        WarmupDetector warmup = AUTO_WARMUP
+                ? new WarmupDetector(SIMPLE_NODES + RIDE_NODES, WARMUP_WINDOW, WARMUP_OBSERVATIONS, MAX_WARMUP_OBSERVATIONS) : null;
+        int windowSize      = AUTO_WARMUP ? WARMUP_WINDOW : batchSize;
+        BatchWindow[] single = {new BatchWindow(SIMPLE_NODES + RIDE_NODES)};
 
         // Inizializzo RNG e nodi
         Rngs rngs = new Rngs();
         rngs.plantSeeds(SEED);
         List<Node> nodes = init(rngs);
+        NextEventScheduler scheduler = new NextEventScheduler(nodes);
 
         // Snapshot iniziali
         for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
@@ -617,143 +659,44 @@ public class RideSharingSystem implements Sistema {
             jobsServedSnap[i] = Arrays.stream(ss).mapToLong(s -> s.served).sum();
         }
 
+        // pressione sul GC del loop ad eventi (a regime i centri non allocano per evento)
+        AllocationMeter allocationMeter = new AllocationMeter();
+        allocationMeter.start();
+        long events = 0;
+
         // Loop principale per batch
-        while (batchNumber < NUMBATCHES) {
-            // Trovo prossimo evento
-            double tmin = Double.POSITIVE_INFINITY;
-            int idxMin  = -1;
-            for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
-                double t = nodes.get(i).peekNextEventTime();
-                if (t < tmin) {
-                    tmin   = t;
-                    idxMin = i;
-                }
+        while (batchNumber < batchTarget) {
+            // Processo il prossimo evento (il centro coinvolto integra da sé le proprie aree)
+            int idxMin = scheduler.processNextEvent();
+            events++;
+            clock = scheduler.getClock();
+            if (idxMin >= SIMPLE_NODES) {
+                // il matching può aver generato feedback verso i centri tradizionali
+                scheduler.refreshAll();
             }
 
-            // Integro e processo evento
-            for (Node n : nodes) n.integrateTo(tmin);
-            clock = tmin;
-            nodes.get(idxMin).processNextEvent(tmin);
-
-
-
-
             if (idxMin != 0) {
                 jobObservations++;
             }
 
-            // Quando raccolgo BATCHSIZE completamenti, calcolo e scrivo CSV
-            if (jobObservations == BATCHSIZE) {
+            // Quando raccolgo i completamenti del batch, ne calcolo gli incrementi per centro
+            if (jobObservations == windowSize) {
+                scheduler.integrateAll();
                 endTimeBatch = clock;
-                double batchTime = endTimeBatch - startTimeBatch;
-
-                double ETs_glob   = 0;
-                double ETq_glob   = 0;
-                double ES_glob    = 0;
-                double ENs_glob   = 0;
-                double ENq_glob   = 0;
-                double rho_glob   = 0;
-                double lambda_glob = 0;
 
+                boolean warming = warmup != null && !warmup.isDone();
+                BatchWindow window = !warming && sizer != null && !sizer.isSelected() ? new BatchWindow(SIMPLE_NODES + RIDE_NODES) : single[0];
+                window.time = endTimeBatch - startTimeBatch;
                 for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
                     Area     a         = nodes.get(i).getAreaObject();
                     MsqSum[] ss        = nodes.get(i).getMsqSums();
                     long     jobsNow   = Arrays.stream(ss).mapToLong(s -> s.served).sum();
 
-                    long   deltaJobs      = jobsNow - jobsServedSnap[i];
-                    double deltaNodeArea  = a.getNodeArea()   - areaNodeSnap[i];
-                    double deltaQueueArea = a.getQueueArea()  - areaQueueSnap[i];
-                    double deltaServArea  = a.getServiceArea() - areaServSnap[i];
-                    int    numServers     = ss.length - 1;
-
-                    if (deltaJobs > 0 && batchTime > 0) {
-                        // 1) Calcolo valori batch
-                        double ETs_batch    = deltaNodeArea  / deltaJobs;
-                        double ETq_batch    = deltaQueueArea / deltaJobs;
-                        double ES_batch     = deltaServArea  / deltaJobs;
-                        double ENs_batch    = deltaNodeArea  / batchTime;
-                        double ENq_batch    = deltaQueueArea / batchTime;
-                        double lambda_batch = deltaJobs      / batchTime;
-                        double rho_batch;
-
-                        // Calcolo rho_batch: se è nodo ride-sharing uso busy servers fraction
-                        if (nodes.get(i) instanceof RideSharingMultiServerNode) {
-                            int busyServers = ((RideSharingMultiServerNode) nodes.get(i)).getNumBusyServers();
-                            rho_batch = numServers > 0 ? (double) busyServers / numServers : 0.0;
-                        } else {
-                            rho_batch = numServers > 0 ? (lambda_batch * ES_batch) / numServers : 0.0;
-                        }
-
-                        // 2) Li accumulo per il calcolo cumulativo
-                        respTimeMeansByNode   .get(i).add(ETs_batch);
-                        queueTimeMeansByNode  .get(i).add(ETq_batch);
-                        serviceTimeMeansByNode.get(i).add(ES_batch);
-                        systemPopMeansByNode  .get(i).add(ENs_batch);
-                        queuePopMeansByNode   .get(i).add(ENq_batch);
-                        utilizationByNode     .get(i).add(rho_batch);
-                        lambdaByNode          .get(i).add(lambda_batch);
-
-                        // 3) Calcolo medie cumulative su tutti i batch finora
-                        double ETs_cum   = computeMean(respTimeMeansByNode.get(i));
-                        double ETq_cum   = computeMean(queueTimeMeansByNode.get(i));
-                        double ES_cum    = computeMean(serviceTimeMeansByNode.get(i));
-                        double ENs_cum   = computeMean(systemPopMeansByNode.get(i));
-                        double ENq_cum   = computeMean(queuePopMeansByNode.get(i));
-                        double rho_cum   = computeMean(utilizationByNode.get(i));
-                        double lambda_cum= computeMean(lambdaByNode.get(i));
-
-                        ETs_glob   += ETs_cum;
-                        ETq_glob   += ETq_cum;
-                        ES_glob    += ES_cum;
-                        ENs_glob   += ENs_cum;
-                        ENq_glob   += ENq_cum;
-                        rho_glob   += rho_cum;
-                        lambda_glob += lambda_cum;
-
-                        // 4) Scrittura solo dei cumulativi
-                        BufferedWriter w = writers.get(i);
-                        if (w != null) {
-                            try {
-                                String line = String.join(",",
-                                        "INFINITE",
-                                        Integer.toString(batchNumber+1),
-                                        String.format(Locale.US, "%.6f", ETs_cum),
-                                        String.format(Locale.US, "%.6f", ETq_cum),
-                                        String.format(Locale.US, "%.6f", ES_cum),
-                                        String.format(Locale.US, "%.6f", ENs_cum),
-                                        String.format(Locale.US, "%.6f", ENq_cum),
-                                        String.format(Locale.US, "%.6f", rho_cum),
-                                        String.format(Locale.US, "%.6f", lambda_cum)
-                                );
-                                w.write(line);
-                                w.newLine();
-                            } catch (IOException e) {
-                                System.err.println("Errore scrittura CSV nodo " + i
-                                        + " batch " + batchNumber + ": " + e.getMessage());
-                            }
-                        }
-                    }
-                }
-
-
-                if (globalWriter != null) {
-                    try {
-                        String line = String.join(",",
-                                "INFINITE",
-                                Integer.toString(batchNumber+1),
-                                String.format(Locale.US, "%.6f", ETs_glob/4),
-                                String.format(Locale.US, "%.6f", ETq_glob/4),
-                                String.format(Locale.US, "%.6f", ES_glob/4),
-                                String.format(Locale.US, "%.6f", ENs_glob/4),
-                                String.format(Locale.US, "%.6f", ENq_glob/4),
-                                String.format(Locale.US, "%.6f", rho_glob/4),
-                                String.format(Locale.US, "%.6f", lambda_glob/4)
-                        );
-                        globalWriter.write(line);
-                        globalWriter.newLine();
-                    } catch (IOException e) {
-                        System.err.println("Errore scrittura CSV sistema batch " + batchNumber + ": " + e.getMessage());
-                    }
+                    window.jobs[i]        = jobsNow - jobsServedSnap[i];
+                    window.nodeArea[i]    = a.getNodeArea()   - areaNodeSnap[i];
+                    window.queueArea[i]   = a.getQueueArea()  - areaQueueSnap[i];
+                    window.serviceArea[i] = a.getServiceArea() - areaServSnap[i];
+                    window.busyAtEnd[i]   = nodes.get(i) instanceof RideSharingMultiServerNode rs ? rs.getNumBusyServers() : -1;
                 }
 
                 // Reset statistiche e snapshot per il batch successivo
@@ -764,13 +707,141 @@ public class RideSharingSystem implements Sistema {
                 Arrays.fill(jobsServedSnap, 0L);
 
                 startTimeBatch = endTimeBatch;
-                batchNumber++;
                 jobObservations = 0;
+
+                // con la dimensione automatica i batch escono tutti insieme, quando è scelta
+                BatchWindow[] ready = single;
+                int readyCount = 1;
+                if (warming) {
+                    // le finestre del transitorio servono solo al rilevamento: finito questo,
+                    // si riparte dalle statistiche appena azzerate con la dimensione dei batch
+                    if (warmup.add(window)) windowSize = batchSize;
+                    readyCount = 0;
+                } else if (sizer != null && !sizer.isSelected()) {
+                    boolean chosen = sizer.add(window);
+                    windowSize = sizer.batchSize();
+                    ready = sizer.windows();
+                    readyCount = chosen ? sizer.count() : 0;
+                }
+
+                for (int r = 0; r < readyCount; r++) {
+                    BatchWindow b = ready[r];
+                    double batchTime = b.time;
+
+                    double ETs_glob   = 0;
+                    double ETq_glob   = 0;
+                    double ES_glob    = 0;
+                    double ENs_glob   = 0;
+                    double ENq_glob   = 0;
+                    double rho_glob   = 0;
+                    double lambda_glob = 0;
+
+                    for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
+                        MsqSum[] ss        = nodes.get(i).getMsqSums();
+
+                        long   deltaJobs      = b.jobs[i];
+                        double deltaNodeArea  = b.nodeArea[i];
+                        double deltaQueueArea = b.queueArea[i];
+                        double deltaServArea  = b.serviceArea[i];
+                        int    numServers     = ss.length - 1;
+
+                        if (deltaJobs > 0 && batchTime > 0) {
+                            // 1) Calcolo valori batch
+                            double ETs_batch    = deltaNodeArea  / deltaJobs;
+                            double ETq_batch    = deltaQueueArea / deltaJobs;
+                            double ES_batch     = deltaServArea  / deltaJobs;
+                            double ENs_batch    = deltaNodeArea  / batchTime;
+                            double ENq_batch    = deltaQueueArea / batchTime;
+                            double lambda_batch = deltaJobs      / batchTime;
+                            double rho_batch;
+
+                            // Calcolo rho_batch: se è nodo ride-sharing uso busy servers fraction
+                            if (b.busyAtEnd[i] >= 0) {
+                                int busyServers = b.busyAtEnd[i];
+                                rho_batch = numServers > 0 ? (double) busyServers / numServers : 0.0;
+                            } else {
+                                rho_batch = numServers > 0 ? (lambda_batch * ES_batch) / numServers : 0.0;
+                            }
+
+                            // 2) Li accumulo per il calcolo cumulativo
+                            respTimeMeansByNode[i]   .add(ETs_batch);
+                            queueTimeMeansByNode[i]  .add(ETq_batch);
+                            serviceTimeMeansByNode[i].add(ES_batch);
+                            systemPopMeansByNode[i]  .add(ENs_batch);
+                            queuePopMeansByNode[i]   .add(ENq_batch);
+                            utilizationByNode[i]     .add(rho_batch);
+                            lambdaByNode[i]          .add(lambda_batch);
+
+                            // 3) Calcolo medie cumulative su tutti i batch finora
+                            double ETs_cum   = respTimeMeansByNode[i].mean();
+                            double ETq_cum   = queueTimeMeansByNode[i].mean();
+                            double ES_cum    = serviceTimeMeansByNode[i].mean();
+                            double ENs_cum   = systemPopMeansByNode[i].mean();
+                            double ENq_cum   = queuePopMeansByNode[i].mean();
+                            double rho_cum   = utilizationByNode[i].mean();
+                            double lambda_cum= lambdaByNode[i].mean();
+
+                            ETs_glob   += ETs_cum;
+                            ETq_glob   += ETq_cum;
+                            ES_glob    += ES_cum;
+                            ENs_glob   += ENs_cum;
+                            ENq_glob   += ENq_cum;
+                            rho_glob   += rho_cum;
+                            lambda_glob += lambda_cum;
+
+                            // 4) Scrittura solo dei cumulativi
+                            BatchResultWriter w = writers.get(i);
+                            if (w != null) {
+                                try {
+                                    row[0] = batchNumber + 1;
+                                    row[1] = ETs_cum;
+                                    row[2] = ETq_cum;
+                                    row[3] = ES_cum;
+                                    row[4] = ENs_cum;
+                                    row[5] = ENq_cum;
+                                    row[6] = rho_cum;
+                                    row[7] = lambda_cum;
+                                    w.writeRow(row);
+                                } catch (IOException e) {
+                                    System.err.println("Errore scrittura CSV nodo " + i
+                                            + " batch " + batchNumber + ": " + e.getMessage());
+                                }
+                            }
+                        }
+                    }
+
+                    if (globalWriter != null) {
+                        try {
+                            row[0] = batchNumber + 1;
+                            row[1] = ETs_glob/4;
+                            row[2] = ETq_glob/4;
+                            row[3] = ES_glob/4;
+                            row[4] = ENs_glob/4;
+                            row[5] = ENq_glob/4;
+                            row[6] = rho_glob/4;
+                            row[7] = lambda_glob/4;
+                            globalWriter.writeRow(row);
+                        } catch (IOException e) {
+                            System.err.println("Errore scrittura CSV sistema batch " + batchNumber + ": " + e.getMessage());
+                        }
+                    }
+
+                    batchNumber++;
+
+                    if (stopping != null && batchNumber == batchTarget) {
+                        batchTarget = stopping.nextTarget(batchNumber,
+                                respTimeMeansByNode, queueTimeMeansByNode, serviceTimeMeansByNode,
+                                systemPopMeansByNode, queuePopMeansByNode, utilizationByNode, lambdaByNode);
+                    }
+                }
             }
         }
 
+        System.out.println("=== PRESSIONE SUL GC ===");
+        System.out.println(allocationMeter.report(events));
+
         // Chiudo writer
-        for (BufferedWriter w : writers) {
+        for (BatchResultWriter w : writers) {
             if (w != null) {
                 try {
                     w.close();
@@ -789,18 +860,22 @@ public class RideSharingSystem implements Sistema {
             }
         }
 
+        // con simulation.benchmarkMode=true nessun file di confronto/verifica né report:
+        // la misura comprende solo la simulazione
+        if (BENCHMARK_MODE) return;
+
         // --- Calcolo medie cumulative globali e stampa finale ---
         List<MeanStatistics> meanStatsList = new ArrayList<>(SIMPLE_NODES + RIDE_NODES);
         for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
             meanStatsList.add(new MeanStatistics(
                     "Center" + i,
-                    computeMean(respTimeMeansByNode.get(i)),
-                    computeMean(serviceTimeMeansByNode.get(i)),
-                    computeMean(queueTimeMeansByNode.get(i)),
-                    computeMean(lambdaByNode.get(i)),
-                    computeMean(systemPopMeansByNode.get(i)),
-                    computeMean(utilizationByNode.get(i)),
-                    computeMean(queuePopMeansByNode.get(i))
+                    respTimeMeansByNode[i].mean(),
+                    serviceTimeMeansByNode[i].mean(),
+                    queueTimeMeansByNode[i].mean(),
+                    lambdaByNode[i].mean(),
+                    systemPopMeansByNode[i].mean(),
+                    utilizationByNode[i].mean(),
+                    queuePopMeansByNode[i].mean()
             ));
         }
 
@@ -814,13 +889,14 @@ public class RideSharingSystem implements Sistema {
         List<ConfidenceInterval> ciList = new ArrayList<>();
         for (int i = 0; i < SIMPLE_NODES+RIDE_NODES; i++) {
             ConfidenceInterval ci = new ConfidenceInterval(
-                    respTimeMeansByNode.get(i),
-                    queueTimeMeansByNode.get(i),
-                    serviceTimeMeansByNode.get(i),
-                    systemPopMeansByNode.get(i),
-                    queuePopMeansByNode.get(i),
-                    utilizationByNode.get(i),
-                    lambdaByNode.get(i)
+                    simConfig.levelOfConfidence,
+                    respTimeMeansByNode[i],
+                    queueTimeMeansByNode[i],
+                    serviceTimeMeansByNode[i],
+                    systemPopMeansByNode[i],
+                    queuePopMeansByNode[i],
+                    utilizationByNode[i],
+                    lambdaByNode[i]
             );
             ciList.add(ci);
 
@@ -841,20 +917,19 @@ public class RideSharingSystem implements Sistema {
         for (int i = 0; i < SIMPLE_NODES + RIDE_NODES; i++) {
             String centerName = "Center" + i;
             List<BatchMetric> allBatchMetrics = List.of(
-                    new BatchMetric("E[Ts]", respTimeMeansByNode.get(i)),
-                    new BatchMetric("E[Tq]", queueTimeMeansByNode.get(i)),
-                    new BatchMetric("E[Si]", serviceTimeMeansByNode.get(i)),
-                    new BatchMetric("E[Ns]", systemPopMeansByNode.get(i)),
-                    new BatchMetric("E[Nq]", queuePopMeansByNode.get(i)),
-                    new BatchMetric("ρ", utilizationByNode.get(i)),
-                    new BatchMetric("λ", lambdaByNode.get(i))
+                    new BatchMetric("E[Ts]", respTimeMeansByNode[i]),
+                    new BatchMetric("E[Tq]", queueTimeMeansByNode[i]),
+                    new BatchMetric("E[Si]", serviceTimeMeansByNode[i]),
+                    new BatchMetric("E[Ns]", systemPopMeansByNode[i]),
+                    new BatchMetric("E[Nq]", queuePopMeansByNode[i]),
+                    new BatchMetric("ρ", utilizationByNode[i]),
+                    new BatchMetric("λ", lambdaByNode[i])
             );
-            for (BatchMetric batchMetric : allBatchMetrics) {
-                double acfValue = acf(batchMetric.values);
-                batchMetric.setAcfValue(acfValue);
-            }
-            printBatchStatisticsResult(centerName, allBatchMetrics, BATCHSIZE, NUMBATCHES);
+            printBatchStatisticsResult(centerName, allBatchMetrics, windowSize, batchNumber);
         }
+        if (warmup != null) System.out.println(warmup.summary());
+        if (sizer != null) System.out.println(sizer.summary());
+        if (stopping != null) System.out.println(stopping.summary());
 
 
         List<Verification.VerificationResult> verificationResults =
@@ -886,29 +961,6 @@ public class RideSharingSystem implements Sistema {
     }
 
 
-    public static double acf(List<Double> data) {
-        int k = data.size();
-        double mean = 0.0;
-
-        // Calculate the mean of the batch means
-        for (double value : data) {
-            mean += value;
-        }
-        mean /= k;
-
-        double numerator = 0.0;
-        double denominator = 0.0;
-
-        // Compute the numerator and denominator for the lag-1 autocorrelation
-        for (int j = 0; j < k - 1; j++) {
-            numerator += (data.get(j) - mean) * (data.get(j + 1) - mean);
-        }
-        for (int j = 0; j < k; j++) {
-            denominator += Math.pow(data.get(j) - mean, 2);
-        }
-        return numerator / denominator;
-    }
-
 
     public static void printBatchStatisticsResult(String centerName, List<BatchMetric> batchMetrics, int batchSize, int numBatches) {
         System.out.println(BRIGHT_BLUE + "\n\n*******************************************************************************************************");
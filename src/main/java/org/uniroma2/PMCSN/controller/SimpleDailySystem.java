@@ -2,22 +2,21 @@ package org.uniroma2.PMCSN.controller;
 
 import org.uniroma2.PMCSN.centers.SimpleMultiServerNodeDaily;
 import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
 import org.uniroma2.PMCSN.utils.AnalyticalComputation;
 import org.uniroma2.PMCSN.utils.AnalyticalComputation.AnalyticalResult;
+import org.uniroma2.PMCSN.utils.AsyncCsvWriter;
 import org.uniroma2.PMCSN.utils.Comparison;
 import org.uniroma2.PMCSN.utils.IntervalCSVGenerator;
+import org.uniroma2.PMCSN.utils.SequentialStoppingRule;
 import org.uniroma2.PMCSN.utils.Verification;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 
 public class SimpleDailySystem implements Sistema {
 
@@ -25,23 +24,27 @@ public class SimpleDailySystem implements Sistema {
     private final int REPLICAS;
     private final double REPORTINTERVAL;
     private final long SEED;
+    /* arresto sequenziale sulla semiampiezza degli intervalli (repliche come pilota) */
+    private final boolean ADAPTIVE;
 
     ConfigurationManager config = new ConfigurationManager();
+    private final SimulationConfig simConfig = new SimulationConfig(config);
 
     public SimpleDailySystem() {
         this.NODES = config.getInt("simulation", "nodes");
         this.REPLICAS = config.getInt("simulation", "replicas");
         this.REPORTINTERVAL = new ConfigurationManager().getDouble("simulation", "reportInterval");
         this.SEED = (long) config.getDouble("simulation", "seed");
+        this.ADAPTIVE = Boolean.parseBoolean(config.getString("simulation", "adaptive").trim());
     }
 
     @Override
     public void runFiniteSimulation() {
+        // la replica k usa plantSeeds(SEED, k): controllo prima di creare file o eseguire repliche
+        ReplicationEngine.checkReplicas("simulation.replicas", REPLICAS, REPLICAS);
         final double STOP = 1440.0;
         String baseDir = "csvFilesIntervalsDailySimpleSystem";
 
-        Rngs rngs = new Rngs();
-
         // per replica conteggio jobs processati (cumulativo alla fine di ogni replica)
         List<List<Long>> jobsProcessedByNode = new ArrayList<>(NODES);
         for (int i = 0; i < NODES; i++) jobsProcessedByNode.add(new ArrayList<>());
@@ -99,227 +102,44 @@ public class SimpleDailySystem implements Sistema {
         }
 
         System.out.println("=== Finite Simulation (daily nodes, per-interval aggregation) ===");
-        rngs.plantSeeds(SEED);
 
         // prepare per_interval global file path for reuse
         String dirPerInterval = baseDir + "/per_interval";
-        String fileGlobal = dirPerInterval + "/global.csv";
 
         // ensure directory exists
         new File(dirPerInterval).mkdirs();
-        // header string exactly as requested
-        final String CSV_HEADER = "Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho";
-
-        for (int rep = 1; rep <= REPLICAS; rep++) {
-            long seedForRep = rngs.getSeed();
-            double nextReportTime = REPORTINTERVAL;
-
-            // inizializza nodi
-            List<SimpleMultiServerNodeDaily> localNodes = init(rngs);
-
-            // prev cumulativi usati per calcolare delta per intervallo
-            double[] prevNodeArea = new double[NODES];
-            double[] prevQueueArea = new double[NODES];
-            double[] prevServiceArea = new double[NODES];
-            double[] prevActiveServerArea = new double[NODES]; // mantenuto ma non usato per rho (compatibilità)
-            long[] prevServed = new long[NODES];
-
-            // scrivo header/iniziali per ciascun nodo (t=0) — file per-replica/interval (righe iniziali con 0)
-            for (int i = 0; i < NODES; i++) {
-                String fileNode = dirPerInterval + "/node_" + i + ".csv";
-                IntervalCSVGenerator.ensureFile(fileNode); // keep existing behavior if it also creates dirs
-                String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                        seedForRep, i, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
-                appendCsvLine(fileNode, CSV_HEADER, line);
-            }
-
-            // scrivo il globale iniziale (t=0) con Center = -1
-            IntervalCSVGenerator.ensureFile(fileGlobal);
-            String lineG0 = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                    seedForRep, -1, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
-            appendCsvLine(fileGlobal, CSV_HEADER, lineG0);
-
-            // main event loop per replica
-            while (true) {
-                double tmin = Double.POSITIVE_INFINITY;
-                int idxMin = -1;
-                for (int i = 0; i < NODES; i++) {
-                    double t = localNodes.get(i).peekNextEventTime();
-                    if (t < tmin) {
-                        tmin = t;
-                        idxMin = i;
-                    }
-                }
-
-                // reporting per-INTERVAL (delta rispetto a prev*)
-                if (nextReportTime <= tmin && nextReportTime <= STOP) {
-                    int reportIndex = (int) (nextReportTime / REPORTINTERVAL); // 1..numReports-1
-                    double reportTime = nextReportTime; // time to write in CSV
-
-                    // accumulate global deltas
-                    double cumDeltaNodeArea = 0.0;
-                    double cumDeltaQueueArea = 0.0;
-                    double cumDeltaServiceArea = 0.0;
-                    long cumDeltaServed = 0L;
-                    double sumRho = 0.0;
-
-                    for (int i = 0; i < NODES; i++) {
-                        Area a = localNodes.get(i).getAreaObject();
-                        MsqSum[] sums = localNodes.get(i).getMsqSums();
-
-                        long servedNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-                        double nodeAreaNow = a.getNodeArea();
-                        double queueAreaNow = a.getQueueArea();
-                        double serviceAreaNow = a.getServiceArea();
-                        double activeServerAreaNow = a.getActiveServerArea();
-
-                        long deltaServed = servedNow - prevServed[i];
-                        double deltaNodeArea = nodeAreaNow - prevNodeArea[i];
-                        double deltaQueueArea = queueAreaNow - prevQueueArea[i];
-                        double deltaServiceArea = serviceAreaNow - prevServiceArea[i];
-
-                        // ETs, ETq, ES sull'intervallo (se no jobs nell'intervallo -> 0)
-                        double ETsInterval = (deltaServed > 0) ? deltaNodeArea / (double) deltaServed : 0.0;
-                        double ETqInterval = (deltaServed > 0) ? deltaQueueArea / (double) deltaServed : 0.0;
-                        double ESInterval  = (deltaServed > 0) ? deltaServiceArea / (double) deltaServed : 0.0;
-
-                        // ENs, ENq, ENS (medie sull'intervallo)
-                        double ENInterval = deltaNodeArea / REPORTINTERVAL;
-                        double ENqInterval = deltaQueueArea / REPORTINTERVAL;
-                        double ENSInterval = deltaServiceArea / REPORTINTERVAL;
-                        double lambdaInterval = deltaServed / REPORTINTERVAL;
-
-                        // === ρ: CALCOLO IDENTICO A SimpleSystem ===
-                        // numServers ricavato da MsqSum[] (come in SimpleSystem: sums.length - 1)
-                        int numServers = Math.max(sums.length - 1, 1);
-                        double rhoInterval = 0.0;
-                        if (deltaServed > 0) {
-                            // evita divisione per zero; se ESInterval==0 -> rhoInterval sarà 0 automaticamente
-                            rhoInterval = (lambdaInterval * ESInterval) / (double) numServers;
-                        } else {
-                            rhoInterval = 0.0;
-                        }
-
-                        // append to per-node csv (one row per replica per interval) including Time and Center
-                        String file = dirPerInterval + "/node_" + i + ".csv";
-                        String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                                seedForRep, i, reportTime,
-                                ETsInterval,
-                                ENInterval,
-                                ETqInterval,
-                                ENqInterval,
-                                ESInterval,
-                                ENSInterval,
-                                rhoInterval);
-                        appendCsvLine(file, CSV_HEADER, line);
-
-                        // add to the structures used to compute per-interval means across replicas
-                        respTimeByNodeTime.get(i).get(reportIndex).add(ETsInterval);
-                        queueTimeByNodeTime.get(i).get(reportIndex).add(ETqInterval);
-                        serviceTimeByNodeTime.get(i).get(reportIndex).add(ESInterval);
-                        sysPopByNodeTime.get(i).get(reportIndex).add(ENInterval);
-                        queuePopByNodeTime.get(i).get(reportIndex).add(ENqInterval);
-                        utilByNodeTime.get(i).get(reportIndex).add(rhoInterval);
-                        lambdaByNodeTime.get(i).get(reportIndex).add(lambdaInterval);
-                        servicePopByNodeTime.get(i).get(reportIndex).add(ENSInterval);
-
-                        // update prev cumulativi per il prossimo intervallo
-                        prevServed[i] = servedNow;
-                        prevNodeArea[i] = nodeAreaNow;
-                        prevQueueArea[i] = queueAreaNow;
-                        prevServiceArea[i] = serviceAreaNow;
-                        prevActiveServerArea[i] = activeServerAreaNow;
-
-                        // update global accumulators
-                        cumDeltaNodeArea += deltaNodeArea;
-                        cumDeltaQueueArea += deltaQueueArea;
-                        cumDeltaServiceArea += deltaServiceArea;
-                        cumDeltaServed += deltaServed;
-                        sumRho += rhoInterval;
-                    }
-
-                    // scrivo file globale per l'intervallo (per replica) includendo Time e Center=-1
-                    double globalETs = (cumDeltaServed > 0) ? cumDeltaNodeArea / (double) cumDeltaServed : 0.0;
-                    double globalEN = cumDeltaNodeArea / REPORTINTERVAL;
-                    double globalETq = (cumDeltaServed > 0) ? cumDeltaQueueArea / (double) cumDeltaServed : 0.0;
-                    double globalENq = cumDeltaQueueArea / REPORTINTERVAL;
-                    double globalES  = (cumDeltaServed > 0) ? cumDeltaServiceArea / (double) cumDeltaServed : 0.0;
-                    double globalENS = cumDeltaServiceArea / REPORTINTERVAL;
-
-                    // globalRho: uso la media aritmetica delle rho dei nodi (coerente con comportamento precedente)
-                    double globalRho = (NODES > 0) ? (sumRho / (double) NODES) : 0.0;
-
-                    String lineG = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
-                            seedForRep, -1, reportTime,
-                            globalETs, globalEN, globalETq, globalENq, globalES, globalENS, globalRho);
-                    appendCsvLine(fileGlobal, CSV_HEADER, lineG);
-
-                    // Salva i valori globali di questa replica per l'intervallo, così da poter poi mediare sui seed
-                    globalRespTimeByTime.get(reportIndex).add(globalETs);
-                    globalSysPopByTime.get(reportIndex).add(globalEN);
-                    globalQueueTimeByTime.get(reportIndex).add(globalETq);
-                    globalQueuePopByTime.get(reportIndex).add(globalENq);
-                    globalServiceTimeByTime.get(reportIndex).add(globalES);
-                    globalServicePopByTime.get(reportIndex).add(globalENS);
-                    globalRhoByTime.get(reportIndex).add(globalRho);
-
-                    nextReportTime += REPORTINTERVAL;
-                    continue;
-                }
-
-                // fine replica
-                if (tmin > STOP) break;
-
-                // integra tutti i nodi fino a tmin
-                for (SimpleMultiServerNodeDaily n : localNodes) n.integrateTo(tmin);
-
-                // processa evento minimo
-                localNodes.get(idxMin).processNextEvent(tmin);
-            } // end while replica
-
-            // alla fine della replica: calcolo e salvo le metriche cumulative finali per il set di medie "replica-wise"
-            for (int i = 0; i < NODES; i++) {
-                Area a = localNodes.get(i).getAreaObject();
-                MsqSum[] sums = localNodes.get(i).getMsqSums();
-
-                long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-                jobsProcessedByNode.get(i).add(jobsNow);
-
-                int numServers = Math.max(sums.length - 1, 1);
-
-                if (jobsNow > 0) {
-                    double ETsReplica = a.getNodeArea() / jobsNow;
-                    double ETqReplica = a.getQueueArea() / jobsNow;
-                    double ESReplica  = a.getServiceArea() / jobsNow;
-
-                    double ENsReplica = a.getNodeArea() / STOP;
-                    double ENqReplica = a.getQueueArea() / STOP;
-                    double ENSReplica = a.getServiceArea() / STOP;
-
-                    double lambdaReplica = (double) jobsNow / STOP;
-                    double rhoReplica = (lambdaReplica * ESReplica) / (double) numServers;
-
-                    respTimeMeansByNode.get(i).add(ETsReplica);
-                    queueTimeMeansByNode.get(i).add(ETqReplica);
-                    serviceTimeMeansByNode.get(i).add(ESReplica);
-                    systemPopMeansByNode.get(i).add(ENsReplica);
-                    queuePopMeansByNode.get(i).add(ENqReplica);
-                    utilizationByNode.get(i).add(rhoReplica);
-                    lambdaByNode.get(i).add(lambdaReplica);
-                } else {
-                    respTimeMeansByNode.get(i).add(0.0);
-                    queueTimeMeansByNode.get(i).add(0.0);
-                    serviceTimeMeansByNode.get(i).add(0.0);
-                    systemPopMeansByNode.get(i).add(0.0);
-                    queuePopMeansByNode.get(i).add(0.0);
-                    utilizationByNode.get(i).add(0.0);
-                    lambdaByNode.get(i).add(0.0);
-                }
 
-                // reset delle statistiche interne per i nodi per la prossima replica
-                localNodes.get(i).resetStatistics();
+        // ogni worker ha i propri nodi e il proprio Rngs; i buffer delle repliche
+        // vengono ridotti in ordine di replica, quindi l'output non dipende dai thread
+        // (con simulation.adaptive=true a blocchi, finché la regola di arresto non è soddisfatta)
+        ReplicationEngine engine = new ReplicationEngine(config);
+        SequentialStoppingRule stopping = ADAPTIVE ? SequentialStoppingRule.forReplicas(config) : null;
+
+        List<List<List<List<Double>>>> perIntervalByMetric = List.of(
+                respTimeByNodeTime, queueTimeByNodeTime, serviceTimeByNodeTime, sysPopByNodeTime,
+                queuePopByNodeTime, utilByNodeTime, lambdaByNodeTime, servicePopByNodeTime);
+        List<List<List<Double>>> globalByMetric = List.of(
+                globalRespTimeByTime, globalSysPopByTime, globalQueueTimeByTime, globalQueuePopByTime,
+                globalServiceTimeByTime, globalServicePopByTime, globalRhoByTime);
+        List<List<List<Double>>> metricsByNode = List.of(
+                respTimeMeansByNode, queueTimeMeansByNode, serviceTimeMeansByNode, systemPopMeansByNode,
+                queuePopMeansByNode, utilizationByNode, lambdaByNode);
+
+        int done = 0;
+        int target = REPLICAS;
+        while (done < target) {
+            List<DailyReplica> replicas = engine.run(done, target,
+                    rep -> runDailyReplica(rep, STOP, numReports, dirPerInterval));
+            for (DailyReplica r : replicas) {
+                r.flushCsv();
+                DailyReplica.collect(r.perInterval, perIntervalByMetric);
+                DailyReplica.collectGlobal(r.globalPerInterval, globalByMetric);
+                DailyReplica.collectMetrics(r.metrics, metricsByNode);
+                for (int i = 0; i < NODES; i++) jobsProcessedByNode.get(i).add(r.jobs[i]);
             }
-        } // end replicas
+            done = target;
+            if (stopping != null) target = (int) stopping.nextTarget(done, metricsByNode);
+        }
 
         //=== Dopo tutte le repliche: calcolo le medie per ogni nodo e per ogni reportIndex e scrivo CSV per il plotting ===
         String dirMean = baseDir + "/interval_mean";
@@ -327,14 +147,6 @@ public class SimpleDailySystem implements Sistema {
 
         for (int i = 0; i < NODES; i++) {
             String file = dirMean + "/node_" + i + "_interval_mean.csv";
-            String header = "Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho";
-            IntervalCSVGenerator.ensureFile(file);
-            try {
-                // write header only if file empty
-                appendCsvLineIfFileEmpty(file, header);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
             for (int r = 0; r < numReports; r++) {
                 double reportTime = r * REPORTINTERVAL;
                 double meanETs = mean(respTimeByNodeTime.get(i).get(r));
@@ -346,7 +158,7 @@ public class SimpleDailySystem implements Sistema {
                 double meanRho = mean(utilByNodeTime.get(i).get(r));
                 double meanENS = mean(servicePopByNodeTime.get(i).get(r));
 
-                String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
+                double[] row = new double[]{
                         0, // seed=0 for aggregated mean file (no single seed)
                         i,
                         reportTime,
@@ -356,15 +168,13 @@ public class SimpleDailySystem implements Sistema {
                         meanENq,
                         meanES,
                         meanENS,
-                        meanRho);
-                appendCsvLine(file, header, line);
+                        meanRho};
+                appendCsvRow(file, row);
             }
         }
 
         // scrivo file globale di medie per-interval: media sui seed dei valori globali per-interval
         String fileG = dirMean + "/global_interval_mean.csv";
-        IntervalCSVGenerator.ensureFile(fileG);
-        appendCsvLineIfFileEmpty(fileG, CSV_HEADER);
         for (int r = 0; r < numReports; r++) {
             double reportTime = r * REPORTINTERVAL;
 
@@ -376,7 +186,7 @@ public class SimpleDailySystem implements Sistema {
             double meanENSG = mean(globalServicePopByTime.get(r));
             double meanRhoG = mean(globalRhoByTime.get(r));
 
-            String line = String.format(Locale.US, "%d,%d,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%.6f",
+            double[] row = new double[]{
                     0,
                     -1,
                     reportTime,
@@ -386,8 +196,8 @@ public class SimpleDailySystem implements Sistema {
                     meanENqG,
                     meanESG,
                     meanENSG,
-                    meanRhoG);
-            appendCsvLine(fileG, CSV_HEADER, line);
+                    meanRhoG};
+            appendCsvRow(fileG, row);
         }
 
         // === (resto del codice: meanStatsList, CI, printing, Comparison & Verification) ===
@@ -424,6 +234,7 @@ public class SimpleDailySystem implements Sistema {
         List<ConfidenceInterval> ciList = new ArrayList<>();
         for (int i = 0; i < NODES; i++) {
             ConfidenceInterval ci = new ConfidenceInterval(
+                    simConfig.levelOfConfidence,
                     respTimeMeansByNode.get(i),
                     queueTimeMeansByNode.get(i),
                     serviceTimeMeansByNode.get(i),
@@ -453,6 +264,9 @@ public class SimpleDailySystem implements Sistema {
             totalAvgJobsProcessed += Math.floor(avgJobs);
         }
         System.out.printf("Media totale jobs processati (approssimazione per difetto): %.0f%n", totalAvgJobsProcessed);
+        if (stopping != null) System.out.println(stopping.summary());
+        // i CSV a intervalli sono completi su disco quando la simulazione ritorna
+        AsyncCsvWriter.shared().flush();
 
         List<AnalyticalResult> analyticalResults = AnalyticalComputation.computeAnalyticalResults("FINITE_SIMULATION");
         List<Comparison.ComparisonResult> comparisonResults = Comparison.compareResults("FINITE_SIMULATION", analyticalResults, meanStatsList);
@@ -464,6 +278,184 @@ public class SimpleDailySystem implements Sistema {
         // not implemented here
     }
 
+    /**
+     * Esegue la replica rep (Rngs seminato con la sottosequenza della replica) e ne
+     * bufferizza i valori per intervallo, le medie di fine replica e le righe CSV.
+     */
+    private DailyReplica runDailyReplica(int rep, double STOP, int numReports, String dirPerInterval) {
+        Rngs rngs = new Rngs();
+        rngs.plantSeeds(SEED, rep);
+        long seedForRep = rngs.getSeed();
+
+        DailyReplica out = new DailyReplica(NODES, numReports);
+        String fileGlobal = dirPerInterval + "/global.csv";
+        double nextReportTime = REPORTINTERVAL;
+
+        // inizializza nodi
+        List<SimpleMultiServerNodeDaily> localNodes = init(rngs);
+        NextEventScheduler scheduler = new NextEventScheduler(localNodes);
+
+        // prev cumulativi usati per calcolare delta per intervallo
+        double[] prevNodeArea = new double[NODES];
+        double[] prevQueueArea = new double[NODES];
+        double[] prevServiceArea = new double[NODES];
+        long[] prevServed = new long[NODES];
+
+        // righe iniziali (t=0) per ciascun nodo e per il globale (Center = -1)
+        for (int i = 0; i < NODES; i++) {
+            out.addRow(dirPerInterval + "/node_" + i + ".csv", IntervalCSVGenerator.DAILY_LAYOUT,
+                    new double[]{seedForRep, i, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0});
+        }
+        out.addRow(fileGlobal, IntervalCSVGenerator.DAILY_LAYOUT, new double[]{
+                seedForRep, -1, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0});
+
+        // main event loop per replica
+        while (true) {
+            double tmin = scheduler.peekNextEventTime();
+
+            // reporting per-INTERVAL (delta rispetto a prev*)
+            if (nextReportTime <= tmin && nextReportTime <= STOP) {
+                scheduler.integrateAll();
+                int reportIndex = (int) (nextReportTime / REPORTINTERVAL); // 1..numReports-1
+                double reportTime = nextReportTime; // time to write in CSV
+
+                // accumulate global deltas
+                double cumDeltaNodeArea = 0.0;
+                double cumDeltaQueueArea = 0.0;
+                double cumDeltaServiceArea = 0.0;
+                long cumDeltaServed = 0L;
+                double sumRho = 0.0;
+
+                for (int i = 0; i < NODES; i++) {
+                    Area a = localNodes.get(i).getAreaObject();
+                    MsqSum[] sums = localNodes.get(i).getMsqSums();
+
+                    long servedNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+                    double nodeAreaNow = a.getNodeArea();
+                    double queueAreaNow = a.getQueueArea();
+                    double serviceAreaNow = a.getServiceArea();
+
+                    long deltaServed = servedNow - prevServed[i];
+                    double deltaNodeArea = nodeAreaNow - prevNodeArea[i];
+                    double deltaQueueArea = queueAreaNow - prevQueueArea[i];
+                    double deltaServiceArea = serviceAreaNow - prevServiceArea[i];
+
+                    // ETs, ETq, ES sull'intervallo (se no jobs nell'intervallo -> 0)
+                    double ETsInterval = (deltaServed > 0) ? deltaNodeArea / (double) deltaServed : 0.0;
+                    double ETqInterval = (deltaServed > 0) ? deltaQueueArea / (double) deltaServed : 0.0;
+                    double ESInterval  = (deltaServed > 0) ? deltaServiceArea / (double) deltaServed : 0.0;
+
+                    // ENs, ENq, ENS (medie sull'intervallo)
+                    double ENInterval = deltaNodeArea / REPORTINTERVAL;
+                    double ENqInterval = deltaQueueArea / REPORTINTERVAL;
+                    double ENSInterval = deltaServiceArea / REPORTINTERVAL;
+                    double lambdaInterval = deltaServed / REPORTINTERVAL;
+
+                    // === ρ: CALCOLO IDENTICO A SimpleSystem ===
+                    // numServers ricavato da MsqSum[] (come in SimpleSystem: sums.length - 1)
+                    int numServers = Math.max(sums.length - 1, 1);
+                    double rhoInterval = 0.0;
+                    if (deltaServed > 0) {
+                        // evita divisione per zero; se ESInterval==0 -> rhoInterval sarà 0 automaticamente
+                        rhoInterval = (lambdaInterval * ESInterval) / (double) numServers;
+                    }
+
+                    // per-node csv (one row per replica per interval) including Time and Center
+                    out.addRow(dirPerInterval + "/node_" + i + ".csv", IntervalCSVGenerator.DAILY_LAYOUT,
+                            new double[]{
+                                    seedForRep, i, reportTime,
+                                    ETsInterval,
+                                    ENInterval,
+                                    ETqInterval,
+                                    ENqInterval,
+                                    ESInterval,
+                                    ENSInterval,
+                                    rhoInterval});
+
+                    // valori usati per le medie per-intervallo across replicas
+                    out.perInterval[i][reportIndex] = new double[]{
+                            ETsInterval, ETqInterval, ESInterval, ENInterval,
+                            ENqInterval, rhoInterval, lambdaInterval, ENSInterval
+                    };
+
+                    // update prev cumulativi per il prossimo intervallo
+                    prevServed[i] = servedNow;
+                    prevNodeArea[i] = nodeAreaNow;
+                    prevQueueArea[i] = queueAreaNow;
+                    prevServiceArea[i] = serviceAreaNow;
+
+                    // update global accumulators
+                    cumDeltaNodeArea += deltaNodeArea;
+                    cumDeltaQueueArea += deltaQueueArea;
+                    cumDeltaServiceArea += deltaServiceArea;
+                    cumDeltaServed += deltaServed;
+                    sumRho += rhoInterval;
+                }
+
+                // riga globale per l'intervallo (per replica) includendo Time e Center=-1
+                double globalETs = (cumDeltaServed > 0) ? cumDeltaNodeArea / (double) cumDeltaServed : 0.0;
+                double globalEN = cumDeltaNodeArea / REPORTINTERVAL;
+                double globalETq = (cumDeltaServed > 0) ? cumDeltaQueueArea / (double) cumDeltaServed : 0.0;
+                double globalENq = cumDeltaQueueArea / REPORTINTERVAL;
+                double globalES  = (cumDeltaServed > 0) ? cumDeltaServiceArea / (double) cumDeltaServed : 0.0;
+                double globalENS = cumDeltaServiceArea / REPORTINTERVAL;
+
+                // globalRho: uso la media aritmetica delle rho dei nodi (coerente con comportamento precedente)
+                double globalRho = (NODES > 0) ? (sumRho / (double) NODES) : 0.0;
+
+                out.addRow(fileGlobal, IntervalCSVGenerator.DAILY_LAYOUT, new double[]{
+                        seedForRep, -1, reportTime,
+                        globalETs, globalEN, globalETq, globalENq, globalES, globalENS, globalRho});
+
+                out.globalPerInterval[reportIndex] = new double[]{
+                        globalETs, globalEN, globalETq, globalENq, globalES, globalENS, globalRho
+                };
+
+                nextReportTime += REPORTINTERVAL;
+                continue;
+            }
+
+            // fine replica
+            if (tmin > STOP) break;
+
+            // processa evento minimo (il nodo integra da sé le proprie aree)
+            scheduler.processNextEvent();
+        } // end while replica
+
+        scheduler.integrateAll();
+
+        // alla fine della replica: metriche cumulative finali per il set di medie "replica-wise"
+        for (int i = 0; i < NODES; i++) {
+            Area a = localNodes.get(i).getAreaObject();
+            MsqSum[] sums = localNodes.get(i).getMsqSums();
+
+            long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+            out.jobs[i] = jobsNow;
+
+            int numServers = Math.max(sums.length - 1, 1);
+
+            if (jobsNow > 0) {
+                double ETsReplica = a.getNodeArea() / jobsNow;
+                double ETqReplica = a.getQueueArea() / jobsNow;
+                double ESReplica  = a.getServiceArea() / jobsNow;
+
+                double ENsReplica = a.getNodeArea() / STOP;
+                double ENqReplica = a.getQueueArea() / STOP;
+
+                double lambdaReplica = (double) jobsNow / STOP;
+                double rhoReplica = (lambdaReplica * ESReplica) / (double) numServers;
+
+                out.metrics[i] = new double[]{
+                        ETsReplica, ETqReplica, ESReplica,
+                        ENsReplica, ENqReplica, rhoReplica, lambdaReplica
+                };
+            } else {
+                out.metrics[i] = new double[7];
+            }
+        }
+        return out;
+    }
+
     // --- helper: crea struttura vuota per ogni reportIndex ---
     private static List<List<Double>> makeEmptyPerTime(int numReports) {
         List<List<Double>> perTime = new ArrayList<>(numReports);
@@ -491,7 +483,7 @@ public class SimpleDailySystem implements Sistema {
                     config.getInt("simulation", "mediumveryhigh"),
                     config.getInt("simulation", "largeveryhigh")
             );
-            SimpleMultiServerNodeDaily n = new SimpleMultiServerNodeDaily(this, i, rng, selector);
+            SimpleMultiServerNodeDaily n = new SimpleMultiServerNodeDaily(this, i, rng, selector, simConfig);
             localNodes.add(n);
         }
         return localNodes;
@@ -507,38 +499,9 @@ public class SimpleDailySystem implements Sistema {
         return list.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
     }
 
-    /** Append a CSV line, writing header only if file is empty. */
-    private void appendCsvLine(String filepath, String header, String line) {
-        File f = new File(filepath);
-        try {
-            File parent = f.getParentFile();
-            if (parent != null) parent.mkdirs();
-            boolean needHeader = ( !f.exists() || f.length() == 0 );
-            try (FileWriter fw = new FileWriter(f, true);
-                 PrintWriter pw = new PrintWriter(fw)) {
-                if (needHeader) pw.println(header);
-                pw.println(line);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /** Write header only if file empty (helper used when header may already exist). */
-    private void appendCsvLineIfFileEmpty(String filepath, String header) {
-        File f = new File(filepath);
-        try {
-            File parent = f.getParentFile();
-            if (parent != null) parent.mkdirs();
-            if (!f.exists() || f.length() == 0) {
-                try (FileWriter fw = new FileWriter(f, true);
-                     PrintWriter pw = new PrintWriter(fw)) {
-                    pw.println(header);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /** Accoda una riga di medie per intervallo, con l'header se il file è vuoto. */
+    private void appendCsvRow(String filepath, double[] row) {
+        AsyncCsvWriter.shared().appendRows(filepath, IntervalCSVGenerator.DAILY_LAYOUT, List.of(row), false);
     }
 
 }
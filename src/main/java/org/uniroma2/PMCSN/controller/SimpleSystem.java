@@ -2,28 +2,31 @@ package org.uniroma2.PMCSN.controller;
 
 import org.uniroma2.PMCSN.centers.SimpleMultiServerNode;
 import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
+import org.uniroma2.PMCSN.libs.AntitheticRngs;
 import org.uniroma2.PMCSN.libs.Rngs;
 import org.uniroma2.PMCSN.model.*;
 import org.uniroma2.PMCSN.utils.AnalyticalComputation;
 import org.uniroma2.PMCSN.utils.AnalyticalComputation.AnalyticalResult;
+import org.uniroma2.PMCSN.utils.AsyncCsvWriter;
+import org.uniroma2.PMCSN.utils.BatchResultWriter;
 import org.uniroma2.PMCSN.utils.Comparison;
+import org.uniroma2.PMCSN.utils.ControlVariates;
 import org.uniroma2.PMCSN.utils.IntervalCSVGenerator;
+import org.uniroma2.PMCSN.utils.OutputFormat;
+import org.uniroma2.PMCSN.utils.SequentialStoppingRule;
 import org.uniroma2.PMCSN.utils.Verification;
 
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
-
-import static org.uniroma2.PMCSN.utils.IntervalCSVGenerator.writeGlobalInterval;
+import java.util.Map;
 
 public class SimpleSystem implements Sistema {
 
@@ -38,21 +41,62 @@ public class SimpleSystem implements Sistema {
     /*Case Infinite*/
     private final int BATCHSIZE;
     private final int NUMBATCHES;
-
-
-    ConfigurationManager config = new ConfigurationManager();
+    /* dimensione dei batch scelta sull'autocorrelazione (LBATCH/ASAP) invece di BATCHSIZE */
+    private final boolean AUTO_BATCH_SIZE;
+    private final int MIN_BATCHSIZE;
+    private final int MAX_BATCHSIZE;
+    private final double BATCH_ACF_THRESHOLD;
+    /* transitorio iniziale rilevato con MSER-5 prima dei batch */
+    private final boolean AUTO_WARMUP;
+    private final int WARMUP_WINDOW;
+    private final int WARMUP_OBSERVATIONS;
+    private final int MAX_WARMUP_OBSERVATIONS;
+    private final boolean CSV_OUTPUT;
+    /* solo simulazione a orizzonte infinito: niente verifica né report (benchmark) */
+    private final boolean BENCHMARK_MODE;
+    /* CSV o binario a colonne per i file a intervalli e per batch */
+    private final OutputFormat OUTPUT_FORMAT;
+    /* arresto sequenziale sulla semiampiezza degli intervalli (repliche/batch come pilota) */
+    private final boolean ADAPTIVE;
+    /* repliche finite a coppie antitetiche (u e 1 - u), osservazione = media della coppia */
+    private final boolean ANTITHETIC;
+
+
+    final ConfigurationManager config;
+    private final SimulationConfig simConfig;
+
+    /* eventi processati dall'ultima simulazione a orizzonte infinito */
+    private long processedEvents = 0;
 
     public SimpleSystem() {
+        this(new ConfigurationManager());
+    }
+
+    public SimpleSystem(ConfigurationManager config) {
 
-        // legge tutto da config.properties
+        // legge tutto da config.properties (più eventuali override)
+        this.config = config;
+        this.simConfig = new SimulationConfig(config);
         this.NODES = config.getInt("simulation", "nodes");
         this.REPLICAS = config.getInt("simulation", "replicas");
         this.STOP = config.getDouble("simulation", "stop");
-        this.REPORTINTERVAL = new ConfigurationManager()
-                .getDouble("simulation", "reportInterval");
+        this.REPORTINTERVAL = config.getDouble("simulation", "reportInterval");
         this.BATCHSIZE = config.getInt("simulation", "batchSize");
         this.NUMBATCHES = config.getInt("simulation", "numBatches");
+        this.AUTO_BATCH_SIZE = Boolean.parseBoolean(config.getString("simulation", "autoBatchSize").trim());
+        this.MIN_BATCHSIZE = config.getInt("simulation", "minBatchSize");
+        this.MAX_BATCHSIZE = config.getInt("simulation", "maxBatchSize");
+        this.BATCH_ACF_THRESHOLD = config.getDouble("simulation", "batchAcfThreshold");
+        this.AUTO_WARMUP = Boolean.parseBoolean(config.getString("simulation", "autoWarmup").trim());
+        this.WARMUP_WINDOW = config.getInt("simulation", "warmupWindow");
+        this.WARMUP_OBSERVATIONS = config.getInt("simulation", "warmupObservations");
+        this.MAX_WARMUP_OBSERVATIONS = config.getInt("simulation", "maxWarmupObservations");
         this.SEED = (long) config.getDouble("simulation", "seed");
+        this.CSV_OUTPUT = Boolean.parseBoolean(config.getString("simulation", "csvOutput").trim());
+        this.BENCHMARK_MODE = Boolean.parseBoolean(config.getString("simulation", "benchmarkMode").trim());
+        this.OUTPUT_FORMAT = OutputFormat.parse(config.getString("simulation", "outputFormat"));
+        this.ADAPTIVE = Boolean.parseBoolean(config.getString("simulation", "adaptive").trim());
+        this.ANTITHETIC = Boolean.parseBoolean(config.getString("simulation", "antithetic").trim());
 
         // 2) inizializza BasicStatistics per ogni nodo
         // Ora teniamo le statistiche per ogni nodo
@@ -63,27 +107,20 @@ public class SimpleSystem implements Sistema {
         }
     }
 
+    /** Eventi processati dall'ultima {@link #runInfiniteSimulation()} (per i benchmark). */
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
     @Override
     public void runFiniteSimulation() {
-        final double STOP = this.STOP;
         String baseDir = "csvFilesIntervals";
 
-        Rngs rngs = new Rngs();
-
         List<List<Long>> jobsProcessedByNode = new ArrayList<>(NODES);
         for (int i = 0; i < NODES; i++) {
             jobsProcessedByNode.add(new ArrayList<>());
         }
 
-        double[] ETs = new double[NODES];
-        double[] ETq = new double[NODES];
-        double[] ES = new double[NODES];
-        double[] ENs = new double[NODES];
-        double[] ENq = new double[NODES];
-        double[] ENS = new double[NODES];
-        double[] lambda = new double[NODES];
-        double[] rho = new double[NODES];
-
         // Liste per replica
         List<List<Double>> respTimeMeansByNode     = new ArrayList<>(NODES);
         List<List<Double>> queueTimeMeansByNode    = new ArrayList<>(NODES);
@@ -92,6 +129,9 @@ public class SimpleSystem implements Sistema {
         List<List<Double>> queuePopMeansByNode     = new ArrayList<>(NODES);
         List<List<Double>> utilizationByNode       = new ArrayList<>(NODES);
         List<List<Double>> lambdaByNode            = new ArrayList<>(NODES);
+        // variabili di controllo per replica (vedi FiniteReplica.controls)
+        List<List<Double>> admittedRateByNode      = new ArrayList<>(NODES);
+        List<List<Double>> serviceExcessByNode     = new ArrayList<>(NODES);
 
         for (int i = 0; i < NODES; i++) {
             respTimeMeansByNode   .add(new ArrayList<>());
@@ -101,134 +141,54 @@ public class SimpleSystem implements Sistema {
             queuePopMeansByNode   .add(new ArrayList<>());
             utilizationByNode     .add(new ArrayList<>());
             lambdaByNode          .add(new ArrayList<>());
+            admittedRateByNode    .add(new ArrayList<>());
+            serviceExcessByNode   .add(new ArrayList<>());
         }
 
         System.out.println("=== Finite Simulation ===");
 
-
-        rngs.plantSeeds(SEED);
-
-
-        for (int rep = 1; rep <= REPLICAS; rep++) {
-            long seedForRep = rngs.getSeed();
-
-            double nextReportTime = REPORTINTERVAL;
-            double lastArrivalTime = 0.0;
-            double lastCompletionTime = 0.0;
-
-
-            List<SimpleMultiServerNode> localNodes = init(rngs);
-
-
-            for (int i = 0; i < NODES; i++) {
-                IntervalCSVGenerator.writeIntervalData(
-                        true, seedForRep, i, 0,
-                        0, 0, 0, 0,
-                        0, 0, 0,
-                        baseDir
-                );
-            }
-            writeGlobalInterval(seedForRep, 0, localNodes, baseDir);
-
-
-            while (true) {
-                double tmin = Double.POSITIVE_INFINITY;
-                int idxMin = -1;
+        // con simulation.antithetic=true le REPLICAS repliche formano REPLICAS/2 coppie antitetiche
+        // (stesso costo) e ogni coppia conta come una replica: media della coppia come osservazione
+        int observations = ANTITHETIC ? REPLICAS / 2 : REPLICAS;
+        ReplicationEngine.checkReplicas("simulation.replicas", REPLICAS, observations);
+        if (ANTITHETIC) System.out.println("Variabili antitetiche: " + observations + " coppie di repliche");
+
+        // le repliche sono indipendenti (propri nodi, proprio Rngs): le eseguo in parallelo
+        // (con simulation.adaptive=true a blocchi, finché la regola di arresto non è soddisfatta)
+        ReplicationEngine engine = new ReplicationEngine(config);
+        SequentialStoppingRule stopping = ADAPTIVE ? SequentialStoppingRule.forReplicas(config) : null;
+        int done = 0;
+        int target = observations;
+        while (done < target) {
+            List<FiniteReplica> replicas = engine.run(done, target, rep -> ANTITHETIC
+                    ? runAntitheticPair(rep, baseDir)
+                    : runFiniteReplica(rep, baseDir, false));
+
+            // merge in ordine di replica: l'output non dipende dal numero di thread
+            for (FiniteReplica r : replicas) {
+                r.flush(OUTPUT_FORMAT);
                 for (int i = 0; i < NODES; i++) {
-                    double t = localNodes.get(i).peekNextEventTime();
-                    if (t < tmin) {
-                        tmin = t;
-                        idxMin = i;
-                    }
-                }
-
-                if (nextReportTime <= tmin && nextReportTime <= STOP) {
-                    for (int i = 0; i < NODES; i++) {
-
-
-
-                        SimpleMultiServerNode n = localNodes.get(i);
-                        Area a = n.getAreaObject();
-                        MsqSum[] sums = n.getMsqSums();
-
-                        long served = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-
-                        ETs[i] = a.getNodeArea() / served;
-                        ETq[i] = a.getQueueArea() / served;
-                        ES[i] = a.getServiceArea() / served;
-
-                        ENs[i] = a.getNodeArea() / nextReportTime;
-                        ENq[i] = a.getQueueArea() / nextReportTime;
-                        ENS[i] = a.getServiceArea() / nextReportTime;
-
-                        lambda[i] = served / nextReportTime;
-                        int numServers = sums.length - 1;
-                        rho[i] = (lambda[i] * ES[i]) / numServers;
-
-                        IntervalCSVGenerator.writeIntervalData(
-                                true, seedForRep, i, nextReportTime,
-                                ETs[i], ENs[i], ETq[i], ENq[i],
-                                ES[i], ENS[i], rho[i],
-                                baseDir
-                        );
+                    jobsProcessedByNode.get(i).add(r.jobs[i]);
+
+                    double[] m = r.metrics[i];
+                    if (m != null) {
+                        respTimeMeansByNode.get(i).add(m[0]);
+                        queueTimeMeansByNode.get(i).add(m[1]);
+                        serviceTimeMeansByNode.get(i).add(m[2]);
+                        systemPopMeansByNode.get(i).add(m[3]);
+                        queuePopMeansByNode.get(i).add(m[4]);
+                        utilizationByNode.get(i).add(m[5]);
+                        lambdaByNode.get(i).add(m[6]);
+                        admittedRateByNode.get(i).add(r.controls[i][0]);
+                        serviceExcessByNode.get(i).add(r.controls[i][1]);
                     }
-
-                    writeGlobalInterval(seedForRep, nextReportTime, localNodes, baseDir);
-                    nextReportTime += REPORTINTERVAL;
-                    continue;
-                }
-
-                if (tmin > STOP) break;
-
-                for (SimpleMultiServerNode n : localNodes) {
-                    n.integrateTo(tmin);
-                }
-
-                localNodes.get(idxMin).processNextEvent(tmin);
-
-                if (idxMin == 0) {
-                    lastArrivalTime = Math.max(lastArrivalTime, tmin);
-                } else {
-                    lastCompletionTime = Math.max(lastCompletionTime, tmin);
                 }
             }
-
-            // Popoliamo le liste con i valori calcolati a fine replica per ogni nodo
-            for (int i = 0; i < NODES; i++) {
-                Area a = localNodes.get(i).getAreaObject();
-                MsqSum[] sums = localNodes.get(i).getMsqSums();
-
-                long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
-                jobsProcessedByNode.get(i).add(jobsNow);
-
-                int numServers = sums.length - 1;
-
-                if (jobsNow > 0) {
-                    double ETsReplica = a.getNodeArea() / jobsNow;
-                    double ETqReplica = a.getQueueArea() / jobsNow;
-                    double ESReplica  = a.getServiceArea() / jobsNow;
-
-                    double ENsReplica = a.getNodeArea() / STOP;
-                    double ENqReplica = a.getQueueArea() / STOP;
-                    double ENSReplica = a.getServiceArea() / STOP;
-
-                    double lambdaReplica = jobsNow / STOP;
-                    double rhoReplica = (lambdaReplica * ESReplica) / numServers;
-
-                    respTimeMeansByNode.get(i).add(ETsReplica);
-                    queueTimeMeansByNode.get(i).add(ETqReplica);
-                    serviceTimeMeansByNode.get(i).add(ESReplica);
-                    systemPopMeansByNode.get(i).add(ENsReplica);
-                    queuePopMeansByNode.get(i).add(ENqReplica);
-                    utilizationByNode.get(i).add(rhoReplica);
-                    lambdaByNode.get(i).add(lambdaReplica);
-                }
-            }
-
-            // Reset delle statistiche interne per i nodi per la prossima replica
-            for (SimpleMultiServerNode n : localNodes) {
-                n.resetStatistics();
-                // eventualmente resettare anche aree se necessario
+            done = target;
+            if (stopping != null) {
+                target = (int) stopping.nextTarget(done, List.of(
+                        respTimeMeansByNode, queueTimeMeansByNode, serviceTimeMeansByNode, systemPopMeansByNode,
+                        queuePopMeansByNode, utilizationByNode, lambdaByNode));
             }
         }
 
@@ -278,6 +238,7 @@ public class SimpleSystem implements Sistema {
         List<ConfidenceInterval> ciList = new ArrayList<>();
         for (int i = 0; i < NODES; i++) {
             ConfidenceInterval ci = new ConfidenceInterval(
+                    simConfig.levelOfConfidence,
                     respTimeMeansByNode.get(i),
                     queueTimeMeansByNode.get(i),
                     serviceTimeMeansByNode.get(i),
@@ -309,6 +270,9 @@ public class SimpleSystem implements Sistema {
             totalAvgJobsProcessed += Math.floor(avgJobs);  // tronca la media per difetto
         }
         System.out.printf("Media totale jobs processati (approssimazione per difetto): %.0f%n", totalAvgJobsProcessed);
+        if (stopping != null) System.out.println(stopping.summary());
+        // i CSV a intervalli sono completi su disco quando la simulazione ritorna
+        AsyncCsvWriter.shared().flush();
 
         // === COMPARISON E VERIFICA ===
         List<AnalyticalResult> analyticalResults =
@@ -323,6 +287,27 @@ public class SimpleSystem implements Sistema {
                 comparisonResults,
                 ciList
         );
+
+        // === VARIABILI DI CONTROLLO ===
+        // arrivi ammessi e lavoro di servizio per replica, con media nota anche a orizzonte finito:
+        // regressione per E[Ts], E[Tq], E[N], E[Nq]
+        List<Verification.ControlVariateResult> controlVariateResults =
+                Verification.verifyControlVariates(
+                        "FINITE_SIMULATION",
+                        AnalyticalComputation.controlVariateMeans(simConfig, NODES),
+                        ciList,
+                        respTimeMeansByNode,
+                        queueTimeMeansByNode,
+                        systemPopMeansByNode,
+                        queuePopMeansByNode,
+                        admittedRateByNode,
+                        serviceExcessByNode,
+                        simConfig.levelOfConfidence
+                );
+        System.out.println("=== VARIABILI DI CONTROLLO (arrivi ammessi, lavoro di servizio) ===");
+        for (Verification.ControlVariateResult result : controlVariateResults) {
+            printControlVariateResult(result);
+        }
     }
 
 
@@ -337,31 +322,26 @@ public class SimpleSystem implements Sistema {
     public void runInfiniteSimulation() {
         // --- Preparazione directory CSV ---
         String baseDir = "csvFilesBatches";
-        try {
-            Files.createDirectories(Paths.get(baseDir));
-        } catch (IOException e) {
-            System.err.println("Impossibile creare directory " + baseDir + ": " + e.getMessage());
+        if (CSV_OUTPUT) {
+            try {
+                Files.createDirectories(Paths.get(baseDir));
+            } catch (IOException e) {
+                System.err.println("Impossibile creare directory " + baseDir + ": " + e.getMessage());
+            }
         }
 
         // --- Creo un writer per ciascun nodo e scrivo intestazione solo cumulative ---
-        List<BufferedWriter> writers = new ArrayList<>(NODES);
+        // (con simulation.csvOutput=false i writer restano null e non si scrive nulla;
+        // con simulation.outputFormat=BINARY i file hanno estensione .bin)
+        List<BatchResultWriter> writers = new ArrayList<>(NODES);
         for (int i = 0; i < NODES; i++) {
+            if (!CSV_OUTPUT) {
+                writers.add(null);
+                continue;
+            }
             Path nodePath = Paths.get(baseDir, String.format("INFINITE_node%d.csv", i));
             try {
-                BufferedWriter w = Files.newBufferedWriter(
-                        nodePath,
-                        StandardCharsets.UTF_8,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING
-                );
-                // Header: batch + solo medie cumulative
-                w.write("SimulationType,Batch,"
-                        + "ETs,ETq,ES,"
-                        + "EN,ENq,rho,lambda");
-                w.newLine();
-                w.write("INFINITE,0,0,0,0,0,0,0,0");
-                w.newLine();
-                writers.add(w);
+                writers.add(BatchResultWriter.open(OUTPUT_FORMAT, nodePath));
             } catch (IOException e) {
                 System.err.println("Impossibile inizializzare CSV per nodo " + i + ": " + e.getMessage());
                 writers.add(null);
@@ -369,42 +349,24 @@ public class SimpleSystem implements Sistema {
         }
 
         Path globalPath = Paths.get(baseDir, "global.csv");
-        BufferedWriter globalWriter = null;
-        try {
-            globalWriter = Files.newBufferedWriter(
-                    globalPath,
-                    StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING
-            );
-            // Header: batch + solo medie cumulative
-            globalWriter.write("SimulationType,Batch,"
-                    + "ETs,ETq,ES,"
-                    + "EN,ENq,rho,lambda");
-            globalWriter.newLine();
-            globalWriter.write("INFINITE,0,0,0,0,0,0,0,0");
-            globalWriter.newLine();
-        } catch (IOException e) {
-            System.err.println("Impossibile inizializzare CSV per sistema : " + e.getMessage());
+        BatchResultWriter globalWriter = null;
+        if (CSV_OUTPUT) {
+            try {
+                globalWriter = BatchResultWriter.open(OUTPUT_FORMAT, globalPath);
+            } catch (IOException e) {
+                System.err.println("Impossibile inizializzare CSV per sistema : " + e.getMessage());
+            }
         }
+        double[] row = new double[BatchResultWriter.LAYOUT.stored()];
 
-        // Liste per accumulare i valori batch‑per‑batch
-        List<List<Double>> respTimeMeansByNode    = new ArrayList<>(NODES);
-        List<List<Double>> queueTimeMeansByNode   = new ArrayList<>(NODES);
-        List<List<Double>> serviceTimeMeansByNode = new ArrayList<>(NODES);
-        List<List<Double>> systemPopMeansByNode   = new ArrayList<>(NODES);
-        List<List<Double>> queuePopMeansByNode    = new ArrayList<>(NODES);
-        List<List<Double>> utilizationByNode      = new ArrayList<>(NODES);
-        List<List<Double>> lambdaByNode           = new ArrayList<>(NODES);
-        for (int i = 0; i < NODES; i++) {
-            respTimeMeansByNode   .add(new ArrayList<>());
-            queueTimeMeansByNode  .add(new ArrayList<>());
-            serviceTimeMeansByNode.add(new ArrayList<>());
-            systemPopMeansByNode  .add(new ArrayList<>());
-            queuePopMeansByNode   .add(new ArrayList<>());
-            utilizationByNode     .add(new ArrayList<>());
-            lambdaByNode          .add(new ArrayList<>());
-        }
+        // Statistiche in streaming dei valori batch-per-batch (memoria costante in NUMBATCHES)
+        BatchAccumulator[] respTimeMeansByNode    = BatchAccumulator.forNodes(NODES);
+        BatchAccumulator[] queueTimeMeansByNode   = BatchAccumulator.forNodes(NODES);
+        BatchAccumulator[] serviceTimeMeansByNode = BatchAccumulator.forNodes(NODES);
+        BatchAccumulator[] systemPopMeansByNode   = BatchAccumulator.forNodes(NODES);
+        BatchAccumulator[] queuePopMeansByNode    = BatchAccumulator.forNodes(NODES);
+        BatchAccumulator[] utilizationByNode      = BatchAccumulator.forNodes(NODES);
+        BatchAccumulator[] lambdaByNode           = BatchAccumulator.forNodes(NODES);
 
         double[] areaNodeSnap   = new double[NODES];
         double[] areaQueueSnap  = new double[NODES];
@@ -416,11 +378,22 @@ public class SimpleSystem implements Sistema {
         double endTimeBatch;
         int batchNumber     = 0;
         int jobObservations = 0;
+        long batchTarget    = NUMBATCHES;
+        SequentialStoppingRule stopping = ADAPTIVE ? SequentialStoppingRule.forBatches(config) : null;
+        // dimensione dei batch: fissa (BATCHSIZE) o scelta raddoppiando da minBatchSize
+        BatchSizer sizer = AUTO_BATCH_SIZE ? new BatchSizer(NUMBATCHES, MIN_BATCHSIZE, MAX_BATCHSIZE, BATCH_ACF_THRESHOLD) : null;
+        int batchSize       = AUTO_BATCH_SIZE ? MIN_BATCHSIZE : BATCHSIZE;
+        // transitorio iniziale: finestre di WARMUP_WINDOW completamenti finché MSER-5 non lo individua
+        WarmupDetector warmup = AUTO_WARMUP
+                ? new WarmupDetector(NODES, WARMUP_WINDOW, WARMUP_OBSERVATIONS, MAX_WARMUP_OBSERVATIONS) : null;
+        int windowSize      = AUTO_WARMUP ? WARMUP_WINDOW : batchSize;
+        BatchWindow[] single = {new BatchWindow(NODES)};
 
         // Inizializzo RNG e nodi
         Rngs rngs = new Rngs();
         rngs.plantSeeds(SEED);
         List<SimpleMultiServerNode> nodes = init(rngs);
+        NextEventScheduler scheduler = new NextEventScheduler(nodes);
 
         // Snapshot iniziali
         for (int i = 0; i < NODES; i++) {
@@ -434,22 +407,10 @@ public class SimpleSystem implements Sistema {
 
 
         // Loop principale per batch
-        while (batchNumber < NUMBATCHES) {
-            // Trovo prossimo evento
-            double tmin = Double.POSITIVE_INFINITY;
-            int idxMin  = -1;
-            for (int i = 0; i < NODES; i++) {
-                double t = nodes.get(i).peekNextEventTime();
-                if (t < tmin) {
-                    tmin   = t;
-                    idxMin = i;
-                }
-            }
-
-            // Integro e processo evento
-            for (SimpleMultiServerNode n : nodes) n.integrateTo(tmin);
-            clock = tmin;
-            nodes.get(idxMin).processNextEvent(tmin);
+        while (batchNumber < batchTarget) {
+            // Processo il prossimo evento (il centro coinvolto integra da sé le proprie aree)
+            int idxMin = scheduler.processNextEvent();
+            clock = scheduler.getClock();
 
 
 
@@ -457,112 +418,26 @@ public class SimpleSystem implements Sistema {
                 jobObservations++;
             }
 
-            // Quando raccolgo BATCHSIZE completamenti, calcolo e scrivo CSV
-            if (jobObservations == BATCHSIZE) {
+            // Quando raccolgo i completamenti del batch, ne calcolo gli incrementi per centro
+            if (jobObservations == windowSize) {
+                scheduler.integrateAll();
                 endTimeBatch = clock;
-                double batchTime = endTimeBatch - startTimeBatch;
-
-                double ETs_glob   = 0;
-                double ETq_glob   = 0;
-                double ES_glob    = 0;
-                double ENs_glob   = 0;
-                double ENq_glob   = 0;
-                double rho_glob   = 0;
-                double lambda_glob = 0;
 
+                boolean warming = warmup != null && !warmup.isDone();
+                BatchWindow window = !warming && sizer != null && !sizer.isSelected() ? new BatchWindow(NODES) : single[0];
+                window.time = endTimeBatch - startTimeBatch;
                 for (int i = 0; i < NODES; i++) {
                     Area     a         = nodes.get(i).getAreaObject();
                     MsqSum[] ss        = nodes.get(i).getMsqSums();
                     long     jobsNow   = Arrays.stream(ss).mapToLong(s -> s.served).sum();
 
-                    long   deltaJobs      = jobsNow - jobsServedSnap[i];
-                    double deltaNodeArea  = a.getNodeArea()   - areaNodeSnap[i];
-                    double deltaQueueArea = a.getQueueArea()  - areaQueueSnap[i];
-                    double deltaServArea  = a.getServiceArea() - areaServSnap[i];
-                    int    numServers     = ss.length - 1;
-
-                    if (deltaJobs > 0 && batchTime > 0) {
-                        // 1) Calcolo valori batch
-                        double ETs_batch    = deltaNodeArea  / deltaJobs;
-                        double ETq_batch    = deltaQueueArea / deltaJobs;
-                        double ES_batch     = deltaServArea  / deltaJobs;
-                        double ENs_batch    = deltaNodeArea  / batchTime;
-                        double ENq_batch    = deltaQueueArea / batchTime;
-                        double lambda_batch = deltaJobs      / batchTime;
-                        double rho_batch    = (lambda_batch * ES_batch) / numServers;
-
-                        // 2) Li accumulo per il calcolo cumulativo
-                        respTimeMeansByNode   .get(i).add(ETs_batch);
-                        queueTimeMeansByNode  .get(i).add(ETq_batch);
-                        serviceTimeMeansByNode.get(i).add(ES_batch);
-                        systemPopMeansByNode  .get(i).add(ENs_batch);
-                        queuePopMeansByNode   .get(i).add(ENq_batch);
-                        utilizationByNode     .get(i).add(rho_batch);
-                        lambdaByNode          .get(i).add(lambda_batch);
-
-                        // 3) Calcolo medie cumulative
-                        double ETs_cum   = computeMean(respTimeMeansByNode.get(i));
-                        double ETq_cum   = computeMean(queueTimeMeansByNode.get(i));
-                        double ES_cum    = computeMean(serviceTimeMeansByNode.get(i));
-                        double ENs_cum   = computeMean(systemPopMeansByNode.get(i));
-                        double ENq_cum   = computeMean(queuePopMeansByNode.get(i));
-                        double rho_cum   = computeMean(utilizationByNode.get(i));
-                        double lambda_cum= computeMean(lambdaByNode.get(i));
-
-                        ETs_glob   += ETs_cum;
-                        ETq_glob   += ETq_cum;
-                        ES_glob    += ES_cum;
-                        ENs_glob   += ENs_cum;
-                        ENq_glob   += ENq_cum;
-                        rho_glob   += rho_cum;
-                        lambda_glob += lambda_cum;
-
-                        // 4) Scrittura solo dei cumulativi
-                        BufferedWriter w = writers.get(i);
-                        if (w != null) {
-                            try {
-                                String line = String.join(",",
-                                        "INFINITE",
-                                        Integer.toString(batchNumber+1),
-                                        String.format(Locale.US, "%.6f", ETs_cum),
-                                        String.format(Locale.US, "%.6f", ETq_cum),
-                                        String.format(Locale.US, "%.6f", ES_cum),
-                                        String.format(Locale.US, "%.6f", ENs_cum),
-                                        String.format(Locale.US, "%.6f", ENq_cum),
-                                        String.format(Locale.US, "%.6f", rho_cum),
-                                        String.format(Locale.US, "%.6f", lambda_cum)
-                                );
-                                w.write(line);
-                                w.newLine();
-                            } catch (IOException e) {
-                                System.err.println("Errore scrittura CSV nodo " + i
-                                        + " batch " + batchNumber + ": " + e.getMessage());
-                            }
-                        }
-                    }
+                    window.jobs[i]        = jobsNow - jobsServedSnap[i];
+                    window.nodeArea[i]    = a.getNodeArea()   - areaNodeSnap[i];
+                    window.queueArea[i]   = a.getQueueArea()  - areaQueueSnap[i];
+                    window.serviceArea[i] = a.getServiceArea() - areaServSnap[i];
+                    window.busyAtEnd[i]   = -1;
                 }
 
-                if (globalWriter != null) {
-                    try {
-                        String line = String.join(",",
-                                "INFINITE",
-                                Integer.toString(batchNumber+1),
-                                String.format(Locale.US, "%.6f", ETs_glob/3),
-                                String.format(Locale.US, "%.6f", ETq_glob/3),
-                                String.format(Locale.US, "%.6f", ES_glob/3),
-                                String.format(Locale.US, "%.6f", ENs_glob/3),
-                                String.format(Locale.US, "%.6f", ENq_glob/3),
-                                String.format(Locale.US, "%.6f", rho_glob/3),
-                                String.format(Locale.US, "%.6f", lambda_glob/3)
-                        );
-                        globalWriter.write(line);
-                        globalWriter.newLine();
-                    } catch (IOException e) {
-                        System.err.println("Errore scrittura CSV sistema batch " + batchNumber + ": " + e.getMessage());
-                    }
-                }
-
-
                 // Reset statistiche e snapshot per il batch successivo
                 for (SimpleMultiServerNode n : nodes) n.resetStatistics();
                 Arrays.fill(areaNodeSnap,   0.0);
@@ -571,13 +446,132 @@ public class SimpleSystem implements Sistema {
                 Arrays.fill(jobsServedSnap, 0L);
 
                 startTimeBatch = endTimeBatch;
-                batchNumber++;
                 jobObservations = 0;
+
+                // con la dimensione automatica i batch escono tutti insieme, quando è scelta
+                BatchWindow[] ready = single;
+                int readyCount = 1;
+                if (warming) {
+                    // le finestre del transitorio servono solo al rilevamento: finito questo,
+                    // si riparte dalle statistiche appena azzerate con la dimensione dei batch
+                    if (warmup.add(window)) windowSize = batchSize;
+                    readyCount = 0;
+                } else if (sizer != null && !sizer.isSelected()) {
+                    boolean chosen = sizer.add(window);
+                    windowSize = sizer.batchSize();
+                    ready = sizer.windows();
+                    readyCount = chosen ? sizer.count() : 0;
+                }
+
+                for (int r = 0; r < readyCount; r++) {
+                    BatchWindow b = ready[r];
+                    double batchTime = b.time;
+
+                    double ETs_glob   = 0;
+                    double ETq_glob   = 0;
+                    double ES_glob    = 0;
+                    double ENs_glob   = 0;
+                    double ENq_glob   = 0;
+                    double rho_glob   = 0;
+                    double lambda_glob = 0;
+
+                    for (int i = 0; i < NODES; i++) {
+                        MsqSum[] ss        = nodes.get(i).getMsqSums();
+
+                        long   deltaJobs      = b.jobs[i];
+                        double deltaNodeArea  = b.nodeArea[i];
+                        double deltaQueueArea = b.queueArea[i];
+                        double deltaServArea  = b.serviceArea[i];
+                        int    numServers     = ss.length - 1;
+
+                        if (deltaJobs > 0 && batchTime > 0) {
+                            // 1) Calcolo valori batch
+                            double ETs_batch    = deltaNodeArea  / deltaJobs;
+                            double ETq_batch    = deltaQueueArea / deltaJobs;
+                            double ES_batch     = deltaServArea  / deltaJobs;
+                            double ENs_batch    = deltaNodeArea  / batchTime;
+                            double ENq_batch    = deltaQueueArea / batchTime;
+                            double lambda_batch = deltaJobs      / batchTime;
+                            double rho_batch    = (lambda_batch * ES_batch) / numServers;
+
+                            // 2) Li accumulo per il calcolo cumulativo
+                            respTimeMeansByNode[i]   .add(ETs_batch);
+                            queueTimeMeansByNode[i]  .add(ETq_batch);
+                            serviceTimeMeansByNode[i].add(ES_batch);
+                            systemPopMeansByNode[i]  .add(ENs_batch);
+                            queuePopMeansByNode[i]   .add(ENq_batch);
+                            utilizationByNode[i]     .add(rho_batch);
+                            lambdaByNode[i]          .add(lambda_batch);
+
+                            // 3) Calcolo medie cumulative
+                            double ETs_cum   = respTimeMeansByNode[i].mean();
+                            double ETq_cum   = queueTimeMeansByNode[i].mean();
+                            double ES_cum    = serviceTimeMeansByNode[i].mean();
+                            double ENs_cum   = systemPopMeansByNode[i].mean();
+                            double ENq_cum   = queuePopMeansByNode[i].mean();
+                            double rho_cum   = utilizationByNode[i].mean();
+                            double lambda_cum= lambdaByNode[i].mean();
+
+                            ETs_glob   += ETs_cum;
+                            ETq_glob   += ETq_cum;
+                            ES_glob    += ES_cum;
+                            ENs_glob   += ENs_cum;
+                            ENq_glob   += ENq_cum;
+                            rho_glob   += rho_cum;
+                            lambda_glob += lambda_cum;
+
+                            // 4) Scrittura solo dei cumulativi
+                            BatchResultWriter w = writers.get(i);
+                            if (w != null) {
+                                try {
+                                    row[0] = batchNumber + 1;
+                                    row[1] = ETs_cum;
+                                    row[2] = ETq_cum;
+                                    row[3] = ES_cum;
+                                    row[4] = ENs_cum;
+                                    row[5] = ENq_cum;
+                                    row[6] = rho_cum;
+                                    row[7] = lambda_cum;
+                                    w.writeRow(row);
+                                } catch (IOException e) {
+                                    System.err.println("Errore scrittura CSV nodo " + i
+                                            + " batch " + batchNumber + ": " + e.getMessage());
+                                }
+                            }
+                        }
+                    }
+
+                    if (globalWriter != null) {
+                        try {
+                            row[0] = batchNumber + 1;
+                            row[1] = ETs_glob/3;
+                            row[2] = ETq_glob/3;
+                            row[3] = ES_glob/3;
+                            row[4] = ENs_glob/3;
+                            row[5] = ENq_glob/3;
+                            row[6] = rho_glob/3;
+                            row[7] = lambda_glob/3;
+                            globalWriter.writeRow(row);
+                        } catch (IOException e) {
+                            System.err.println("Errore scrittura CSV sistema batch " + batchNumber + ": " + e.getMessage());
+                        }
+                    }
+
+                    batchNumber++;
+
+                    if (stopping != null && batchNumber == batchTarget) {
+                        batchTarget = stopping.nextTarget(batchNumber,
+                                respTimeMeansByNode, queueTimeMeansByNode, serviceTimeMeansByNode,
+                                systemPopMeansByNode, queuePopMeansByNode, utilizationByNode, lambdaByNode);
+                    }
+                }
             }
         }
 
+        processedEvents = scheduler.getProcessedEvents();
+
         // Chiudo writer
-        for (BufferedWriter w : writers) {
+        for (BatchResultWriter w : writers) {
             if (w != null) {
                 try {
                     w.close();
@@ -596,19 +590,22 @@ public class SimpleSystem implements Sistema {
             }
         }
 
+        // con simulation.benchmarkMode=true nessun file di confronto/verifica né report:
+        // la misura comprende solo la simulazione
+        if (BENCHMARK_MODE) return;
 
         // --- Calcolo medie cumulative globali e stampa finale ---
         List<MeanStatistics> meanStatsList = new ArrayList<>(NODES);
         for (int i = 0; i < NODES; i++) {
             meanStatsList.add(new MeanStatistics(
                     "Center" + i,
-                    computeMean(respTimeMeansByNode.get(i)),
-                    computeMean(serviceTimeMeansByNode.get(i)),
-                    computeMean(queueTimeMeansByNode.get(i)),
-                    computeMean(lambdaByNode.get(i)),
-                    computeMean(systemPopMeansByNode.get(i)),
-                    computeMean(utilizationByNode.get(i)),
-                    computeMean(queuePopMeansByNode.get(i))
+                    respTimeMeansByNode[i].mean(),
+                    serviceTimeMeansByNode[i].mean(),
+                    queueTimeMeansByNode[i].mean(),
+                    lambdaByNode[i].mean(),
+                    systemPopMeansByNode[i].mean(),
+                    utilizationByNode[i].mean(),
+                    queuePopMeansByNode[i].mean()
             ));
         }
 
@@ -622,13 +619,14 @@ public class SimpleSystem implements Sistema {
         List<ConfidenceInterval> ciList = new ArrayList<>();
         for (int i = 0; i < NODES; i++) {
             ConfidenceInterval ci = new ConfidenceInterval(
-                    respTimeMeansByNode.get(i),
-                    queueTimeMeansByNode.get(i),
-                    serviceTimeMeansByNode.get(i),
-                    systemPopMeansByNode.get(i),
-                    queuePopMeansByNode.get(i),
-                    utilizationByNode.get(i),
-                    lambdaByNode.get(i)
+                    simConfig.levelOfConfidence,
+                    respTimeMeansByNode[i],
+                    queueTimeMeansByNode[i],
+                    serviceTimeMeansByNode[i],
+                    systemPopMeansByNode[i],
+                    queuePopMeansByNode[i],
+                    utilizationByNode[i],
+                    lambdaByNode[i]
             );
             ciList.add(ci);
 
@@ -648,20 +646,19 @@ public class SimpleSystem implements Sistema {
         for (int i = 0; i < NODES; i++) {
             String centerName = "Center" + i;
             List<BatchMetric> allBatchMetrics = List.of(
-                    new BatchMetric("E[Ts]", respTimeMeansByNode.get(i)),
-                    new BatchMetric("E[Tq]", queueTimeMeansByNode.get(i)),
-                    new BatchMetric("E[Si]", serviceTimeMeansByNode.get(i)),
-                    new BatchMetric("E[Ns]", systemPopMeansByNode.get(i)),
-                    new BatchMetric("E[Nq]", queuePopMeansByNode.get(i)),
-                    new BatchMetric("ρ", utilizationByNode.get(i)),
-                    new BatchMetric("λ", lambdaByNode.get(i))
+                    new BatchMetric("E[Ts]", respTimeMeansByNode[i]),
+                    new BatchMetric("E[Tq]", queueTimeMeansByNode[i]),
+                    new BatchMetric("E[Si]", serviceTimeMeansByNode[i]),
+                    new BatchMetric("E[Ns]", systemPopMeansByNode[i]),
+                    new BatchMetric("E[Nq]", queuePopMeansByNode[i]),
+                    new BatchMetric("ρ", utilizationByNode[i]),
+                    new BatchMetric("λ", lambdaByNode[i])
             );
-            for (BatchMetric batchMetric : allBatchMetrics) {
-                double acfValue = acf(batchMetric.values);
-                batchMetric.setAcfValue(acfValue);
-            }
-            printBatchStatisticsResult(centerName, allBatchMetrics, BATCHSIZE, NUMBATCHES);
+            printBatchStatisticsResult(centerName, allBatchMetrics, windowSize, batchNumber);
         }
+        if (warmup != null) System.out.println(warmup.summary());
+        if (sizer != null) System.out.println(sizer.summary());
+        if (stopping != null) System.out.println(stopping.summary());
 
 
         List<Verification.VerificationResult> verificationResults =
@@ -694,6 +691,21 @@ public class SimpleSystem implements Sistema {
 
 
 
+    private static void printControlVariateResult(Verification.ControlVariateResult result) {
+        ConfidenceInterval ci = result.confidenceIntervals;
+        System.out.println(result.name);
+        printControlVariateLine("E[Ts]", result.responseTime, ci.getResponseTimeCI());
+        printControlVariateLine("E[Tq]", result.queueTime, ci.getQueueTimeCI());
+        printControlVariateLine("E[Ns]", result.systemPopulation, ci.getSystemPopulationCI());
+        printControlVariateLine("E[Nq]", result.queuePopulation, ci.getQueuePopulationCI());
+    }
+
+    private static void printControlVariateLine(String metric, ControlVariates.Estimate estimate, double rawCI) {
+        String color = estimate.halfWidth < rawCI ? BRIGHT_GREEN : BRIGHT_YELLOW;
+        System.out.printf("%s: mean %.4f ±%.4f, control variates %.4f %s±%.4f%s%n",
+                metric, estimate.rawMean, rawCI, estimate.mean, color, estimate.halfWidth, RESET);
+    }
+
     private static void printVerificationResult(Verification.VerificationResult result) {
         String within  = BRIGHT_GREEN + "within" + RESET;
         String outside = BRIGHT_RED   + "outside" + RESET;
@@ -794,45 +806,203 @@ public class SimpleSystem implements Sistema {
         }
     }
 
-    // helper locale per calcolare la media
-    private double computeMean(List<Double> list) {
-        return list.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+    /**
+     * Metriche di fine replica della replica rep, senza righe a intervalli: per centro
+     * {E[Ts], E[Tq], E[S], E[N], E[Nq], rho, lambda}, null se nessun job servito.
+     * Con lo stesso SEED la replica rep usa le stesse sottosequenze qualunque sia la
+     * configurazione dei centri (numeri casuali comuni, vedi {@link PairedComparison}).
+     */
+    double[][] replicaMetrics(int rep) {
+        return runFiniteReplica(rep, null, false).metrics;
     }
 
-    private List<SimpleMultiServerNode> init(Rngs rng) {
-        List<SimpleMultiServerNode> localNodes = new ArrayList<>();
+    /**
+     * Esegue una singola replica a orizzonte finito. Il generatore è seminato con la
+     * sottosequenza della replica, quindi la replica non dipende da quelle precedenti.
+     * Le righe CSV vengono bufferizzate e scritte dal chiamante in ordine di replica
+     * (nessuna riga con baseDir null). Con antithetic il generatore restituisce 1 - u.
+     */
+    private FiniteReplica runFiniteReplica(int rep, String baseDir, boolean antithetic) {
+        final double STOP = this.STOP;
+
+        Rngs rngs = antithetic ? new AntitheticRngs() : new Rngs();
+        rngs.plantSeeds(SEED, rep);
+        // nei CSV la replica antitetica ha il seme col segno opposto, per distinguerla dalla sua coppia
+        long seedForRep = antithetic ? -rngs.getSeed() : rngs.getSeed();
+
+        FiniteReplica out = new FiniteReplica(NODES, baseDir != null);
+
+        double[] ETs = new double[NODES];
+        double[] ETq = new double[NODES];
+        double[] ES = new double[NODES];
+        double[] ENs = new double[NODES];
+        double[] ENq = new double[NODES];
+        double[] ENS = new double[NODES];
+        double[] lambda = new double[NODES];
+        double[] rho = new double[NODES];
+
+        double nextReportTime = REPORTINTERVAL;
+
+        List<SimpleMultiServerNode> localNodes = init(rngs);
+        NextEventScheduler scheduler = new NextEventScheduler(localNodes);
+
         for (int i = 0; i < NODES; i++) {
-            SimpleMultiServerNode n = new SimpleMultiServerNode(this, i, rng);
-            localNodes.add(n);
+            out.addRow(IntervalCSVGenerator.intervalFile(true, i, baseDir),
+                    IntervalCSVGenerator.intervalRow(seedForRep, i, 0, 0, 0, 0, 0, 0, 0, 0));
         }
-        return localNodes;
-    }
+        out.addRow(IntervalCSVGenerator.globalIntervalFile(baseDir),
+                IntervalCSVGenerator.globalIntervalRow(seedForRep, 0, localNodes));
+
+        while (true) {
+            double tmin = scheduler.peekNextEventTime();
+
+            if (nextReportTime <= tmin && nextReportTime <= STOP) {
+                scheduler.integrateAll();
+                for (int i = 0; i < NODES; i++) {
+                    SimpleMultiServerNode n = localNodes.get(i);
+                    Area a = n.getAreaObject();
+                    MsqSum[] sums = n.getMsqSums();
+
+                    long served = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+
+                    ETs[i] = a.getNodeArea() / served;
+                    ETq[i] = a.getQueueArea() / served;
+                    ES[i] = a.getServiceArea() / served;
+
+                    ENs[i] = a.getNodeArea() / nextReportTime;
+                    ENq[i] = a.getQueueArea() / nextReportTime;
+                    ENS[i] = a.getServiceArea() / nextReportTime;
+
+                    lambda[i] = served / nextReportTime;
+                    int numServers = sums.length - 1;
+                    rho[i] = (lambda[i] * ES[i]) / numServers;
+
+                    out.addRow(IntervalCSVGenerator.intervalFile(true, i, baseDir),
+                            IntervalCSVGenerator.intervalRow(seedForRep, i, nextReportTime,
+                                    ETs[i], ENs[i], ETq[i], ENq[i],
+                                    ES[i], ENS[i], rho[i]));
+                }
+
+                out.addRow(IntervalCSVGenerator.globalIntervalFile(baseDir),
+                        IntervalCSVGenerator.globalIntervalRow(seedForRep, nextReportTime, localNodes));
+                nextReportTime += REPORTINTERVAL;
+                continue;
+            }
 
+            if (tmin > STOP) break;
 
-    public static double acf(List<Double> data) {
-        int k = data.size();
-        double mean = 0.0;
+            scheduler.processNextEvent();
+        }
 
-        // Calculate the mean of the batch means
-        for (double value : data) {
-            mean += value;
+        // valori calcolati a fine replica per ogni nodo
+        scheduler.integrateAll();
+        double meanService = simConfig.serviceTime.expectedValue();
+        for (int i = 0; i < NODES; i++) {
+            SimpleMultiServerNode node = localNodes.get(i);
+            Area a = node.getAreaObject();
+            MsqSum[] sums = node.getMsqSums();
+
+            long jobsNow = Arrays.stream(sums).mapToLong(s -> s.served).sum();
+            out.jobs[i] = jobsNow;
+
+            int numServers = sums.length - 1;
+
+            if (jobsNow > 0) {
+                double ETsReplica = a.getNodeArea() / jobsNow;
+                double ETqReplica = a.getQueueArea() / jobsNow;
+                double ESReplica  = a.getServiceArea() / jobsNow;
+
+                double ENsReplica = a.getNodeArea() / STOP;
+                double ENqReplica = a.getQueueArea() / STOP;
+
+                double lambdaReplica = jobsNow / STOP;
+                double rhoReplica = (lambdaReplica * ESReplica) / numServers;
+
+                out.metrics[i] = new double[]{
+                        ETsReplica, ETqReplica, ESReplica,
+                        ENsReplica, ENqReplica, rhoReplica, lambdaReplica
+                };
+
+                // job ammessi = serviti + presenti; servizi iniziati = serviti + server occupati
+                int inSystem = node.getJobsInSystem();
+                long admitted = jobsNow + inSystem;
+                long started = jobsNow + Math.min(inSystem, numServers);
+                double work = Arrays.stream(sums).mapToDouble(s -> s.service).sum();
+                out.controls[i] = new double[]{
+                        admitted / STOP, (work - meanService * started) / STOP
+                };
+            }
         }
-        mean /= k;
+        return out;
+    }
 
-        double numerator = 0.0;
-        double denominator = 0.0;
+    /**
+     * Coppia antitetica della replica rep: stesse sottosequenze, la seconda con 1 - u. Le metriche
+     * sono le medie della coppia, i job la media (per difetto) e le righe quelle di entrambe.
+     */
+    private FiniteReplica runAntitheticPair(int rep, String baseDir) {
+        FiniteReplica plain = runFiniteReplica(rep, baseDir, false);
+        FiniteReplica antithetic = runFiniteReplica(rep, baseDir, true);
+
+        FiniteReplica out = new FiniteReplica(NODES, baseDir != null);
+        for (int i = 0; i < NODES; i++) out.jobs[i] = (plain.jobs[i] + antithetic.jobs[i]) / 2;
+        double[][] avg = ReplicationEngine.antitheticAverage(plain.metrics, antithetic.metrics);
+        System.arraycopy(avg, 0, out.metrics, 0, NODES);
+        double[][] controls = ReplicationEngine.antitheticAverage(plain.controls, antithetic.controls);
+        System.arraycopy(controls, 0, out.controls, 0, NODES);
+        plain.rows.forEach((file, r) -> r.forEach(row -> out.addRow(file, row)));
+        antithetic.rows.forEach((file, r) -> r.forEach(row -> out.addRow(file, row)));
+        return out;
+    }
 
-        // Compute the numerator and denominator for the lag-1 autocorrelation
-        for (int j = 0; j < k - 1; j++) {
-            numerator += (data.get(j) - mean) * (data.get(j + 1) - mean);
+    /** Risultato di una replica finita: metriche per nodo e righe a intervalli da accodare. */
+    private static final class FiniteReplica {
+        final long[] jobs;
+        /* per nodo: {E[Ts], E[Tq], E[S], E[N], E[Nq], rho, lambda}, null se nessun job servito */
+        final double[][] metrics;
+        /*
+         * per nodo le variabili di controllo, con media esatta anche a orizzonte finito (null come metrics):
+         * {arrivi ammessi / STOP, (somma dei servizi iniziati - E[S] * servizi iniziati) / STOP}.
+         * Gli arrivi sono di Poisson e il filtro di uscita è indipendente, quindi la prima ha media
+         * λ_i(1 - pExit); ogni servizio è campionato all'inizio, indipendente da quanto accaduto prima,
+         * quindi per l'identità di Wald la seconda ha media 0.
+         */
+        final double[][] controls;
+        final Map<String, List<double[]>> rows = new LinkedHashMap<>();
+        private final boolean keepRows;
+
+        FiniteReplica(int nodes, boolean keepRows) {
+            jobs = new long[nodes];
+            metrics = new double[nodes][];
+            controls = new double[nodes][];
+            this.keepRows = keepRows;
         }
-        for (int j = 0; j < k; j++) {
-            denominator += Math.pow(data.get(j) - mean, 2);
+
+        void addRow(String file, double[] row) {
+            if (keepRows) rows.computeIfAbsent(file, f -> new ArrayList<>()).add(row);
+        }
+
+        void flush(OutputFormat format) {
+            rows.forEach((file, r) -> IntervalCSVGenerator.appendRows(format, file, r));
+        }
+    }
+
+    // helper locale per calcolare la media
+    private double computeMean(List<Double> list) {
+        return list.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+    }
+
+    private List<SimpleMultiServerNode> init(Rngs rng) {
+        List<SimpleMultiServerNode> localNodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            SimpleMultiServerNode n = new SimpleMultiServerNode(this, i, rng, simConfig);
+            localNodes.add(n);
         }
-        return numerator / denominator;
+        return localNodes;
     }
 
 
+
     public static void printBatchStatisticsResult(String centerName, List<BatchMetric> batchMetrics, int batchSize, int numBatches) {
         System.out.println(BRIGHT_BLU + "\n\n*******************************************************************************************************");
         System.out.println("AUTOCORRELATION VALUES FOR " + centerName + " [B:" + batchSize + "|K:" + numBatches + "]");
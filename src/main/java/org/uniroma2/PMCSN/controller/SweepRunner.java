@@ -0,0 +1,328 @@
+package org.uniroma2.PMCSN.controller;
+
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.libs.Rngs;
+import org.uniroma2.PMCSN.model.BatchAccumulator;
+import org.uniroma2.PMCSN.model.ConfidenceInterval;
+import org.uniroma2.PMCSN.utils.ColumnLayout;
+import org.uniroma2.PMCSN.utils.RowEncoder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Studio parametrico: esegue le repliche a orizzonte finito del sistema scelto in ogni punto di una
+ * griglia o di un campionamento a ipercubo latino sulle chiavi di config.properties, e scrive una sola
+ * tabella con media e semiampiezza delle metriche di fine replica per punto e centro.
+ *
+ * Parametri (sweep.parameters): elenco di chiave=valori separati da ';', dove valori è
+ * <ul>
+ *   <li>un elenco a|b|c, usato così com'è (anche valori composti, es. simulation.servers=33,6,16|32,6,17);</li>
+ *   <li>un intervallo min:max, discretizzato in sweep.levels valori equispaziati (GRID) o campionato
+ *       uniformemente per strati (LHS); se estremi e valore di base della chiave sono interi, si arrotonda.</li>
+ * </ul>
+ * GRID esegue il prodotto cartesiano; LHS estrae sweep.points punti, con una permutazione casuale
+ * degli strati per ogni parametro (stream 0 di Rngs, seme sweep.seed).
+ *
+ * Tutte le repliche di tutti i punti sono sottoattività di un unico {@link ForkJoinPool}: i thread
+ * inattivi rubano repliche dai punti ancora in corso, così i core restano occupati anche quando i
+ * punti hanno costi molto diversi. La replica k di ogni punto usa {@code plantSeeds(seed, k)}
+ * (numeri casuali comuni tra i punti) e la tabella non dipende dal numero di thread.
+ *
+ * Uso: {@code SweepRunner [file base]}; il file base sostituisce le chiavi di config.properties.
+ */
+public class SweepRunner {
+
+    private static final String[] METRICS = {"ETs", "ETq", "ES", "EN", "ENq", "rho", "lambda"};
+
+    private final Path base;
+    private final boolean rideSharing;
+    private final List<String> keys = new ArrayList<>();
+    /* valori elencati di ogni parametro, null per gli intervalli */
+    private final List<List<String>> lists = new ArrayList<>();
+    private final List<Properties> points;
+    private final int replicas;
+    private final int nodes;
+    private final double levelOfConfidence;
+    private final int threads;
+
+    public SweepRunner(Path base) {
+        this(new ConfigurationManager(base, new Properties()), base);
+    }
+
+    public SweepRunner(ConfigurationManager config, Path base) {
+        this.base = base;
+        String system = config.getString("sweep", "system").trim();
+        if (!system.equalsIgnoreCase("simple") && !system.equalsIgnoreCase("rideSharing")) {
+            throw new IllegalArgumentException("sweep.system non valido: " + system + " (simple o rideSharing)");
+        }
+        this.rideSharing = system.equalsIgnoreCase("rideSharing");
+        this.replicas = config.getInt("sweep", "replicas");
+        ReplicationEngine.checkReplicas("sweep.replicas", replicas, replicas);
+        this.levelOfConfidence = config.getDouble("general", "levelOfConfidence");
+        this.threads = new ReplicationEngine(config).getThreads();
+        this.nodes = rideSharing
+                ? config.getInt("simulation", "nodes") + config.getInt("simulation", "rideNodes")
+                : config.getInt("simulation", "nodes");
+
+        List<double[]> ranges = new ArrayList<>();
+        List<Boolean> integers = new ArrayList<>();
+        for (String entry : config.getString("sweep", "parameters").split(";")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Parametro non valido (atteso chiave=valori): " + entry);
+            String key = entry.substring(0, eq).trim();
+            String values = entry.substring(eq + 1).trim();
+            int dot = key.indexOf('.');
+            if (dot <= 0) throw new IllegalArgumentException("Chiave non valida (attesa sezione.chiave): " + key);
+            // la chiave deve esistere: gli override si applicano solo a chiavi note
+            String current = config.getString(key.substring(0, dot), key.substring(dot + 1)).trim();
+            keys.add(key);
+            if (!values.contains("|") && values.matches("[^:,]+:[^:,]+")) {
+                String[] bounds = values.split(":");
+                integers.add(current.matches("-?\\d+") && values.matches("\\s*-?\\d+\\s*:\\s*-?\\d+\\s*"));
+                ranges.add(new double[]{Double.parseDouble(bounds[0].trim()), Double.parseDouble(bounds[1].trim())});
+                lists.add(null);
+            } else {
+                List<String> l = new ArrayList<>();
+                for (String v : values.split("\\|")) l.add(v.trim());
+                lists.add(l);
+                ranges.add(null);
+                integers.add(false);
+            }
+        }
+        if (keys.isEmpty()) throw new IllegalArgumentException("sweep.parameters vuoto");
+
+        String mode = config.getString("sweep", "mode").trim().toUpperCase(Locale.ROOT);
+        switch (mode) {
+            case "GRID" -> points = grid(lists, ranges, integers, config.getInt("sweep", "levels"));
+            case "LHS" -> points = latinHypercube(lists, ranges, integers,
+                    config.getInt("sweep", "points"), config.getInt("sweep", "seed"));
+            default -> throw new IllegalArgumentException("sweep.mode non valido: " + mode + " (GRID o LHS)");
+        }
+    }
+
+    public static void main(String[] args) {
+        new SweepRunner(args.length > 0 ? Paths.get(args[0]) : null).run();
+    }
+
+    private List<Properties> grid(List<List<String>> lists, List<double[]> ranges, List<Boolean> integers, int levels) {
+        List<List<String>> axes = new ArrayList<>();
+        for (int p = 0; p < keys.size(); p++) {
+            if (lists.get(p) != null) {
+                axes.add(lists.get(p));
+                continue;
+            }
+            double[] r = ranges.get(p);
+            // con valori interi gli estremi arrotondati possono coincidere: si tengono i distinti
+            Set<String> axis = new LinkedHashSet<>();
+            for (int l = 0; l < levels; l++) {
+                double v = levels == 1 ? r[0] : r[0] + (r[1] - r[0]) * l / (levels - 1);
+                axis.add(format(v, integers.get(p)));
+            }
+            axes.add(new ArrayList<>(axis));
+        }
+
+        List<Properties> result = new ArrayList<>();
+        int[] index = new int[keys.size()];
+        while (true) {
+            Properties point = new Properties();
+            for (int p = 0; p < keys.size(); p++) point.setProperty(keys.get(p), axes.get(p).get(index[p]));
+            result.add(point);
+            // incremento in stile contachilometri, l'ultimo parametro varia più velocemente
+            int p = keys.size() - 1;
+            while (p >= 0 && ++index[p] == axes.get(p).size()) index[p--] = 0;
+            if (p < 0) return result;
+        }
+    }
+
+    private List<Properties> latinHypercube(List<List<String>> lists, List<double[]> ranges, List<Boolean> integers,
+                                            int n, long seed) {
+        Rngs rngs = new Rngs();
+        rngs.plantSeeds(seed);
+        rngs.selectStream(0);
+        List<Properties> result = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) result.add(new Properties());
+        for (int p = 0; p < keys.size(); p++) {
+            // permutazione casuale degli strati (Fisher-Yates)
+            int[] strata = new int[n];
+            for (int k = 0; k < n; k++) strata[k] = k;
+            for (int k = n - 1; k > 0; k--) {
+                int j = (int) (rngs.random() * (k + 1));
+                int tmp = strata[k];
+                strata[k] = strata[j];
+                strata[j] = tmp;
+            }
+            for (int k = 0; k < n; k++) {
+                double u = (strata[k] + rngs.random()) / n;
+                String value;
+                if (lists.get(p) != null) {
+                    List<String> l = lists.get(p);
+                    value = l.get(Math.min((int) (u * l.size()), l.size() - 1));
+                } else {
+                    double[] r = ranges.get(p);
+                    value = format(r[0] + (r[1] - r[0]) * u, integers.get(p));
+                }
+                result.get(k).setProperty(keys.get(p), value);
+            }
+        }
+        return result;
+    }
+
+    private static String format(double v, boolean integer) {
+        return integer ? String.valueOf(Math.round(v)) : String.format(Locale.US, "%.6f", v);
+    }
+
+    public void run() {
+        System.out.printf("=== Sweep %s: %d punti x %d repliche, %d thread ===%n",
+                rideSharing ? "Ride Sharing" : "Simple", points.size(), replicas, threads);
+
+        List<IntFunction<double[][]>> systems = new ArrayList<>(points.size());
+        for (Properties point : points) {
+            ConfigurationManager cm = new ConfigurationManager(base, point);
+            systems.add(rideSharing ? new RideSharingSystem(cm)::replicaMetrics : new SimpleSystem(cm)::replicaMetrics);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<double[][][]> results;
+        try {
+            results = pool.invoke(new SweepTask(systems));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        ColumnLayout layout = new ColumnLayout().integer("Point");
+        for (String key : keys) layout.fixed(6, key);
+        layout.integer("Center", "Replicas");
+        for (String m : METRICS) layout.fixed(6, m, m + "_hw");
+
+        Path dir = Paths.get("csvFiles", rideSharing ? "RideSharing" : "Simple", "sweep");
+        RowEncoder encoder = new RowEncoder();
+        try {
+            Files.createDirectories(dir);
+            try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("sweep.csv"), StandardCharsets.UTF_8)) {
+                w.write(layout.header());
+                w.newLine();
+                for (int k = 0; k < points.size(); k++) {
+                    System.out.printf("[%d] %s%n", k, describe(points.get(k)));
+                    for (int i = 0; i < nodes; i++) {
+                        BatchAccumulator[] acc = BatchAccumulator.forNodes(METRICS.length);
+                        for (double[][] r : results.get(k)) {
+                            if (r[i] == null) continue;
+                            for (int m = 0; m < METRICS.length; m++) acc[m].add(r[i][m]);
+                        }
+                        double[] row = row(k, i, acc);
+                        int m0 = keys.size() + 3;   /* prima metrica della riga */
+                        System.out.printf(Locale.US, "  Node %d: E[Ts]=%.4f ± %.4f, E[Tq]=%.4f ± %.4f, ρ=%.4f (%d repliche)%n",
+                                i, row[m0], row[m0 + 1], row[m0 + 2], row[m0 + 3], row[m0 + 10], acc[0].count());
+                        layout.encode(encoder, row).writeTo(w);
+                        w.newLine();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Scrittura di " + dir.resolve("sweep.csv") + " non riuscita", e);
+        }
+        System.out.println("=== Tabella: " + dir.resolve("sweep.csv") + " ===");
+    }
+
+    /**
+     * Riga della tabella: punto, valori dei parametri, centro, repliche, medie e semiampiezze.
+     * Un valore non numerico (es. simulation.servers=33,6,16) è riportato come indice nel proprio elenco.
+     */
+    private double[] row(int point, int center, BatchAccumulator[] acc) {
+        double[] row = new double[keys.size() + 3 + 2 * METRICS.length];
+        int c = 0;
+        row[c++] = point;
+        for (int p = 0; p < keys.size(); p++) {
+            String value = points.get(point).getProperty(keys.get(p));
+            try {
+                row[c++] = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                row[c - 1] = lists.get(p) != null ? lists.get(p).indexOf(value) : Double.NaN;
+            }
+        }
+        row[c++] = center;
+        row[c++] = acc[0].count();
+        for (BatchAccumulator a : acc) {
+            row[c++] = a.count() > 0 ? a.mean() : Double.NaN;
+            row[c++] = a.count() > 1 ? ConfidenceInterval.computeConfidenceInterval(a, levelOfConfidence) : Double.NaN;
+        }
+        return row;
+    }
+
+    private String describe(Properties point) {
+        return keys.stream().map(k -> k + "=" + point.getProperty(k)).collect(Collectors.joining("; "));
+    }
+
+    /** Tutti i punti: un sottocompito per punto, che a sua volta biforca le proprie repliche. */
+    @SuppressWarnings("serial")
+    private final class SweepTask extends RecursiveTask<List<double[][][]>> {
+        private final List<IntFunction<double[][]>> systems;
+
+        SweepTask(List<IntFunction<double[][]>> systems) {
+            this.systems = systems;
+        }
+
+        @Override
+        protected List<double[][][]> compute() {
+            List<PointTask> tasks = new ArrayList<>(systems.size());
+            for (IntFunction<double[][]> system : systems) tasks.add(new PointTask(system));
+            invokeAll(tasks);
+            List<double[][][]> results = new ArrayList<>(tasks.size());
+            for (PointTask t : tasks) results.add(t.join());
+            return results;
+        }
+    }
+
+    /** Le repliche 0..replicas-1 di un punto, in ordine di replica. */
+    @SuppressWarnings("serial")
+    private final class PointTask extends RecursiveTask<double[][][]> {
+        private final IntFunction<double[][]> system;
+
+        PointTask(IntFunction<double[][]> system) {
+            this.system = system;
+        }
+
+        @Override
+        protected double[][][] compute() {
+            List<ReplicaTask> tasks = new ArrayList<>(replicas);
+            for (int k = 0; k < replicas; k++) tasks.add(new ReplicaTask(system, k));
+            invokeAll(tasks);
+            double[][][] results = new double[replicas][][];
+            for (int k = 0; k < replicas; k++) results[k] = tasks.get(k).join();
+            return results;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class ReplicaTask extends RecursiveTask<double[][]> {
+        private final IntFunction<double[][]> system;
+        private final int replica;
+
+        ReplicaTask(IntFunction<double[][]> system, int replica) {
+            this.system = system;
+            this.replica = replica;
+        }
+
+        @Override
+        protected double[][] compute() {
+            return system.apply(replica);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.uniroma2.PMCSN.libs;
+
+/**
+ * Generatore antitetico: stessi stream e stessi semi di {@link Rngs} (plantSeeds, selectStream,
+ * skip, getSeed invariati), ma random() restituisce 1 - u al posto di u. Poiché u è in (0, 1)
+ * anche 1 - u lo è, e le variate ottenute per inversione (esponenziali, uniformi, normali
+ * troncate, scelte per soglia) si muovono in senso opposto a quelle della replica originale.
+ * Una replica con Rngs e una con AntitheticRngs seminate allo stesso modo formano una coppia
+ * antitetica.
+ */
+public class AntitheticRngs extends Rngs {
+
+    @Override
+    public double random() {
+        return 1.0 - super.random();
+    }
+}
@@ -3,6 +3,7 @@ package org.uniroma2.PMCSN.libs;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Date;
 
 
@@ -15,6 +16,11 @@ public class Rngs {
 
     int STREAMS       = 256;        /* # of streams, DON'T CHANGE THIS VALUE    */
     long A256         = 22925;      /* jump multiplier, DON'T CHANGE THIS VALUE */
+    long SUBSTREAM    = 65536;      /* # of draws per replica on each stream    */
+    long SPACING      = 8367782;    /* # of draws between two consecutive streams */
+
+    /* replicas whose substreams all fit between two consecutive streams */
+    public static final int MAX_REPLICAS = 127;
 
     /* Barry Lawson 8 Nov 2007 */
     // Consistent with the changes to the Rvgs constructor, the seed[] array and
@@ -30,6 +36,8 @@ public class Rngs {
     long[] seed;                     /* current state of each stream   */
     int  stream        = 0;          /* stream index, 0 is the default */
     int  initialized   = 0;          /* test for stream initialization */
+    long[] draws;                    /* draws per stream in the replica, counted only with -ea */
+    long budget        = 0;          /* draws allowed per stream, 0 = no limit */
     /* Barry Lawson 8 Nov 2007 */
 
 
@@ -42,6 +50,7 @@ public class Rngs {
 
     public Rngs () {
         seed = new long[STREAMS];
+        draws = new long[STREAMS];
 
         /* Barry Lawson 8 Nov 2007 */
         // The C version by default has the first entry in the seed[] array
@@ -63,6 +72,7 @@ public class Rngs {
         long R = MODULUS % MULTIPLIER;
         long t;
 
+        assert consume(1) : overrun();
         t = MULTIPLIER * (seed[stream] % Q) - R * (seed[stream] / Q);
         if (t > 0)
             seed[stream] = t;
@@ -86,6 +96,7 @@ public class Rngs {
         int  s;
 
         initialized = 1;
+        budget = 0;
         s = stream;                            /* remember the current stream */
         selectStream(0);                       /* change to stream 0          */
         putSeed(x);                            /* set seed[0]                 */
@@ -99,6 +110,94 @@ public class Rngs {
         }
     }
 
+    public void plantSeeds(long x, int replica) {
+        /* ---------------------------------------------------------------------
+         * Same as plantSeeds(x), then every stream is moved forward by
+         * replica * SUBSTREAM calls to Random(): each replica owns a disjoint
+         * substream of every stream and its initial state is computed in
+         * O(log replica) without running the previous replicas. Up to 127
+         * replicas fit in the 8,367,782 draws between two consecutive streams:
+         * from replica 127 on the substream of stream j would run into the
+         * numbers of stream j + 1, so those replicas are rejected.
+         * Each stream of the replica must then use at most SUBSTREAM draws,
+         * or it runs into the substream of replica + 1: with -ea the draws
+         * are counted and the first one over the budget fails an assert.
+         * ---------------------------------------------------------------------
+         */
+        if (replica < 0 || (replica + 1) * SUBSTREAM > SPACING)
+            throw new IllegalArgumentException("replica " + replica + " out of range: at most "
+                    + MAX_REPLICAS + " replicas (0.." + (MAX_REPLICAS - 1) + ") fit between two streams");
+        plantSeeds(x);
+        skipAll(replica * SUBSTREAM);
+        budget = SUBSTREAM;
+        Arrays.fill(draws, 0);
+    }
+
+    private boolean consume(long n) {
+        /* ---------------------------------------------------------------
+         * Counts n draws on the current stream (called only from asserts)
+         * and returns false when they exceed the budget of the replica.
+         * ---------------------------------------------------------------
+         */
+        draws[stream] += n;
+        return budget == 0 || draws[stream] <= budget;
+    }
+
+    private String overrun() {
+        return "stream " + stream + " used more than " + budget + " draws in this replica:"
+                + " its substream overlaps the next replica's";
+    }
+
+    public long jumpMultiplier(long n) {
+        /* ---------------------------------------------------------------
+         * Returns MULTIPLIER^n mod MODULUS: multiplying a state by this
+         * value is the same as n calls to Random() (A256 is the one used
+         * by plantSeeds, with n = 8,367,782).
+         * ---------------------------------------------------------------
+         */
+        return modPow(MULTIPLIER, n);
+    }
+
+    public void skip(long n) {
+        /* ---------------------------------------------------------------
+         * Moves the current stream forward by n calls to Random(), in
+         * O(log n) time.
+         * ---------------------------------------------------------------
+         */
+        assert consume(n) : overrun();
+        seed[stream] = (jumpMultiplier(n) * seed[stream]) % MODULUS;
+    }
+
+    public void skipAll(long n) {
+        /* ---------------------------------------------------------------
+         * Same as skip(n) on every stream.
+         * ---------------------------------------------------------------
+         */
+        long a = jumpMultiplier(n);
+        int  j;
+
+        for (j = 0; j < STREAMS; j++)
+            seed[j] = (a * seed[j]) % MODULUS;
+    }
+
+    private long modPow(long b, long n) {
+        /* ---------------------------------------------------------------
+         * Returns b^n mod MODULUS by repeated squaring (b < MODULUS, so
+         * every product fits in a long).
+         * ---------------------------------------------------------------
+         */
+        long r = 1;
+
+        b = b % MODULUS;
+        while (n > 0) {
+            if ((n & 1) == 1)
+                r = (r * b) % MODULUS;
+            b = (b * b) % MODULUS;
+            n >>= 1;
+        }
+        return r;
+    }
+
     public void putSeed(long x) {
         /* ---------------------------------------------------------------
          * Use this function to set the state of the current random number
@@ -179,6 +278,20 @@ public class Rngs {
         plantSeeds(1);                    /* set the state of all streams    */
         x = getSeed();                    /* get the state of stream 1       */
         ok = ok && (x == A256);           /* x should be the jump multiplier */
+
+        selectStream(0);                  /* jump-ahead: 10000 draws at once */
+        putSeed(1);
+        skip(10000);
+        ok = ok && (getSeed() == CHECK);
+        ok = ok && (jumpMultiplier(SPACING) == A256);
+        ok = ok && (MAX_REPLICAS == SPACING / SUBSTREAM);
+
+        plantSeeds(1);                    /* substream of replica 3 ...          */
+        for (i = 0; i < 3 * SUBSTREAM; i++)
+            u = random();
+        x = getSeed();
+        plantSeeds(1, 3);                 /* ... must match 3*SUBSTREAM draws   */
+        ok = ok && (x == getSeed());
         if (ok)
             System.out.println("\n The implementation of Rngs.java is correct");
         else
@@ -0,0 +1,178 @@
+package org.uniroma2.PMCSN.libs;
+
+/**
+ * Normale N(m, s) troncata in [a, b], campionata per inversione.
+ * Le probabilità di troncamento alpha = P(X < a) e beta = P(X > b) sono calcolate una sola
+ * volta nel costruttore; l'inversa della normale standard usa l'algoritmo AS241 (Wichura,
+ * 1988), un'approssimazione razionale con errore relativo ~1e-16, al posto dell'iterazione
+ * di Newton su cdfStandard (che a ogni passo valuta inGamma).
+ */
+public class TruncatedNormal {
+
+    private final double m;
+    private final double s;
+    private final double a;
+    private final double b;
+    private final double alpha;   /* P(X < a) */
+    private final double beta;    /* P(X > b) */
+
+    public TruncatedNormal(double m, double s, double a, double b)
+        /* =================================================
+         * NOTE: m can be any value, but s > 0.0 and a < b
+         * =================================================
+         */
+    {
+        this.m = m;
+        this.s = s;
+        this.a = a;
+        this.b = b;
+        this.alpha = Distributions.cdfNormal(m, s, a);
+        this.beta = 1 - Distributions.cdfNormal(m, s, b);
+    }
+
+    public double sample(Rngs r) {
+        /* ----------------------------------------------------------
+         * generate a truncated Normal random variate using the
+         * stream currently selected in r (one draw per variate)
+         * ----------------------------------------------------------
+         */
+        double u = Distributions.uniform(alpha, 1 - beta, r);
+        return clamp(m + s * idfStandard(u));
+    }
+
+    public double idf(double u)
+        /* =================================================
+         * NOTE: 0.0 < u < 1.0, quantile of the truncated law
+         * =================================================
+         */
+    {
+        double p = alpha + (1 - beta - alpha) * u;
+        return clamp(m + s * idfStandard(p));
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    public double getMean() {
+        return m;
+    }
+
+    /** Media della legge troncata: m + s (pdf(za) - pdf(zb)) / (1 - alpha - beta), diversa da m. */
+    public double expectedValue() {
+        double za = (a - m) / s;
+        double zb = (b - m) / s;
+        return m + s * (Distributions.pdfStandard(za) - Distributions.pdfStandard(zb)) / (1 - alpha - beta);
+    }
+
+    public double getStdDev() {
+        return s;
+    }
+
+    public double getLower() {
+        return a;
+    }
+
+    public double getUpper() {
+        return b;
+    }
+
+    /* l'arrotondamento vicino agli estremi non deve uscire da [a, b] */
+    private double clamp(double x) {
+        return (x < a) ? a : (x > b ? b : x);
+    }
+
+    public static double idfStandard(double p)
+        /* ===================================
+         * NOTE: 0.0 < p < 1.0   (AS241 PPND16)
+         * ===================================
+         */
+    {
+        double q = p - 0.5;
+        double r, x;
+
+        if (Math.abs(q) <= 0.425) {
+            r = 0.180625 - q * q;
+            return q * (((((((2.5090809287301226727e+3 * r + 3.3430575583588128105e+4) * r
+                    + 6.7265770927008700853e+4) * r + 4.5921953931549871457e+4) * r
+                    + 1.3731693765509461125e+4) * r + 1.9715909503065514427e+3) * r
+                    + 1.3314166789178437745e+2) * r + 3.3871328727963666080e+0)
+                    / (((((((5.2264952788528545610e+3 * r + 2.8729085735721942674e+4) * r
+                    + 3.9307895800092710610e+4) * r + 2.1213794301586595867e+4) * r
+                    + 5.3941960214247511077e+3) * r + 6.8718700749205790830e+2) * r
+                    + 4.2313330701600911252e+1) * r + 1.0);
+        }
+
+        r = (q < 0) ? p : 1.0 - p;
+        r = Math.sqrt(-Math.log(r));
+        if (r <= 5.0) {
+            r -= 1.6;
+            x = (((((((7.74545014278341407640e-4 * r + 2.27238449892691845833e-2) * r
+                    + 2.41780725177450611770e-1) * r + 1.27045825245236838258e+0) * r
+                    + 3.64784832476320460504e+0) * r + 5.76949722146069140550e+0) * r
+                    + 4.63033784615654529590e+0) * r + 1.42343711074968357734e+0)
+                    / (((((((1.05075007164441684324e-9 * r + 5.47593808499534494600e-4) * r
+                    + 1.51986665636164571966e-2) * r + 1.48103976427480074590e-1) * r
+                    + 6.89767334985100004550e-1) * r + 1.67638483018380384940e+0) * r
+                    + 2.05319162663775882187e+0) * r + 1.0);
+        } else {
+            r -= 5.0;
+            x = (((((((2.01033439929228813265e-7 * r + 2.71155556874348757815e-5) * r
+                    + 1.24266094738807843860e-3) * r + 2.65321895265761230930e-2) * r
+                    + 2.96560571828504891230e-1) * r + 1.78482653991729133580e+0) * r
+                    + 5.46378491116411436990e+0) * r + 6.65790464350110377720e+0)
+                    / (((((((2.04426310338993978564e-15 * r + 1.42151175831644588870e-7) * r
+                    + 1.84631831751005468180e-5) * r + 7.86869131145613259100e-4) * r
+                    + 1.48753612908506148525e-2) * r + 1.36929880922735805310e-1) * r
+                    + 5.99832206555887937690e-1) * r + 1.0);
+        }
+        return (q < 0) ? -x : x;
+    }
+
+    /* ------------------------------------------------------------------
+     * Use this (optional) function to check the inversion against the
+     * Newton-Raphson idfNormal of Rvms on the service-time distribution.
+     * ------------------------------------------------------------------
+     */
+    public static void main(String[] args) {
+        TruncatedNormal tn = new TruncatedNormal(10, 4, 2, 30);
+        Rvms rvms = new Rvms();
+        double maxErr = 0.0;
+        int n = 100000;
+
+        for (int i = 1; i < n; i++) {
+            double p = tn.alpha + (1 - tn.beta - tn.alpha) * i / n;
+            double exact = rvms.idfNormal(tn.m, tn.s, p);
+            maxErr = Math.max(maxErr, Math.abs(tn.idf((double) i / n) - exact));
+        }
+        for (int k = 1; k <= 6; k++) {            /* code: p = 10^-k e 1 - 10^-k; più in  */
+                                                  /* là il Newton di Rvms non converge    */
+            double p = Math.pow(10, -k);
+            maxErr = Math.max(maxErr, Math.abs(idfStandard(p) - rvms.idfStandard(p)));
+            maxErr = Math.max(maxErr, Math.abs(idfStandard(1 - p) - rvms.idfStandard(1 - p)));
+        }
+
+        Rngs r = new Rngs();
+        r.plantSeeds(123456789);
+        long t0 = System.nanoTime();
+        double acc = 0.0;
+        for (int i = 0; i < n; i++)
+            acc += rvms.idfNormal(tn.m, tn.s, Distributions.uniform(tn.alpha, 1 - tn.beta, r));
+        long t1 = System.nanoTime();
+        r.plantSeeds(123456789);
+        for (int i = 0; i < n; i++)
+            acc -= tn.sample(r);
+        long t2 = System.nanoTime();
+
+        System.out.printf("errore massimo = %.3e, Newton %.1f ns/campione, AS241 %.1f ns/campione (diff. somme %.3e)%n",
+                maxErr, (double) (t1 - t0) / n, (double) (t2 - t1) / n, acc);
+        if (maxErr < 1.0e-8)
+            System.out.println("\n The implementation of TruncatedNormal.java is correct");
+        else
+            System.out.println("\n ERROR - TruncatedNormal.java differs from Rvms.idfNormal");
+    }
+}
@@ -0,0 +1,103 @@
+package org.uniroma2.PMCSN.model;
+
+import java.util.List;
+
+/**
+ * Statistiche in streaming di una serie di valori batch (o di replica): O(1) per valore
+ * e memoria costante, qualunque sia il numero di batch.
+ * <ul>
+ *   <li>media: somma compensata (Kahan) diviso n, come DoubleStream.average();</li>
+ *   <li>varianza: ricorrenza di Welford, la stessa usata da {@link ConfidenceInterval};</li>
+ *   <li>autocorrelazione a lag 1: somme dei prodotti consecutivi, traslate sul primo valore
+ *       per limitare la cancellazione, combinate con la media finale come nell'acf su lista.</li>
+ * </ul>
+ */
+public class BatchAccumulator {
+
+    private long n = 0;
+
+    // media (somma compensata)
+    private double sum = 0.0;
+    private double compensation = 0.0;
+    private double simpleSum = 0.0;
+
+    // Welford
+    private double welfordMean = 0.0;
+    private double welfordSum = 0.0;   /* somma dei quadrati degli scarti */
+
+    // lag 1, su y = x - shift
+    private double shift = 0.0;
+    private double sumY = 0.0;
+    private double sumLagProducts = 0.0;   /* sum_j y_j * y_{j+1} */
+    private double firstY = 0.0;
+    private double lastY = 0.0;
+
+    /** Array di accumulatori vuoti, uno per centro. */
+    public static BatchAccumulator[] forNodes(int nodes) {
+        BatchAccumulator[] acc = new BatchAccumulator[nodes];
+        for (int i = 0; i < nodes; i++) acc[i] = new BatchAccumulator();
+        return acc;
+    }
+
+    /** Accumulatori riempiti con le liste di valori per centro (valuesByNode.get(i) = centro i). */
+    public static BatchAccumulator[] ofEach(List<List<Double>> valuesByNode) {
+        BatchAccumulator[] acc = forNodes(valuesByNode.size());
+        for (int i = 0; i < acc.length; i++) {
+            for (double x : valuesByNode.get(i)) acc[i].add(x);
+        }
+        return acc;
+    }
+
+    public void add(double x) {
+        n++;
+
+        double tmp = x - compensation;
+        double velvel = sum + tmp;
+        compensation = (velvel - sum) - tmp;
+        sum = velvel;
+        simpleSum += x;
+
+        double diff = x - welfordMean;
+        welfordSum += diff * diff * (n - 1.0) / n;
+        welfordMean += diff / n;
+
+        if (n == 1) shift = x;
+        double y = x - shift;
+        if (n == 1) firstY = y;
+        else sumLagProducts += lastY * y;
+        sumY += y;
+        lastY = y;
+    }
+
+    public long count() {
+        return n;
+    }
+
+    /** Media dei valori, NaN se vuoto. */
+    public double mean() {
+        if (n == 0) return Double.NaN;
+        double total = sum - compensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) total = simpleSum;
+        return total / n;
+    }
+
+    /** Deviazione standard "di popolazione" sqrt(sum (x - media)^2 / n). */
+    public double stdDev() {
+        return n == 0 ? Double.NaN : Math.sqrt(welfordSum / n);
+    }
+
+    /** Autocorrelazione a lag 1 della serie: sum (x_j - m)(x_j+1 - m) / sum (x_j - m)^2. */
+    public double lag1Autocorrelation() {
+        if (n == 0) return Double.NaN;
+        double m = sumY / n;   /* media di y */
+        double numerator = sumLagProducts - m * ((sumY - lastY) + (sumY - firstY)) + (n - 1) * m * m;
+        return numerator / welfordSum;
+    }
+
+    public void reset() {
+        n = 0;
+        sum = compensation = simpleSum = 0.0;
+        welfordMean = welfordSum = 0.0;
+        shift = sumY = sumLagProducts = firstY = lastY = 0.0;
+    }
+}
@@ -0,0 +1,256 @@
+package org.uniroma2.PMCSN.model;
+
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Matching a finestra dei centri ride sharing: alla scadenza della finestra abbina in un solo
+ * passaggio tutte le richieste in coda ai veicoli, invece di una richiesta per volta.
+ * <ol>
+ *   <li>le richieste sono ordinate per posti decrescenti (counting sort, a parità in ordine di arrivo);</li>
+ *   <li>ognuna prova prima un veicolo già in servizio compatibile col percorso
+ *       ({@link VehicleIndex#bestBusy}, probabilità pMatch, stream {@link #MATCH_STREAM});</li>
+ *   <li>le altre sono impacchettate nei veicoli liberi: first-fit-decreasing sui veicoli aperti
+ *       nella finestra, aprendo quando serve il libero più capiente; in modalità OPTIMAL, fino a
+ *       {@link #OPTIMAL_MAX_REQUESTS} richieste, con una ricerca esatta che massimizza le richieste
+ *       servite e poi minimizza veicoli e posti impegnati.</li>
+ * </ol>
+ * Le richieste abbinate escono dalla coda; quelle rimaste vanno in feedback a cura del centro.
+ */
+public class BatchMatcher {
+
+    public enum Mode {
+        SEQUENTIAL, FIRST_FIT_DECREASING, OPTIMAL;
+
+        public static Mode parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /** Assegna una richiesta di posti posti al veicolo v (aggiorna anche il VehicleIndex). */
+    public interface Assigner {
+        void assign(int vehicle, int posti);
+    }
+
+    public static final int MATCH_STREAM = 7;
+    public static final int OPTIMAL_MAX_REQUESTS = 10;
+
+    private static final int MAX = VehicleIndex.MAX_CAPACITY;
+
+    private final Mode mode;
+    private final VehicleIndex vehicles;
+    private final Rngs rng;
+    private final double pMatch;
+    private final Assigner assigner;
+
+    /* veicoli aperti nella finestra corrente, per posti rimanenti */
+    private final ServerBitmap[] openBins = new ServerBitmap[MAX + 1];
+    private final int[] openRemaining;
+    private final int[] opened;
+    private int openedCount = 0;
+
+    /* posizioni in coda in ordine di posti decrescenti, ed esito */
+    private int[] order = new int[64];
+    private boolean[] matched = new boolean[64];
+    private final int[] countByPosti = new int[MAX + 2];
+
+    /* ricerca esatta: richieste, scelte correnti e migliori, veicoli aperti */
+    private final int[] exactReq = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] choice = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] bestChoice = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] binCap = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] binRem = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] bestBinCap = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] binVehicle = new int[OPTIMAL_MAX_REQUESTS];
+    private final int[] avail = new int[MAX + 1];
+    private final int[] used = new int[MAX + 1];
+    private int exactCount, bins, bestBins, bestScore;
+
+    public BatchMatcher(Mode mode, int vehicleCount, VehicleIndex vehicles, Rngs rng, double pMatch, Assigner assigner) {
+        this.mode = mode;
+        this.vehicles = vehicles;
+        this.rng = rng;
+        this.pMatch = pMatch;
+        this.assigner = assigner;
+        for (int c = 0; c <= MAX; c++) openBins[c] = new ServerBitmap(vehicleCount);
+        this.openRemaining = new int[vehicleCount + 1];
+        this.opened = new int[vehicleCount];
+    }
+
+    /**
+     * Abbina le richieste in coda e rimuove quelle servite, lasciando le altre in ordine di arrivo.
+     * @return numero di richieste abbinate
+     */
+    public int match(RequestQueue queue) {
+        int n = queue.size();
+        if (n == 0) return 0;
+        sortByPostiDesc(queue, n);
+
+        // 1. veicoli già in servizio compatibili col percorso
+        int total = 0;
+        rng.selectStream(MATCH_STREAM);
+        for (int i = 0; i < n; i++) {
+            int k = order[i];
+            int posti = queue.postiAt(k);
+            if (posti > MAX) continue;
+            int v = vehicles.bestBusy(posti, pMatch, rng);
+            if (v != -1) {
+                assigner.assign(v, posti);
+                matched[k] = true;
+                total++;
+            }
+        }
+
+        // 2. veicoli liberi per le richieste rimaste
+        if (mode == Mode.OPTIMAL && n - total <= OPTIMAL_MAX_REQUESTS) {
+            total += packOptimal(queue, n);
+        } else {
+            total += packFirstFitDecreasing(queue, n);
+        }
+
+        queue.removeMarked(matched);
+        return total;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    private void sortByPostiDesc(RequestQueue queue, int n) {
+        if (order.length < n) {
+            order = new int[Math.max(n, order.length * 2)];
+            matched = new boolean[order.length];
+        }
+        Arrays.fill(matched, 0, n, false);
+        Arrays.fill(countByPosti, 0);
+        for (int k = 0; k < n; k++) countByPosti[bucket(queue.postiAt(k))]++;
+        // posizione iniziale di ogni classe, dalla più grande (le richieste oltre MAX in testa)
+        int start = 0;
+        for (int c = MAX + 1; c >= 0; c--) {
+            int count = countByPosti[c];
+            countByPosti[c] = start;
+            start += count;
+        }
+        for (int k = 0; k < n; k++) order[countByPosti[bucket(queue.postiAt(k))]++] = k;
+    }
+
+    private static int bucket(int posti) {
+        return Math.min(Math.max(posti, 0), MAX + 1);
+    }
+
+    private int packFirstFitDecreasing(RequestQueue queue, int n) {
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            int k = order[i];
+            int posti = queue.postiAt(k);
+            if (matched[k] || posti > MAX) continue;
+
+            int v = firstOpenBin(posti);
+            if (v == -1) {
+                v = vehicles.bestIdle(posti);
+                if (v == -1) continue;   /* nessun veicolo: resta in coda */
+                opened[openedCount++] = v;
+            } else {
+                openBins[openRemaining[v]].remove(v);
+            }
+            assigner.assign(v, posti);
+            openRemaining[v] = vehicles.capacitaRimanente(v);
+            openBins[openRemaining[v]].add(v);
+            matched[k] = true;
+            total++;
+        }
+        // la finestra è chiusa: i veicoli aperti tornano a essere normali veicoli in servizio
+        for (int j = 0; j < openedCount; j++) openBins[openRemaining[opened[j]]].remove(opened[j]);
+        openedCount = 0;
+        return total;
+    }
+
+    /* veicolo aperto nella finestra di indice minimo con almeno posti posti, -1 se nessuno */
+    private int firstOpenBin(int posti) {
+        int best = -1;
+        for (int c = posti; c <= MAX; c++) {
+            int v = openBins[c].next(0);
+            if (v != -1 && (best == -1 || v < best)) best = v;
+        }
+        return best;
+    }
+
+    private int packOptimal(RequestQueue queue, int n) {
+        exactCount = 0;
+        for (int i = 0; i < n; i++) {
+            int k = order[i];
+            if (!matched[k] && queue.postiAt(k) <= MAX) exactReq[exactCount++] = k;
+        }
+        if (exactCount == 0) return 0;
+        for (int c = 0; c <= MAX; c++) {
+            avail[c] = vehicles.idleCount(c);
+            used[c] = 0;
+        }
+        bins = 0;
+        bestScore = Integer.MIN_VALUE;
+        bestBins = 0;
+        search(queue, 0, 0, 0, 0);
+
+        // apro i veicoli scelti (il libero di indice minimo per ogni capacità) e assegno
+        for (int b = 0; b < bestBins; b++) {
+            binVehicle[b] = vehicles.idleWithCapacity(bestBinCap[b], 0);
+            vehicles.update(binVehicle[b], 1, bestBinCap[b]);   /* non più libero per i successivi */
+        }
+        int total = 0;
+        for (int i = 0; i < exactCount; i++) {
+            if (bestChoice[i] == -1) continue;
+            int k = exactReq[i];
+            assigner.assign(binVehicle[bestChoice[i]], queue.postiAt(k));
+            matched[k] = true;
+            total++;
+        }
+        return total;
+    }
+
+    /* richieste servite, poi meno veicoli, poi meno posti impegnati (m <= 10: i pesi non si sovrappongono) */
+    private static int score(int served, int vehiclesOpened, int seats) {
+        return served * 10000 - vehiclesOpened * 100 - seats;
+    }
+
+    private void search(RequestQueue queue, int i, int served, int vehiclesOpened, int seats) {
+        if (score(served + exactCount - i, vehiclesOpened, seats) <= bestScore) return;
+        if (i == exactCount) {
+            bestScore = score(served, vehiclesOpened, seats);
+            bestBins = bins;
+            System.arraycopy(choice, 0, bestChoice, 0, exactCount);
+            System.arraycopy(binCap, 0, bestBinCap, 0, bins);
+            return;
+        }
+        int posti = queue.postiAt(exactReq[i]);
+
+        // veicolo già aperto (tra quelli con gli stessi posti rimanenti ne provo uno solo)
+        for (int b = 0; b < bins; b++) {
+            if (binRem[b] < posti || sameRemainingBefore(b)) continue;
+            binRem[b] -= posti;
+            choice[i] = b;
+            search(queue, i + 1, served + 1, vehiclesOpened, seats);
+            binRem[b] += posti;
+        }
+        // nuovo veicolo, dal più capiente
+        for (int c = MAX; c >= posti; c--) {
+            if (used[c] == avail[c]) continue;
+            used[c]++;
+            binCap[bins] = c;
+            binRem[bins] = c - posti;
+            choice[i] = bins++;
+            search(queue, i + 1, served + 1, vehiclesOpened + 1, seats + c);
+            bins--;
+            used[c]--;
+        }
+        // nessun veicolo
+        choice[i] = -1;
+        search(queue, i + 1, served, vehiclesOpened, seats);
+    }
+
+    private boolean sameRemainingBefore(int b) {
+        for (int j = 0; j < b; j++) if (binRem[j] == binRem[b]) return true;
+        return false;
+    }
+}
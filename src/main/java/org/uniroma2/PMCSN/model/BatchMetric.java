@@ -13,6 +13,12 @@ public class BatchMetric {
         this.values = values;
     }
 
+    /** Metrica dalle statistiche in streaming: l'autocorrelazione è già disponibile, values resta vuota. */
+    public BatchMetric(String name, BatchAccumulator accumulator) {
+        this(name, List.of());
+        this.acfValue = accumulator.lag1Autocorrelation();
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,136 @@
+package org.uniroma2.PMCSN.model;
+
+import java.util.Locale;
+
+/**
+ * Scelta automatica della dimensione dei batch (schema LBATCH/ASAP): si raccolgono k batch
+ * partendo da una dimensione piccola; a buffer pieno, se l'autocorrelazione a lag 1 di qualche
+ * metrica di qualche centro supera la soglia in modulo, i batch vengono fusi a coppie
+ * (dimensione doppia, k/2 batch) e la raccolta continua fino a riempire di nuovo il buffer.
+ * Nessuna osservazione va persa: i k batch finali coprono tutta la simulazione.
+ *
+ * Le metriche controllate sono quelle del report (E[Ts], E[Tq], E[S], E[N], E[Nq], ρ, λ);
+ * una serie costante (es. E[Tq] senza coda) non ha autocorrelazione e non blocca la scelta.
+ */
+public class BatchSizer {
+
+    private static final String[] METRICS = {"E[Ts]", "E[Tq]", "E[S]", "E[N]", "E[Nq]", "ρ", "λ"};
+
+    private final BatchWindow[] windows;
+    private final int maxBatchSize;
+    private final double acfThreshold;
+    private final BatchAccumulator acf = new BatchAccumulator();
+
+    private int count = 0;
+    private int batchSize;
+    private boolean selected = false;
+
+    /* metrica con l'autocorrelazione peggiore all'ultimo controllo */
+    private double worstAcf = 0.0;
+    private int worstNode = -1;
+    private int worstMetric = -1;
+
+    /**
+     * @param batches numero di batch k (pari: a ogni raddoppio si fondono a coppie)
+     * @param initialBatchSize dimensione di partenza
+     * @param maxBatchSize oltre questa dimensione non si raddoppia più
+     * @param acfThreshold soglia sul modulo dell'autocorrelazione a lag 1
+     */
+    public BatchSizer(int batches, int initialBatchSize, int maxBatchSize, double acfThreshold) {
+        if (batches < 2 || batches % 2 != 0) {
+            throw new IllegalArgumentException("Il numero di batch deve essere pari e almeno 2: " + batches);
+        }
+        this.windows = new BatchWindow[batches];
+        this.batchSize = initialBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.acfThreshold = acfThreshold;
+    }
+
+    /** Dimensione corrente dei batch (quella scelta, dopo {@link #isSelected()}). */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+
+    /**
+     * Aggiunge il batch appena chiuso (di dimensione {@link #batchSize()}).
+     * @return true quando la dimensione è scelta: i batch sono in {@link #windows()}
+     */
+    public boolean add(BatchWindow window) {
+        windows[count++] = window;
+        if (count < windows.length) return false;
+
+        worstAcf();
+        if (!(Math.abs(worstAcf) > acfThreshold) || 2L * batchSize > maxBatchSize) {
+            selected = true;
+            return true;
+        }
+        // raddoppio: il batch j diventa la fusione dei batch 2j e 2j+1
+        for (int j = 0; j < count / 2; j++) {
+            BatchWindow w = windows[2 * j];
+            w.mergeNext(windows[2 * j + 1]);
+            windows[j] = w;
+        }
+        for (int j = count / 2; j < count; j++) windows[j] = null;
+        count /= 2;
+        batchSize *= 2;
+        return false;
+    }
+
+    /** I batch raccolti, in ordine: validi i primi {@link #count()}. */
+    public BatchWindow[] windows() {
+        return windows;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /* autocorrelazione a lag 1 di modulo massimo su centri e metriche */
+    private void worstAcf() {
+        worstAcf = 0.0;
+        worstNode = worstMetric = -1;
+        int nodes = windows[0].nodes();
+        for (int i = 0; i < nodes; i++) {
+            for (int m = 0; m < METRICS.length; m++) {
+                acf.reset();
+                for (int j = 0; j < count; j++) {
+                    BatchWindow w = windows[j];
+                    if (w.jobs[i] > 0 && w.time > 0) acf.add(metric(w, i, m));
+                }
+                if (acf.count() < 3) continue;
+                double r = acf.lag1Autocorrelation();
+                if (Math.abs(r) > Math.abs(worstAcf)) {   /* NaN (serie costante) escluso */
+                    worstAcf = r;
+                    worstNode = i;
+                    worstMetric = m;
+                }
+            }
+        }
+    }
+
+    /* valore della metrica m del centro i nel batch, come nel report (ρ a meno del numero di server) */
+    private static double metric(BatchWindow w, int i, int m) {
+        return switch (m) {
+            case 0 -> w.nodeArea[i] / w.jobs[i];
+            case 1 -> w.queueArea[i] / w.jobs[i];
+            case 2 -> w.serviceArea[i] / w.jobs[i];
+            case 3 -> w.nodeArea[i] / w.time;
+            case 4 -> w.queueArea[i] / w.time;
+            case 5 -> w.busyAtEnd[i] >= 0 ? w.busyAtEnd[i] : w.serviceArea[i] / w.time;
+            default -> w.jobs[i] / w.time;
+        };
+    }
+
+    /** Esito della scelta, da stampare a fine simulazione. */
+    public String summary() {
+        String worst = worstNode == -1 ? "-"
+                : String.format(Locale.ROOT, "Node %d %s %.4f", worstNode, METRICS[worstMetric], worstAcf);
+        return String.format(Locale.ROOT, "Dimensione batch automatica: B=%d, K=%d (autocorrelazione lag-1 massima: %s, soglia %.2f%s)",
+                batchSize, count, worst, acfThreshold,
+                Math.abs(worstAcf) > acfThreshold ? ", raggiunto maxBatchSize" : "");
+    }
+}
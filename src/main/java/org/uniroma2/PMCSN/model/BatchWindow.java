@@ -0,0 +1,41 @@
+package org.uniroma2.PMCSN.model;
+
+/**
+ * Incrementi per centro raccolti in un batch della simulazione a orizzonte infinito (aree,
+ * job completati, durata). Due batch consecutivi fusi con {@link #mergeNext} danno esattamente
+ * il batch di dimensione doppia, quindi la dimensione si può scegliere dopo averli raccolti.
+ */
+public class BatchWindow {
+
+    public double time;
+    public final long[] jobs;
+    public final double[] nodeArea;
+    public final double[] queueArea;
+    public final double[] serviceArea;
+    /* server occupati a fine batch per i centri ride sharing, -1 per gli altri */
+    public final int[] busyAtEnd;
+
+    public BatchWindow(int nodes) {
+        jobs = new long[nodes];
+        nodeArea = new double[nodes];
+        queueArea = new double[nodes];
+        serviceArea = new double[nodes];
+        busyAtEnd = new int[nodes];
+    }
+
+    public int nodes() {
+        return jobs.length;
+    }
+
+    /** Accoda a questo batch quello immediatamente successivo. */
+    public void mergeNext(BatchWindow next) {
+        time += next.time;
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] += next.jobs[i];
+            nodeArea[i] += next.nodeArea[i];
+            queueArea[i] += next.queueArea[i];
+            serviceArea[i] += next.serviceArea[i];
+            busyAtEnd[i] = next.busyAtEnd[i];
+        }
+    }
+}
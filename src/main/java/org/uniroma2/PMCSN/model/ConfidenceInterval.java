@@ -1,7 +1,6 @@
 package org.uniroma2.PMCSN.model;
 
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
 import org.uniroma2.PMCSN.libs.Rvms;
 
 import java.util.List;
@@ -15,16 +14,31 @@ public class ConfidenceInterval {
     public double utilizationCI;
     public double lambdaCI;
 
-    public ConfidenceInterval(List<Double> meanResponseTimeList, List<Double> meanQueueTimeList, List<Double> meanServiceTimeList,
+    public ConfidenceInterval(double levelOfConfidence,
+                              List<Double> meanResponseTimeList, List<Double> meanQueueTimeList, List<Double> meanServiceTimeList,
                               List<Double> meanSystemPopulationList, List<Double> meanQueuePopulationList,
                               List<Double> meanUtilizationList, List<Double> lambdaList) {
-        this.responseTimeCI = computeConfidenceInterval(meanResponseTimeList);
-        this.queueTimeCI = computeConfidenceInterval(meanQueueTimeList);
-        this.serviceTimeCI = computeConfidenceInterval(meanServiceTimeList);
-        this.systemPopulationCI = computeConfidenceInterval(meanSystemPopulationList);
-        this.queuePopulationCI = computeConfidenceInterval(meanQueuePopulationList);
-        this.utilizationCI = computeConfidenceInterval(meanUtilizationList);
-        this.lambdaCI = computeConfidenceInterval(lambdaList);
+        this.responseTimeCI = computeConfidenceInterval(meanResponseTimeList, levelOfConfidence);
+        this.queueTimeCI = computeConfidenceInterval(meanQueueTimeList, levelOfConfidence);
+        this.serviceTimeCI = computeConfidenceInterval(meanServiceTimeList, levelOfConfidence);
+        this.systemPopulationCI = computeConfidenceInterval(meanSystemPopulationList, levelOfConfidence);
+        this.queuePopulationCI = computeConfidenceInterval(meanQueuePopulationList, levelOfConfidence);
+        this.utilizationCI = computeConfidenceInterval(meanUtilizationList, levelOfConfidence);
+        this.lambdaCI = computeConfidenceInterval(lambdaList, levelOfConfidence);
+    }
+
+    /** Come sopra, dalle statistiche in streaming dei valori batch (o di replica). */
+    public ConfidenceInterval(double levelOfConfidence,
+                              BatchAccumulator responseTime, BatchAccumulator queueTime, BatchAccumulator serviceTime,
+                              BatchAccumulator systemPopulation, BatchAccumulator queuePopulation,
+                              BatchAccumulator utilization, BatchAccumulator lambda) {
+        this.responseTimeCI = computeConfidenceInterval(responseTime, levelOfConfidence);
+        this.queueTimeCI = computeConfidenceInterval(queueTime, levelOfConfidence);
+        this.serviceTimeCI = computeConfidenceInterval(serviceTime, levelOfConfidence);
+        this.systemPopulationCI = computeConfidenceInterval(systemPopulation, levelOfConfidence);
+        this.queuePopulationCI = computeConfidenceInterval(queuePopulation, levelOfConfidence);
+        this.utilizationCI = computeConfidenceInterval(utilization, levelOfConfidence);
+        this.lambdaCI = computeConfidenceInterval(lambda, levelOfConfidence);
     }
 
     public double getResponseTimeCI() {
@@ -56,15 +70,12 @@ public class ConfidenceInterval {
     }
 
 
-    public static double computeConfidenceInterval(List<Double> values) {
+    public static double computeConfidenceInterval(List<Double> values, double levelOfConfidence) {
         long n = 0; /* counts data points */
         double sum = 0.0;
         double mean = 0.0;
-        double u, t, w = 0.0;
         double diff;
 
-        Rvms rvms = new Rvms();
-
         for (Double data : values) {
             n++; /* and standard deviation */
             diff = data - mean;
@@ -72,11 +83,18 @@ public class ConfidenceInterval {
             mean += diff / n;
         }
 
-        double stddev = Math.sqrt(sum / n);
+        return halfWidth(n, Math.sqrt(sum / n), levelOfConfidence);
+    }
+
+    public static double computeConfidenceInterval(BatchAccumulator values, double levelOfConfidence) {
+        return halfWidth(values.count(), values.stdDev(), levelOfConfidence);
+    }
+
+    private static double halfWidth(long n, double stddev, double levelOfConfidence) {
+        double u, t, w = 0.0;
 
-        ConfigurationManager configurationManager = new ConfigurationManager();
-        double levelOfConfidence = configurationManager.getDouble("general", "levelOfConfidence");
         if (n > 1) {
+            Rvms rvms = new Rvms();
             u = 1.0 - 0.5 * (1.0 - levelOfConfidence); /* interval parameter */
             t = rvms.idfStudent(n - 1, u); /* critical value of t */
             w = t * stddev / Math.sqrt(n - 1); /* interval half width */
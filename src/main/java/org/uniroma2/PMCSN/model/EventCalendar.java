@@ -0,0 +1,142 @@
+package org.uniroma2.PMCSN.model;
+
+import java.util.Arrays;
+
+/**
+ * Calendario degli eventi futuri di un centro, realizzato come min-heap binario indicizzato.
+ * Ogni evento è identificato dal suo slot (0 = arrivo, 1..S = completamenti dei server, ...)
+ * e ordinato per tempo; a parità di tempo vince lo slot più basso, come nella scansione lineare
+ * della lista degli eventi. peek è O(1), schedule/cancel sono O(log n).
+ */
+public class EventCalendar {
+
+    private int[] heap;    /* heap[k] = slot in posizione k                  */
+    private int[] pos;     /* pos[slot] = posizione nello heap, -1 se assente */
+    private double[] time; /* time[slot] = tempo dell'evento schedulato       */
+    private int size = 0;
+
+    public EventCalendar(int capacity) {
+        capacity = Math.max(capacity, 1);
+        heap = new int[capacity];
+        pos  = new int[capacity];
+        time = new double[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    /**
+     * Inserisce l'evento dello slot al tempo t, oppure ne aggiorna il tempo se già presente
+     * (decrease-key o increase-key).
+     */
+    public void schedule(int slot, double t) {
+        ensureCapacity(slot + 1);
+        int k = pos[slot];
+        if (k == -1) {
+            time[slot] = t;
+            heap[size] = slot;
+            pos[slot] = size;
+            siftUp(size++);
+        } else {
+            double old = time[slot];
+            time[slot] = t;
+            if (t < old) siftUp(k);
+            else if (t > old) siftDown(k);
+        }
+    }
+
+    /** Rimuove l'evento dello slot, se schedulato. */
+    public void cancel(int slot) {
+        if (slot >= pos.length) return;
+        int k = pos[slot];
+        if (k == -1) return;
+        int last = heap[--size];
+        pos[slot] = -1;
+        if (k != size) {
+            heap[k] = last;
+            pos[last] = k;
+            siftDown(k);
+            siftUp(pos[last]);
+        }
+    }
+
+    public boolean contains(int slot) {
+        return slot < pos.length && pos[slot] != -1;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Tempo dell'evento più imminente, +inf se il calendario è vuoto. */
+    public double peekTime() {
+        return size == 0 ? Double.POSITIVE_INFINITY : time[heap[0]];
+    }
+
+    /** Slot dell'evento più imminente, -1 se il calendario è vuoto. */
+    public int peekSlot() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    public double timeOf(int slot) {
+        return contains(slot) ? time[slot] : Double.POSITIVE_INFINITY;
+    }
+
+    public void clear() {
+        for (int k = 0; k < size; k++) pos[heap[k]] = -1;
+        size = 0;
+    }
+
+    // helper privati
+
+    private boolean less(int a, int b) {
+        double ta = time[a], tb = time[b];
+        return ta < tb || (ta == tb && a < b);
+    }
+
+    private void siftUp(int k) {
+        int slot = heap[k];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            int p = heap[parent];
+            if (!less(slot, p)) break;
+            heap[k] = p;
+            pos[p] = k;
+            k = parent;
+        }
+        heap[k] = slot;
+        pos[slot] = k;
+    }
+
+    private void siftDown(int k) {
+        int slot = heap[k];
+        int half = size >>> 1;
+        while (k < half) {
+            int child = 2 * k + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && less(heap[right], c)) {
+                child = right;
+                c = heap[child];
+            }
+            if (!less(c, slot)) break;
+            heap[k] = c;
+            pos[c] = k;
+            k = child;
+        }
+        heap[k] = slot;
+        pos[slot] = k;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= pos.length) return;
+        int newCapacity = Math.max(capacity, pos.length * 2);
+        heap = Arrays.copyOf(heap, newCapacity);
+        time = Arrays.copyOf(time, newCapacity);
+        int oldLength = pos.length;
+        pos = Arrays.copyOf(pos, newCapacity);
+        Arrays.fill(pos, oldLength, newCapacity, -1);
+    }
+}
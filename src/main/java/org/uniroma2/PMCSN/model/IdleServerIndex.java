@@ -0,0 +1,119 @@
+package org.uniroma2.PMCSN.model;
+
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.Locale;
+
+/**
+ * Indice dei server liberi di un centro multi-server (server 1..S), aggiornato a ogni
+ * assegnazione e partenza al posto della scansione lineare della lista eventi.
+ * La scelta del server libero dipende dalla politica:
+ * <ul>
+ *   <li>IN_ORDER: il server libero di indice minimo ("selection in order"), O(S/64);</li>
+ *   <li>LRU: il server assegnato meno di recente, O(log S);</li>
+ *   <li>LONGEST_IDLE: il server libero da più tempo, O(log S);</li>
+ *   <li>RANDOM: un server libero a caso (stream {@link #RANDOM_STREAM}), O(S/64).</li>
+ * </ul>
+ * Nei centri giornalieri solo i primi {@link #setActiveServers(int) n} server sono selezionabili.
+ */
+public class IdleServerIndex {
+
+    public enum Policy {
+        IN_ORDER, LRU, RANDOM, LONGEST_IDLE;
+
+        public static Policy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    public static final int RANDOM_STREAM = 9;
+
+    private final Policy policy;
+    private final Rngs rng;
+    private final int servers;
+    private final ServerBitmap idle;
+    /* LRU: tempo dell'ultima assegnazione, LONGEST_IDLE: tempo del rilascio */
+    private final double[] key;
+    /* server liberi e attivi ordinati per key (a parità vince l'indice minore), solo LRU/LONGEST_IDLE */
+    private final EventCalendar byKey;
+    private int activeServers;
+
+    public IdleServerIndex(int servers, Policy policy, Rngs rng) {
+        this.servers = servers;
+        this.policy = policy;
+        this.rng = rng;
+        this.idle = new ServerBitmap(servers);
+        this.key = new double[servers + 1];
+        boolean keyed = (policy == Policy.LRU || policy == Policy.LONGEST_IDLE);
+        this.byKey = keyed ? new EventCalendar(servers + 1) : null;
+        this.activeServers = servers;
+
+        // all'inizio sono tutti liberi, con key uguali: si parte in ordine di indice
+        for (int s = 1; s <= servers; s++) idle.add(s);
+        if (byKey != null) {
+            for (int s = 1; s <= servers; s++) byKey.schedule(s, 0.0);
+        }
+    }
+
+    /**
+     * Sceglie un server libero tra gli attivi e lo segna occupato.
+     * @return indice del server, -1 se sono tutti occupati
+     */
+    public int acquire(double now) {
+        int s = switch (policy) {
+            case IN_ORDER -> firstIdle();
+            case RANDOM -> randomIdle();
+            case LRU, LONGEST_IDLE -> byKey.peekSlot();
+        };
+        if (s == -1) return -1;
+
+        idle.remove(s);
+        if (byKey != null) byKey.cancel(s);
+        if (policy == Policy.LRU) key[s] = now;
+        return s;
+    }
+
+    /** Segna libero il server s (fine servizio senza job in coda). */
+    public void release(int s, double now) {
+        idle.add(s);
+        if (policy == Policy.LONGEST_IDLE) key[s] = now;
+        if (byKey != null && s <= activeServers) byKey.schedule(s, key[s]);
+    }
+
+    /** Solo i server 1..n sono selezionabili; quelli oltre restano occupati finché non finiscono. */
+    public void setActiveServers(int n) {
+        n = Math.min(n, servers);
+        if (byKey != null) {
+            for (int s = n + 1; s <= activeServers; s++) byKey.cancel(s);
+            for (int s = idle.next(activeServers + 1); s != -1 && s <= n; s = idle.next(s + 1)) {
+                byKey.schedule(s, key[s]);
+            }
+        }
+        activeServers = n;
+    }
+
+    public boolean isIdle(int s) {
+        return idle.contains(s);
+    }
+
+    /** Numero di server liberi tra gli attivi. */
+    public int idleCount() {
+        return byKey != null ? byKey.size() : idle.countUpTo(activeServers);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    private int firstIdle() {
+        int s = idle.next(1);
+        return (s != -1 && s <= activeServers) ? s : -1;
+    }
+
+    private int randomIdle() {
+        int n = idleCount();
+        if (n == 0) return -1;
+        rng.selectStream(RANDOM_STREAM);
+        return idle.select((int) (rng.random() * n));   /* k-esimo server libero, 0 <= k < n */
+    }
+}
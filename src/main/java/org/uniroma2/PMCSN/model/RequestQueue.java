@@ -0,0 +1,108 @@
+package org.uniroma2.PMCSN.model;
+
+/**
+ * Coda FIFO delle richieste in attesa di matching nei centri ride sharing, memorizzata
+ * come buffer circolare di array paralleli di primitivi (posti richiesti, id progressivo):
+ * a regime aggiunte e rimozioni non allocano e togliere la testa è O(1). L'id identifica
+ * la richiesta anche dopo gli spostamenti dovuti alle rimozioni in mezzo alla coda.
+ */
+public class RequestQueue {
+
+    private int[] posti;
+    private long[] ids;
+    private int head = 0;   /* posizione fisica della richiesta più vecchia */
+    private int size = 0;
+    private long nextId = 0;
+
+    public RequestQueue(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1;   /* potenza di 2 >= capacity */
+        posti = new int[Math.max(n, 1)];
+        ids = new long[posti.length];
+    }
+
+    /** Accoda una richiesta e ne restituisce l'id. */
+    public long add(int postiRichiesti) {
+        if (size == posti.length) grow();
+        int i = slot(size);
+        posti[i] = postiRichiesti;
+        ids[i] = nextId;
+        size++;
+        return nextId++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Posti richiesti dalla k-esima richiesta in coda (0 = la più vecchia). */
+    public int postiAt(int k) {
+        return posti[slot(k)];
+    }
+
+    public long idAt(int k) {
+        return ids[slot(k)];
+    }
+
+    /** Rimuove la k-esima richiesta mantenendo l'ordine delle altre (sposta il lato più corto). */
+    public void removeAt(int k) {
+        if (k < size - 1 - k) {
+            for (int j = k; j > 0; j--) move(j - 1, j);
+            head = slot(1);
+        } else {
+            for (int j = k; j < size - 1; j++) move(j + 1, j);
+        }
+        size--;
+    }
+
+    public void removeFirst() {
+        head = slot(1);
+        size--;
+    }
+
+    /**
+     * Rimuove in un solo passaggio le richieste con marked[k] == true (k = posizione in coda),
+     * mantenendo l'ordine delle altre.
+     */
+    public void removeMarked(boolean[] marked) {
+        int kept = 0;
+        for (int k = 0; k < size; k++) {
+            if (!marked[k]) {
+                if (kept != k) move(k, kept);
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private int slot(int k) {
+        return (head + k) & (posti.length - 1);
+    }
+
+    /* copia la richiesta in posizione from nella posizione to */
+    private void move(int from, int to) {
+        int f = slot(from), t = slot(to);
+        posti[t] = posti[f];
+        ids[t] = ids[f];
+    }
+
+    private void grow() {
+        int[] newPosti = new int[posti.length * 2];
+        long[] newIds = new long[posti.length * 2];
+        for (int k = 0; k < size; k++) {
+            newPosti[k] = posti[slot(k)];
+            newIds[k] = ids[slot(k)];
+        }
+        posti = newPosti;
+        ids = newIds;
+        head = 0;
+    }
+}
@@ -0,0 +1,89 @@
+package org.uniroma2.PMCSN.model;
+
+/**
+ * Insieme di indici di server (0..n) su bitmap di long: inserimento, rimozione e test sono O(1),
+ * ricerca del successivo e selezione del k-esimo sono O(n/64). Nessuna allocazione dopo la costruzione.
+ */
+public class ServerBitmap {
+
+    private final long[] words;   /* bit s della parola s >>> 6 */
+    private int size = 0;
+    private int low = 0;          /* le parole sotto low sono tutte nulle */
+
+    public ServerBitmap(int maxIndex) {
+        words = new long[(maxIndex >>> 6) + 1];
+    }
+
+    public void add(int s) {
+        long bit = 1L << s;
+        if ((words[s >>> 6] & bit) == 0) {
+            words[s >>> 6] |= bit;
+            size++;
+            if ((s >>> 6) < low) low = s >>> 6;
+        }
+    }
+
+    public void remove(int s) {
+        long bit = 1L << s;
+        if ((words[s >>> 6] & bit) != 0) {
+            words[s >>> 6] &= ~bit;
+            size--;
+        }
+    }
+
+    public boolean contains(int s) {
+        return (words[s >>> 6] & (1L << s)) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Primo indice presente >= from, -1 se nessuno. */
+    public int next(int from) {
+        if (size == 0) return -1;
+        int w = from >>> 6;
+        if (w >= words.length) return -1;
+        boolean fromLow = w < low || (w == low && (from & 63) == 0);
+        long word;
+        if (w < low) {
+            w = low;
+            word = words[w];
+        } else {
+            word = words[w] & (-1L << from);
+        }
+        while (word == 0) {
+            if (++w == words.length) return -1;
+            word = words[w];
+        }
+        if (fromLow) low = w;   /* saltate solo parole nulle */
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /** Numero di indici presenti <= n. */
+    public int countUpTo(int n) {
+        int last = Math.min(n >>> 6, words.length - 1);
+        int count = 0;
+        for (int w = 0; w < last; w++) count += Long.bitCount(words[w]);
+        long mask = (n >>> 6) > last ? -1L : (-1L >>> (63 - (n & 63)));
+        return count + Long.bitCount(words[last] & mask);
+    }
+
+    /** k-esimo indice presente in ordine crescente (0 = il minimo), -1 se k >= size. */
+    public int select(int k) {
+        if (k < 0 || k >= size) return -1;
+        for (int w = low; ; w++) {
+            long word = words[w];
+            int c = Long.bitCount(word);
+            if (k < c) {
+                for (int i = 0; i < k; i++) word &= word - 1;   /* tolgo i k bit più bassi */
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            k -= c;
+        }
+    }
+}
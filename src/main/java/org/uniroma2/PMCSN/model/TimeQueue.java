@@ -0,0 +1,53 @@
+package org.uniroma2.PMCSN.model;
+
+/**
+ * Coda FIFO di tempi di evento su buffer circolare di double, usata per gli arrivi di
+ * feedback (che arrivano in ordine di tempo): a regime offer/poll non allocano.
+ */
+public class TimeQueue {
+
+    private double[] buf;
+    private int head = 0;
+    private int size = 0;
+
+    public TimeQueue(int capacity) {
+        buf = new double[Math.max(capacity, 1)];
+    }
+
+    public void offer(double t) {
+        if (size == buf.length) grow();
+        buf[(head + size) % buf.length] = t;
+        size++;
+    }
+
+    /** Tempo in testa alla coda, +inf se vuota. */
+    public double peek() {
+        return size == 0 ? Double.POSITIVE_INFINITY : buf[head];
+    }
+
+    public double poll() {
+        double t = buf[head];
+        head = (head + 1) % buf.length;
+        size--;
+        return t;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = size = 0;
+    }
+
+    private void grow() {
+        double[] b = new double[buf.length * 2];
+        for (int k = 0; k < size; k++) b[k] = buf[(head + k) % buf.length];
+        buf = b;
+        head = 0;
+    }
+}
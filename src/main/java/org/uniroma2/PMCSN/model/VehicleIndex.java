@@ -0,0 +1,98 @@
+package org.uniroma2.PMCSN.model;
+
+import org.uniroma2.PMCSN.libs.Rngs;
+
+import java.util.Arrays;
+
+/**
+ * Indice dei veicoli di un centro ride sharing (veicoli 1..R) per stato e capacità rimanente:
+ * un {@link ServerBitmap} per ogni coppia (occupato/libero, posti 0..{@link #MAX_CAPACITY}).
+ * Il best-fit del matching scorre le classi di capacità dalla più alta alla richiesta, invece
+ * di tutti i veicoli; a parità di capacità vince l'indice minore, come nella scansione lineare.
+ * Va aggiornato con {@link #update} a ogni cambio di stato o di capacità del veicolo.
+ */
+public class VehicleIndex {
+
+    public static final int MAX_CAPACITY = 8;
+
+    private static final int BUSY = 1;
+    private static final int IDLE = 0;
+
+    /* buckets[stato][posti rimanenti] */
+    private final ServerBitmap[][] buckets = new ServerBitmap[2][MAX_CAPACITY + 1];
+    /* bucket corrente del veicolo v: stato * (MAX_CAPACITY + 1) + posti, -1 se fuori indice */
+    private final int[] where;
+
+    public VehicleIndex(int vehicles) {
+        for (ServerBitmap[] byState : buckets) {
+            for (int c = 0; c <= MAX_CAPACITY; c++) byState[c] = new ServerBitmap(vehicles);
+        }
+        where = new int[vehicles + 1];
+        Arrays.fill(where, -1);
+    }
+
+    /**
+     * Registra lo stato del veicolo v come in MsqEvent: x == 1 occupato, x == 0 libero,
+     * altrimenti (x == -1, inattivo) il veicolo esce dall'indice.
+     */
+    public void update(int v, int x, int capacitaRimanente) {
+        int code = (x == BUSY || x == IDLE) ? x * (MAX_CAPACITY + 1) + capacitaRimanente : -1;
+        int old = where[v];
+        if (old == code) return;
+        if (old != -1) buckets[old / (MAX_CAPACITY + 1)][old % (MAX_CAPACITY + 1)].remove(v);
+        if (code != -1) buckets[x][capacitaRimanente].add(v);
+        where[v] = code;
+    }
+
+    /** Veicolo libero con più posti rimanenti (almeno posti), -1 se nessuno. */
+    public int bestIdle(int posti) {
+        for (int c = MAX_CAPACITY; c >= posti; c--) {
+            ServerBitmap b = buckets[IDLE][c];
+            if (!b.isEmpty()) return b.next(0);
+        }
+        return -1;
+    }
+
+    /**
+     * Veicolo occupato con più posti rimanenti (almeno posti) tra quelli compatibili col
+     * percorso, dove ogni veicolo è compatibile in modo indipendente con probabilità pMatch.
+     * Equivale in legge a una prova di Bernoulli per veicolo in ordine di capacità decrescente
+     * e indice crescente, ma per ogni classe estrae un solo campione geometrico (numero di
+     * veicoli scartati prima del primo compatibile) dallo stream selezionato in rng.
+     * @return indice del veicolo, -1 se nessuno è compatibile
+     */
+    public int bestBusy(int posti, double pMatch, Rngs rng) {
+        if (pMatch <= 0.0) return -1;
+        double logMiss = Math.log(1.0 - pMatch);   /* -inf se pMatch == 1: k = 0 */
+        for (int c = MAX_CAPACITY; c >= posti; c--) {
+            ServerBitmap b = buckets[BUSY][c];
+            int n = b.size();
+            if (n == 0) continue;
+            double k = (pMatch >= 1.0) ? 0.0 : Math.floor(Math.log(rng.random()) / logMiss);
+            if (k < n) return b.select((int) k);
+        }
+        return -1;
+    }
+
+    /** Posti rimanenti del veicolo v secondo l'indice, -1 se è fuori indice (inattivo). */
+    public int capacitaRimanente(int v) {
+        return where[v] == -1 ? -1 : where[v] % (MAX_CAPACITY + 1);
+    }
+
+    /** Numero di veicoli liberi con esattamente c posti. */
+    public int idleCount(int c) {
+        return buckets[IDLE][c].size();
+    }
+
+    /** k-esimo veicolo libero (per indice crescente) con esattamente c posti, -1 se non c'è. */
+    public int idleWithCapacity(int c, int k) {
+        return buckets[IDLE][c].select(k);
+    }
+
+    /** Numero di veicoli occupati (in servizio). */
+    public int busyCount() {
+        int n = 0;
+        for (ServerBitmap b : buckets[BUSY]) n += b.size();
+        return n;
+    }
+}
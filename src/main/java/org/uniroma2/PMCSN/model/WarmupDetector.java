@@ -0,0 +1,138 @@
+package org.uniroma2.PMCSN.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Rilevamento del transitorio iniziale con MSER-5 prima dei batch della simulazione a orizzonte
+ * infinito. Un'osservazione è la popolazione media E[N] di un centro su una finestra di
+ * completamenti (sempre definita, anche se nella finestra il centro non ha completato job);
+ * le osservazioni sono raggruppate a 5 e per ogni centro si sceglie il troncamento d che
+ * minimizza
+ * <pre>  MSER(d) = sum_{j>d} (z_j - media_{j>d} z)^2 / (m - d)^2  </pre>
+ * sulle m medie z_j. Il troncamento è accettato quando cade nella prima metà della serie per
+ * tutti i centri; altrimenti la prova viene raddoppiata, fino al massimo configurato.
+ * A rilevamento concluso il chiamante azzera le statistiche di tutti i centri e inizia i batch.
+ */
+public class WarmupDetector {
+
+    private static final int GROUP = 5;
+
+    private final int window;
+    private final int maxObservations;
+    private final int nodes;
+
+    private double[][] series;   /* [centro][osservazione] */
+    private double[] endTime;    /* istante di fine di ogni osservazione */
+    private int n = 0;
+    private int target;
+    private boolean done = false;
+    private final int[] truncation;
+
+    /**
+     * @param nodes numero di centri
+     * @param window completamenti per osservazione
+     * @param observations osservazioni della prima prova
+     * @param maxObservations oltre queste si accetta il troncamento trovato
+     */
+    public WarmupDetector(int nodes, int window, int observations, int maxObservations) {
+        this.nodes = nodes;
+        this.window = window;
+        this.target = Math.max(observations, 4 * GROUP);
+        this.maxObservations = Math.max(maxObservations, target);
+        this.series = new double[nodes][target];
+        this.endTime = new double[target];
+        this.truncation = new int[nodes];
+    }
+
+    /** Completamenti per osservazione (dimensione delle finestre durante il rilevamento). */
+    public int window() {
+        return window;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Aggiunge la finestra appena chiusa.
+     * @return true quando il transitorio è stato rilevato per tutti i centri
+     */
+    public boolean add(BatchWindow w) {
+        for (int i = 0; i < nodes; i++) {
+            series[i][n] = w.time > 0 ? w.nodeArea[i] / w.time : 0.0;
+        }
+        endTime[n] = (n == 0 ? 0.0 : endTime[n - 1]) + w.time;
+        n++;
+        if (n < target) return false;
+
+        boolean inFirstHalf = true;
+        for (int i = 0; i < nodes; i++) {
+            truncation[i] = mser5(series[i], n);
+            if (truncation[i] > n / 2) inFirstHalf = false;
+        }
+        if (inFirstHalf || n >= maxObservations) {
+            done = true;
+            return true;
+        }
+        target = Math.min(2 * target, maxObservations);
+        for (int i = 0; i < nodes; i++) series[i] = Arrays.copyOf(series[i], target);
+        endTime = Arrays.copyOf(endTime, target);
+        return false;
+    }
+
+    /** Troncamento MSER-5 (in osservazioni) dei primi n valori di y. */
+    static int mser5(double[] y, int n) {
+        int m = n / GROUP;
+        double[] z = new double[m];
+        for (int j = 0; j < m; j++) {
+            double s = 0.0;
+            for (int k = 0; k < GROUP; k++) s += y[j * GROUP + k];
+            z[j] = s / GROUP;
+        }
+        // somme dalla coda: per ogni d servono somma e somma dei quadrati di z_d..z_m-1
+        int best = 0;
+        double bestMser = Double.POSITIVE_INFINITY;
+        double s1 = 0.0, s2 = 0.0;
+        for (int d = m - 1; d >= 0; d--) {
+            s1 += z[d];
+            s2 += z[d] * z[d];
+            int k = m - d;
+            if (k < 2) continue;
+            double mser = Math.max(s2 - s1 * s1 / k, 0.0) / ((double) k * k);
+            if (mser <= bestMser) {   /* a parità il troncamento più corto */
+                bestMser = mser;
+                best = d;
+            }
+        }
+        return best * GROUP;
+    }
+
+    /** Troncamento del centro i, in osservazioni. */
+    public int truncation(int node) {
+        return truncation[node];
+    }
+
+    /** Istante di fine del transitorio del centro i. */
+    public double truncationTime(int node) {
+        int d = truncation[node];
+        return d == 0 ? 0.0 : endTime[d - 1];
+    }
+
+    /** Istante in cui il rilevamento si è concluso (e partono i batch). */
+    public double detectionTime() {
+        return n == 0 ? 0.0 : endTime[n - 1];
+    }
+
+    /** Troncamento per centro, da stampare a fine simulazione. */
+    public String summary() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "Transitorio iniziale (MSER-5 su E[N], finestre di %d completamenti, %d osservazioni):%n", window, n));
+        for (int i = 0; i < nodes; i++) {
+            sb.append(String.format(Locale.ROOT, "  Node %d: troncamento a %d osservazioni (t=%.2f)%s%n",
+                    i, truncation[i], truncationTime(i), truncation[i] > n / 2 ? " - oltre metà serie, prova troppo corta" : ""));
+        }
+        sb.append(String.format(Locale.ROOT, "  statistiche azzerate e batch avviati a t=%.2f", detectionTime()));
+        return sb.toString();
+    }
+}
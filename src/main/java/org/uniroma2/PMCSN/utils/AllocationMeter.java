@@ -0,0 +1,64 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Misura la pressione sul GC di un loop di simulazione: byte allocati dal thread corrente
+ * (se la JVM lo supporta) e numero/tempo delle collezioni tra start() e report().
+ */
+public class AllocationMeter {
+
+    private final com.sun.management.ThreadMXBean threads;
+    private long startBytes;
+    private long startGcCount;
+    private long startGcTime;
+
+    public AllocationMeter() {
+        ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        if (t instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemorySupported()) {
+            sun.setThreadAllocatedMemoryEnabled(true);
+            this.threads = sun;
+        } else {
+            this.threads = null;
+        }
+    }
+
+    public void start() {
+        startBytes = allocatedBytes();
+        startGcCount = gcCount();
+        startGcTime = gcTime();
+    }
+
+    /** Riga di riepilogo con byte allocati per evento e collezioni GC dall'ultimo start(). */
+    public String report(long events) {
+        long bytes = allocatedBytes() - startBytes;
+        String perEvent = (threads == null || events == 0)
+                ? "n/d"
+                : String.format(Locale.US, "%.2f", (double) bytes / events);
+        return String.format(Locale.US, "eventi=%d, byte allocati/evento=%s, collezioni GC=%d (%d ms)",
+                events, perEvent, gcCount() - startGcCount, gcTime() - startGcTime);
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? 0L : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionCount());
+        }
+        return n;
+    }
+
+    private static long gcTime() {
+        long ms = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ms += Math.max(0, gc.getCollectionTime());
+        }
+        return ms;
+    }
+}
@@ -3,6 +3,7 @@ package org.uniroma2.PMCSN.utils;
 
 
 import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -82,6 +83,21 @@ public class AnalyticalComputation {
         return new AnalyticalResult(lambda, rho, Etq, Enq, Ets, Ens, centerName, Esi);
     }
 
+    /**
+     * Medie note delle variabili di controllo del sistema semplice (vedi {@link ControlVariates}),
+     * per centro: {tasso degli arrivi ammessi λ_i(1 - pExit), scarto del lavoro di servizio 0}.
+     * Sono medie esatte delle osservazioni di una replica a orizzonte finito (non valori di regime):
+     * il numero di arrivi di Poisson in [0, STOP] ha media λ·STOP, e la somma degli scarti dalla
+     * media E[S] della normale troncata dei servizi iniziati entro STOP ha media 0 (identità di Wald).
+     */
+    public static double[][] controlVariateMeans(SimulationConfig simConfig, int nodes) {
+        double[][] known = new double[nodes][];
+        for (int i = 0; i < nodes; i++) {
+            known[i] = new double[]{simConfig.arrivalRate(i, true) * (1 - simConfig.pExit), 0.0};
+        }
+        return known;
+    }
+
     public static List<AnalyticalResult> computeAnalyticalResults(String simulationType) {
         List<AnalyticalResult> analyticalResults = new ArrayList<>();
         double pCentroSmall = config.getDouble("probabilities", "small");
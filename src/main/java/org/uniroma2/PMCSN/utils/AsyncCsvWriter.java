@@ -0,0 +1,184 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Scrittura asincrona dei CSV di output. I thread di simulazione accodano le righe come valori
+ * ({@link ColumnLayout}) e non toccano il filesystem; un unico thread in background le formatta
+ * con un {@link RowEncoder} e le scrive su writer bufferizzati, aperti una volta per file e
+ * tenuti aperti fino a {@link #flush()}.
+ * <ul>
+ *   <li>la coda è limitata: se il disco non tiene il passo, chi accoda aspetta;</li>
+ *   <li>le righe di uno stesso file sono scritte nell'ordine in cui sono state accodate;</li>
+ *   <li>i file sono in append e l'intestazione si scrive all'apertura se il file è nuovo o vuoto;</li>
+ *   <li>un errore di scrittura non ferma il thread (chi accoda non resta bloccato), ma il primo errore
+ *       viene rilanciato da {@link #flush()} nel thread chiamante: righe perse non passano inosservate.</li>
+ * </ul>
+ * Con il formato binario le righe vanno invece in un file {@link ColumnarFile}.
+ */
+public final class AsyncCsvWriter {
+
+    private static final int QUEUE_CAPACITY = 4096;
+
+    private static AsyncCsvWriter shared;
+
+    /* file == null: richiesta di flush, segnalata su done */
+    private record Task(String file, ColumnLayout layout, List<double[]> rows, boolean binary, CountDownLatch done) {}
+
+    /* errore del thread di scrittura sul file file */
+    private record Failure(String file, Exception cause) {}
+
+    private final BlockingQueue<Task> queue;
+    /* solo thread di scrittura */
+    private final Map<String, BufferedWriter> writers = new HashMap<>();
+    private final Map<String, ColumnarFile.Writer> binaryWriters = new HashMap<>();
+    private final RowEncoder encoder = new RowEncoder();
+    /* primo errore di scrittura dall'ultimo flush, rilanciato dal flush */
+    private volatile Failure failure;
+
+    public AsyncCsvWriter(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        Thread worker = new Thread(this::drain, "csv-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Writer condiviso da tutte le simulazioni; i file vengono chiusi anche all'uscita della JVM. */
+    public static synchronized AsyncCsvWriter shared() {
+        if (shared == null) {
+            AsyncCsvWriter w = new AsyncCsvWriter(QUEUE_CAPACITY);
+            Runtime.getRuntime().addShutdownHook(new Thread(w::flush, "csv-writer-shutdown"));
+            shared = w;
+        }
+        return shared;
+    }
+
+    /**
+     * Accoda righe al file, in blocco (es. il buffer di una replica).
+     * @param binary true: formato {@link ColumnarFile} nel file file; false: CSV con intestazione del layout
+     */
+    public void appendRows(String file, ColumnLayout layout, List<double[]> rows, boolean binary) {
+        if (!rows.isEmpty()) put(new Task(file, layout, rows, binary, null));
+    }
+
+    /**
+     * Attende che tutte le righe accodate finora siano su disco e chiude i file.
+     * @throws UncheckedIOException se una scrittura o una chiusura dall'ultimo flush non è riuscita
+     *         (IllegalStateException per errori diversi da IOException): i file coinvolti sono incompleti
+     */
+    public void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        put(new Task(null, null, null, false, done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Scrittura CSV interrotta", e);
+        }
+        Failure f = failure;
+        if (f != null) {
+            failure = null;
+            String message = "Scrittura di " + f.file() + " non riuscita";
+            if (f.cause() instanceof IOException io) throw new UncheckedIOException(message, io);
+            throw new IllegalStateException(message, f.cause());
+        }
+    }
+
+    private void put(Task task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Scrittura CSV interrotta", e);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task.file() == null) {
+                closeAll();
+                task.done().countDown();
+                continue;
+            }
+            try {
+                if (task.binary()) {
+                    ColumnarFile.Writer w = binaryWriters.get(task.file());
+                    if (w == null) {
+                        w = new ColumnarFile.Writer(Paths.get(task.file()), task.layout(), true);
+                        binaryWriters.put(task.file(), w);
+                    }
+                    for (double[] row : task.rows()) w.writeRow(row);
+                    continue;
+                }
+                BufferedWriter w = writers.get(task.file());
+                if (w == null) {
+                    w = open(task.file(), task.layout().header());
+                    writers.put(task.file(), w);
+                }
+                for (double[] row : task.rows()) {
+                    task.layout().encode(encoder, row).writeTo(w);
+                    w.write('\n');
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(task.file(), e);
+            }
+        }
+    }
+
+    /* conserva solo il primo errore: i successivi sono di solito conseguenze dello stesso problema */
+    private void fail(String file, Exception e) {
+        if (failure == null) failure = new Failure(file, e);
+    }
+
+    private static BufferedWriter open(String path, String header) throws IOException {
+        File f = new File(path);
+        File parent = f.getParentFile();
+        if (parent != null) parent.mkdirs();
+        boolean needHeader = !f.exists() || f.length() == 0;
+        BufferedWriter w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (needHeader && header != null) {
+            w.write(header);
+            w.write('\n');
+        }
+        return w;
+    }
+
+    private void closeAll() {
+        for (Map.Entry<String, BufferedWriter> w : writers.entrySet()) {
+            try {
+                w.getValue().close();
+            } catch (IOException e) {
+                fail(w.getKey(), e);
+            }
+        }
+        writers.clear();
+        for (Map.Entry<String, ColumnarFile.Writer> w : binaryWriters.entrySet()) {
+            try {
+                w.getValue().close();
+            } catch (IOException e) {
+                fail(w.getKey(), e);
+            }
+        }
+        binaryWriters.clear();
+    }
+}
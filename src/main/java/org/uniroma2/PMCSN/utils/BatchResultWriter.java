@@ -0,0 +1,70 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File per batch della simulazione a orizzonte infinito (medie cumulative dopo ogni batch),
+ * in CSV o nel formato binario di {@link ColumnarFile}. Il file viene sovrascritto e inizia
+ * con la riga del batch 0 a valori nulli (riconvertita dal binario come 0.000000).
+ */
+public final class BatchResultWriter implements Closeable {
+
+    /** Colonne: SimulationType,Batch,ETs,ETq,ES,EN,ENq,rho,lambda. */
+    public static final ColumnLayout LAYOUT = new ColumnLayout()
+            .label("SimulationType", "INFINITE")
+            .integer("Batch")
+            .fixed(6, "ETs", "ETq", "ES", "EN", "ENq", "rho", "lambda");
+
+    private final BufferedWriter csv;
+    private final ColumnarFile.Writer binary;
+    private final RowEncoder encoder = new RowEncoder();
+
+    private BatchResultWriter(BufferedWriter csv, ColumnarFile.Writer binary) {
+        this.csv = csv;
+        this.binary = binary;
+    }
+
+    /** Apre il file il cui nome CSV è csvPath (con estensione .bin nel formato binario). */
+    public static BatchResultWriter open(OutputFormat format, Path csvPath) throws IOException {
+        if (format.isBinary()) {
+            ColumnarFile.Writer w = new ColumnarFile.Writer(Paths.get(format.path(csvPath.toString())), LAYOUT, false);
+            w.writeRow(new double[LAYOUT.stored()]);
+            return new BatchResultWriter(null, w);
+        }
+        BufferedWriter w = Files.newBufferedWriter(
+                csvPath,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        );
+        // Header: batch + solo medie cumulative
+        w.write(LAYOUT.header());
+        w.newLine();
+        w.write("INFINITE,0,0,0,0,0,0,0,0");
+        w.newLine();
+        return new BatchResultWriter(w, null);
+    }
+
+    /** Scrive una riga: {Batch, ETs, ETq, ES, EN, ENq, rho, lambda}. */
+    public void writeRow(double[] row) throws IOException {
+        if (binary != null) {
+            binary.writeRow(row);
+        } else {
+            LAYOUT.encode(encoder, row).writeTo(csv);
+            csv.newLine();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (binary != null) binary.close();
+        else csv.close();
+    }
+}
@@ -0,0 +1,108 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Colonne di un file di risultati, condivise dal formato CSV e da quello binario
+ * ({@link ColumnarFile}). Ogni colonna è:
+ * <ul>
+ *   <li>un'etichetta costante (es. SimulationType=INFINITE), scritta solo nell'intestazione del binario;</li>
+ *   <li>un intero (seed, centro, batch), salvato come double e stampato senza decimali;</li>
+ *   <li>un valore a precisione fissa, stampato con il numero di decimali indicato.</li>
+ * </ul>
+ * Una riga è un double[] con i soli valori numerici, nell'ordine delle colonne.
+ */
+public final class ColumnLayout {
+
+    /** Decimali di una colonna intera. */
+    public static final int INTEGER = -1;
+    /** Decimali di una colonna etichetta (valore costante, non salvato nelle righe). */
+    public static final int LABEL = -2;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> decimals = new ArrayList<>();
+    private final List<String> labels = new ArrayList<>();
+    private int stored = 0;
+
+    /** Colonna con valore costante value. */
+    public ColumnLayout label(String name, String value) {
+        return add(name, LABEL, value);
+    }
+
+    /** Colonne intere. */
+    public ColumnLayout integer(String... columns) {
+        for (String c : columns) add(c, INTEGER, null);
+        return this;
+    }
+
+    /** Colonne con precision decimali. */
+    public ColumnLayout fixed(int precision, String... columns) {
+        for (String c : columns) add(c, precision, null);
+        return this;
+    }
+
+    ColumnLayout add(String name, int precision, String label) {
+        names.add(name);
+        decimals.add(precision);
+        labels.add(label);
+        if (precision != LABEL) stored++;
+        return this;
+    }
+
+    /** Numero di colonne, etichette comprese. */
+    public int columns() {
+        return names.size();
+    }
+
+    /** Numero di valori per riga (colonne non etichetta). */
+    public int stored() {
+        return stored;
+    }
+
+    public String name(int column) {
+        return names.get(column);
+    }
+
+    public int decimals(int column) {
+        return decimals.get(column);
+    }
+
+    /** Valore della colonna etichetta, null per le altre. */
+    public String label(int column) {
+        return labels.get(column);
+    }
+
+    /** Intestazione CSV (senza newline). */
+    public String header() {
+        return String.join(",", names);
+    }
+
+    /** Codifica la riga CSV dei valori row in enc (azzerato prima), senza allocazioni. */
+    public RowEncoder encode(RowEncoder enc, double[] row) {
+        enc.reset();
+        int v = 0;
+        for (int c = 0; c < names.size(); c++) {
+            int d = decimals.get(c);
+            if (d == LABEL) {
+                enc.text(labels.get(c));
+            } else if (d == INTEGER) {
+                enc.integer((long) row[v++]);
+            } else {
+                enc.fixed(row[v++], d);
+            }
+        }
+        return enc;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ColumnLayout l
+                && names.equals(l.names) && decimals.equals(l.decimals) && labels.equals(l.labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode() * 31 + decimals.hashCode();
+    }
+}
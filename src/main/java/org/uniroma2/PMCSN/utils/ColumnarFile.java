@@ -0,0 +1,271 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Formato binario dei risultati (simulation.outputFormat=BINARY), alternativo al CSV: stesse
+ * colonne di un {@link ColumnLayout}, valori double little-endian a larghezza fissa.
+ * <pre>
+ *   "PMCB" | int32 versione | int32 byte di intestazione | int32 colonne
+ *   per colonna: int8 decimali (-1 intero, -2 etichetta) | int16 + UTF-8 nome | [int16 + UTF-8 etichetta]
+ *   zeri fino a un multiplo di 8
+ *   righe: un double per ogni colonna non etichetta
+ * </pre>
+ * Tutto è little-endian, quindi le righe si leggono direttamente come matrice, ad es. in numpy
+ * {@code np.fromfile(f, '<f8', offset=intestazione).reshape(-1, colonne)}.
+ * {@link #main} riconverte i file (o intere cartelle) in CSV, con la precisione di ogni colonna.
+ */
+public final class ColumnarFile {
+
+    public static final String EXTENSION = ".bin";
+
+    private static final byte[] MAGIC = {'P', 'M', 'C', 'B'};
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ColumnarFile() {
+    }
+
+    /** Percorso binario corrispondente a un percorso .csv. */
+    public static String path(String csvPath) {
+        return csvPath.endsWith(".csv")
+                ? csvPath.substring(0, csvPath.length() - 4) + EXTENSION
+                : csvPath + EXTENSION;
+    }
+
+    /** Intestazione del layout, già allineata a 8 byte. */
+    static byte[] header(ColumnLayout layout) {
+        ByteBuffer b = ByteBuffer.allocate(headerSize(layout)).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(MAGIC).putInt(VERSION).putInt(b.capacity()).putInt(layout.columns());
+        for (int c = 0; c < layout.columns(); c++) {
+            b.put((byte) layout.decimals(c));
+            putString(b, layout.name(c));
+            if (layout.decimals(c) == ColumnLayout.LABEL) putString(b, layout.label(c));
+        }
+        return b.array();
+    }
+
+    private static int headerSize(ColumnLayout layout) {
+        int size = MAGIC.length + 3 * Integer.BYTES;
+        for (int c = 0; c < layout.columns(); c++) {
+            size += 1 + Short.BYTES + utf8(layout.name(c)).length;
+            if (layout.decimals(c) == ColumnLayout.LABEL) size += Short.BYTES + utf8(layout.label(c)).length;
+        }
+        return (size + 7) & ~7;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer b, String s) {
+        byte[] bytes = utf8(s);
+        b.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getShort()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Legge l'intestazione dalla posizione corrente di b (little-endian). */
+    private static ColumnLayout readHeader(ByteBuffer b, Path file) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        b.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Non è un file di risultati binario: " + file);
+        int version = b.getInt();
+        if (version != VERSION) throw new IOException("Versione " + version + " non supportata: " + file);
+        int headerSize = b.getInt();
+        int columns = b.getInt();
+        ColumnLayout layout = new ColumnLayout();
+        for (int c = 0; c < columns; c++) {
+            int decimals = b.get();
+            String name = getString(b);
+            layout.add(name, decimals, decimals == ColumnLayout.LABEL ? getString(b) : null);
+        }
+        b.position(headerSize);
+        return layout;
+    }
+
+    /**
+     * Scrittura sequenziale delle righe attraverso un FileChannel e un buffer diretto: i double
+     * vanno nel buffer senza passare da stringhe e il buffer si scarica sul canale quando è pieno.
+     * Non thread-safe.
+     */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int stored;
+
+        /**
+         * @param append true: accoda a un file esistente con lo stesso layout (l'intestazione si
+         *               scrive solo se il file è nuovo o vuoto); false: sovrascrive
+         */
+        public Writer(Path file, ColumnLayout layout, boolean append) throws IOException {
+            Path parent = file.getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.stored = layout.stored();
+            this.channel = append
+                    ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, stored * Double.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (channel.size() == 0) {
+                    buffer.put(header(layout));
+                } else {
+                    checkHeader(file, layout);
+                    channel.position(channel.size());
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void checkHeader(Path file, ColumnLayout layout) throws IOException {
+            byte[] expected = header(layout);
+            ByteBuffer existing = ByteBuffer.allocate(expected.length);
+            channel.read(existing, 0);
+            if (!Arrays.equals(existing.array(), expected)) {
+                throw new IOException("Colonne diverse da quelle del file esistente: " + file);
+            }
+            if ((channel.size() - expected.length) % ((long) stored * Double.BYTES) != 0) {
+                throw new IOException("Ultima riga incompleta: " + file);
+            }
+        }
+
+        /** Accoda una riga: un valore per ogni colonna non etichetta. */
+        public void writeRow(double[] row) throws IOException {
+            if (row.length != stored) {
+                throw new IllegalArgumentException("Attesi " + stored + " valori, ricevuti " + row.length);
+            }
+            if (buffer.remaining() < stored * Double.BYTES) drain();
+            for (double v : row) buffer.putDouble(v);
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /** File binario letto tramite memory mapping. */
+    public static final class Table {
+
+        private final ColumnLayout layout;
+        private final MappedByteBuffer data;
+        private final int offset;
+        private final long rows;
+
+        private Table(ColumnLayout layout, MappedByteBuffer data, int offset) {
+            this.layout = layout;
+            this.data = data;
+            this.offset = offset;
+            int rowBytes = layout.stored() * Double.BYTES;
+            this.rows = rowBytes == 0 ? 0 : (data.capacity() - offset) / rowBytes;
+        }
+
+        public ColumnLayout layout() {
+            return layout;
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        /** Valore i-esimo (tra le colonne non etichetta) della riga. */
+        public double get(long row, int value) {
+            return data.getDouble((int) (offset + (row * layout.stored() + value) * Double.BYTES));
+        }
+
+        /** Riga come double[], come passata a {@link Writer#writeRow}. */
+        public double[] row(long row) {
+            double[] r = new double[layout.stored()];
+            for (int v = 0; v < r.length; v++) r[v] = get(row, v);
+            return r;
+        }
+    }
+
+    public static Table read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("File troppo grande: " + file);
+            MappedByteBuffer data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            ColumnLayout layout = readHeader(data, file);
+            return new Table(layout, data, data.position());
+        }
+    }
+
+    /** Riconverte un file binario in CSV (stesse colonne e precisione del writer CSV). */
+    public static void toCsv(Path binary, Path csv) throws IOException {
+        Table table = read(binary);
+        RowEncoder encoder = new RowEncoder();
+        double[] row = new double[table.layout().stored()];
+        try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            w.write(table.layout().header());
+            w.newLine();
+            for (long r = 0; r < table.rows(); r++) {
+                for (int v = 0; v < row.length; v++) row[v] = table.get(r, v);
+                table.layout().encode(encoder, row).writeTo(w);
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * Converte in CSV i file binari indicati; per le cartelle tutti i *.bin contenuti (ricorsivamente).
+     * Il CSV si scrive accanto al binario, con estensione .csv.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Uso: ColumnarFile <file.bin | cartella>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            Path p = Paths.get(arg);
+            List<Path> files;
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> s = Files.walk(p)) {
+                    files = s.filter(f -> f.toString().endsWith(EXTENSION)).sorted().toList();
+                }
+            } else {
+                files = List.of(p);
+            }
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                String base = name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : name;
+                Path csv = f.resolveSibling(base + ".csv");
+                toCsv(f, csv);
+                System.out.println(f + " -> " + csv);
+            }
+        }
+    }
+}
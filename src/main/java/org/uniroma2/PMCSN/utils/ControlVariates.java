@@ -0,0 +1,164 @@
+package org.uniroma2.PMCSN.utils;
+
+import org.uniroma2.PMCSN.libs.Rvms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stimatore a variabili di controllo di una media di replica. Per ogni replica j si osservano
+ * y_j e i controlli c_j, di cui è nota la media mu (qui arrivi ammessi e lavoro di servizio di
+ * ogni centro, con media esatta per la replica stessa e non solo a regime); la stima è
+ * <pre>
+ *   y_cv = media(y) - beta' (media(c) - mu),   beta = Scc^-1 Scy
+ * </pre>
+ * con beta stimato per minimi quadrati sulle stesse repliche. Con q controlli la semiampiezza
+ * usa la varianza residua della regressione (n - q - 1 gradi di libertà) e il termine
+ * 1/n + (media(c) - mu)' Scc^-1 (media(c) - mu), come per il valore previsto di una regressione
+ * lineare. Più y è correlata ai controlli, più l'intervallo si restringe a parità di repliche.
+ *
+ * I controlli a varianza nulla o collineari col precedente vengono scartati; senza controlli
+ * la stima coincide con la media e la semiampiezza con quella di {@code ConfidenceInterval}.
+ */
+public final class ControlVariates {
+
+    /* controlli con varianza relativa sotto questa soglia sono costanti o collineari */
+    private static final double SINGULAR = 1e-12;
+
+    private ControlVariates() {
+    }
+
+    /** Stima corretta di una metrica. */
+    public static final class Estimate {
+        /** media delle osservazioni, senza correzione */
+        public final double rawMean;
+        public final double mean;
+        public final double halfWidth;
+        /** coefficienti dei controlli (0 per i controlli scartati) */
+        public final double[] beta;
+
+        Estimate(double rawMean, double mean, double halfWidth, double[] beta) {
+            this.rawMean = rawMean;
+            this.mean = mean;
+            this.halfWidth = halfWidth;
+            this.beta = beta;
+        }
+    }
+
+    /**
+     * @param y        osservazioni per replica
+     * @param controls per ogni controllo le osservazioni, allineate a y
+     * @param known    media nota di ogni controllo
+     */
+    public static Estimate estimate(List<Double> y, List<List<Double>> controls, double[] known,
+                                    double levelOfConfidence) {
+        int n = y.size();
+        int q = controls.size();
+        double[] beta = new double[q];
+        if (n == 0) return new Estimate(Double.NaN, Double.NaN, Double.NaN, beta);
+
+        double yMean = 0.0;
+        for (double v : y) yMean += v;
+        yMean /= n;
+        double[] cMean = new double[q];
+        for (int k = 0; k < q; k++) {
+            if (controls.get(k).size() != n) {
+                throw new IllegalArgumentException("Controllo " + k + ": " + controls.get(k).size()
+                        + " osservazioni, attese " + n);
+            }
+            for (double v : controls.get(k)) cMean[k] += v;
+            cMean[k] /= n;
+        }
+
+        // somme dei prodotti degli scarti
+        double syy = 0.0;
+        double[] scy = new double[q];
+        double[][] scc = new double[q][q];
+        for (int j = 0; j < n; j++) {
+            double dy = y.get(j) - yMean;
+            syy += dy * dy;
+            for (int k = 0; k < q; k++) {
+                double dk = controls.get(k).get(j) - cMean[k];
+                scy[k] += dk * dy;
+                for (int l = 0; l <= k; l++) scc[k][l] += dk * (controls.get(l).get(j) - cMean[l]);
+            }
+        }
+        for (int k = 0; k < q; k++) {
+            for (int l = 0; l < k; l++) scc[l][k] = scc[k][l];
+        }
+
+        // controlli utilizzabili: varianza non nulla e non collineari con quelli già scelti
+        List<Integer> used = new ArrayList<>();
+        for (int k = 0; k < q; k++) {
+            if (scc[k][k] <= SINGULAR * Math.max(1.0, cMean[k] * cMean[k]) * n) continue;
+            List<Integer> trial = new ArrayList<>(used);
+            trial.add(k);
+            if (invert(submatrix(scc, trial)) != null) used.add(k);
+        }
+
+        int p = used.size();
+        double[][] inverse = p == 0 ? new double[0][0] : invert(submatrix(scc, used));
+        double[] delta = new double[p];   /* media(c) - mu */
+        for (int a = 0; a < p; a++) delta[a] = cMean[used.get(a)] - known[used.get(a)];
+
+        double mean = yMean;
+        double explained = 0.0;
+        for (int a = 0; a < p; a++) {
+            double b = 0.0;
+            for (int c = 0; c < p; c++) b += inverse[a][c] * scy[used.get(c)];
+            beta[used.get(a)] = b;
+            mean -= b * delta[a];
+            explained += b * scy[used.get(a)];
+        }
+
+        long df = n - p - 1L;
+        if (df < 1) return new Estimate(yMean, mean, Double.NaN, beta);
+        double residual = Math.max(syy - explained, 0.0) / df;
+        double leverage = 1.0 / n;
+        for (int a = 0; a < p; a++) {
+            for (int c = 0; c < p; c++) leverage += delta[a] * inverse[a][c] * delta[c];
+        }
+        double t = new Rvms().idfStudent(df, 1.0 - 0.5 * (1.0 - levelOfConfidence));
+        return new Estimate(yMean, mean, t * Math.sqrt(residual * leverage), beta);
+    }
+
+    private static double[][] submatrix(double[][] m, List<Integer> idx) {
+        double[][] s = new double[idx.size()][idx.size()];
+        for (int a = 0; a < idx.size(); a++) {
+            for (int b = 0; b < idx.size(); b++) s[a][b] = m[idx.get(a)][idx.get(b)];
+        }
+        return s;
+    }
+
+    /** Inversa per eliminazione di Gauss-Jordan con pivot parziale, null se (quasi) singolare. */
+    private static double[][] invert(double[][] m) {
+        int p = m.length;
+        double[][] a = new double[p][2 * p];
+        double scale = 0.0;
+        for (int i = 0; i < p; i++) {
+            System.arraycopy(m[i], 0, a[i], 0, p);
+            a[i][p + i] = 1.0;
+            scale = Math.max(scale, Math.abs(m[i][i]));
+        }
+        for (int col = 0; col < p; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < p; r++) {
+                if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) pivot = r;
+            }
+            if (Math.abs(a[pivot][col]) <= SINGULAR * scale) return null;
+            double[] tmp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+            double d = a[col][col];
+            for (int c = 0; c < 2 * p; c++) a[col][c] /= d;
+            for (int r = 0; r < p; r++) {
+                if (r == col || a[r][col] == 0.0) continue;
+                double f = a[r][col];
+                for (int c = 0; c < 2 * p; c++) a[r][c] -= f * a[col][c];
+            }
+        }
+        double[][] inv = new double[p][p];
+        for (int i = 0; i < p; i++) System.arraycopy(a[i], p, inv[i], 0, p);
+        return inv;
+    }
+}
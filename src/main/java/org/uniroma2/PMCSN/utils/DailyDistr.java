@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.utils;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.SimpleDailySystem;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
@@ -8,14 +8,17 @@ import org.uniroma2.PMCSN.controller.DailyLambdaSelectorMinutes;
 import org.uniroma2.PMCSN.controller.DailyLambdaSelectorMinutesRideSharing;
 
 import static org.uniroma2.PMCSN.libs.Distributions.*;
-import static org.uniroma2.PMCSN.libs.Distributions.idfNormal;
 
 public class DailyDistr {
 
-    private final ConfigurationManager config = new ConfigurationManager();
+    private final SimulationConfig config;
     private final DailyLambdaSelectorMinutes lambdaSelector = DailyLambdaSelectorMinutes.fromSystemPropertiesOrDefaults();
     private final DailyLambdaSelectorMinutesRideSharing lambdaSelectorRideSharing = DailyLambdaSelectorMinutesRideSharing.fromSystemPropertiesOrDefaults();
 
+    public DailyDistr(SimulationConfig config) {
+        this.config = config;
+    }
+
 
     /**
      * Replica la logica di Distrs.getNextArrivalTimeSimpleCenter,
@@ -36,21 +39,12 @@ public class DailyDistr {
             // prendo il lambda base dinamico dalla fascia corrente (arrivi / minuto)
             double lambda = lambdaSelector.getLambdaPerMinute(t);
 
-            // applico i pesi come nel metodo originale
-            if (system instanceof SimpleDailySystem) {
-                switch (centerIndex) {
-                    case 0 -> lambda *= config.getDouble("simulation", "p_small");
-                    case 1 -> lambda *= config.getDouble("simulation", "p_medium");
-                    case 2 -> lambda *= config.getDouble("simulation", "p_large");
-                    default -> System.out.println("Centro inesistente!");
-                }
+            // applico i pesi come nel metodo originale (p_i, oppure p_i·psimple), precalcolati
+            double weight = config.arrivalWeight(centerIndex, system instanceof SimpleDailySystem);
+            if (Double.isNaN(weight)) {
+                System.out.println("Centro inesistente!");
             } else {
-                switch (centerIndex) {
-                    case 0 -> lambda *= config.getDouble("simulation", "p_small") * config.getDouble("simulation", "psimple");
-                    case 1 -> lambda *= config.getDouble("simulation", "p_medium") * config.getDouble("simulation", "psimple");
-                    case 2 -> lambda *= config.getDouble("simulation", "p_large") * config.getDouble("simulation", "psimple");
-                    default -> System.out.println("Centro inesistente!");
-                }
+                lambda *= weight;
             }
 
             // se lambda <= 0, salto alla fascia successiva
@@ -77,16 +71,7 @@ public class DailyDistr {
     //dovrebbe restituire valore gaussiana troncata tra a e b
     public double getServiceTimeSimple(Rngs r) {
         r.selectStream(11);
-        double esi = config.getDouble("simulation","esi");
-        double alpha, beta;
-        double a = 2;
-        double b = 30;
-
-        alpha = cdfNormal(esi, 4, a);
-        beta = 1 - cdfNormal(esi, 4, b);
-
-        double u = uniform(alpha, 1 - beta, r);
-        return idfNormal(esi, 4, u);
+        return config.serviceTime.sample(r);
 //        return exponential(esi,r);
     }
 
@@ -116,15 +101,6 @@ public class DailyDistr {
 
     public double getServiceTimeRideSharing(Rngs r) {
         r.selectStream(13);
-        double esi = config.getDouble("simulation","esi");
-        double alpha, beta;
-        double a = 2;
-        double b = 30;
-
-        alpha = cdfNormal(esi, 4, a);
-        beta = 1 - cdfNormal(esi, 4, b);
-
-        double u = uniform(alpha, 1 - beta, r);
-        return idfNormal(esi, 4, u);
+        return config.serviceTime.sample(r);
     }
 }
\ No newline at end of file
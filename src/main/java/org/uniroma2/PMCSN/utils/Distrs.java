@@ -1,6 +1,6 @@
 package org.uniroma2.PMCSN.utils;
 
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.configuration.SimulationConfig;
 import org.uniroma2.PMCSN.controller.SimpleSystem;
 import org.uniroma2.PMCSN.controller.Sistema;
 import org.uniroma2.PMCSN.libs.Rngs;
@@ -9,26 +9,19 @@ import static org.uniroma2.PMCSN.libs.Distributions.*;
 
 public class Distrs {
 
-    private final ConfigurationManager config = new ConfigurationManager();
+    private final SimulationConfig config;
+
+    public Distrs(SimulationConfig config) {
+        this.config = config;
+    }
 
     public double getNextArrivalTimeSimpleCenter(Rngs r, Sistema system, int centerIndex, double sarrival) {
         r.selectStream(1);
-        double lambda = config.getDouble("simulation","lambdasimple");
-
-        if(system instanceof SimpleSystem) {
-            switch (centerIndex) {
-                case 0 -> lambda *= config.getDouble("simulation","p_small");
-                case 1 -> lambda *= config.getDouble("simulation","p_medium");
-                case 2 -> lambda *= config.getDouble("simulation","p_large");
-                default -> System.out.println("Centro inesistente!");
-            }
-        }else{
-            switch (centerIndex) {
-                case 0 -> lambda *= config.getDouble("simulation","p_small") * config.getDouble("simulation","psimple") ;
-                case 1 -> lambda *= config.getDouble("simulation","p_medium") * config.getDouble("simulation","psimple") ;
-                case 2 -> lambda *= config.getDouble("simulation","p_large") * config.getDouble("simulation","psimple") ;
-                default -> System.out.println("Centro inesistente!");
-            }
+        // λ·p_i (sistema semplice) o λ·p_i·psimple (ride sharing), precalcolati
+        double lambda = config.arrivalRate(centerIndex, system instanceof SimpleSystem);
+        if (Double.isNaN(lambda)) {
+            System.out.println("Centro inesistente!");
+            lambda = config.getLambdaSimple();
         }
 
         sarrival += exponential(1/lambda, r);
@@ -37,8 +30,7 @@ public class Distrs {
 
     public double getNextArrivalTimeRideSharing(Rngs r, double sarrival) {
         r.selectStream(2);
-        double lambda = config.getDouble("simulation","lambdaride") * config.getDouble("simulation","pride") ;
-        sarrival += exponential(1/lambda, r);
+        sarrival += exponential(1/config.rideRate, r);
         return sarrival;
     }
 
@@ -46,31 +38,13 @@ public class Distrs {
     //dovrebbe restituire valore gaussiana troncata tra a e b
     public double getServiceTimeSimple(Rngs r) {
         r.selectStream(3);
-        double esi = config.getDouble("simulation","esi");
-        double alpha, beta;
-        double a = 2;
-        double b = 30;
-
-        alpha = cdfNormal(esi, 4, a);
-        beta = 1 - cdfNormal(esi, 4, b);
-
-        double u = uniform(alpha, 1 - beta, r);
-        return idfNormal(esi, 4, u);
+        return config.serviceTime.sample(r);
 //        return exponential(esi,r);
     }
 
     //dovrebbe restituire valore gaussiana troncata tra a e b
     public double getServiceTimeRideSharing(Rngs r) {
         r.selectStream(4);
-        double esi = config.getDouble("simulation","esi");
-        double alpha, beta;
-        double a = 2;
-        double b = 30;
-
-        alpha = cdfNormal(esi, 4, a);
-        beta = 1 - cdfNormal(esi, 4, b);
-
-        double u = uniform(alpha, 1 - beta, r);
-        return idfNormal(esi, 4, u);
+        return config.serviceTime.sample(r);
     }
 }
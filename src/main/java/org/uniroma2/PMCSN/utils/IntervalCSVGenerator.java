@@ -1,56 +1,38 @@
 package org.uniroma2.PMCSN.utils;
 
-import org.uniroma2.PMCSN.centers.SimpleMultiServerNode;
-import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.centers.Node;
 import org.uniroma2.PMCSN.model.Area;
 import org.uniroma2.PMCSN.model.MsqSum;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Scrive riepiloghi a intervalli per ogni nodo.
  * I file vengono creati in:
  *    {baseDir}/{finite|infinite}_interval_center{idx}.csv
+ * Le righe passano da {@link AsyncCsvWriter}: chi le produce non apre né chiude file.
+ * Con {@link OutputFormat#BINARY} gli stessi file sono scritti con estensione .bin
+ * (vedi {@link ColumnarFile}).
  */
 public class IntervalCSVGenerator {
 
-    /**
-     * Crea la directory se non esiste.
-     */
-
-
-    private static void ensureDirectory(String path) {
-        File dir = new File(path);
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-    }
+    /** Colonne dei file a intervalli: Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho. */
+    public static final ColumnLayout LAYOUT = new ColumnLayout()
+            .integer("Seed", "Center")
+            .fixed(2, "Time")
+            .fixed(5, "ETs", "ENs", "ETq", "ENq", "ES", "ENS", "Rho");
 
-    /**
-     * Metodo per creare il file e restituire se è stato creato adesso.
-     */
-    public static boolean ensureFile(String path) {
-        File f = new File(path);
-        if (!f.exists()) {
-            try {
-                f.getParentFile().mkdirs();
-                f.createNewFile();
-                return true;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return false;
-    }
+    /** Colonne dei file per intervallo dei sistemi giornalieri: come {@link #LAYOUT}, a 6 decimali. */
+    public static final ColumnLayout DAILY_LAYOUT = new ColumnLayout()
+            .integer("Seed", "Center")
+            .fixed(2, "Time")
+            .fixed(6, "ETs", "ENs", "ETq", "ENq", "ES", "ENS", "Rho");
 
     /**
-     * Scrive su CSV i dati a intervallo di un singolo nodo (finite o infinite).
+     * Scrive i dati a intervallo di un singolo nodo (finite o infinite).
      *
+     * @param format      CSV o binario
      * @param isFinite    true=finite, false=infinite
      * @param seed        indice di replica (o batch)
      * @param centerIndex indice del nodo
@@ -65,6 +47,7 @@ public class IntervalCSVGenerator {
      * @param baseDir     cartella base (es. "csvFilesIntervals")
      */
     public static void writeIntervalData(
+            OutputFormat format,
             boolean isFinite,
             long seed,
             int centerIndex,
@@ -78,44 +61,62 @@ public class IntervalCSVGenerator {
             double rho,
             String baseDir
     ) {
+        appendRows(format, intervalFile(isFinite, centerIndex, baseDir),
+                List.of(intervalRow(seed, centerIndex, time, eTs, eNs, eTq, eNq, eS, eNS, rho)));
+    }
+
+    /** Percorso del CSV a intervalli del nodo centerIndex. */
+    public static String intervalFile(boolean isFinite, int centerIndex, String baseDir) {
         String suffix = isFinite ? "finite_interval" : "infinite_interval";
-        String dir = baseDir + "/" + suffix;
-        ensureDirectory(dir);
-
-        String fileName = dir + "/center" + centerIndex + ".csv";
-        boolean newFile = ensureFile(fileName);
-
-        try (FileWriter fw = new FileWriter(fileName, true)) {
-            if (newFile) {
-                // header
-                fw.append("Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho\n");
-            }
-            fw.append(String.join(",",
-                    String.valueOf(seed),
-                    String.valueOf(centerIndex),
-                    String.format(Locale.US, "%.2f", time),
-                    String.format(Locale.US, "%.5f", eTs),
-                    String.format(Locale.US, "%.5f", eNs),
-                    String.format(Locale.US, "%.5f", eTq),
-                    String.format(Locale.US, "%.5f", eNq),
-                    String.format(Locale.US, "%.5f", eS),
-                    String.format(Locale.US, "%.5f", eNS),
-                    String.format(Locale.US, "%.5f", rho)
-            ));
-            fw.append("\n");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
+        return baseDir + "/" + suffix + "/center" + centerIndex + ".csv";
+    }
+
+    /** Valori della riga a intervallo di un singolo nodo, nell'ordine di {@link #LAYOUT}. */
+    public static double[] intervalRow(
+            long seed,
+            int centerIndex,
+            double time,
+            double eTs,
+            double eNs,
+            double eTq,
+            double eNq,
+            double eS,
+            double eNS,
+            double rho
+    ) {
+        return new double[]{seed, centerIndex, time, eTs, eNs, eTq, eNq, eS, eNS, rho};
+    }
+
+    /**
+     * Accoda righe come valori (es. {@link #intervalRow}) al file il cui nome CSV è fileName:
+     * nel formato binario il file ha estensione .bin; nel CSV la formattazione avviene sul
+     * thread di scrittura.
+     */
+    public static void appendRows(OutputFormat format, String fileName, List<double[]> rows) {
+        AsyncCsvWriter.shared().appendRows(format.path(fileName), LAYOUT, rows, format.isBinary());
     }
 
     public static void writeGlobalInterval(
+            OutputFormat format,
             long rep,
             double reportTime,
-            List<SimpleMultiServerNode> localNodes,
+            List<? extends Node> localNodes,
             String baseDir
     ) {
+        appendRows(format, globalIntervalFile(baseDir), List.of(globalIntervalRow(rep, reportTime, localNodes)));
+    }
 
-        ConfigurationManager config = new ConfigurationManager();
+    /** Percorso del CSV globale a intervalli (baseDir/finite_interval/global.csv). */
+    public static String globalIntervalFile(String baseDir) {
+        return baseDir + "/finite_interval/global.csv";
+    }
+
+    /** Valori della riga globale (Center = -1), nell'ordine di {@link #LAYOUT}. */
+    public static double[] globalIntervalRow(
+            long rep,
+            double reportTime,
+            List<? extends Node> localNodes
+    ) {
 
         double cumArea = 0.0;
         double cumAreaQ = 0.0;
@@ -123,7 +124,7 @@ public class IntervalCSVGenerator {
         double sumRho = 0.0;
         long cumJobs = 0L;
 
-        for (SimpleMultiServerNode n : localNodes) {
+        for (Node n : localNodes) {
             Area a = n.getAreaObject();
             MsqSum[] sums = n.getMsqSums();
             cumArea += a.getNodeArea();
@@ -139,32 +140,9 @@ public class IntervalCSVGenerator {
         double ENq = reportTime > 0 ? cumAreaQ / reportTime : 0.0;
         double ES = cumJobs > 0 ? cumServiceArea / cumJobs : 0.0;
         double ENS = reportTime > 0 ? cumServiceArea / reportTime  : 0.0;
-        double rho = sumRho / config.getInt("simulation", "nodes");
-
-        // prepara file global.csv in baseDir/finite_interval
-        String dir = baseDir + "/finite_interval";
-        String file = dir + "/global.csv";
-        boolean isNew = IntervalCSVGenerator.ensureFile(file);
-        try (FileWriter fw = new FileWriter(file, true)) {
-            if (isNew) {
-                fw.append("Seed,Center,Time,ETs,ENs,ETq,ENq,ES,ENS,Rho\n");
-            }
-            fw.append(String.join(",",
-                    String.valueOf(rep),
-                    "-1",
-                    String.format(Locale.US, "%.2f", reportTime),
-                    String.format(Locale.US, "%.5f", ETs),
-                    String.format(Locale.US, "%.5f", ENs),
-                    String.format(Locale.US, "%.5f", ETq),
-                    String.format(Locale.US, "%.5f", ENq),
-                    String.format(Locale.US, "%.5f", ES),
-                    String.format(Locale.US, "%.5f", ENS),
-                    String.format(Locale.US, "%.5f", rho)
-            ));
-            fw.append("\n");
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
+        double rho = sumRho / localNodes.size();
+
+        return new double[]{rep, -1, reportTime, ETs, ENs, ETq, ENq, ES, ENS, rho};
     }
 
 }
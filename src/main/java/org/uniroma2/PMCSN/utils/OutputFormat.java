@@ -0,0 +1,24 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.util.Locale;
+
+/**
+ * Formato dei file di risultati a intervalli e per batch (simulation.outputFormat):
+ * CSV testuale oppure binario a colonne ({@link ColumnarFile}, riconvertibile in CSV).
+ */
+public enum OutputFormat {
+    CSV, BINARY;
+
+    public static OutputFormat parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public boolean isBinary() {
+        return this == BINARY;
+    }
+
+    /** Percorso effettivo del file il cui nome CSV è csvPath (.bin per il binario). */
+    public String path(String csvPath) {
+        return isBinary() ? ColumnarFile.path(csvPath) : csvPath;
+    }
+}
@@ -0,0 +1,155 @@
+package org.uniroma2.PMCSN.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Codifica di una riga CSV in un buffer di caratteri riusabile, senza Formatter né stringhe
+ * intermedie: i campi sono separati da virgole e i double sono scritti a precisione fissa
+ * emettendo le cifre di un intero scalato (v * 10^decimali arrotondato).
+ *
+ * L'output è identico a {@code String.format(Locale.US, "%.nf", v)}, che arrotonda half-up
+ * la rappresentazione decimale più corta di v. Nei casi in cui le due strade potrebbero
+ * divergere (valore scalato a meno di 1e-3 da un pareggio, modulo troppo grande per l'intero
+ * scalato, NaN e infiniti) si ricade su String.format, quindi sono rari e solo lì si alloca.
+ *
+ * Non thread-safe: un encoder per thread (o per writer).
+ */
+public final class RowEncoder {
+
+    public static final int MAX_DECIMALS = 9;
+
+    private static final long[] POW10 = new long[MAX_DECIMALS + 1];
+    private static final String[] FORMATS = new String[MAX_DECIMALS + 1];
+    static {
+        long p = 1;
+        for (int d = 0; d <= MAX_DECIMALS; d++) {
+            POW10[d] = p;
+            FORMATS[d] = "%." + d + "f";
+            p *= 10;
+        }
+    }
+
+    /* oltre questo valore scalato l'errore del prodotto v * 10^d può toccare l'ultima cifra */
+    private static final double MAX_SCALED = 1e12;
+    /* distanza minima da un pareggio per arrotondare senza ricadere su String.format */
+    private static final double TIE_MARGIN = 1e-3;
+
+    private char[] buf = new char[128];
+    private int len = 0;
+    private int fields = 0;
+
+    /** Svuota il buffer per una nuova riga. */
+    public RowEncoder reset() {
+        len = 0;
+        fields = 0;
+        return this;
+    }
+
+    public int length() {
+        return len;
+    }
+
+    /** Campo testuale, così com'è. */
+    public RowEncoder text(String s) {
+        separator();
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, buf, len);
+        len += n;
+        return this;
+    }
+
+    /** Campo intero. */
+    public RowEncoder integer(long v) {
+        separator();
+        appendLong(v);
+        return this;
+    }
+
+    /** Campo con decimals cifre decimali, come "%.{decimals}f". */
+    public RowEncoder fixed(double v, int decimals) {
+        if (decimals < 0) throw new IllegalArgumentException("Decimali negativi: " + decimals);
+        separator();
+        if (decimals > MAX_DECIMALS) return fallback(v, decimals);
+        double a = Math.abs(v);
+        double scaled = a * POW10[decimals];
+        if (!(scaled < MAX_SCALED)) return fallback(v, decimals);   /* anche NaN e infiniti */
+        double floor = Math.floor(scaled);
+        double frac = scaled - floor;
+        if (Math.abs(frac - 0.5) < TIE_MARGIN) return fallback(v, decimals);
+        long digits = (long) floor + (frac > 0.5 ? 1 : 0);
+
+        if (Double.doubleToRawLongBits(v) < 0) put('-');   /* come Formatter: anche -0.0 e valori arrotondati a zero */
+        appendLong(digits / POW10[decimals]);
+        if (decimals > 0) {
+            put('.');
+            long fraction = digits % POW10[decimals];
+            ensure(decimals);
+            for (int i = len + decimals - 1; i >= len; i--) {
+                buf[i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            len += decimals;
+        }
+        return this;
+    }
+
+    /** Scrive la riga (senza newline) su w. */
+    public void writeTo(Writer w) throws IOException {
+        w.write(buf, 0, len);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, len);
+    }
+
+    private RowEncoder fallback(double v, int decimals) {
+        String s = decimals <= MAX_DECIMALS
+                ? String.format(Locale.US, FORMATS[decimals], v)
+                : String.format(Locale.US, "%." + decimals + "f", v);
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, buf, len);
+        len += n;
+        return this;
+    }
+
+    private void separator() {
+        if (fields++ > 0) put(',');
+    }
+
+    private void put(char c) {
+        ensure(1);
+        buf[len++] = c;
+    }
+
+    private void appendLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            String s = Long.toString(v);
+            ensure(s.length());
+            s.getChars(0, s.length(), buf, len);
+            len += s.length();
+            return;
+        }
+        if (v < 0) {
+            put('-');
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        ensure(digits);
+        for (int i = len + digits - 1; i >= len; i--) {
+            buf[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        len += digits;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(2 * buf.length, len + extra));
+    }
+}
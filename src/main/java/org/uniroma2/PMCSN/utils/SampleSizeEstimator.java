@@ -37,34 +37,4 @@ public class SampleSizeEstimator {
         return Math.max(nFinal, 41);
     }
 
-    /**
-     * Data una proporzione wProportion (= w/s) e livello di confidenza,
-     * calcola n per ogni stima preliminare di s in preStd e restituisce
-     * il massimo tra tutti i n calcolati.
-     *
-     * @param wProportion      w come proporzione di s (es. 0.1)
-     * @param confidenceLevel  livello di confidenza (es. 0.95)
-     * @param preStd           array di stime preliminari di sigma per ogni variabile
-     * @return                 il numero di repliche da usare (il più grande tra tutti)
-     */
-    public long estimateOverallSampleSize(
-            double wProportion,
-            double confidenceLevel,
-            double... preStd
-    ) {
-        long maxN = 0;
-        // per ogni stima preliminare di sigma
-        for (double s : preStd) {
-            // 1) calcolo n_i per quella s: usa l’iterativo o il fast
-            long n_i = estimateSampleSize(s, wProportion * s, confidenceLevel);
-            // se preferisci la versione fast:
-            // long n_i = estimateSampleSizeProportionFast(wProportion, confidenceLevel);
-            // 2) aggiorna il massimo
-            if (n_i > maxN) {
-                maxN = n_i;
-            }
-        }
-        return maxN;
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package org.uniroma2.PMCSN.utils;
+
+import org.uniroma2.PMCSN.configuration.ConfigurationManager;
+import org.uniroma2.PMCSN.libs.Rngs;
+import org.uniroma2.PMCSN.model.BatchAccumulator;
+import org.uniroma2.PMCSN.model.ConfidenceInterval;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.uniroma2.PMCSN.libs.Distributions.idfStandard;
+
+/**
+ * Regola di arresto sequenziale (simulation.adaptive=true): dopo le repliche (o i batch)
+ * configurati come pilota si continua finché, per ogni metrica di ogni centro, la semiampiezza
+ * dell'intervallo di confidenza al livello general.levelOfConfidence è al più
+ * max(simulation.relativeHalfWidth * |media|, simulation.absoluteHalfWidth), senza superare il
+ * massimo configurato. La soglia assoluta evita di inseguire una precisione relativa su metriche
+ * praticamente nulle (es. E[Tq] di un centro senza coda).
+ *
+ * Quando la precisione non è raggiunta il prossimo controllo si fa al numero di osservazioni
+ * stimato da {@link SampleSizeEstimator} con le deviazioni standard correnti.
+ */
+public class SequentialStoppingRule {
+
+    /** Nomi delle metriche, nell'ordine in cui vanno passate a {@link #nextTarget}. */
+    public static final String[] METRICS = {"E[Ts]", "E[Tq]", "E[S]", "E[N]", "E[Nq]", "ρ", "λ"};
+
+    private final double relativeHalfWidth;
+    private final double absoluteHalfWidth;
+    private final double levelOfConfidence;
+    private final long max;
+    private final String unit;
+    private final SampleSizeEstimator estimator = new SampleSizeEstimator();
+
+    private long count = 0;
+    private boolean satisfied = false;
+    /* metrica con il rapporto semiampiezza/obiettivo peggiore all'ultimo controllo */
+    private double worstRatio = 0.0;
+    private int worstNode = -1;
+    private int worstMetric = -1;
+
+    public SequentialStoppingRule(double relativeHalfWidth, double absoluteHalfWidth, double levelOfConfidence,
+                                  long max, String unit) {
+        this.relativeHalfWidth = relativeHalfWidth;
+        this.absoluteHalfWidth = absoluteHalfWidth;
+        this.levelOfConfidence = levelOfConfidence;
+        this.max = max;
+        this.unit = unit;
+    }
+
+    /**
+     * Regola per le repliche (orizzonte finito), massimo simulation.maxReplicas ma non oltre
+     * {@link Rngs#MAX_REPLICAS}: oltre, le sottosequenze delle repliche sconfinano nello stream
+     * successivo e le repliche non sono più indipendenti.
+     */
+    public static SequentialStoppingRule forReplicas(ConfigurationManager config) {
+        return new SequentialStoppingRule(config.getDouble("simulation", "relativeHalfWidth"),
+                config.getDouble("simulation", "absoluteHalfWidth"),
+                config.getDouble("general", "levelOfConfidence"),
+                Math.min(config.getInt("simulation", "maxReplicas"), Rngs.MAX_REPLICAS), "repliche");
+    }
+
+    /** Regola per i batch (orizzonte infinito), massimo simulation.maxBatches. */
+    public static SequentialStoppingRule forBatches(ConfigurationManager config) {
+        return new SequentialStoppingRule(config.getDouble("simulation", "relativeHalfWidth"),
+                config.getDouble("simulation", "absoluteHalfWidth"),
+                config.getDouble("general", "levelOfConfidence"),
+                config.getInt("simulation", "maxBatches"), "batch");
+    }
+
+    /**
+     * Controlla la precisione dopo count osservazioni.
+     * @param metrics metrics[k][i] = valori della metrica k (ordine di {@link #METRICS}) del centro i
+     * @return count se la precisione è raggiunta (o count >= massimo), altrimenti il numero
+     *         di osservazioni a cui rifare il controllo
+     */
+    public long nextTarget(long count, BatchAccumulator[]... metrics) {
+        this.count = count;
+        worstRatio = 0.0;
+        worstNode = worstMetric = -1;
+        boolean met = true;
+        long required = count + 1;
+
+        for (int k = 0; k < metrics.length; k++) {
+            for (int i = 0; i < metrics[k].length; i++) {
+                BatchAccumulator values = metrics[k][i];
+                if (values.count() < 2) continue;   /* centro senza dati */
+                double target = Math.max(relativeHalfWidth * Math.abs(values.mean()), absoluteHalfWidth);
+                double w = ConfidenceInterval.computeConfidenceInterval(values, levelOfConfidence);
+                double ratio = target > 0.0 ? w / target : (w == 0.0 ? 0.0 : Double.POSITIVE_INFINITY);
+                if (worstNode == -1 || ratio > worstRatio) {
+                    worstRatio = ratio;
+                    worstNode = i;
+                    worstMetric = k;
+                }
+                if (w <= target) continue;
+                met = false;
+                required = Math.max(required, requiredCount(values.stdDev(), target));
+            }
+        }
+
+        satisfied = met;
+        if (met || count >= max) return count;
+        return Math.min(max, required);
+    }
+
+    /** Come sopra, dai valori di replica per metrica e centro (metricsByNode.get(k).get(i)). */
+    public long nextTarget(long count, List<List<List<Double>>> metricsByNode) {
+        BatchAccumulator[][] metrics = new BatchAccumulator[metricsByNode.size()][];
+        for (int k = 0; k < metrics.length; k++) metrics[k] = BatchAccumulator.ofEach(metricsByNode.get(k));
+        return nextTarget(count, metrics);
+    }
+
+    /* osservazioni necessarie per semiampiezza target con deviazione standard s */
+    private long requiredCount(double s, double target) {
+        if (!(target > 0.0)) return max;
+        // con la normale la stima è per difetto: se supera già il massimo evito l'iterazione su t
+        double z = idfStandard(1.0 - (1.0 - levelOfConfidence) / 2.0);
+        if (Math.pow(z * s / target, 2) + 1.0 >= max) return max;
+        return estimator.estimateSampleSize(s, target, levelOfConfidence);
+    }
+
+    public boolean isSatisfied() {
+        return satisfied;
+    }
+
+    /** Esito dell'ultimo controllo, da stampare a fine simulazione. */
+    public String summary() {
+        String worst = worstNode == -1 ? "-"
+                : String.format(Locale.ROOT, "Node %d %s %.4f", worstNode, METRICS[worstMetric], worstRatio);
+        return String.format(Locale.ROOT, "Arresto sequenziale: %d %s, precisione %s (semiampiezza/obiettivo massimo: %s)",
+                count, unit, satisfied ? "raggiunta" : "NON raggiunta entro il massimo", worst);
+    }
+}
@@ -31,6 +31,96 @@ public class Verification {
         }
     }
 
+    /** Stime a variabili di controllo di un centro, accanto agli intervalli grezzi. */
+    public static class ControlVariateResult {
+        public String name;
+        public ConfidenceInterval confidenceIntervals;
+        public ControlVariates.Estimate responseTime;
+        public ControlVariates.Estimate queueTime;
+        public ControlVariates.Estimate systemPopulation;
+        public ControlVariates.Estimate queuePopulation;
+
+        public ControlVariateResult(String name, ConfidenceInterval confidenceIntervals,
+                                    ControlVariates.Estimate responseTime, ControlVariates.Estimate queueTime,
+                                    ControlVariates.Estimate systemPopulation, ControlVariates.Estimate queuePopulation) {
+            this.name = name;
+            this.confidenceIntervals = confidenceIntervals;
+            this.responseTime = responseTime;
+            this.queueTime = queueTime;
+            this.systemPopulation = systemPopulation;
+            this.queuePopulation = queuePopulation;
+        }
+    }
+
+    /**
+     * Stime di E[Ts], E[Tq], E[Ns] ed E[Nq] corrette con le variabili di controllo (tasso degli
+     * arrivi ammessi e scarto del lavoro di servizio, osservati per replica, medie note in known[i])
+     * e relativi intervalli, scritte in verification/controlVariates.csv accanto agli intervalli grezzi.
+     * Le liste per centro sono quelle per replica della simulazione, allineate tra loro.
+     */
+    public static List<ControlVariateResult> verifyControlVariates(
+            String simulationType,
+            double[][] known,
+            List<ConfidenceInterval> confidenceIntervalsList,
+            List<List<Double>> respTimeMeansByNode,
+            List<List<Double>> queueTimeMeansByNode,
+            List<List<Double>> systemPopMeansByNode,
+            List<List<Double>> queuePopMeansByNode,
+            List<List<Double>> admittedRateByNode,
+            List<List<Double>> serviceExcessByNode,
+            double levelOfConfidence) {
+        List<ControlVariateResult> results = new ArrayList<>();
+        for (int i = 0; i < known.length; i++) {
+            List<List<Double>> controls = List.of(admittedRateByNode.get(i), serviceExcessByNode.get(i));
+            double[] mu = known[i];
+            results.add(new ControlVariateResult(
+                    "Center" + i,
+                    confidenceIntervalsList.get(i),
+                    ControlVariates.estimate(respTimeMeansByNode.get(i), controls, mu, levelOfConfidence),
+                    ControlVariates.estimate(queueTimeMeansByNode.get(i), controls, mu, levelOfConfidence),
+                    ControlVariates.estimate(systemPopMeansByNode.get(i), controls, mu, levelOfConfidence),
+                    ControlVariates.estimate(queuePopMeansByNode.get(i), controls, mu, levelOfConfidence)
+            ));
+        }
+        writeControlVariateResults(simulationType, results);
+        return results;
+    }
+
+    public static void writeControlVariateResults(String modelName, List<ControlVariateResult> results) {
+        File file = new File("csvFiles/" + modelName + "/verification/");
+        if (!file.exists()) {
+            file.mkdirs();
+        }
+
+        file = new File("csvFiles/" + modelName + "/verification/controlVariates.csv");
+        try (FileWriter fileWriter = new FileWriter(file)) {
+            String DELIMITER = "\n";
+            String COMMA = ",";
+
+            fileWriter.append("Center, E[Ts]_Mean, E[Ts]_CI, E[Ts]_CV_Mean, E[Ts]_CV_CI, E[Tq]_Mean, E[Tq]_CI, E[Tq]_CV_Mean, E[Tq]_CV_CI, E[Ns]_Mean, E[Ns]_CI, E[Ns]_CV_Mean, E[Ns]_CV_CI, E[Nq]_Mean, E[Nq]_CI, E[Nq]_CV_Mean, E[Nq]_CV_CI").append(DELIMITER);
+            for (ControlVariateResult result : results) {
+                ConfidenceInterval ci = result.confidenceIntervals;
+                fileWriter.append(result.name).append(COMMA);
+                appendEstimate(fileWriter, result.responseTime, ci.getResponseTimeCI()).append(COMMA);
+                appendEstimate(fileWriter, result.queueTime, ci.getQueueTimeCI()).append(COMMA);
+                appendEstimate(fileWriter, result.systemPopulation, ci.getSystemPopulationCI()).append(COMMA);
+                appendEstimate(fileWriter, result.queuePopulation, ci.getQueuePopulationCI()).append(DELIMITER);
+            }
+
+            fileWriter.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static FileWriter appendEstimate(FileWriter w, ControlVariates.Estimate e, double rawCI) throws IOException {
+        w.append(String.valueOf(e.rawMean)).append(",")
+                .append(String.valueOf(rawCI)).append(",")
+                .append(String.valueOf(e.mean)).append(",")
+                .append(String.valueOf(e.halfWidth));
+        return w;
+    }
+
     public static List<VerificationResult> verifyConfidenceIntervals(String simulationType, List<MeanStatistics> meanStatisticsList, List<Comparison.ComparisonResult> comparisonResultList, List<ConfidenceInterval> confidenceIntervalsList) {
         List<VerificationResult> verificationResults = new ArrayList<>();
 